@@ -26,14 +26,21 @@ import net.roboconf.agent.internal.MessagingService;
 import net.roboconf.agent.internal.PluginManager;
 import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.plugin.api.ExecutionLevel;
+import net.roboconf.plugin.api.PluginInterface;
 
 /**
  * @author Vincent Zurczak - Linagora
  */
 public class AgentLauncher {
 
+	/**
+	 * The system property that defines the maximal duration of the plug-ins' commands, in milliseconds.
+	 */
+	public static final String EXECUTION_TIMEOUT_PROPERTY = "roboconf.agent.execution.timeout";
+
 	private String agentName;
 	private MessagingService msgService;
+	private long executionTimeout = Long.getLong( EXECUTION_TIMEOUT_PROPERTY, PluginInterface.DEFAULT_EXECUTION_TIMEOUT );
 
 
 	/**
@@ -52,6 +59,18 @@ public class AgentLauncher {
 	}
 
 
+	/**
+	 * @param executionTimeout the maximal duration of the plug-ins' commands, in milliseconds (0 or less for no time out)
+	 * <p>
+	 * Must be set before the agent is launched. It defaults to the value of
+	 * the {@value #EXECUTION_TIMEOUT_PROPERTY} system property, or to {@link PluginInterface#DEFAULT_EXECUTION_TIMEOUT}.
+	 * </p>
+	 */
+	public void setExecutionTimeout( long executionTimeout ) {
+		this.executionTimeout = executionTimeout;
+	}
+
+
 	/**
 	 * Launches an agent.
 	 * @param agentData the agent data
@@ -77,6 +96,8 @@ public class AgentLauncher {
 		PluginManager pluginManager = new PluginManager();
 		pluginManager.setDumpDirectory( dumpDirectory );
 		pluginManager.setExecutionLevel( executionLevel );
+		pluginManager.setAgentName( "Agent " + agentData.getRootInstanceName());
+		pluginManager.setExecutionTimeout( this.executionTimeout );
 
 		// Initialize the agent's connections
 		try {
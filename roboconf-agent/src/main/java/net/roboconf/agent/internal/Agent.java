@@ -23,6 +23,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 import net.roboconf.agent.AgentData;
@@ -38,19 +39,39 @@ import net.roboconf.messaging.messages.Message;
 import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportAdd;
 import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRemove;
 import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRequest;
-import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineReadyToBeDeleted;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifResourcesMissing;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdImportsResync;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceDeploy;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceRemove;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStart;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStop;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceUndeploy;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdResourceChunk;
 import net.roboconf.messaging.utils.MessagingUtils;
 import net.roboconf.plugin.api.PluginInterface;
 
 /**
+ * The agent, that processes the messages sent by the DM and the other agents.
+ * <p>
+ * Messages are received on a single thread. Operations that invoke plug-ins, and that
+ * may last long, are executed by an {@link InstanceTaskScheduler}. They run concurrently for
+ * independent instances, and sequentially for a same instance and its ancestors. Meanwhile,
+ * other messages keep being received.
+ * </p>
+ * <p>
+ * Changes in the structure of the model (instances being added or removed), and complete
+ * traversals of the model, are protected by a lock. Instances are indexed by the prefixes
+ * of the variables they import and export (see {@link VariablePrefixIndex}), so that import
+ * messages go straight to the impacted instances.
+ * </p>
+ * <p>
+ * Changes of instances are not sent to the DM one by one. They are collected by a
+ * {@link NotificationOutbox} and sent in a single message when an operation completes.
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class Agent implements IMessageProcessor {
@@ -58,6 +79,11 @@ public class Agent implements IMessageProcessor {
 	private final Logger logger = Logger.getLogger( getClass().getName());
 	private final String agentName;
 	private final PluginManager pluginManager;
+	private final ResourceCache resourceCache = new ResourceCache();
+	private final InstanceTaskScheduler scheduler = new InstanceTaskScheduler( InstanceTaskScheduler.DEFAULT_THREADS_COUNT );
+	private final NotificationOutbox outbox = new NotificationOutbox( NotificationOutbox.DEFAULT_FLUSH_WINDOW );
+	private final VariablePrefixIndex prefixIndex = new VariablePrefixIndex();
+	private final Object modelLock = new Object();
 
 	private Instance rootInstance;
 	private MessagingService messagingService;
@@ -80,6 +106,7 @@ public class Agent implements IMessageProcessor {
 	 */
 	public void setMessagingService( MessagingService messagingService ) {
 		this.messagingService = messagingService;
+		this.outbox.setMessagingService( messagingService );
 	}
 
 
@@ -104,7 +131,22 @@ public class Agent implements IMessageProcessor {
 	 * @return the rootInstance
 	 */
 	public Instance getRootInstance() {
-		return this.rootInstance;
+		synchronized( this.modelLock ) {
+			return this.rootInstance;
+		}
+	}
+
+
+	/**
+	 * Stops executing operations on instances.
+	 * <p>
+	 * Running operations complete, waiting ones are dropped.
+	 * Pending notifications are sent to the DM.
+	 * </p>
+	 */
+	public void stopExecutingOperations() {
+		this.scheduler.shutdown();
+		this.outbox.close();
 	}
 
 
@@ -117,30 +159,44 @@ public class Agent implements IMessageProcessor {
 	public void performAction( ApplicationAction action, String instancePath, Message originalMessage ) {
 		Instance instance;
 		PluginInterface plugin;
+		Instance root = getRootInstance();
 
-		if( this.rootInstance == null ) {
+		if( root == null ) {
 			this.logger.info( "The agent's model has not yet been initialized. Request " + originalMessage.getClass().getSimpleName() + " is dropped." );
 
-		} else if(( instance = InstanceHelpers.findInstanceByPath( this.rootInstance, instancePath )) == null ) {
+		} else if(( instance = findInstanceByPath( instancePath )) == null ) {
 			this.logger.severe( "Instance " + instancePath + " was not found on this agent." );
 
 		} else if(( plugin = this.pluginManager.findPlugin( instance, this.logger )) != null ) {
 			try {
 				switch( action ) {
 				case deploy:
-					if( instance.getStatus() == InstanceStatus.NOT_DEPLOYED ) {
+					MsgCmdInstanceDeploy deployMsg = (MsgCmdInstanceDeploy) originalMessage;
+					String hash = deployMsg.getResourcesHash();
+					if( instance.getStatus() != InstanceStatus.NOT_DEPLOYED ) {
+						this.logger.info(
+								"Invalid status for instance " + instancePath + ". Status = "
+								+ instance.getStatus() + ". Deploy request is dropped." );
+
+					} else if( deployMsg.getFileNameToFileContent() != null
+							|| hash == null
+							|| this.resourceCache.contains( hash )) {
+
 						updateAndNotifyNewStatus( instance, InstanceStatus.DEPLOYING );
-						copyInstanceResources(
-								instance, plugin.getPluginName(),
-								((MsgCmdInstanceDeploy) originalMessage).getFileNameToFileContent());
+						copyInstanceResources( instance, plugin.getPluginName(), deployMsg );
 
 						plugin.deploy( instance );
 						updateAndNotifyNewStatus( instance, InstanceStatus.DEPLOYED_STOPPED );
 
 					} else {
-						this.logger.info(
-								"Invalid status for instance " + instancePath + ". Status = "
-								+ instance.getStatus() + ". Deploy request is dropped." );
+						// The DM will send the deployment request again, with the resources
+						this.logger.fine( "The resources of " + instancePath + " are not in the cache. Asking them to the DM." );
+						MsgNotifResourcesMissing msg = new MsgNotifResourcesMissing(
+								instancePath, hash,
+								this.resourceCache.findResumeFileName( hash ),
+								this.resourceCache.findResumeOffset( hash ));
+
+						this.messagingService.publish( true, MessagingUtils.buildRoutingKeyToDm(), msg );
 					}
 					break;
 
@@ -191,20 +247,32 @@ public class Agent implements IMessageProcessor {
 
 					} else if( instance.getParent() != null ) {
 						// Remove the instance
-						instance.getParent().getChildren().remove( instance );
+						synchronized( this.modelLock ) {
+							this.prefixIndex.removeInstances( InstanceHelpers.buildHierarchicalList( instance ));
+							instance.getParent().getChildren().remove( instance );
+						}
+
 						this.logger.fine( "Child instance " + instancePath + " was removed from the model." );
 
 						// Stop listening messages
 						this.messagingService.configureInstanceMessaging( instance, false );
 
 						// Send a message to confirm the removal
+						this.outbox.flush();
+						this.outbox.forgetInstance( instance );
 						MsgNotifInstanceRemoved msg = new MsgNotifInstanceRemoved( instance );
 						this.messagingService.publish( true, filterName, msg );
 
 					} else {
-						this.rootInstance = null;
+						synchronized( this.modelLock ) {
+							this.rootInstance = null;
+							this.prefixIndex.clear();
+						}
+
 						this.logger.fine( "Root instance " + instancePath + " was set to null." );
 
+						this.outbox.flush();
+						this.outbox.forgetInstance( instance );
 						MsgNotifInstanceRemoved msg = new MsgNotifInstanceRemoved( instance );
 						this.messagingService.publish( true, filterName, msg );
 					}
@@ -241,6 +309,13 @@ public class Agent implements IMessageProcessor {
 	 * @throws Exception if the instance could not be added
 	 */
 	public void addInstance( String parentInstancePath, Instance newInstance ) throws Exception {
+		synchronized( this.modelLock ) {
+			addInstanceToModel( parentInstancePath, newInstance );
+		}
+	}
+
+
+	private void addInstanceToModel( String parentInstancePath, Instance newInstance ) throws Exception {
 
 		// Update the network exports
 		if( newInstance != null )
@@ -251,11 +326,12 @@ public class Agent implements IMessageProcessor {
 			if( this.rootInstance == null ) {
 
 				// Initialize the plug-in(s)
-				PluginManager.initializePluginForInstance( newInstance, this.pluginManager.getExecutionLevel());
+				this.pluginManager.initializePluginForInstance( newInstance );
 
 				// Update the model
 				this.rootInstance = newInstance;
 				this.rootInstance.setStatus( InstanceStatus.DEPLOYED_STARTED );
+				this.prefixIndex.addInstances( InstanceHelpers.buildHierarchicalList( this.rootInstance ));
 
 				// Start listening
 				try {
@@ -285,7 +361,7 @@ public class Agent implements IMessageProcessor {
 		// Child instance
 		else {
 			// Initialize the plug-in(s)
-			PluginManager.initializePluginForInstance( newInstance, this.pluginManager.getExecutionLevel());
+			this.pluginManager.initializePluginForInstance( newInstance );
 
 			// Update the model
 			Instance parentInstance = InstanceHelpers.findInstanceByPath( this.rootInstance, parentInstancePath );
@@ -293,6 +369,8 @@ public class Agent implements IMessageProcessor {
 				this.logger.severe( "No instance matched " + parentInstancePath + " on the agent. Request to add " + newInstance.getName() + " is dropped." );
 			else if( ! InstanceHelpers.tryToInsertChildInstance( null, parentInstance, newInstance ))
 				this.logger.severe( "Instance " + newInstance.getName() + " could not be inserted under " + parentInstancePath + ". Request is dropped." );
+			else
+				this.prefixIndex.addInstances( InstanceHelpers.buildHierarchicalList( newInstance ));
 
 			// Start listening
 			try {
@@ -323,6 +401,9 @@ public class Agent implements IMessageProcessor {
 			else if( message instanceof MsgCmdInstanceDeploy )
 				processMsgInstanceDeploy((MsgCmdInstanceDeploy) message );
 
+			else if( message instanceof MsgCmdResourceChunk )
+				processMsgResourceChunk((MsgCmdResourceChunk) message );
+
 			else if( message instanceof MsgCmdInstanceUndeploy )
 				processMsgInstanceUndeploy((MsgCmdInstanceUndeploy) message );
 
@@ -341,6 +422,9 @@ public class Agent implements IMessageProcessor {
 			else if( message instanceof MsgCmdImportRequest )
 				processMsgImportRequest((MsgCmdImportRequest) message );
 
+			else if( message instanceof MsgCmdImportsResync )
+				processMsgImportsResync((MsgCmdImportsResync) message );
+
 			else
 				this.logger.warning( this.agentName + ": got an undetermined message to process. " + message.getClass().getName());
 
@@ -360,69 +444,83 @@ public class Agent implements IMessageProcessor {
 
 	private void processMsgImportRequest( MsgCmdImportRequest msg ) throws IOException {
 
-		// Go through all the instances to see if one
-		// of them owns the required variable prefix
+		// Find the instances that export the required variable prefix
 		String name = msg.getComponentOrFacetName();
-		for( Instance instance : InstanceHelpers.buildHierarchicalList( this.rootInstance )) {
+		for( Instance instance : this.prefixIndex.findExportingInstances( name )) {
 			if( instance.getStatus() != InstanceStatus.DEPLOYED_STARTED )
 				continue;
 
-			if( ! VariableHelpers.instanceHasVariablesWithPrefix( instance, name ))
-				continue;
-
 			MsgCmdImportAdd newMsg = new MsgCmdImportAdd( name, instance.getName(), instance.getExports());
 			this.messagingService.publishExportOrImport( name, newMsg, MessagingService.THOSE_THAT_EXPORT );
 		}
 	}
 
 
-	private void processMsgImportRemove( MsgCmdImportRemove msg ) throws Exception {
+	private void processMsgImportsResync( MsgCmdImportsResync msg ) {
 
-		// Go through all the instances to see which ones are impacted
-		for( Instance instance : InstanceHelpers.buildHierarchicalList( this.rootInstance )) {
-			if( ! VariableHelpers.instanceHasVariablesWithPrefix( instance, msg.getComponentOrFacetName()))
-				continue;
+		final Instance instance = findInstanceByPath( msg.getInstancePath());
+		if( instance == null ) {
+			this.logger.warning( "The DM asked the imports of an unknown instance: " + msg.getInstancePath() + "." );
 
-			// Is there an import to remove?
-			Collection<Import> imports = instance.getImports().get( msg.getComponentOrFacetName());
-			if( imports == null )
-				continue;
+		} else {
+			// Imports are read along with the other operations on this instance
+			this.logger.fine( "Sending all the imports of " + msg.getInstancePath() + " to the DM." );
+			submit( instance, new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					Agent.this.outbox.importsResyncRequested( instance );
+					return null;
+				}
+			});
+		}
+	}
 
-			Import imp = new Import( msg.getRemovedInstancePath());
-			if( ! imports.remove( imp ))
-				continue;
 
-			// Remove the import and publish an update to the DM
-			this.logger.fine(
-					"Removing import from " + InstanceHelpers.computeInstancePath( instance )
-					+ ". Removed exporting instance: " + msg.getRemovedInstancePath());
+	private void processMsgImportRemove( final MsgCmdImportRemove msg ) {
+
+		// Find the instances that import this variable prefix
+		for( final Instance instance : this.prefixIndex.findImportingInstances( msg.getComponentOrFacetName())) {
+
+			// Imports are updated along with the other operations on this instance
+			submit( instance, new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
 
-			this.messagingService.publish(
-					true,
-					MessagingUtils.buildRoutingKeyToDm(),
-					new MsgNotifInstanceChanged( instance ));
+					// Is there an import to remove?
+					Collection<Import> imports = instance.getImports().get( msg.getComponentOrFacetName());
+					Import imp = new Import( msg.getRemovedInstancePath());
+					if( imports == null
+							|| ! imports.remove( imp ))
+						return null;
 
-			// Update the life cycle if necessary
-			PluginInterface plugin = this.pluginManager.findPlugin( instance, this.logger );
-			if( plugin != null )
-				updateStateFromImports( instance, plugin );
+					// Remove the import and notify the DM
+					Agent.this.logger.fine(
+							"Removing import from " + InstanceHelpers.computeInstancePath( instance )
+							+ ". Removed exporting instance: " + msg.getRemovedInstancePath());
+
+					Agent.this.outbox.importRemoved( instance, msg.getComponentOrFacetName(), imp );
+
+					// Update the life cycle if necessary
+					PluginInterface plugin = Agent.this.pluginManager.findPlugin( instance, Agent.this.logger );
+					if( plugin != null )
+						updateStateFromImports( instance, plugin );
+
+					return null;
+				}
+			});
 		}
 	}
 
 
-	private void processMsgImportAdd( MsgCmdImportAdd msg ) throws Exception {
+	private void processMsgImportAdd( final MsgCmdImportAdd msg ) {
 
 		// Create the import
-		Import imp = new Import(
+		final Import imp = new Import(
 				msg.getAddedInstancePath(),
 				msg.getExportedVariables());
 
-		// Go through all the instances to see which ones need an update
-		for( Instance instance : InstanceHelpers.buildHierarchicalList( this.rootInstance )) {
-
-			// This instance does not depends on it
-			if( ! VariableHelpers.instanceHasVariablesWithPrefix( instance, msg.getComponentOrFacetName()))
-				continue;
+		// Find the instances that import this variable prefix
+		for( final Instance instance : this.prefixIndex.findImportingInstances( msg.getComponentOrFacetName())) {
 
 			// If an instance depends on its component, make sure it does not add itself to the imports.
 			// Example: MongoDB may depend on other MongoDB instances.
@@ -431,35 +529,48 @@ public class Agent implements IMessageProcessor {
 					msg.getAddedInstancePath()))
 				continue;
 
-			// Add the import and publish an update to the DM
-			this.logger.fine( "Adding import to " + InstanceHelpers.computeInstancePath( instance ) + ". New import: " + imp );
-			instance.addImport( msg.getComponentOrFacetName(), imp );
-			this.messagingService.publish(
-					true,
-					MessagingUtils.buildRoutingKeyToDm(),
-					new MsgNotifInstanceChanged( instance ));
-
-			// Update the life cycle if necessary
-			PluginInterface plugin = this.pluginManager.findPlugin( instance, this.logger );
-			if( plugin != null )
-				updateStateFromImports( instance, plugin );
+			// Imports are updated along with the other operations on this instance
+			submit( instance, new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+
+					// Add the import and notify the DM
+					Agent.this.logger.fine( "Adding import to " + InstanceHelpers.computeInstancePath( instance ) + ". New import: " + imp );
+					instance.addImport( msg.getComponentOrFacetName(), imp );
+					Agent.this.outbox.importAdded( instance, msg.getComponentOrFacetName(), imp );
+
+					// Update the life cycle if necessary
+					PluginInterface plugin = Agent.this.pluginManager.findPlugin( instance, Agent.this.logger );
+					if( plugin != null )
+						updateStateFromImports( instance, plugin );
+
+					return null;
+				}
+			});
 		}
 	}
 
 
 	private void processMsgInstanceAdd( MsgCmdInstanceAdd msg ) {
 
-		Instance newInstance = msg.getInstanceToAdd();
-		String parentInstancePath = msg.getParentInstancePath();
+		final Instance newInstance = msg.getInstanceToAdd();
+		final String parentInstancePath = msg.getParentInstancePath();
 
-		this.logger.fine( "Adding instance " + newInstance.getName() + " under " + parentInstancePath + "." );
-		try {
-			addInstance( parentInstancePath, newInstance );
+		// The DM sends the codec of the application with the model of the machine
+		if( msg.getMessagingCodec() != null
+				&& this.messagingService != null )
+			this.messagingService.setMessageCodec( msg.getMessagingCodec());
 
-		} catch( Exception e ) {
-			this.logger.severe( "The instance could not be added. " + e.getMessage());
-			this.logger.finest( Utils.writeException( e ));
-		}
+		// The new instance must not be added while its ancestors are being modified
+		String newInstancePath = ( parentInstancePath == null ? "" : parentInstancePath ) + "/" + newInstance.getName();
+		this.logger.fine( "Adding instance " + newInstance.getName() + " under " + parentInstancePath + "." );
+		submit( newInstancePath, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				addInstance( parentInstancePath, newInstance );
+				return null;
+			}
+		});
 	}
 
 
@@ -467,7 +578,7 @@ public class Agent implements IMessageProcessor {
 
 		String instancePath = msg.getInstancePath();
 		this.logger.fine( "Removing instance " + instancePath + "." );
-		performAction( ApplicationAction.remove, instancePath, msg );
+		submitAction( ApplicationAction.remove, instancePath, msg );
 	}
 
 
@@ -475,7 +586,14 @@ public class Agent implements IMessageProcessor {
 
 		String instancePath = msg.getInstancePath();
 		this.logger.fine( "Deploying instance " + instancePath + "." );
-		performAction( ApplicationAction.deploy, instancePath, msg );
+		submitAction( ApplicationAction.deploy, instancePath, msg );
+	}
+
+
+	private void processMsgResourceChunk( MsgCmdResourceChunk msg ) throws IOException {
+
+		this.logger.finest( "Receiving a chunk of " + msg.getFileName() + " (offset = " + msg.getOffset() + ")." );
+		this.resourceCache.receiveChunk( msg );
 	}
 
 
@@ -483,7 +601,7 @@ public class Agent implements IMessageProcessor {
 
 		String instancePath = msg.getInstancePath();
 		this.logger.fine( "Undeploying instance " + instancePath + "." );
-		performAction( ApplicationAction.undeploy, instancePath, msg );
+		submitAction( ApplicationAction.undeploy, instancePath, msg );
 	}
 
 
@@ -491,7 +609,7 @@ public class Agent implements IMessageProcessor {
 
 		String instancePath = msg.getInstancePath();
 		this.logger.fine( "Starting instance " + instancePath + "." );
-		performAction( ApplicationAction.start, instancePath, msg );
+		submitAction( ApplicationAction.start, instancePath, msg );
 	}
 
 
@@ -499,22 +617,86 @@ public class Agent implements IMessageProcessor {
 
 		String instancePath = msg.getInstancePath();
 		this.logger.fine( "Stopping instance " + instancePath + "." );
-		performAction( ApplicationAction.stop, instancePath, msg );
+		submitAction( ApplicationAction.stop, instancePath, msg );
+	}
+
+
+	/**
+	 * Schedules an action on an instance.
+	 * @param action an action
+	 * @param instancePath the instance's path
+	 * @param originalMessage the original message
+	 */
+	private void submitAction( final ApplicationAction action, final String instancePath, final Message originalMessage ) {
+
+		submit( instancePath, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				performAction( action, instancePath, originalMessage );
+				return null;
+			}
+		});
+	}
+
+
+	/**
+	 * Schedules a task on an instance.
+	 * @param instance an instance
+	 * @param callable the task to execute
+	 */
+	private void submit( Instance instance, Callable<Void> callable ) {
+		submit( InstanceHelpers.computeInstancePath( instance ), callable );
+	}
+
+
+	/**
+	 * Schedules a task on an instance.
+	 * <p>
+	 * The changes made by the task are sent to the DM once it has completed.
+	 * </p>
+	 *
+	 * @param instancePath the instance's path
+	 * @param callable the task to execute
+	 */
+	private void submit( String instancePath, final Callable<Void> callable ) {
+
+		this.scheduler.submit( instancePath, new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				try {
+					return callable.call();
+
+				} finally {
+					Agent.this.outbox.flush();
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * @param instancePath an instance path
+	 * @return the instance, or null if it was not found
+	 */
+	private Instance findInstanceByPath( String instancePath ) {
+		synchronized( this.modelLock ) {
+			return InstanceHelpers.findInstanceByPath( this.rootInstance, instancePath );
+		}
 	}
 
 
 	/**
 	 * Updates the status of an instance and notifies the DM of this change.
+	 * <p>
+	 * The notification is sent with the other changes of the current operation.
+	 * </p>
+	 *
 	 * @param instance
 	 * @param newStatus
-	 * @throws IOException
 	 */
-	private void updateAndNotifyNewStatus( Instance instance, InstanceStatus newStatus ) throws IOException {
+	private void updateAndNotifyNewStatus( Instance instance, InstanceStatus newStatus ) {
 		instance.setStatus( newStatus );
-		this.messagingService.publish(
-				true,
-				MessagingUtils.buildRoutingKeyToDm(),
-				new MsgNotifInstanceChanged( instance ));
+		this.outbox.statusChanged( instance );
 	}
 
 
@@ -605,9 +787,13 @@ public class Agent implements IMessageProcessor {
 		for( Instance i : instancesToStop )
 			updateAndNotifyNewStatus( i, InstanceStatus.NOT_DEPLOYED );
 
+		// The imports will be sent again if the instances are redeployed
+		this.outbox.forgetInstance( instance );
+
 		// If the instance is a root instance, signal to the DM it is ready to be deleted
-		if( instance.equals( this.rootInstance )) {
-			MsgNotifMachineReadyToBeDeleted msg = new MsgNotifMachineReadyToBeDeleted( this.rootInstance.getName());
+		if( instance.equals( getRootInstance())) {
+			this.outbox.flush();
+			MsgNotifMachineReadyToBeDeleted msg = new MsgNotifMachineReadyToBeDeleted( instance.getName());
 			this.messagingService.publish( true, MessagingUtils.buildRoutingKeyToDm(), msg );
 			this.messagingService.stopHeartBeatTimer();
 		}
@@ -678,7 +864,20 @@ public class Agent implements IMessageProcessor {
 
 
 
-	private void copyInstanceResources( Instance instance, String pluginName, Map<String,byte[]> fileNameToFileContent )
+	/**
+	 * Copies the resources of an instance into its directory.
+	 * <p>
+	 * Received resources are stored in the cache. When the DM did not send them
+	 * (because the agent already holds them, or because they were sent in chunks),
+	 * they are copied from the cache.
+	 * </p>
+	 *
+	 * @param instance the instance
+	 * @param pluginName the plug-in name
+	 * @param msg the deployment request
+	 * @throws IOException if the resources could not be copied or do not match their hash
+	 */
+	private void copyInstanceResources( Instance instance, String pluginName, MsgCmdInstanceDeploy msg )
 	throws IOException {
 
 		File dir = InstanceHelpers.findInstanceDirectoryOnAgent( instance, pluginName );
@@ -686,6 +885,16 @@ public class Agent implements IMessageProcessor {
 				&& ! dir.mkdirs())
 			throw new IOException( this.agentName + " could not create directory " + dir.getAbsolutePath());
 
+		Map<String,byte[]> fileNameToFileContent = msg.getFileNameToFileContent();
+		String hash = msg.getResourcesHash();
+		if( fileNameToFileContent == null ) {
+			this.resourceCache.copyTo( hash, dir );
+			return;
+		}
+
+		if( hash != null )
+			this.resourceCache.store( hash, fileNameToFileContent );
+
 		for( Map.Entry<String,byte[]> entry : fileNameToFileContent.entrySet()) {
 
 			File f = new File( dir, entry.getKey());
@@ -24,6 +24,8 @@ import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
@@ -174,6 +176,7 @@ public final class AgentUtils {
 
 		// Parse them
 		AgentData result = new AgentData();
+		Map<String,String> launchIndexToRootInstanceName = new HashMap<String,String> ();
 		for( String line : content.split( "\n" )) {
 			line = line.trim();
 
@@ -185,12 +188,41 @@ public final class AgentUtils {
 				String[] data = line.split( "=" );
 				result.setMessageServerIp( data[ data.length - 1 ]);
 
+			} else if( line.startsWith( PROPERTY_ROOT_INSTANCE_NAME + "." )) {
+				// Machines created in a batch share the same user data.
+				// There is one channel name per launch index.
+				String[] data = line.split( "=" );
+				String index = data[ 0 ].substring( PROPERTY_ROOT_INSTANCE_NAME.length() + 1 ).trim();
+				launchIndexToRootInstanceName.put( index, data[ data.length - 1 ]);
+
 			} else if( line.startsWith( PROPERTY_ROOT_INSTANCE_NAME )) {
 				String[] data = line.split( "=" );
 				result.setRootInstanceName( data[ data.length - 1 ]);
 			}
 		}
 
+		if( result.getRootInstanceName() == null
+				&& ! launchIndexToRootInstanceName.isEmpty()) {
+
+			in = null;
+			try {
+				URL launchIndexUrl = new URL( "http://169.254.169.254/latest/meta-data/ami-launch-index" );
+				in = launchIndexUrl.openStream();
+				ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+				Utils.copyStream( in, os );
+				String launchIndex = os.toString( "UTF-8" ).trim();
+				result.setRootInstanceName( launchIndexToRootInstanceName.get( launchIndex ));
+
+			} catch( IOException e ) {
+				logger.severe( "The launch index of this machine could not be read. " + e.getMessage());
+				logger.finest( Utils.writeException( e ));
+
+			} finally {
+				Utils.closeQuietly( in );
+			}
+		}
+
 		// FIXME VZ: seriously, why do we need to ask our IP address?
 		in = null;
 		try {
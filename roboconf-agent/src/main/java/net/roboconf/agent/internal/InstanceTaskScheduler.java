@@ -0,0 +1,313 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+
+/**
+ * Executes tasks on instances (e.g. plug-in invocations) in parallel, while respecting their dependencies.
+ * <p>
+ * Every task is associated with an instance path. Two tasks conflict when they are associated
+ * with the same instance, or when one instance is an ancestor of the other. A task only starts when
+ * it does not conflict with any task submitted before it that has not completed yet. Therefore:
+ * </p>
+ * <ul>
+ * 	<li>operations on a same instance are executed in the order they were submitted;</li>
+ * 	<li>operations on a child wait for the previous operations on its ancestors, and conversely;</li>
+ * 	<li>operations on independent instances (e.g. siblings) are executed concurrently.</li>
+ * </ul>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class InstanceTaskScheduler {
+
+	public static final int DEFAULT_THREADS_COUNT = 4;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final ExecutorService executor;
+
+	// Unfinished tasks per instance path, in the order of their submission.
+	// Only paths with unfinished tasks are kept.
+	private final Map<String,LinkedList<Task>> pathToTasks = new HashMap<String,LinkedList<Task>> ();
+
+	// For every instance path, the descendant paths that have unfinished tasks
+	private final Map<String,Set<String>> pathToBusyDescendants = new HashMap<String,Set<String>> ();
+
+	private int unfinishedTasksCount = 0;
+	private boolean shutdown = false;
+
+
+	/**
+	 * Constructor.
+	 * @param threadsCount the maximum number of tasks executed concurrently (> 0)
+	 */
+	public InstanceTaskScheduler( int threadsCount ) {
+
+		if( threadsCount < 1 )
+			throw new IllegalArgumentException( "The number of threads must be positive." );
+
+		final AtomicInteger threadsCounter = new AtomicInteger();
+		this.executor = Executors.newFixedThreadPool( threadsCount, new ThreadFactory() {
+			@Override
+			public Thread newThread( Runnable r ) {
+				Thread thread = new Thread( r, "Roboconf - Agent task " + threadsCounter.incrementAndGet());
+				thread.setDaemon( true );
+				return thread;
+			}
+		});
+	}
+
+
+	/**
+	 * Submits a task.
+	 * <p>
+	 * Tasks submitted after {@link #shutdown()} are ignored.
+	 * </p>
+	 *
+	 * @param instancePath the path of the instance this task works on (not null)
+	 * @param callable the task to execute (not null)
+	 */
+	public void submit( String instancePath, Callable<?> callable ) {
+
+		List<Task> toStart;
+		synchronized( this ) {
+			if( this.shutdown ) {
+				this.logger.warning( "A task was dropped for instance " + instancePath + ". The scheduler was shut down." );
+				return;
+			}
+
+			toStart = register( new Task( instancePath, callable ));
+		}
+
+		start( toStart );
+	}
+
+
+	/**
+	 * @return the number of tasks that are waiting or running
+	 */
+	public synchronized int getUnfinishedTasksCount() {
+		return this.unfinishedTasksCount;
+	}
+
+
+	/**
+	 * Stops the scheduler.
+	 * <p>
+	 * Running tasks complete, waiting tasks are not executed.
+	 * </p>
+	 */
+	public void shutdown() {
+
+		synchronized( this ) {
+			this.shutdown = true;
+			this.pathToTasks.clear();
+			this.pathToBusyDescendants.clear();
+			this.unfinishedTasksCount = 0;
+		}
+
+		this.executor.shutdown();
+	}
+
+
+	/**
+	 * Registers a new task.
+	 * <p>
+	 * The task is blocked by the last unfinished task of every conflicting path. Tasks on a same path
+	 * complete in order, so this covers all the unfinished tasks that were submitted before.
+	 * Only the new task's path, its ancestors and its busy descendants are visited.
+	 * </p>
+	 * <p>
+	 * Invoked with the lock.
+	 * </p>
+	 *
+	 * @param task the new task
+	 * @return the tasks to start (the new task if nothing blocks it)
+	 */
+	private List<Task> register( Task task ) {
+
+		List<String> ancestorPaths = findAncestorPaths( task.instancePath );
+		List<String> conflictingPaths = new ArrayList<String> ( ancestorPaths );
+		conflictingPaths.add( task.instancePath );
+		Set<String> busyDescendants = this.pathToBusyDescendants.get( task.instancePath );
+		if( busyDescendants != null )
+			conflictingPaths.addAll( busyDescendants );
+
+		for( String path : conflictingPaths ) {
+			LinkedList<Task> pathTasks = this.pathToTasks.get( path );
+			if( pathTasks != null ) {
+				pathTasks.getLast().blockedTasks.add( task );
+				task.blockersCount ++;
+			}
+		}
+
+		LinkedList<Task> pathTasks = this.pathToTasks.get( task.instancePath );
+		if( pathTasks == null ) {
+			pathTasks = new LinkedList<Task> ();
+			this.pathToTasks.put( task.instancePath, pathTasks );
+			for( String ancestorPath : ancestorPaths ) {
+				Set<String> descendants = this.pathToBusyDescendants.get( ancestorPath );
+				if( descendants == null ) {
+					descendants = new HashSet<String> ();
+					this.pathToBusyDescendants.put( ancestorPath, descendants );
+				}
+
+				descendants.add( task.instancePath );
+			}
+		}
+
+		pathTasks.add( task );
+		this.unfinishedTasksCount ++;
+
+		List<Task> result = new ArrayList<Task> ();
+		if( task.blockersCount == 0 )
+			result.add( task );
+
+		return result;
+	}
+
+
+	/**
+	 * Unregisters a task that completed (or that could not be started).
+	 * <p>
+	 * Only the tasks this one was blocking are checked again.
+	 * Invoked with the lock.
+	 * </p>
+	 *
+	 * @param task the task
+	 * @return the tasks to start
+	 */
+	private List<Task> unregister( Task task ) {
+
+		List<Task> result = new ArrayList<Task> ();
+		LinkedList<Task> pathTasks = this.pathToTasks.get( task.instancePath );
+		if( this.shutdown || pathTasks == null || ! pathTasks.remove( task ))
+			return result;
+
+		this.unfinishedTasksCount --;
+		if( pathTasks.isEmpty()) {
+			this.pathToTasks.remove( task.instancePath );
+			for( String ancestorPath : findAncestorPaths( task.instancePath )) {
+				Set<String> descendants = this.pathToBusyDescendants.get( ancestorPath );
+				descendants.remove( task.instancePath );
+				if( descendants.isEmpty())
+					this.pathToBusyDescendants.remove( ancestorPath );
+			}
+		}
+
+		for( Task blockedTask : task.blockedTasks ) {
+			if( -- blockedTask.blockersCount == 0 )
+				result.add( blockedTask );
+		}
+
+		task.blockedTasks.clear();
+		return result;
+	}
+
+
+	/**
+	 * @param instancePath an instance path
+	 * @return the paths of the ancestors, from the parent to the root (never null)
+	 */
+	static List<String> findAncestorPaths( String instancePath ) {
+
+		List<String> result = new ArrayList<String> ();
+		for( int index = instancePath.lastIndexOf( '/' ); index > 0; index = instancePath.lastIndexOf( '/', index - 1 ))
+			result.add( instancePath.substring( 0, index ));
+
+		return result;
+	}
+
+
+	private void start( List<Task> toStart ) {
+
+		for( final Task task : toStart ) {
+			try {
+				this.executor.execute( new Runnable() {
+					@Override
+					public void run() {
+						execute( task );
+					}
+				});
+
+			} catch( RejectedExecutionException e ) {
+				// The scheduler was shut down in the meantime
+				this.logger.warning( "A task was dropped for instance " + task.instancePath + ". The scheduler was shut down." );
+				synchronized( this ) {
+					unregister( task );
+				}
+			}
+		}
+	}
+
+
+	private void execute( Task task ) {
+
+		try {
+			task.callable.call();
+
+		} catch( Exception e ) {
+			this.logger.severe( "A task failed for instance " + task.instancePath + ". " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+
+		} finally {
+			List<Task> toStart;
+			synchronized( this ) {
+				toStart = unregister( task );
+			}
+
+			start( toStart );
+		}
+	}
+
+
+	/**
+	 * A task associated with an instance.
+	 */
+	private static class Task {
+		final String instancePath;
+		final Callable<?> callable;
+		final List<Task> blockedTasks = new ArrayList<Task> ();
+		int blockersCount = 0;
+
+
+		/**
+		 * Constructor.
+		 * @param instancePath
+		 * @param callable
+		 */
+		Task( String instancePath, Callable<?> callable ) {
+			this.instancePath = instancePath;
+			this.callable = callable;
+		}
+	}
+}
@@ -131,6 +131,16 @@ public final class MessagingService {
 	}
 
 
+	/**
+	 * Sets the codec used to encode the messages this agent publishes.
+	 * @param codecName a codec name (not null)
+	 */
+	public void setMessageCodec( String codecName ) {
+		this.client.setMessageCodec( codecName );
+		this.logger.fine( this.agent.getAgentName() + " now uses the " + codecName + " message codec." );
+	}
+
+
 	/**
 	 * Stops the heart beat timer.
 	 * <p>
@@ -150,6 +160,7 @@ public final class MessagingService {
 	public void agentIsTerminating() {
 
 		stopHeartBeatTimer();
+		this.agent.stopExecutingOperations();
 		try {
 			MsgNotifMachineDown machineIsDown = new MsgNotifMachineDown( this.agentData.getRootInstanceName());
 			MessagingService.this.client.publish( true, MessagingUtils.buildRoutingKeyToDm(), machineIsDown );
@@ -0,0 +1,532 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstancesChanged;
+import net.roboconf.messaging.utils.MessagingUtils;
+
+/**
+ * Collects the changes of instances and sends them to the DM in batches.
+ * <p>
+ * Changes are coalesced by instance: only the last status of an instance is sent.
+ * Imports are only sent when they changed. Pending changes are sent in a single
+ * {@link MsgNotifInstancesChanged} message, either when a life cycle operation completes
+ * (see {@link #flush()}), or at the latest after a flush window.
+ * </p>
+ * <p>
+ * Imports are sent as versioned deltas: only the imports that were added or removed since
+ * the previous notification are sent. All the imports of an instance are sent the first time,
+ * every {@link #FULL_IMPORTS_PERIOD} deltas, and when the DM asks for them (see
+ * {@link #importsResyncRequested(Instance)}). Import versions only change once a batch
+ * was sent. The imports sent for instances that are undeployed or removed are forgotten
+ * (see {@link #forgetInstance(Instance)}).
+ * </p>
+ * <p>
+ * Messages that must be processed by the DM after these changes (e.g. an instance
+ * was removed) must be published after a flush.
+ * </p>
+ * <p>
+ * Batches are published without holding the lock used to record changes, so that
+ * recording a change never waits for the network. When a batch cannot be sent, its
+ * changes are merged with the ones recorded in the meantime, and sent with the next batch.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class NotificationOutbox {
+
+	public static final long DEFAULT_FLUSH_WINDOW = 500;
+	public static final int FULL_IMPORTS_PERIOD = 100;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final long flushWindow;
+	private final Timer timer = new Timer( "Roboconf's Notification Timer @ Agent", true );
+	private final Object publishLock = new Object();
+
+	// Pending changes, in the order of their first modification
+	private final Map<String,PendingChange> pathToChange = new LinkedHashMap<String,PendingChange> ();
+	private final Map<String,ImportsState> pathToImportsState = new HashMap<String,ImportsState> ();
+	private MessagingService messagingService;
+	private boolean flushScheduled = false, closed = false;
+
+
+	/**
+	 * Constructor.
+	 * @param flushWindow the maximal delay (in ms) before a change is sent (> 0)
+	 */
+	public NotificationOutbox( long flushWindow ) {
+
+		if( flushWindow < 1 )
+			throw new IllegalArgumentException( "The flush window must be positive." );
+
+		this.flushWindow = flushWindow;
+	}
+
+
+	/**
+	 * @param messagingService the messaging service
+	 */
+	public synchronized void setMessagingService( MessagingService messagingService ) {
+		this.messagingService = messagingService;
+	}
+
+
+	/**
+	 * Records a new status for an instance.
+	 * @param instance an instance
+	 */
+	public synchronized void statusChanged( Instance instance ) {
+		record( instance );
+	}
+
+
+	/**
+	 * Records an import that was added to an instance (the instance must already contain it).
+	 * @param instance an instance
+	 * @param componentOrFacetName the prefix of the imported variables
+	 * @param imp the new import
+	 */
+	public synchronized void importAdded( Instance instance, String componentOrFacetName, Import imp ) {
+
+		PendingChange change = record( instance );
+		if( takeAllImportsIfNecessary( change, instance ))
+			return;
+
+		if( change.allImports != null ) {
+			addImport( change.allImports, componentOrFacetName, imp );
+
+		} else {
+			removeImport( change.removedImports, componentOrFacetName, imp );
+			addImport( change.addedImports, componentOrFacetName, imp );
+		}
+	}
+
+
+	/**
+	 * Records an import that was removed from an instance (the instance must not contain it anymore).
+	 * @param instance an instance
+	 * @param componentOrFacetName the prefix of the imported variables
+	 * @param imp the removed import
+	 */
+	public synchronized void importRemoved( Instance instance, String componentOrFacetName, Import imp ) {
+
+		PendingChange change = record( instance );
+		if( takeAllImportsIfNecessary( change, instance ))
+			return;
+
+		if( change.allImports != null ) {
+			Collection<Import> imports = change.allImports.get( componentOrFacetName );
+			if( imports != null )
+				imports.remove( imp );
+
+		} else {
+			removeImport( change.addedImports, componentOrFacetName, imp );
+			addImport( change.removedImports, componentOrFacetName, new Import( imp.getInstancePath()));
+		}
+	}
+
+
+	/**
+	 * Records that all the imports of an instance must be sent.
+	 * @param instance an instance
+	 */
+	public synchronized void importsResyncRequested( Instance instance ) {
+
+		PendingChange change = record( instance );
+		change.allImports = copyImports( instance );
+		change.addedImports.clear();
+		change.removedImports.clear();
+	}
+
+
+	/**
+	 * Forgets the imports sent for an instance and its children.
+	 * <p>
+	 * It must be invoked when instances are undeployed or removed. The next notification
+	 * about these instances will contain all their imports.
+	 * </p>
+	 *
+	 * @param instance an instance
+	 */
+	public synchronized void forgetInstance( Instance instance ) {
+
+		for( Instance i : InstanceHelpers.buildHierarchicalList( instance )) {
+			String instancePath = InstanceHelpers.computeInstancePath( i );
+			this.pathToImportsState.remove( instancePath );
+
+			// A pending delta cannot be applied without a known version
+			PendingChange change = this.pathToChange.get( instancePath );
+			if( change != null
+					&& change.allImports == null
+					&& ( ! change.addedImports.isEmpty() || ! change.removedImports.isEmpty())) {
+
+				change.allImports = copyImports( i );
+				change.addedImports.clear();
+				change.removedImports.clear();
+			}
+		}
+	}
+
+
+	/**
+	 * @return the number of instances whose sent imports are remembered
+	 */
+	public synchronized int getImportsStatesCount() {
+		return this.pathToImportsState.size();
+	}
+
+
+	/**
+	 * Sends all the pending changes to the DM, in a single message.
+	 * <p>
+	 * If the message cannot be sent, the changes remain pending.
+	 * </p>
+	 *
+	 * @throws IOException if the message could not be sent
+	 */
+	public void flush() throws IOException {
+
+		// Batches are published one after the other, so that they remain ordered
+		synchronized( this.publishLock ) {
+			Map<String,PendingChange> batch;
+			MsgNotifInstancesChanged msg;
+			MessagingService service;
+			synchronized( this ) {
+				if( this.pathToChange.isEmpty())
+					return;
+
+				List<MsgNotifInstanceChanged> changes = new ArrayList<MsgNotifInstanceChanged> ();
+				for( Map.Entry<String,PendingChange> entry : this.pathToChange.entrySet())
+					changes.add( buildMessage( entry.getKey(), entry.getValue()));
+
+				msg = new MsgNotifInstancesChanged( changes );
+				batch = new LinkedHashMap<String,PendingChange>( this.pathToChange );
+				this.pathToChange.clear();
+				service = this.messagingService;
+			}
+
+			try {
+				service.publish( true, MessagingUtils.buildRoutingKeyToDm(), msg );
+				synchronized( this ) {
+					acknowledge( msg );
+				}
+
+			} catch( IOException e ) {
+				synchronized( this ) {
+					restore( batch );
+				}
+
+				throw e;
+			}
+		}
+	}
+
+
+	/**
+	 * Sends the pending changes and stops the flush timer.
+	 * <p>
+	 * Changes recorded after this call are only sent on explicit flushes.
+	 * </p>
+	 */
+	public void close() {
+
+		synchronized( this ) {
+			this.closed = true;
+		}
+
+		try {
+			flush();
+
+		} catch( IOException e ) {
+			this.logger.warning( "Pending notifications could not be sent to the DM. " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+		}
+
+		this.timer.cancel();
+	}
+
+
+	/**
+	 * @return the number of instances whose changes have not been sent yet
+	 */
+	public synchronized int getPendingChangesCount() {
+		return this.pathToChange.size();
+	}
+
+
+	private PendingChange record( Instance instance ) {
+
+		// Invoked with the lock
+		String instancePath = InstanceHelpers.computeInstancePath( instance );
+		PendingChange change = this.pathToChange.get( instancePath );
+		if( change == null ) {
+			change = new PendingChange();
+			this.pathToChange.put( instancePath, change );
+		}
+
+		change.status = instance.getStatus();
+		scheduleFlush();
+		return change;
+	}
+
+
+	private void scheduleFlush() {
+
+		// Invoked with the lock
+		if( ! this.flushScheduled && ! this.closed ) {
+			this.flushScheduled = true;
+			this.timer.schedule( new FlushTask(), this.flushWindow );
+		}
+	}
+
+
+	private void restore( Map<String,PendingChange> batch ) {
+
+		// Invoked with the lock.
+		// The changes recorded in the meantime are more recent than the ones of the batch.
+		Map<String,PendingChange> newerChanges = new LinkedHashMap<String,PendingChange>( this.pathToChange );
+		this.pathToChange.clear();
+		for( Map.Entry<String,PendingChange> entry : batch.entrySet()) {
+			PendingChange newer = newerChanges.remove( entry.getKey());
+			if( newer != null )
+				merge( entry.getValue(), newer );
+
+			this.pathToChange.put( entry.getKey(), newer != null ? newer : entry.getValue());
+		}
+
+		this.pathToChange.putAll( newerChanges );
+		scheduleFlush();
+	}
+
+
+	private static void merge( PendingChange older, PendingChange newer ) {
+
+		// The status is already the most recent one.
+		// All the imports were taken after the older change: nothing to merge.
+		if( newer.allImports != null )
+			return;
+
+		if( older.allImports != null ) {
+			newer.allImports = older.allImports;
+			applyDelta( newer.allImports, newer );
+			newer.addedImports.clear();
+			newer.removedImports.clear();
+
+		} else {
+			Map<String,Collection<Import>> added = new HashMap<String,Collection<Import>>( older.addedImports );
+			Map<String,Collection<Import>> removed = new HashMap<String,Collection<Import>>( older.removedImports );
+			for( Map.Entry<String,Collection<Import>> entry : newer.removedImports.entrySet()) {
+				for( Import imp : entry.getValue()) {
+					removeImport( added, entry.getKey(), imp );
+					addImport( removed, entry.getKey(), imp );
+				}
+			}
+
+			for( Map.Entry<String,Collection<Import>> entry : newer.addedImports.entrySet()) {
+				for( Import imp : entry.getValue()) {
+					removeImport( removed, entry.getKey(), imp );
+					addImport( added, entry.getKey(), imp );
+				}
+			}
+
+			newer.addedImports.clear();
+			newer.addedImports.putAll( added );
+			newer.removedImports.clear();
+			newer.removedImports.putAll( removed );
+		}
+	}
+
+
+	private static void applyDelta( Map<String,Collection<Import>> allImports, PendingChange delta ) {
+
+		for( Map.Entry<String,Collection<Import>> entry : delta.removedImports.entrySet()) {
+			for( Import imp : entry.getValue())
+				removeImport( allImports, entry.getKey(), imp );
+		}
+
+		for( Map.Entry<String,Collection<Import>> entry : delta.addedImports.entrySet()) {
+			for( Import imp : entry.getValue())
+				addImport( allImports, entry.getKey(), imp );
+		}
+	}
+
+
+	private boolean takeAllImportsIfNecessary( PendingChange change, Instance instance ) {
+
+		// Invoked with the lock.
+		// All the imports are sent the first time, and then periodically.
+		// When they are copied, the copy already contains the modification.
+		boolean result = false;
+		if( change.allImports == null
+				&& change.addedImports.isEmpty()
+				&& change.removedImports.isEmpty()) {
+
+			ImportsState state = this.pathToImportsState.get( InstanceHelpers.computeInstancePath( instance ));
+			if( state == null || state.deltasCount >= FULL_IMPORTS_PERIOD ) {
+				change.allImports = copyImports( instance );
+				result = true;
+			}
+		}
+
+		return result;
+	}
+
+
+	private MsgNotifInstanceChanged buildMessage( String instancePath, PendingChange change ) {
+
+		// Invoked with the lock
+		MsgNotifInstanceChanged result;
+		boolean delta = ! change.addedImports.isEmpty() || ! change.removedImports.isEmpty();
+		if( change.allImports == null && ! delta ) {
+			result = new MsgNotifInstanceChanged( instancePath, null, change.status );
+
+		} else {
+			// The version is only updated once the message was sent
+			ImportsState state = this.pathToImportsState.get( instancePath );
+			long version = state == null ? 1 : state.version + 1;
+			if( change.allImports != null ) {
+				result = new MsgNotifInstanceChanged( instancePath, change.allImports, change.status, null, null, version );
+
+			} else {
+				result = new MsgNotifInstanceChanged(
+						instancePath, null, change.status,
+						change.addedImports, change.removedImports, version );
+			}
+		}
+
+		return result;
+	}
+
+
+	private void acknowledge( MsgNotifInstancesChanged msg ) {
+
+		// Invoked with the lock, once the batch was sent
+		for( MsgNotifInstanceChanged change : msg.getChanges()) {
+			if( change.getNewImports() == null && ! change.isImportsDelta())
+				continue;
+
+			ImportsState state = this.pathToImportsState.get( change.getInstancePath());
+			if( state == null ) {
+				state = new ImportsState();
+				this.pathToImportsState.put( change.getInstancePath(), state );
+			}
+
+			state.version = change.getImportsVersion();
+			if( change.getNewImports() != null )
+				state.deltasCount = 0;
+			else
+				state.deltasCount ++;
+		}
+	}
+
+
+	private static Map<String,Collection<Import>> copyImports( Instance instance ) {
+
+		// Imports are copied, they may be modified before being sent
+		Map<String,Collection<Import>> result = new HashMap<String,Collection<Import>> ();
+		for( Map.Entry<String,Collection<Import>> entry : instance.getImports().entrySet())
+			result.put( entry.getKey(), new LinkedHashSet<Import>( entry.getValue()));
+
+		return result;
+	}
+
+
+	private static void addImport( Map<String,Collection<Import>> map, String componentOrFacetName, Import imp ) {
+
+		Collection<Import> imports = map.get( componentOrFacetName );
+		if( imports == null ) {
+			imports = new LinkedHashSet<Import> ();
+			map.put( componentOrFacetName, imports );
+		}
+
+		// Replace any previous version of this import
+		imports.remove( imp );
+		imports.add( imp );
+	}
+
+
+	private static void removeImport( Map<String,Collection<Import>> map, String componentOrFacetName, Import imp ) {
+
+		Collection<Import> imports = map.get( componentOrFacetName );
+		if( imports != null ) {
+			imports.remove( imp );
+			if( imports.isEmpty())
+				map.remove( componentOrFacetName );
+		}
+	}
+
+
+	/**
+	 * The changes of an instance that have not been sent yet.
+	 */
+	private static class PendingChange {
+		final Map<String,Collection<Import>> addedImports = new HashMap<String,Collection<Import>> ();
+		final Map<String,Collection<Import>> removedImports = new HashMap<String,Collection<Import>> ();
+		Map<String,Collection<Import>> allImports;
+		InstanceStatus status;
+	}
+
+
+	/**
+	 * The imports sent for an instance.
+	 */
+	private static class ImportsState {
+		long version = 0;
+		int deltasCount = 0;
+	}
+
+
+	/**
+	 * Flushes the changes at the end of the flush window.
+	 */
+	private class FlushTask extends TimerTask {
+
+		@Override
+		public void run() {
+
+			synchronized( NotificationOutbox.this ) {
+				NotificationOutbox.this.flushScheduled = false;
+			}
+
+			try {
+				flush();
+
+			} catch( IOException e ) {
+				NotificationOutbox.this.logger.severe( "Notifications could not be sent to the DM. " + e.getMessage());
+				NotificationOutbox.this.logger.finest( Utils.writeException( e ));
+			}
+		}
+	}
+}
@@ -23,17 +23,31 @@ import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.plugin.api.ExecutionLevel;
 import net.roboconf.plugin.api.PluginInterface;
-import net.roboconf.plugin.bash.PluginBash;
-import net.roboconf.plugin.logger.PluginLogger;
-import net.roboconf.plugin.puppet.PluginPuppet;
+import net.roboconf.plugin.api.PluginRegistry;
 
 /**
+ * Finds the plug-ins to use for instances.
+ * <p>
+ * Plug-ins are found with a {@link PluginRegistry}, so that new installers can be added
+ * to the agent's class path without modifying this class. They are instantiated and configured once.
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class PluginManager {
 
+	private final PluginRegistry registry = new PluginRegistry();
 	private ExecutionLevel executionLevel = ExecutionLevel.RUNNING;
-	private File dumpDirectory;
+
+
+	/**
+	 * Constructor.
+	 */
+	public PluginManager() {
+		this.registry.loadPlugins( getClass().getClassLoader());
+		this.registry.register( new NilPlugin());
+		setExecutionLevel( this.executionLevel );
+	}
 
 
 	/**
@@ -44,31 +58,11 @@ public class PluginManager {
 	 */
 	public PluginInterface findPlugin( Instance instance, Logger logger ) {
 
-		PluginInterface result = null;
 		String installerName = instance.getComponent().getInstallerName();
-		PluginInterface[] plugins = new PluginInterface[] {
-				new PluginBash(),
-				new PluginPuppet(),
-				new PluginLogger(),
-				new NilPlugin()
-		};
-
-		for( PluginInterface pi : plugins ) {
-			if( pi.getPluginName().equalsIgnoreCase( installerName )) {
-				result = pi;
-				break;
-			}
-		}
-
-		if( result == null ) {
+		PluginInterface result = this.registry.findPlugin( installerName );
+		if( result == null )
 			logger.severe( "No plugin was found for instance " + instance.getName() + " with installer " + installerName + "." );
 
-		} else {
-			result.setExecutionLevel( this.executionLevel );
-			result.setDumpDirectory( this.dumpDirectory );
-			result.setAgentName( "Agent " + InstanceHelpers.findRootInstance( instance ).getName());
-		}
-
 		return result;
 	}
 
@@ -78,6 +72,8 @@ public class PluginManager {
 	 */
 	public void setExecutionLevel( ExecutionLevel executionLevel ) {
 		this.executionLevel = executionLevel;
+		for( PluginInterface plugin : this.registry.getPlugins())
+			plugin.setExecutionLevel( executionLevel );
 	}
 
 
@@ -97,7 +93,26 @@ public class PluginManager {
 	 * </p>
 	 */
 	public void setDumpDirectory( File dumpDirectory ) {
-		this.dumpDirectory = dumpDirectory;
+		for( PluginInterface plugin : this.registry.getPlugins())
+			plugin.setDumpDirectory( dumpDirectory );
+	}
+
+
+	/**
+	 * @param agentName the agent name, passed to the plug-ins
+	 */
+	public void setAgentName( String agentName ) {
+		for( PluginInterface plugin : this.registry.getPlugins())
+			plugin.setAgentName( agentName );
+	}
+
+
+	/**
+	 * @param executionTimeout the maximal duration of the plug-ins' commands, in milliseconds (0 or less for no time out)
+	 */
+	public void setExecutionTimeout( long executionTimeout ) {
+		for( PluginInterface plugin : this.registry.getPlugins())
+			plugin.setExecutionTimeout( executionTimeout );
 	}
 
 
@@ -115,20 +130,15 @@ public class PluginManager {
 	 * </p>
 	 *
 	 * @param instanceToAdd the instance to add on this agent
-	 * @param executionLevel the execution level
 	 * @throws Exception if the initialization fails or if no plug-in was found
 	 */
-	public static void initializePluginForInstance( Instance instanceToAdd, ExecutionLevel executionLevel )
-	throws Exception {
+	public void initializePluginForInstance( Instance instanceToAdd ) throws Exception {
 
 		Logger logger = Logger.getLogger( PluginManager.class.getName());
-		PluginManager pluginManager = new PluginManager();
-		pluginManager.setExecutionLevel( executionLevel );
-
 		for( Instance instance : InstanceHelpers.buildHierarchicalList( instanceToAdd )) {
 
 			String installerName = instance.getComponent().getInstallerName();
-			PluginInterface plugin = pluginManager.findPlugin( instance, logger );
+			PluginInterface plugin = findPlugin( instance, logger );
 			if( plugin == null )
 				throw new Exception( "No plugin was found for " + instance.getName() + ". Installer name:" + installerName );
 
@@ -188,6 +198,11 @@ public class PluginManager {
 			// nothing
 		}
 
+		@Override
+		public void setExecutionTimeout( long executionTimeout ) {
+			// nothing
+		}
+
 		@Override
 		public String getPluginName() {
 			return "iaas";
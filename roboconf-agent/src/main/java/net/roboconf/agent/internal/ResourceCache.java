@@ -0,0 +1,303 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdResourceChunk;
+import net.roboconf.messaging.utils.MessagingUtils;
+
+/**
+ * A content-addressed cache for the resources received by an agent.
+ * <p>
+ * Every set of resources is stored in a directory, named after its hash.
+ * Files are written in a temporary directory which is then renamed, so that a cache entry
+ * is either complete or absent. Resources are verified before they enter the cache.
+ * </p>
+ * <p>
+ * Resources can also be received in chunks (see {@link MsgCmdResourceChunk}). Chunks are
+ * written to disk as they arrive. A chunk that does not follow the previous one (because a chunk
+ * was dropped) or whose checksum is wrong is ignored. The transfer can then be resumed from the
+ * last valid chunk (see {@link #findResumeFileName(String)} and {@link #findResumeOffset(String)}).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class ResourceCache {
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final File cacheDirectory;
+	private final Map<String,Transfer> hashToTransfer = new HashMap<String,Transfer> ();
+
+
+	/**
+	 * Constructor.
+	 */
+	public ResourceCache() {
+		this( new File( System.getProperty( "java.io.tmpdir" ), "roboconf_agent_cache" ));
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param cacheDirectory the directory where resources are stored
+	 */
+	public ResourceCache( File cacheDirectory ) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+
+	/**
+	 * @param hash a resources hash
+	 * @return true if the cache contains these resources
+	 */
+	public boolean contains( String hash ) {
+		return findCacheDirectory( hash ).isDirectory();
+	}
+
+
+	/**
+	 * Stores resources in the cache.
+	 * @param hash the expected hash of the resources
+	 * @param fileNameToFileContent the resources
+	 * @throws IOException if the resources do not match the hash or could not be written
+	 */
+	public void store( String hash, Map<String,byte[]> fileNameToFileContent ) throws IOException {
+
+		if( ! hash.equals( MessagingUtils.computeResourcesHash( fileNameToFileContent )))
+			throw new IOException( "The received resources do not match the hash " + hash + "." );
+
+		if( contains( hash ))
+			return;
+
+		File tmp = createTemporaryDirectory( hash );
+		for( Map.Entry<String,byte[]> entry : fileNameToFileContent.entrySet()) {
+			File f = new File( tmp, entry.getKey());
+			createParentDirectory( f );
+			Utils.copyStream( new ByteArrayInputStream( entry.getValue()), f );
+		}
+
+		commit( hash, tmp );
+	}
+
+
+	/**
+	 * Copies cached resources into a directory.
+	 * @param hash the hash of the resources
+	 * @param targetDirectory the target directory
+	 * @throws IOException if the resources are not in the cache or could not be copied
+	 */
+	public void copyTo( String hash, File targetDirectory ) throws IOException {
+
+		File dir = findCacheDirectory( hash );
+		if( ! dir.isDirectory())
+			throw new IOException( "Resources " + hash + " are not in the cache." );
+
+		List<File> toCopy = new ArrayList<File> ();
+		toCopy.add( dir );
+		while( ! toCopy.isEmpty()) {
+			File current = toCopy.remove( 0 );
+			String relativePath = current.getAbsolutePath().substring( dir.getAbsolutePath().length());
+			File target = new File( targetDirectory, relativePath );
+
+			File[] subFiles = current.listFiles();
+			if( subFiles != null ) {
+				if( ! target.exists()
+						&& ! target.mkdirs())
+					throw new IOException( "Directory " + target.getAbsolutePath() + " could not be created." );
+
+				for( File subFile : subFiles )
+					toCopy.add( subFile );
+
+			} else {
+				Utils.copyStream( current, target );
+			}
+		}
+	}
+
+
+	/**
+	 * Receives a chunk of resources.
+	 * @param chunk a chunk
+	 * @return true if the chunk was accepted, false if it was ignored
+	 * @throws IOException if the chunk could not be written
+	 */
+	public synchronized boolean receiveChunk( MsgCmdResourceChunk chunk ) throws IOException {
+
+		String hash = chunk.getResourcesHash();
+		if( contains( hash ))
+			return true;
+
+		byte[] data = chunk.getData();
+		if( data == null
+				|| MessagingUtils.computeChunkChecksum( data ) != chunk.getChecksum()) {
+			this.logger.warning( "A chunk of " + chunk.getFileName() + " was corrupted. It is ignored." );
+			return false;
+		}
+
+		// The first chunk starts a new transfer
+		Transfer transfer = this.hashToTransfer.get( hash );
+		boolean first = chunk.getFileIndex() == 0 && chunk.getOffset() == 0;
+		if( first ) {
+			if( transfer != null )
+				Utils.deleteFilesRecursively( transfer.directory );
+
+			transfer = new Transfer( createTemporaryDirectory( hash ));
+			this.hashToTransfer.put( hash, transfer );
+		}
+
+		// Other chunks must follow the previous one
+		boolean accepted = transfer != null;
+		if( accepted && ! first ) {
+			boolean sameFile = chunk.getFileIndex() == transfer.fileIndex && chunk.getOffset() == transfer.offset;
+			boolean nextFile = chunk.getFileIndex() == transfer.fileIndex + 1 && chunk.getOffset() == 0 && transfer.offset == transfer.fileSize;
+			accepted = sameFile || nextFile;
+		}
+
+		if( ! accepted ) {
+			this.logger.fine( "A chunk of " + chunk.getFileName() + " was received out of order. It is ignored." );
+			return false;
+		}
+
+		// Write the chunk
+		File f = new File( transfer.directory, chunk.getFileName());
+		if( chunk.getFileIndex() != transfer.fileIndex ) {
+			createParentDirectory( f );
+			transfer.fileNameToFile.put( chunk.getFileName(), f );
+			transfer.fileIndex = chunk.getFileIndex();
+			transfer.fileName = chunk.getFileName();
+			transfer.fileSize = chunk.getFileSize();
+			transfer.offset = 0;
+		}
+
+		OutputStream os = null;
+		try {
+			os = new FileOutputStream( f, transfer.offset > 0 );
+			os.write( data );
+
+		} finally {
+			Utils.closeQuietly( os );
+		}
+
+		transfer.offset += data.length;
+
+		// Complete the transfer
+		if( chunk.isLast() && transfer.offset == transfer.fileSize ) {
+			this.hashToTransfer.remove( hash );
+			if( hash.equals( MessagingUtils.computeResourcesHashFromFiles( transfer.fileNameToFile ))) {
+				commit( hash, transfer.directory );
+
+			} else {
+				this.logger.warning( "The received resources do not match the hash " + hash + ". They are dropped." );
+				Utils.deleteFilesRecursively( transfer.directory );
+			}
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * @param hash a resources hash
+	 * @return the file from which a chunked transfer should be resumed, or null to restart it
+	 */
+	public synchronized String findResumeFileName( String hash ) {
+		Transfer transfer = this.hashToTransfer.get( hash );
+		return transfer == null ? null : transfer.fileName;
+	}
+
+
+	/**
+	 * @param hash a resources hash
+	 * @return the offset in the file from which a chunked transfer should be resumed
+	 */
+	public synchronized long findResumeOffset( String hash ) {
+		Transfer transfer = this.hashToTransfer.get( hash );
+		return transfer == null ? 0 : transfer.offset;
+	}
+
+
+	private File findCacheDirectory( String hash ) {
+		return new File( this.cacheDirectory, hash );
+	}
+
+
+	private File createTemporaryDirectory( String hash ) throws IOException {
+
+		if( ! this.cacheDirectory.exists()
+				&& ! this.cacheDirectory.mkdirs())
+			throw new IOException( "Directory " + this.cacheDirectory.getAbsolutePath() + " could not be created." );
+
+		File tmp = File.createTempFile( hash, ".tmp", this.cacheDirectory );
+		if( ! tmp.delete()
+				|| ! tmp.mkdir())
+			throw new IOException( "Directory " + tmp.getAbsolutePath() + " could not be created." );
+
+		return tmp;
+	}
+
+
+	private void createParentDirectory( File f ) throws IOException {
+
+		if( ! f.getParentFile().exists()
+				&& ! f.getParentFile().mkdirs())
+			throw new IOException( "Directory " + f.getParentFile().getAbsolutePath() + " could not be created." );
+	}
+
+
+	private void commit( String hash, File tmp ) throws IOException {
+
+		// Another thread may have stored the same resources in the meantime
+		File target = findCacheDirectory( hash );
+		if( ! tmp.renameTo( target )) {
+			Utils.deleteFilesRecursively( tmp );
+			if( ! target.isDirectory())
+				throw new IOException( "Resources " + hash + " could not be stored in the cache." );
+		}
+	}
+
+
+	/**
+	 * A chunked transfer in progress.
+	 */
+	private static class Transfer {
+		final File directory;
+		final Map<String,File> fileNameToFile = new HashMap<String,File> ();
+		String fileName;
+		int fileIndex = -1;
+		long fileSize, offset;
+
+
+		/**
+		 * Constructor.
+		 * @param directory the directory where files are written
+		 */
+		Transfer( File directory ) {
+			this.directory = directory;
+		}
+	}
+}
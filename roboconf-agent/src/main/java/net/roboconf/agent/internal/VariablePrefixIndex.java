@@ -0,0 +1,139 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.agent.internal;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.helpers.VariableHelpers;
+import net.roboconf.core.model.runtime.Instance;
+
+/**
+ * An index of the instances of an agent, by the prefixes of the variables they import and export.
+ * <p>
+ * A prefix is a component or facet name. Import messages are routed to the instances found in
+ * this index, instead of checking all the variables of all the instances. The index must be updated
+ * when instances are added to or removed from the model.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class VariablePrefixIndex {
+
+	// Key: component or facet name, value: instance path => instance
+	private final Map<String,Map<String,Instance>> prefixToImportingInstances = new HashMap<String,Map<String,Instance>> ();
+	private final Map<String,Map<String,Instance>> prefixToExportingInstances = new HashMap<String,Map<String,Instance>> ();
+
+
+	/**
+	 * Indexes instances.
+	 * @param instances the instances to index (already inserted in the model)
+	 */
+	public synchronized void addInstances( List<Instance> instances ) {
+
+		for( Instance instance : instances ) {
+			String instancePath = InstanceHelpers.computeInstancePath( instance );
+			for( String prefix : instance.getComponent().getImportedVariablePrefixes())
+				put( this.prefixToImportingInstances, prefix, instancePath, instance );
+
+			for( String prefix : VariableHelpers.findExportedVariablePrefixes( instance ))
+				put( this.prefixToExportingInstances, prefix, instancePath, instance );
+		}
+	}
+
+
+	/**
+	 * Removes instances from the index.
+	 * @param instances the instances to remove (before they are removed from the model)
+	 */
+	public synchronized void removeInstances( List<Instance> instances ) {
+
+		for( Instance instance : instances ) {
+			String instancePath = InstanceHelpers.computeInstancePath( instance );
+			for( String prefix : instance.getComponent().getImportedVariablePrefixes())
+				remove( this.prefixToImportingInstances, prefix, instancePath );
+
+			for( String prefix : VariableHelpers.findExportedVariablePrefixes( instance ))
+				remove( this.prefixToExportingInstances, prefix, instancePath );
+		}
+	}
+
+
+	/**
+	 * Removes all the instances from the index.
+	 */
+	public synchronized void clear() {
+		this.prefixToImportingInstances.clear();
+		this.prefixToExportingInstances.clear();
+	}
+
+
+	/**
+	 * @param componentOrFacetName a component or facet name
+	 * @return the instances that import variables with this prefix, including optional ones (never null)
+	 */
+	public synchronized List<Instance> findImportingInstances( String componentOrFacetName ) {
+		return find( this.prefixToImportingInstances, componentOrFacetName );
+	}
+
+
+	/**
+	 * @param componentOrFacetName a component or facet name
+	 * @return the instances that export variables with this prefix (never null)
+	 */
+	public synchronized List<Instance> findExportingInstances( String componentOrFacetName ) {
+		return find( this.prefixToExportingInstances, componentOrFacetName );
+	}
+
+
+	private static void put( Map<String,Map<String,Instance>> index, String prefix, String instancePath, Instance instance ) {
+
+		Map<String,Instance> pathToInstance = index.get( prefix );
+		if( pathToInstance == null ) {
+			pathToInstance = new LinkedHashMap<String,Instance> ();
+			index.put( prefix, pathToInstance );
+		}
+
+		pathToInstance.put( instancePath, instance );
+	}
+
+
+	private static void remove( Map<String,Map<String,Instance>> index, String prefix, String instancePath ) {
+
+		Map<String,Instance> pathToInstance = index.get( prefix );
+		if( pathToInstance != null ) {
+			pathToInstance.remove( instancePath );
+			if( pathToInstance.isEmpty())
+				index.remove( prefix );
+		}
+	}
+
+
+	private static List<Instance> find( Map<String,Map<String,Instance>> index, String prefix ) {
+
+		Map<String,Instance> pathToInstance = index.get( prefix );
+		List<Instance> result = new ArrayList<Instance> ();
+		if( pathToInstance != null )
+			result.addAll( pathToInstance.values());
+
+		return result;
+	}
+}
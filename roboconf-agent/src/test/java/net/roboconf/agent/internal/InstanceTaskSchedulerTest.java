@@ -0,0 +1,226 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.agent.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class InstanceTaskSchedulerTest {
+
+	private InstanceTaskScheduler scheduler;
+
+
+	@Before
+	public void createScheduler() {
+		this.scheduler = new InstanceTaskScheduler( 4 );
+	}
+
+
+	@After
+	public void shutdownScheduler() {
+		this.scheduler.shutdown();
+	}
+
+
+	@Test
+	public void testFindAncestorPaths() {
+
+		Assert.assertEquals( 0, InstanceTaskScheduler.findAncestorPaths( "/vm" ).size());
+		Assert.assertEquals( Arrays.asList( "/vm" ), InstanceTaskScheduler.findAncestorPaths( "/vm/server" ));
+		Assert.assertEquals(
+				Arrays.asList( "/vm/server", "/vm" ),
+				InstanceTaskScheduler.findAncestorPaths( "/vm/server/app" ));
+	}
+
+
+	@Test( timeout = 10000 )
+	public void testTasksOnTheSamePathAreOrdered() throws Exception {
+
+		final List<Integer> executed = Collections.synchronizedList( new ArrayList<Integer> ());
+		for( int i=0; i<20; i++ ) {
+			final int index = i;
+			this.scheduler.submit( "/vm/server", new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					Thread.sleep( 5 );
+					executed.add( index );
+					return null;
+				}
+			});
+		}
+
+		waitForCompletion();
+		Assert.assertEquals( 20, executed.size());
+		for( int i=0; i<20; i++ )
+			Assert.assertEquals( i, executed.get( i ).intValue());
+	}
+
+
+	@Test( timeout = 10000 )
+	public void testDescendantWaitsForAncestor() throws Exception {
+		checkSecondTaskWaits( "/vm", "/vm/server/app" );
+	}
+
+
+	@Test( timeout = 10000 )
+	public void testAncestorWaitsForDescendant() throws Exception {
+		checkSecondTaskWaits( "/vm/server", "/vm" );
+	}
+
+
+	@Test( timeout = 10000 )
+	public void testAncestorWaitsForAllTheDescendants() throws Exception {
+
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final List<String> executed = Collections.synchronizedList( new ArrayList<String> ());
+		for( final String path : new String[] { "/vm/server1", "/vm/server2/app", "/vm" }) {
+			this.scheduler.submit( path, new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					if( ! "/vm".equals( path ))
+						release.await( 5, TimeUnit.SECONDS );
+
+					executed.add( path );
+					return null;
+				}
+			});
+		}
+
+		Thread.sleep( 100 );
+		Assert.assertEquals( 0, executed.size());
+		Assert.assertEquals( 3, this.scheduler.getUnfinishedTasksCount());
+
+		release.countDown();
+		waitForCompletion();
+		Assert.assertEquals( 3, executed.size());
+		Assert.assertEquals( "/vm", executed.get( 2 ));
+	}
+
+
+	@Test( timeout = 10000 )
+	public void testSiblingsRunInParallel() throws Exception {
+
+		// Each task waits for the other one to have started
+		final CountDownLatch started = new CountDownLatch( 2 );
+		final List<Boolean> results = Collections.synchronizedList( new ArrayList<Boolean> ());
+		for( String path : new String[] { "/vm/server1", "/vm/server2" }) {
+			this.scheduler.submit( path, new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					started.countDown();
+					results.add( started.await( 5, TimeUnit.SECONDS ));
+					return null;
+				}
+			});
+		}
+
+		waitForCompletion();
+		Assert.assertEquals( 2, results.size());
+		Assert.assertTrue( results.get( 0 ));
+		Assert.assertTrue( results.get( 1 ));
+	}
+
+
+	@Test( timeout = 10000 )
+	public void testFailingTaskReleasesWaitingTasks() throws Exception {
+
+		final CountDownLatch executed = new CountDownLatch( 1 );
+		this.scheduler.submit( "/vm", new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				throw new Exception( "For test purpose." );
+			}
+		});
+
+		this.scheduler.submit( "/vm/server", new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				executed.countDown();
+				return null;
+			}
+		});
+
+		Assert.assertTrue( executed.await( 5, TimeUnit.SECONDS ));
+		waitForCompletion();
+	}
+
+
+	@Test
+	public void testSubmitAfterShutdown() {
+
+		this.scheduler.shutdown();
+		this.scheduler.submit( "/vm", new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				Assert.fail( "The task should not be executed." );
+				return null;
+			}
+		});
+
+		Assert.assertEquals( 0, this.scheduler.getUnfinishedTasksCount());
+	}
+
+
+	private void checkSecondTaskWaits( String firstPath, String secondPath ) throws Exception {
+
+		final CountDownLatch release = new CountDownLatch( 1 );
+		final CountDownLatch secondExecuted = new CountDownLatch( 1 );
+		this.scheduler.submit( firstPath, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				release.await();
+				return null;
+			}
+		});
+
+		this.scheduler.submit( secondPath, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				secondExecuted.countDown();
+				return null;
+			}
+		});
+
+		Assert.assertFalse( secondExecuted.await( 200, TimeUnit.MILLISECONDS ));
+		Assert.assertEquals( 2, this.scheduler.getUnfinishedTasksCount());
+
+		release.countDown();
+		Assert.assertTrue( secondExecuted.await( 5, TimeUnit.SECONDS ));
+		waitForCompletion();
+	}
+
+
+	private void waitForCompletion() throws InterruptedException {
+		while( this.scheduler.getUnfinishedTasksCount() > 0 )
+			Thread.sleep( 10 );
+	}
+}
@@ -0,0 +1,142 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.agent.internal;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class VariablePrefixIndexTest {
+
+	private Instance vm, tomcat1, tomcat2, mysql;
+
+
+	@Before
+	public void createModel() {
+
+		// Tomcat exports variables with its own prefix and with a facet's one
+		Component tomcatComponent = new Component( "tomcat" );
+		tomcatComponent.getExportedVariables().put( "tomcat.ip", null );
+		tomcatComponent.getExportedVariables().put( "web.port", "8080" );
+		tomcatComponent.getImportedVariables().put( "mysql.ip", false );
+		tomcatComponent.getImportedVariables().put( "cache.ip", true );
+
+		Component mysqlComponent = new Component( "mysql" );
+		mysqlComponent.getExportedVariables().put( "mysql.ip", null );
+
+		this.vm = new Instance( "vm" );
+		this.vm.setComponent( new Component( "vm" ));
+
+		this.tomcat1 = new Instance( "tomcat1" );
+		this.tomcat1.setComponent( tomcatComponent );
+		InstanceHelpers.insertChild( this.vm, this.tomcat1 );
+
+		// This one also exports a variable with another prefix
+		this.tomcat2 = new Instance( "tomcat2" );
+		this.tomcat2.setComponent( tomcatComponent );
+		this.tomcat2.getOverriddenExports().put( "balancer.weight", "2" );
+		InstanceHelpers.insertChild( this.vm, this.tomcat2 );
+
+		this.mysql = new Instance( "mysql" );
+		this.mysql.setComponent( mysqlComponent );
+		InstanceHelpers.insertChild( this.vm, this.mysql );
+	}
+
+
+	@Test
+	public void testImportingInstances() {
+
+		VariablePrefixIndex index = new VariablePrefixIndex();
+		index.addInstances( InstanceHelpers.buildHierarchicalList( this.vm ));
+
+		assertInstances( index.findImportingInstances( "mysql" ), this.tomcat1, this.tomcat2 );
+		assertInstances( index.findImportingInstances( "cache" ), this.tomcat1, this.tomcat2 );
+		assertInstances( index.findImportingInstances( "tomcat" ));
+		assertInstances( index.findImportingInstances( "unknown" ));
+	}
+
+
+	@Test
+	public void testExportingInstances() {
+
+		VariablePrefixIndex index = new VariablePrefixIndex();
+		index.addInstances( InstanceHelpers.buildHierarchicalList( this.vm ));
+
+		assertInstances( index.findExportingInstances( "tomcat" ), this.tomcat1, this.tomcat2 );
+		assertInstances( index.findExportingInstances( "web" ), this.tomcat1, this.tomcat2 );
+		assertInstances( index.findExportingInstances( "balancer" ), this.tomcat2 );
+		assertInstances( index.findExportingInstances( "mysql" ), this.mysql );
+		assertInstances( index.findExportingInstances( "cache" ));
+	}
+
+
+	@Test
+	public void testRemovedInstances() {
+
+		VariablePrefixIndex index = new VariablePrefixIndex();
+		index.addInstances( InstanceHelpers.buildHierarchicalList( this.vm ));
+
+		index.removeInstances( Arrays.asList( this.tomcat2 ));
+		assertInstances( index.findImportingInstances( "mysql" ), this.tomcat1 );
+		assertInstances( index.findExportingInstances( "web" ), this.tomcat1 );
+		assertInstances( index.findExportingInstances( "balancer" ));
+
+		index.removeInstances( Arrays.asList( this.tomcat1, this.mysql ));
+		assertInstances( index.findImportingInstances( "mysql" ));
+		assertInstances( index.findImportingInstances( "cache" ));
+		assertInstances( index.findExportingInstances( "tomcat" ));
+		assertInstances( index.findExportingInstances( "mysql" ));
+
+		// Instances can be indexed again
+		index.addInstances( Arrays.asList( this.tomcat1 ));
+		assertInstances( index.findImportingInstances( "mysql" ), this.tomcat1 );
+		assertInstances( index.findExportingInstances( "tomcat" ), this.tomcat1 );
+	}
+
+
+	@Test
+	public void testClear() {
+
+		VariablePrefixIndex index = new VariablePrefixIndex();
+		index.addInstances( InstanceHelpers.buildHierarchicalList( this.vm ));
+		index.clear();
+
+		assertInstances( index.findImportingInstances( "mysql" ));
+		assertInstances( index.findExportingInstances( "tomcat" ));
+		assertInstances( index.findExportingInstances( "mysql" ));
+	}
+
+
+	private static void assertInstances( List<Instance> found, Instance... expected ) {
+
+		Assert.assertNotNull( found );
+		Assert.assertEquals( expected.length, found.size());
+		for( Instance instance : expected )
+			Assert.assertTrue( instance.getName(), found.contains( instance ));
+	}
+}
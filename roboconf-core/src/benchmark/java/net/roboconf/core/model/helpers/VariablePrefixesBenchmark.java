@@ -0,0 +1,150 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.helpers;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the search of variable prefixes, as performed on every life cycle operation.
+ * <p>
+ * The "uncached" benchmarks reproduce the former implementations, which parsed all the
+ * variables of the component on every call. Run with the GC profiler (<code>-prof gc</code>)
+ * to compare the allocations.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class VariablePrefixesBenchmark {
+
+	@Param({ "2", "10", "50" })
+	public int variablesCount;
+
+	private Instance instance;
+
+
+	@Setup
+	public void buildInstance() {
+
+		Component component = new Component( "comp" );
+		for( int i=0; i<this.variablesCount; i++ ) {
+			component.getExportedVariables().put( "facet" + i % 5 + ".var" + i, null );
+			component.getImportedVariables().put( "dep" + i % 5 + ".var" + i, i % 2 == 0 );
+		}
+
+		this.instance = new Instance( "inst" );
+		this.instance.setComponent( component );
+		this.instance.getOverriddenExports().put( "facet0.var0", "value" );
+	}
+
+
+	@Benchmark
+	public Set<String> findExportedPrefixes() {
+		return VariableHelpers.findExportedVariablePrefixes( this.instance );
+	}
+
+
+	@Benchmark
+	public Set<String> findExportedPrefixesUncached() {
+
+		Set<String> result = new HashSet<String> ();
+		Map<String,String> instanceExports = InstanceHelpers.getExportedVariables( this.instance );
+		for( String exportedVariableName : instanceExports.keySet())
+			result.add( VariableHelpers.parseVariableName( exportedVariableName ).getKey());
+
+		return result;
+	}
+
+
+	@Benchmark
+	public Set<String> findImportedPrefixes() {
+		return VariableHelpers.findImportedVariablePrefixes( this.instance );
+	}
+
+
+	@Benchmark
+	public Set<String> findImportedPrefixesUncached() {
+
+		Set<String> result = new HashSet<String> ();
+		for( Map.Entry<String,Boolean> entry : this.instance.getComponent().getImportedVariables().entrySet()) {
+			if( ! entry.getValue())
+				result.add( VariableHelpers.parseVariableName( entry.getKey()).getKey());
+		}
+
+		return result;
+	}
+
+
+	@Benchmark
+	public boolean hasVariablesWithPrefix() {
+		return VariableHelpers.instanceHasVariablesWithPrefix( this.instance, "dep4" );
+	}
+
+
+	@Benchmark
+	public boolean hasVariablesWithPrefixUncached() {
+
+		boolean result = false;
+		for( String importedVar : this.instance.getComponent().getImportedVariables().keySet()) {
+			if( importedVar.startsWith( "dep4" + "." )) {
+				result = true;
+				break;
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Runs the benchmark.
+	 * @param args
+	 * @throws RunnerException
+	 */
+	public static void main( String[] args ) throws RunnerException {
+		new Runner( new OptionsBuilder()
+				.include( VariablePrefixesBenchmark.class.getSimpleName())
+				.addProfiler( "gc" )
+				.build()).run();
+	}
+}
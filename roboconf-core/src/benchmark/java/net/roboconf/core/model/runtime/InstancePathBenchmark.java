@@ -0,0 +1,136 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import net.roboconf.core.model.helpers.InstanceHelpers;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures path computation, hashing and equality of instances in deep hierarchies.
+ * <p>
+ * The "uncached" benchmark reproduces the former path computation, which was
+ * performed on every call to {@link Instance#hashCode()} and {@link Instance#equals(Object)}.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class InstancePathBenchmark {
+
+	@Param({ "2", "10", "50" })
+	public int depth;
+
+	private Instance leaf, leafCopy;
+	private Map<Instance,Integer> map;
+
+
+	@Setup
+	public void buildHierarchy() {
+
+		this.leaf = buildChain( this.depth );
+		this.leafCopy = buildChain( this.depth );
+
+		this.map = new HashMap<Instance,Integer> ();
+		this.map.put( this.leaf, 1 );
+	}
+
+
+	@Benchmark
+	public String computePath() {
+		return InstanceHelpers.computeInstancePath( this.leaf );
+	}
+
+
+	@Benchmark
+	public String computePathUncached() {
+
+		StringBuilder sb = new StringBuilder();
+		for( Instance current = this.leaf; current != null; current = current.getParent()) {
+			StringBuilder currentSb = new StringBuilder( "/" );
+			if( current.getName() != null )
+				currentSb.append( current.getName());
+
+			sb.insert( 0, currentSb.toString());
+		}
+
+		return sb.toString();
+	}
+
+
+	@Benchmark
+	public int hash() {
+		return this.leaf.hashCode();
+	}
+
+
+	@Benchmark
+	public boolean equalsCopy() {
+		return this.leaf.equals( this.leafCopy );
+	}
+
+
+	@Benchmark
+	public Integer mapLookup() {
+		return this.map.get( this.leafCopy );
+	}
+
+
+	private static Instance buildChain( int depth ) {
+
+		Instance current = new Instance( "root" );
+		for( int i=1; i<depth; i++ ) {
+			Instance child = new Instance( "instance-" + i );
+			InstanceHelpers.insertChild( current, child );
+			current = child;
+		}
+
+		return current;
+	}
+
+
+	/**
+	 * Runs the benchmark.
+	 * @param args
+	 * @throws RunnerException
+	 */
+	public static void main( String[] args ) throws RunnerException {
+		new Runner( new OptionsBuilder().include( InstancePathBenchmark.class.getSimpleName()).build()).run();
+	}
+}
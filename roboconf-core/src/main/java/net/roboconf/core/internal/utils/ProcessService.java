@@ -0,0 +1,442 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.internal.utils;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes processes and collects their output.
+ * <p>
+ * The outputs of all the processes are read by a single thread (the pump), which only reads
+ * available bytes. Running several processes in parallel does not cost additional threads.
+ * The pump is started when a process is launched and stops when no process is running.
+ * </p>
+ * <p>
+ * For every process, the pump:
+ * </p>
+ * <ul>
+ * 	<li>splits the output in lines, longer lines being split every {@value #MAX_LINE_LENGTH} bytes;</li>
+ * 	<li>keeps the last lines of the output in memory (see {@link ExecutionResult#getOutput()});</li>
+ * 	<li>writes the output in a log file, if one was specified;</li>
+ * 	<li>logs every line at the FINE level (the last lines are logged as errors when the process fails);</li>
+ * 	<li>kills the process when it runs longer than its time out.</li>
+ * </ul>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class ProcessService {
+
+	public static final int DEFAULT_CAPTURED_LINES = 100;
+	public static final int MAX_LINE_LENGTH = 4096;
+	static final long IDLE_PERIOD = 20;
+	static final String ERROR_PREFIX = "-- ERROR --";
+
+	private final int capturedLines;
+	private final List<Execution> executions = new ArrayList<Execution> ();
+	private Thread pump;
+
+
+	/**
+	 * Constructor.
+	 * @param capturedLines the number of output lines kept in memory for every process (>= 0)
+	 */
+	public ProcessService( int capturedLines ) {
+
+		if( capturedLines < 0 )
+			throw new IllegalArgumentException( "The number of captured lines cannot be negative." );
+
+		this.capturedLines = capturedLines;
+	}
+
+
+	/**
+	 * Executes a command and waits for its completion.
+	 * @param logger a logger (not null)
+	 * @param command a command to execute (not null, not empty)
+	 * @param environmentVars a map containing environment variables (can be null)
+	 * @param timeout the maximal execution time, in milliseconds (0 or less for no time out)
+	 * @param logFile a file where the output is appended (can be null)
+	 * @return the execution result (not null)
+	 * @throws IOException if a new process could not be created
+	 * @throws InterruptedException if the current thread was interrupted while waiting (the process is killed)
+	 */
+	public ExecutionResult execute(
+			Logger logger,
+			String[] command,
+			Map<String,String> environmentVars,
+			long timeout,
+			File logFile )
+	throws IOException, InterruptedException {
+
+		logger.fine( "Executing command: " + Arrays.toString( command ));
+
+		ProcessBuilder pb = new ProcessBuilder( command );
+		if( environmentVars != null )
+			pb.environment().putAll( environmentVars );
+
+		Writer logWriter = null;
+		if( logFile != null ) {
+			if( ! logFile.getParentFile().exists()
+					&& ! logFile.getParentFile().mkdirs())
+				throw new IOException( "Could not create directory " + logFile.getParentFile().getAbsolutePath());
+
+			logWriter = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( logFile, true ), "UTF-8" ));
+		}
+
+		Execution execution;
+		try {
+			Process process = pb.start();
+			long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+			execution = new Execution( process, logger, logWriter, deadline );
+
+		} catch( IOException e ) {
+			Utils.closeQuietly( logWriter );
+			throw e;
+		}
+
+		synchronized( this ) {
+			this.executions.add( execution );
+			if( this.pump == null ) {
+				this.pump = new Thread( new Pump(), "Roboconf - Process output pump" );
+				this.pump.setDaemon( true );
+				this.pump.start();
+			}
+		}
+
+		try {
+			execution.completion.await();
+
+		} catch( InterruptedException e ) {
+			execution.process.destroy();
+			throw e;
+		}
+
+		ExecutionResult result = execution.result;
+		if( result.isTimedOut())
+			logger.severe( "Command execution timed out and was killed: " + Arrays.toString( command ));
+		else if( result.getExitCode() != 0 )
+			logger.severe( "Command execution returned a failure code. Code:" + result.getExitCode());
+
+		if( result.isTimedOut() || result.getExitCode() != 0 ) {
+			for( String line : result.getOutput())
+				logger.severe( line );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @return the number of processes being executed
+	 */
+	public synchronized int getRunningProcessesCount() {
+		return this.executions.size();
+	}
+
+
+	/**
+	 * Reads the outputs of all the processes.
+	 */
+	private class Pump implements Runnable {
+
+		@Override
+		public void run() {
+
+			List<Execution> snapshot = new ArrayList<Execution> ();
+			try {
+				for( ;; ) {
+					synchronized( ProcessService.this ) {
+						if( ProcessService.this.executions.isEmpty()) {
+							ProcessService.this.pump = null;
+							break;
+						}
+
+						snapshot.clear();
+						snapshot.addAll( ProcessService.this.executions );
+					}
+
+					boolean read = false;
+					for( Execution execution : snapshot ) {
+						read |= execution.pump();
+						if( execution.result != null ) {
+							synchronized( ProcessService.this ) {
+								ProcessService.this.executions.remove( execution );
+							}
+
+							execution.completion.countDown();
+						}
+					}
+
+					if( ! read )
+						Thread.sleep( IDLE_PERIOD );
+				}
+
+			} catch( InterruptedException e ) {
+				Logger.getLogger( getClass().getName()).warning( "The process output pump was interrupted." );
+				synchronized( ProcessService.this ) {
+					ProcessService.this.pump = null;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * A process being executed.
+	 */
+	private class Execution {
+		final Process process;
+		final Logger logger;
+		final Writer logWriter;
+		final long deadline;
+		final CountDownLatch completion = new CountDownLatch( 1 );
+		final OutputReader out, err;
+		final LinkedList<String> lastLines = new LinkedList<String> ();
+
+		boolean timedOut = false;
+		volatile ExecutionResult result;
+
+
+		/**
+		 * Constructor.
+		 * @param process
+		 * @param logger
+		 * @param logWriter
+		 * @param deadline
+		 */
+		Execution( Process process, Logger logger, Writer logWriter, long deadline ) {
+			this.process = process;
+			this.logger = logger;
+			this.logWriter = logWriter;
+			this.deadline = deadline;
+			this.out = new OutputReader( process.getInputStream(), "" );
+			this.err = new OutputReader( process.getErrorStream(), ERROR_PREFIX );
+		}
+
+
+		/**
+		 * Reads the available output and checks whether the process completed.
+		 * <p>
+		 * Invoked by the pump only.
+		 * </p>
+		 *
+		 * @return true if bytes were read
+		 */
+		boolean pump() {
+
+			boolean read = this.out.read( this ) | this.err.read( this );
+			Integer exitCode = null;
+			try {
+				exitCode = this.process.exitValue();
+
+			} catch( IllegalThreadStateException e ) {
+				if( System.currentTimeMillis() > this.deadline && ! this.timedOut ) {
+					this.timedOut = true;
+					this.process.destroy();
+				}
+			}
+
+			// Once the process has exited, only what was already written is read.
+			// Waiting for the end of the streams could block if the process started sub-processes.
+			if( exitCode != null ) {
+				while( this.out.read( this ) | this.err.read( this ))
+					read = true;
+
+				this.out.close( this );
+				this.err.close( this );
+				Utils.closeQuietly( this.logWriter );
+
+				List<String> output;
+				synchronized( this.lastLines ) {
+					output = new ArrayList<String>( this.lastLines );
+				}
+
+				this.result = new ExecutionResult( exitCode, this.timedOut, output );
+			}
+
+			return read;
+		}
+
+
+		/**
+		 * Handles a line of output.
+		 * @param line a line, including its prefix
+		 */
+		void handleLine( String line ) {
+
+			if( ProcessService.this.capturedLines > 0 ) {
+				synchronized( this.lastLines ) {
+					if( this.lastLines.size() == ProcessService.this.capturedLines )
+						this.lastLines.removeFirst();
+
+					this.lastLines.add( line );
+				}
+			}
+
+			if( this.logger.isLoggable( Level.FINE ))
+				this.logger.fine( line );
+
+			if( this.logWriter != null ) {
+				try {
+					this.logWriter.write( line );
+					this.logWriter.write( '\n' );
+
+				} catch( IOException e ) {
+					this.logger.finest( "A line could not be written in the log file. " + e.getMessage());
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Splits the output of a stream into lines, without blocking.
+	 */
+	private static class OutputReader {
+		final InputStream in;
+		final String prefix;
+		final byte[] buffer = new byte[ 4096 ];
+		final ByteArrayOutputStream currentLine = new ByteArrayOutputStream();
+
+
+		/**
+		 * Constructor.
+		 * @param in
+		 * @param prefix
+		 */
+		OutputReader( InputStream in, String prefix ) {
+			this.in = in;
+			this.prefix = prefix;
+		}
+
+
+		/**
+		 * Reads the available bytes.
+		 * @param execution the execution this reader belongs to
+		 * @return true if bytes were read
+		 */
+		boolean read( Execution execution ) {
+
+			boolean result = false;
+			try {
+				int available = this.in.available();
+				if( available > 0 ) {
+					int count = this.in.read( this.buffer, 0, Math.min( available, this.buffer.length ));
+					for( int i=0; i<count; i++ ) {
+						if( this.buffer[ i ] == '\n' )
+							flushLine( execution );
+						else if( this.buffer[ i ] != '\r' ) {
+							// Output without line breaks must not accumulate in memory
+							if( this.currentLine.size() == MAX_LINE_LENGTH )
+								flushLine( execution );
+
+							this.currentLine.write( this.buffer[ i ]);
+						}
+					}
+
+					result = count > 0;
+				}
+
+			} catch( IOException e ) {
+				execution.logger.finest( "The output of a process could not be read. " + e.getMessage());
+			}
+
+			return result;
+		}
+
+
+		/**
+		 * Handles the last line and closes the stream.
+		 * @param execution the execution this reader belongs to
+		 */
+		void close( Execution execution ) {
+
+			if( this.currentLine.size() > 0 )
+				flushLine( execution );
+
+			Utils.closeQuietly( this.in );
+		}
+
+
+		private void flushLine( Execution execution ) {
+
+			// A line break cannot be part of a multi-byte character
+			String line = this.prefix + new String( this.currentLine.toByteArray());
+			this.currentLine.reset();
+			execution.handleLine( line );
+		}
+	}
+
+
+	/**
+	 * The result of a process execution.
+	 */
+	public static class ExecutionResult {
+		private final int exitCode;
+		private final boolean timedOut;
+		private final List<String> output;
+
+
+		/**
+		 * Constructor.
+		 * @param exitCode
+		 * @param timedOut
+		 * @param output
+		 */
+		public ExecutionResult( int exitCode, boolean timedOut, List<String> output ) {
+			this.exitCode = exitCode;
+			this.timedOut = timedOut;
+			this.output = output;
+		}
+
+		/**
+		 * @return the exit code of the process
+		 */
+		public int getExitCode() {
+			return this.exitCode;
+		}
+
+		/**
+		 * @return true if the process was killed because it timed out
+		 */
+		public boolean isTimedOut() {
+			return this.timedOut;
+		}
+
+		/**
+		 * @return the last lines of the output (error lines are prefixed), not null
+		 */
+		public List<String> getOutput() {
+			return this.output;
+		}
+	}
+}
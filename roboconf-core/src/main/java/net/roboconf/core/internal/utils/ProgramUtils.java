@@ -16,24 +16,26 @@
 
 package net.roboconf.core.internal.utils;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
+import net.roboconf.core.internal.utils.ProcessService.ExecutionResult;
+
 /**
  * @author Noël - LIG
  * @author Pierre-Yves Gibello - Linagora
  * @author Vincent Zurczak - Linagora
- * FIXME: this class is still messy. Waiting for the execution result should be done in another thread.
+ * FIXME: waiting for the execution result should be done in another thread.
  * Use a Future or a call-back mechanism.
  */
 public final class ProgramUtils {
 
+	private static final ProcessService PROCESS_SERVICE = new ProcessService( ProcessService.DEFAULT_CAPTURED_LINES );
+
+
 	/**
 	 * Private empty constructor.
 	 */
@@ -43,95 +45,66 @@ public final class ProgramUtils {
 
 
 	/**
-	 * Executes a command on the VM and prints on the console its output
+	 * Executes a command on the VM and logs its output.
+	 * <p>
+	 * The output is read by a thread shared by all the processes (see {@link ProcessService}).
+	 * </p>
+	 *
+	 * @param logger a logger (not null)
 	 * @param command a command to execute (not null, not empty)
 	 * @param environmentVars a map containing environment variables (can be null)
-	 * @param logger a logger (not null)
+	 * @param timeout the maximal execution time, in milliseconds (0 or less for no time out)
+	 * @param logFile a file where the output is appended (can be null)
+	 * @return the execution result (not null)
 	 * @throws IOException if a new process could not be created
-	 * @throws InterruptedException if the new process encountered a process
+	 * @throws InterruptedException if the current thread was interrupted while waiting
 	 */
-	public static int executeCommand(
+	public static ExecutionResult executeCommand(
 			final Logger logger,
 			final String[] command,
-			final Map<String,String> environmentVars )
+			final Map<String,String> environmentVars,
+			final long timeout,
+			final File logFile )
 	throws IOException, InterruptedException {
 
-		logger.fine( "Executing command: " + Arrays.toString( command ));
-
-		ProcessBuilder pb = new ProcessBuilder( command );
-		Map<String,String> env = pb.environment();
-		if( environmentVars != null )
-			env.putAll( environmentVars );
-
-		Process process = pb.start();
-		new Thread( new OutputRunnable( process, true, logger )).start();
-		new Thread( new OutputRunnable( process, false, logger )).start();
-
-		int exitValue = process.waitFor();
-		if( exitValue != 0 )
-			logger.severe( "Command execution returned a failure code. Code:" + exitValue );
-
-		return exitValue;
+		return PROCESS_SERVICE.execute( logger, command, environmentVars, timeout, logFile );
 	}
 
 
 	/**
-	 * Executes a command on the VM and prints on the console its output
+	 * Executes a command on the VM and logs its output.
 	 * @param command a command to execute (not null, not empty)
 	 * @param environmentVars a map containing environment variables (can be null)
 	 * @param logger a logger (not null)
+	 * @return the exit code
 	 * @throws IOException if a new process could not be created
-	 * @throws InterruptedException if the new process encountered a process
+	 * @throws InterruptedException if the current thread was interrupted while waiting
 	 */
 	public static int executeCommand(
 			final Logger logger,
-			final List<String> command,
+			final String[] command,
 			final Map<String,String> environmentVars )
 	throws IOException, InterruptedException {
 
-		return executeCommand( logger, command.toArray( new String[ 0 ]), environmentVars );
+		return executeCommand( logger, command, environmentVars, 0, null ).getExitCode();
 	}
 
 
 	/**
-	 * @author Noël - LIG
+	 * Executes a command on the VM and logs its output.
+	 * @param command a command to execute (not null, not empty)
+	 * @param environmentVars a map containing environment variables (can be null)
+	 * @param logger a logger (not null)
+	 * @return the exit code
+	 * @throws IOException if a new process could not be created
+	 * @throws InterruptedException if the current thread was interrupted while waiting
 	 */
-	private static class OutputRunnable implements Runnable {
-		private final Process process;
-		private final boolean errorLevel;
-		private final Logger logger;
-
-		public OutputRunnable( Process process, boolean errorLevel, Logger logger ) {
-			this.process = process;
-			this.errorLevel = errorLevel;
-			this.logger = logger;
-		}
-
-		@Override
-		public void run() {
-
-			final String prefix = this.errorLevel ? "-- ERROR --" : "";
-			BufferedReader br = null;
-			try {
-				InputStream is = this.errorLevel ? this.process.getErrorStream() : this.process.getInputStream();
-				br = new BufferedReader( new InputStreamReader( is ));
-
-				for( String line = br.readLine(); line != null; line = br.readLine())
-					this.logger.info( prefix + line );
-
-			} catch( IOException e ) {
-				this.logger.severe( Utils.writeException( e ));
-
-			} finally {
-				try {
-					if( br != null )
-						br.close();
-
-				} catch( IOException e ) {
-					this.logger.warning( "Minor error while closing a reader. " + e.getMessage());
-					this.logger.finest( Utils.writeException( e ));
-				}
-			}
-		}
+	public static int executeCommand(
+			final Logger logger,
+			final List<String> command,
+			final Map<String,String> environmentVars )
+	throws IOException, InterruptedException {
+
+		return executeCommand( logger, command.toArray( new String[ 0 ]), environmentVars );
 	}
 }
@@ -24,6 +24,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
@@ -119,6 +120,21 @@ public final class Utils {
 	}
 
 
+	/**
+	 * Closes a writer quietly.
+	 * @param writer a writer (can be null)
+	 */
+	public static void closeQuietly( Writer writer ) {
+		if( writer != null ) {
+			try {
+				writer.close();
+			} catch( IOException e ) {
+				// nothing
+			}
+		}
+	}
+
+
 	/**
 	 * Copies the content from in into os.
 	 * <p>
@@ -34,8 +34,12 @@ public class ApplicationDescriptor {
 	private static final String APPLICATION_DESCRIPTION = "application-description";
 	private static final String APPLICATION_GRAPH_EP = "graph-entry-point";
 	private static final String APPLICATION_INSTANCES_EP = "instance-entry-point";
+	private static final String APPLICATION_MESSAGING_CODEC = "messaging-codec";
+	private static final String APPLICATION_HEARTBEAT_PERIOD = "heartbeat-period";
+	private static final String APPLICATION_MISSED_HEARTBEATS_THRESHOLD = "missed-heartbeats-threshold";
 
-	private String name, description, qualifier, graphEntryPoint, instanceEntryPoint;
+	private String name, description, qualifier, graphEntryPoint, instanceEntryPoint, messagingCodec;
+	private String heartbeatPeriod, missedHeartbeatsThreshold;
 
 
 	/**
@@ -108,6 +112,48 @@ public class ApplicationDescriptor {
 		this.instanceEntryPoint = instanceEntryPoint;
 	}
 
+	/**
+	 * @return the name of the codec used to exchange messages (can be null)
+	 */
+	public String getMessagingCodec() {
+		return this.messagingCodec;
+	}
+
+	/**
+	 * @param messagingCodec the name of the codec used to exchange messages (can be null)
+	 */
+	public void setMessagingCodec( String messagingCodec ) {
+		this.messagingCodec = messagingCodec;
+	}
+
+	/**
+	 * @return the expected delay between two heart beats, in milliseconds (can be null)
+	 */
+	public String getHeartbeatPeriod() {
+		return this.heartbeatPeriod;
+	}
+
+	/**
+	 * @param heartbeatPeriod the expected delay between two heart beats, in milliseconds (can be null)
+	 */
+	public void setHeartbeatPeriod( String heartbeatPeriod ) {
+		this.heartbeatPeriod = heartbeatPeriod;
+	}
+
+	/**
+	 * @return the number of heart beats a machine can miss before being considered in trouble (can be null)
+	 */
+	public String getMissedHeartbeatsThreshold() {
+		return this.missedHeartbeatsThreshold;
+	}
+
+	/**
+	 * @param missedHeartbeatsThreshold the number of heart beats a machine can miss before being considered in trouble (can be null)
+	 */
+	public void setMissedHeartbeatsThreshold( String missedHeartbeatsThreshold ) {
+		this.missedHeartbeatsThreshold = missedHeartbeatsThreshold;
+	}
+
 
 	/**
 	 * Loads an application descriptor.
@@ -122,6 +168,9 @@ public class ApplicationDescriptor {
 		result.qualifier = properties.getProperty( APPLICATION_QUALIFIER, null );
 		result.graphEntryPoint = properties.getProperty( APPLICATION_GRAPH_EP, null );
 		result.instanceEntryPoint = properties.getProperty( APPLICATION_INSTANCES_EP, null );
+		result.messagingCodec = properties.getProperty( APPLICATION_MESSAGING_CODEC, null );
+		result.heartbeatPeriod = properties.getProperty( APPLICATION_HEARTBEAT_PERIOD, null );
+		result.missedHeartbeatsThreshold = properties.getProperty( APPLICATION_MISSED_HEARTBEATS_THRESHOLD, null );
 
 		return result;
 	}
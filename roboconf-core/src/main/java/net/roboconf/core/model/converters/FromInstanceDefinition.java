@@ -225,7 +225,9 @@ public class FromInstanceDefinition {
 				if( innerBlock.getInstructionType() != AbstractBlock.INSTANCEOF )
 					continue;
 
-				Instance newInstance = new Instance();
+				// Instances are identified by their paths: name them before inserting them
+				String childName = ModelUtils.getPropertyValue((BlockInstanceOf) innerBlock, Constants.PROPERTY_INSTANCE_NAME );
+				Instance newInstance = new Instance( childName );
 				InstanceHelpers.insertChild( instance, newInstance );
 				blockToInstance.put((BlockInstanceOf) innerBlock, newInstance );
 			}
@@ -19,7 +19,7 @@ package net.roboconf.core.model.converters;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -67,7 +67,7 @@ public class FromInstances {
 		Collection<AbstractBlock> result = new ArrayList<AbstractBlock> ();
 
 		// Process the root instance
-		Map<Instance,BlockInstanceOf> instanceToBlock = new LinkedHashMap<Instance,BlockInstanceOf> ();
+		Map<Instance,BlockInstanceOf> instanceToBlock = new IdentityHashMap<Instance,BlockInstanceOf> ();
 		BlockInstanceOf rootBlock = new BlockInstanceOf( file );
 		instanceToBlock.put( rootInstance, rootBlock );
 
@@ -50,22 +50,15 @@ public final class InstanceHelpers {
 	 * This string can be considered as a computed ID (or signature) of the instance.
 	 * It only makes sense within a given application.
 	 * </p>
+	 * <p>
+	 * Paths are cached by instances (see {@link Instance#getPath()}).
+	 * </p>
 	 *
 	 * @param inst an instance (not null)
 	 * @return a string (not null)
 	 */
 	public static String computeInstancePath( Instance inst ) {
-
-		StringBuilder sb = new StringBuilder();
-		for( Instance current = inst; current != null; current = current.getParent()) {
-			StringBuilder currentSb = new StringBuilder( "/" );
-			if( ! Utils.isEmptyOrWhitespaces( current.getName()))
-				currentSb.append( current.getName());
-
-			sb.insert( 0, currentSb.toString());
-		}
-
-		return sb.toString();
+		return inst.getPath();
 	}
 
 
@@ -75,7 +68,7 @@ public final class InstanceHelpers {
 	 * @return true if they have the same path, false otherwise
 	 */
 	public static boolean haveSamePath( Instance i1, Instance i2 ) {
-		return computeInstancePath( i1 ).equals( computeInstancePath( i2 ));
+		return i1.getPath().equals( i2.getPath());
 	}
 
 
@@ -149,15 +142,31 @@ public final class InstanceHelpers {
 
 	/**
 	 * Finds an instance by name.
+	 * <p>
+	 * The search relies on the application's index (see {@link Application#getInstanceIndex()}).
+	 * </p>
+	 *
 	 * @param application the application
 	 * @param instancePath the instance path
 	 * @return an instance, or null if it was not found
 	 */
 	public static Instance findInstanceByPath( Application application, String instancePath ) {
+		return application.getInstanceIndex().findInstanceByPath( instancePath );
+	}
 
-		Collection<Instance> currentList = application.getRootInstances();
+
+	/**
+	 * Finds an instance by name.
+	 * @param rootInstance a root instance
+	 * @param instancePath the instance path
+	 * @return an instance, or null if it was not found
+	 */
+	public static Instance findInstanceByPath( Instance rootInstance, String instancePath ) {
+
+		Collection<Instance> currentList = Arrays.asList( rootInstance );
 		List<String> instanceNames = new ArrayList<String>( Arrays.asList( instancePath.split( "/" )));
-		if( Utils.isEmptyOrWhitespaces( instanceNames.get( 0 )))
+		if( ! instanceNames.isEmpty()
+				&& Utils.isEmptyOrWhitespaces( instanceNames.get( 0 )))
 			instanceNames.remove( 0 );
 
 		// Every path segment points to an instance
@@ -184,36 +193,18 @@ public final class InstanceHelpers {
 	}
 
 
-	/**
-	 * Finds an instance by name.
-	 * @param rootInstance a root instance
-	 * @param instancePath the instance path
-	 * @return an instance, or null if it was not found
-	 */
-	public static Instance findInstanceByPath( Instance rootInstance, String instancePath ) {
-
-		Application tempApplication = new Application();
-		tempApplication.getRootInstances().add( rootInstance );
-
-		return findInstanceByPath( tempApplication, instancePath );
-	}
-
-
 	/**
 	 * Finds instances by component name.
+	 * <p>
+	 * The search relies on the application's index (see {@link Application#getInstanceIndex()}).
+	 * </p>
+	 *
 	 * @param application an application (not null)
 	 * @param componentName a component name (not null)
 	 * @return a non-null list of instances
 	 */
 	public static List<Instance> findInstancesByComponentName( Application application, String componentName ) {
-
-		List<Instance> result = new ArrayList<Instance> ();
-		for( Instance inst : getAllInstances( application )) {
-			if( componentName.equals( inst.getComponent().getName()))
-				result.add( inst );
-		}
-
-		return result;
+		return application.getInstanceIndex().findInstancesByComponentName( componentName );
 	}
 
 
@@ -294,6 +285,7 @@ public final class InstanceHelpers {
 					&& childInstance.getComponent().getAncestors().isEmpty()) {
 
 				application.getRootInstances().add( childInstance );
+				application.getInstanceIndex().addInstance( childInstance );
 				success = true;
 				// No validation here, but maybe we should...
 			}
@@ -311,6 +303,7 @@ public final class InstanceHelpers {
 					parentInstance.getChildren().remove( childInstance );
 
 				} else {
+					application.getInstanceIndex().addInstance( childInstance );
 					success = true;
 				}
 			}
@@ -320,6 +313,25 @@ public final class InstanceHelpers {
 	}
 
 
+	/**
+	 * Removes an instance (and its children) from an application.
+	 * @param application the application (not null)
+	 * @param instance the instance to remove (not null)
+	 */
+	public static void removeInstance( Application application, Instance instance ) {
+
+		// Paths must be computed before the instance is detached
+		application.getInstanceIndex().removeInstance( instance );
+		if( instance.getParent() == null ) {
+			application.getRootInstances().remove( instance );
+
+		} else {
+			instance.getParent().getChildren().remove( instance );
+			instance.setParent( null );
+		}
+	}
+
+
 	/**
 	 * Finds the directory where an agent stores the files for a given instance.
 	 * @param instance an instance (not null)
@@ -330,4 +342,20 @@ public final class InstanceHelpers {
 		path = path.substring( 1 ).replace( '/', '_' ).replace( ' ', '_' );
 		return new File( System.getProperty( "java.io.tmpdir" ), "roboconf_agent/" + pluginName + "/" + path );
 	}
+
+
+	/**
+	 * Finds the file where an agent logs the output of the scripts executed for a given instance.
+	 * <p>
+	 * This file is not located in the instance's directory, so that it is kept after an undeployment.
+	 * </p>
+	 *
+	 * @param instance an instance (not null)
+	 * @param pluginName the plug-in name
+	 * @return a file (not null, but may not exist)
+	 */
+	public static File findInstanceLogFileOnAgent( Instance instance, String pluginName ) {
+		File instanceDirectory = findInstanceDirectoryOnAgent( instance, pluginName );
+		return new File( instanceDirectory.getParentFile(), instanceDirectory.getName() + ".log" );
+	}
 }
@@ -17,10 +17,13 @@
 package net.roboconf.core.model.helpers;
 
 import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 
+import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Instance;
 
 /**
@@ -97,32 +100,39 @@ public final class VariableHelpers {
 	 * @return true if such a variable was found, false otherwise
 	 */
 	public static boolean instanceHasVariablesWithPrefix( Instance instance, String componentOrFacetName ) {
-
-		boolean result = false;
-		for( String importedVar : instance.getComponent().getImportedVariables().keySet()) {
-			if( importedVar.startsWith( componentOrFacetName + "." )) {
-				result = true;
-				break;
-			}
-		}
-
-		return result;
+		return instance.getComponent().getImportedVariablePrefixes().contains( componentOrFacetName );
 	}
 
 
 	/**
 	 * Finds the component and facet names that prefix the variables of an instance.
+	 * <p>
+	 * The prefixes of the component are cached (see {@link Component#getExportedVariablePrefixes()}).
+	 * A new set is only created when the instance overrides variables with other prefixes.
+	 * </p>
+	 *
 	 * @param instance an instance
-	 * @return a non-null set with all the component and facet names this instance exports
+	 * @return a non-null set with all the component and facet names this instance exports (not modifiable)
 	 */
 	public static Set<String> findExportedVariablePrefixes( Instance instance ) {
-		Set<String> result = new HashSet<String> ();
 
-		Map<String,String> instanceExports = InstanceHelpers.getExportedVariables( instance );
-		for( String exportedVariableName : instanceExports.keySet())
-			result.add( VariableHelpers.parseVariableName( exportedVariableName ).getKey());
+		Set<String> result = instance.getComponent() == null
+				? Collections.<String>emptySet()
+				: instance.getComponent().getExportedVariablePrefixes();
 
-		return result;
+		// Overridden exports generally override the component's ones
+		Set<String> extended = null;
+		for( String exportedVariableName : instance.getOverriddenExports().keySet()) {
+			if( hasPrefixIn( exportedVariableName, result ))
+				continue;
+
+			if( extended == null )
+				extended = new HashSet<String>( result );
+
+			extended.add( VariableHelpers.parseVariableName( exportedVariableName ).getKey());
+		}
+
+		return extended == null ? result : Collections.unmodifiableSet( extended );
 	}
 
 
@@ -133,17 +143,10 @@ public final class VariableHelpers {
 	 * </p>
 	 *
 	 * @param instance an instance
-	 * @return a non-null set with all the component and facet names this instance imports
+	 * @return a non-null set with all the component and facet names this instance imports (not modifiable)
 	 */
 	public static Set<String> findImportedVariablePrefixes( Instance instance ) {
-		Set<String> result = new HashSet<String> ();
-
-		for( Map.Entry<String,Boolean> entry : instance.getComponent().getImportedVariables().entrySet()) {
-			if( ! entry.getValue())
-				result.add( VariableHelpers.parseVariableName( entry.getKey()).getKey());
-		}
-
-		return result;
+		return instance.getComponent().getRequiredImportedVariablePrefixes();
 	}
 
 
@@ -170,4 +173,24 @@ public final class VariableHelpers {
 		for( String key : keysToUpdate )
 			instanceExports.put( key, ipAddress );
 	}
+
+
+	/**
+	 * @param variableName a variable name
+	 * @param prefixes a set of prefixes
+	 * @return true if the variable name's prefix belongs to the set (no object is created)
+	 */
+	private static boolean hasPrefixIn( String variableName, Set<String> prefixes ) {
+
+		int index = variableName.indexOf( '.' );
+		boolean result = false;
+		for( Iterator<String> it = prefixes.iterator(); it.hasNext() && ! result; ) {
+			String prefix = it.next();
+			result = index < 0
+					? prefix.isEmpty()
+					: prefix.length() == index && variableName.startsWith( prefix );
+		}
+
+		return result;
+	}
 }
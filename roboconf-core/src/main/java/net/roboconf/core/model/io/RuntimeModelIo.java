@@ -85,11 +85,23 @@ public class RuntimeModelIo {
 				app.setName( appDescriptor.getName());
 				app.setDescription( appDescriptor.getDescription());
 				app.setQualifier( appDescriptor.getQualifier());
+				app.setMessagingCodec( appDescriptor.getMessagingCodec());
 
 				Collection<RoboconfError> errors = RuntimeModelValidator.validate( appDescriptor );
 				if( ! errors.isEmpty())
 					result.loadErrors.addAll( errors );
 
+				try {
+					if( appDescriptor.getHeartbeatPeriod() != null )
+						app.setHeartbeatPeriod( Long.valueOf( appDescriptor.getHeartbeatPeriod().trim()));
+
+					if( appDescriptor.getMissedHeartbeatsThreshold() != null )
+						app.setMissedHeartbeatsThreshold( Integer.valueOf( appDescriptor.getMissedHeartbeatsThreshold().trim()));
+
+				} catch( NumberFormatException e ) {
+					// The validator already reported it
+				}
+
 			} catch( IOException e ) {
 				RoboconfError error = new RoboconfError( ErrorCode.PROJ_READ_DESC_FILE );
 				StringBuilder sb = new StringBuilder( "IO exception." );
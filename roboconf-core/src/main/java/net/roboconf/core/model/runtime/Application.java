@@ -19,6 +19,8 @@ package net.roboconf.core.model.runtime;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.LinkedHashSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.roboconf.core.internal.utils.Utils;
 
@@ -30,9 +32,13 @@ public class Application implements Serializable {
 
 	private static final long serialVersionUID = -4753958407033243184L;
 
-	private String name, qualifier, description;
+	private String name, qualifier, description, messagingCodec;
+	private Long heartbeatPeriod;
+	private Integer missedHeartbeatsThreshold;
 	private Graphs graphs;
 	private final Collection<Instance> rootInstances = new LinkedHashSet<Instance> ();
+	private transient InstanceIndex instanceIndex;
+	private transient ReadWriteLock lock;
 
 
 	/**
@@ -77,6 +83,48 @@ public class Application implements Serializable {
 		this.qualifier = qualifier;
 	}
 
+	/**
+	 * @return the name of the codec used to exchange messages (can be null)
+	 */
+	public String getMessagingCodec() {
+		return this.messagingCodec;
+	}
+
+	/**
+	 * @param messagingCodec the name of the codec used to exchange messages (can be null)
+	 */
+	public void setMessagingCodec( String messagingCodec ) {
+		this.messagingCodec = messagingCodec;
+	}
+
+	/**
+	 * @return the expected delay between two heart beats, in milliseconds (null to use the default one)
+	 */
+	public Long getHeartbeatPeriod() {
+		return this.heartbeatPeriod;
+	}
+
+	/**
+	 * @param heartbeatPeriod the expected delay between two heart beats, in milliseconds (null to use the default one)
+	 */
+	public void setHeartbeatPeriod( Long heartbeatPeriod ) {
+		this.heartbeatPeriod = heartbeatPeriod;
+	}
+
+	/**
+	 * @return the number of heart beats a machine can miss before being considered in trouble (null to use the default one)
+	 */
+	public Integer getMissedHeartbeatsThreshold() {
+		return this.missedHeartbeatsThreshold;
+	}
+
+	/**
+	 * @param missedHeartbeatsThreshold the number of heart beats a machine can miss before being considered in trouble (null to use the default one)
+	 */
+	public void setMissedHeartbeatsThreshold( Integer missedHeartbeatsThreshold ) {
+		this.missedHeartbeatsThreshold = missedHeartbeatsThreshold;
+	}
+
 	/**
 	 * @return the graphs
 	 */
@@ -98,6 +146,37 @@ public class Application implements Serializable {
 		return this.rootInstances;
 	}
 
+	/**
+	 * @return the index of the instances (never null)
+	 */
+	public synchronized InstanceIndex getInstanceIndex() {
+
+		// Lazy creation, the index is not serialized
+		if( this.instanceIndex == null )
+			this.instanceIndex = new InstanceIndex( this );
+
+		return this.instanceIndex;
+	}
+
+	/**
+	 * Gets the lock that protects the instances of this application.
+	 * <p>
+	 * The read lock must be held to walk through the instances or to read their imports,
+	 * and the write lock to add or remove instances, or to modify their imports. Status
+	 * and data changes do not need it, {@link Instance} already synchronizes them.
+	 * </p>
+	 *
+	 * @return the lock (never null)
+	 */
+	public synchronized ReadWriteLock getLock() {
+
+		// Lazy creation, the lock is not serialized
+		if( this.lock == null )
+			this.lock = new ReentrantReadWriteLock();
+
+		return this.lock;
+	}
+
 	@Override
 	public boolean equals( Object obj ) {
 		return obj instanceof Application
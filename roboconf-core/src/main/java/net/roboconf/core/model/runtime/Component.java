@@ -17,15 +17,29 @@
 package net.roboconf.core.model.runtime;
 
 import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.VariableHelpers;
 
 /**
  * A component represents a Software item (hardware, software, whatever).
+ * <p>
+ * The prefixes of the imported and exported variables (component or facet names) are
+ * computed when they are first read and cached. Any modification of the imported or
+ * exported variables invalidates this cache. Values must be changed through
+ * {@link Map#put(Object, Object)}: the entries of these maps are those of the backing maps,
+ * and {@link Map.Entry#setValue(Object)} does not invalidate the cache.
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class Component implements Serializable {
@@ -34,11 +48,13 @@ public class Component implements Serializable {
 
 	private String name, alias, installerName, iconLocation;
 	private final Collection<String> facetNames = new HashSet<String> ();
-	private final Map<String,String> exportedVariables = new HashMap<String,String> ();
-	private final Map<String,Boolean> importedVariables = new HashMap<String,Boolean> ();
+	private final Map<String,String> exportedVariables = new VariablesMap<String> ( this );
+	private final Map<String,Boolean> importedVariables = new VariablesMap<Boolean> ( this );
 
 	private final Collection<Component> children = new HashSet<Component> ();
 	private final Collection<Component> ancestors = new HashSet<Component> ();
+	private transient volatile VariablePrefixes variablePrefixes;
+	private transient volatile int variablesVersion;
 
 
 	/**
@@ -137,6 +153,27 @@ public class Component implements Serializable {
 		return this.exportedVariables;
 	}
 
+	/**
+	 * @return the prefixes of the exported variables (not null, not modifiable)
+	 */
+	public Set<String> getExportedVariablePrefixes() {
+		return findVariablePrefixes().exported;
+	}
+
+	/**
+	 * @return the prefixes of all the imported variables, including optional ones (not null, not modifiable)
+	 */
+	public Set<String> getImportedVariablePrefixes() {
+		return findVariablePrefixes().imported;
+	}
+
+	/**
+	 * @return the prefixes of the imported variables that are not optional (not null, not modifiable)
+	 */
+	public Set<String> getRequiredImportedVariablePrefixes() {
+		return findVariablePrefixes().requiredImported;
+	}
+
 	/**
 	 * @return the children
 	 */
@@ -161,4 +198,152 @@ public class Component implements Serializable {
 	public int hashCode() {
 		return this.name == null ? 17 : this.name.hashCode();
 	}
+
+
+	private VariablePrefixes findVariablePrefixes() {
+
+		// The version is read before the computation. A computation that overlaps
+		// with a modification is stored with an outdated version, and is never used.
+		int version = this.variablesVersion;
+		VariablePrefixes result = this.variablePrefixes;
+		if( result == null || result.version != version ) {
+			result = new VariablePrefixes( this, version );
+			this.variablePrefixes = result;
+		}
+
+		return result;
+	}
+
+
+	private void variablesChanged() {
+		// Modifications of the variables are not concurrent
+		this.variablesVersion ++;
+	}
+
+
+	/**
+	 * The prefixes of the variables of a component.
+	 */
+	private static class VariablePrefixes {
+		final Set<String> exported, imported, requiredImported;
+		final int version;
+
+
+		/**
+		 * Constructor.
+		 * @param component the component
+		 * @param version the version of the variables when the computation started
+		 */
+		VariablePrefixes( Component component, int version ) {
+
+			this.version = version;
+
+			Set<String> exportedSet = new HashSet<String> ();
+			for( String variableName : component.exportedVariables.keySet())
+				exportedSet.add( VariableHelpers.parseVariableName( variableName ).getKey());
+
+			Set<String> importedSet = new HashSet<String> ();
+			Set<String> requiredSet = new HashSet<String> ();
+			for( Map.Entry<String,Boolean> entry : component.importedVariables.entrySet()) {
+				String prefix = VariableHelpers.parseVariableName( entry.getKey()).getKey();
+				importedSet.add( prefix );
+				if( ! entry.getValue())
+					requiredSet.add( prefix );
+			}
+
+			this.exported = Collections.unmodifiableSet( exportedSet );
+			this.imported = Collections.unmodifiableSet( importedSet );
+			this.requiredImported = Collections.unmodifiableSet( requiredSet );
+		}
+	}
+
+
+	/**
+	 * A map of variables that invalidates the cached prefixes of its component when it is modified.
+	 * @param <V> the type of the values
+	 */
+	private static class VariablesMap<V> extends AbstractMap<String,V> implements Serializable {
+
+		private static final long serialVersionUID = -3184623509342711209L;
+		private final Map<String,V> delegate = new HashMap<String,V> ();
+		private final Component component;
+
+
+		/**
+		 * Constructor.
+		 * @param component the component whose variables are stored in this map
+		 */
+		VariablesMap( Component component ) {
+			this.component = component;
+		}
+
+		@Override
+		public V get( Object key ) {
+			return this.delegate.get( key );
+		}
+
+		@Override
+		public boolean containsKey( Object key ) {
+			return this.delegate.containsKey( key );
+		}
+
+		@Override
+		public int size() {
+			return this.delegate.size();
+		}
+
+		@Override
+		public V put( String key, V value ) {
+			this.component.variablesChanged();
+			return this.delegate.put( key, value );
+		}
+
+		@Override
+		public V remove( Object key ) {
+			this.component.variablesChanged();
+			return this.delegate.remove( key );
+		}
+
+		@Override
+		public void clear() {
+			this.component.variablesChanged();
+			this.delegate.clear();
+		}
+
+		@Override
+		public Set<Map.Entry<String,V>> entrySet() {
+
+			return new AbstractSet<Map.Entry<String,V>> () {
+
+				@Override
+				public int size() {
+					return VariablesMap.this.delegate.size();
+				}
+
+				@Override
+				public Iterator<Map.Entry<String,V>> iterator() {
+
+					final Iterator<Map.Entry<String,V>> it = VariablesMap.this.delegate.entrySet().iterator();
+					return new Iterator<Map.Entry<String,V>> () {
+
+						@Override
+						public boolean hasNext() {
+							return it.hasNext();
+						}
+
+						@Override
+						public Map.Entry<String,V> next() {
+							return it.next();
+						}
+
+						@Override
+						public void remove() {
+							VariablesMap.this.component.variablesChanged();
+							it.remove();
+						}
+					};
+				}
+			};
+		}
+	}
 }
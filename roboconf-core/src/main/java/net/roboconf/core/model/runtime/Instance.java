@@ -16,13 +16,20 @@
 
 package net.roboconf.core.model.runtime;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 
+import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 
 /**
@@ -50,10 +57,10 @@ public class Instance implements Serializable {
 	private String name, channel;
 	private Component component;
 	private Instance parent;
-	private final Collection<Instance> children = new LinkedHashSet<Instance> ();
+	private transient Collection<Instance> children = new LinkedHashSet<Instance> ();
 
 	private InstanceStatus status = InstanceStatus.NOT_DEPLOYED;
-	private final Map<String,String> data = new LinkedHashMap<String,String>( 0 );
+	private final Map<String,String> data = Collections.synchronizedMap( new LinkedHashMap<String,String>( 0 ));
 	private final Map<String,String> overridenExports = new HashMap<String,String> ();
 	private final Map<String,String> exports = new HashMap<String,String> ();
 
@@ -61,6 +68,9 @@ public class Instance implements Serializable {
 	// The prefix is a component or a facet name.
 	private final Map<String,Collection<Import>> variablePrefixToImports = new HashMap<String,Collection<Import>> ();
 
+	// Cached value, invalidated when the name or the parent changes.
+	private transient volatile String path;
+
 
 	/**
 	 * Constructor.
@@ -89,6 +99,11 @@ public class Instance implements Serializable {
 	 */
 	public void setName( String name ) {
 		this.name = name;
+		invalidatePath();
+
+		// The parent's children are hashed by name
+		if( this.parent != null )
+			this.parent.rehashChildren();
 	}
 
 	/**
@@ -145,6 +160,7 @@ public class Instance implements Serializable {
 	 */
 	public void setParent( Instance parent ) {
 		this.parent = parent;
+		invalidatePath();
 	}
 
 	/**
@@ -155,7 +171,7 @@ public class Instance implements Serializable {
 	}
 
 	/**
-	 * @return the data
+	 * @return the data (synchronized, iterations must be made while holding its monitor)
 	 */
 	public Map<String, String> getData() {
 		return this.data;
@@ -175,15 +191,55 @@ public class Instance implements Serializable {
 		return exports;
 	}
 
+	/**
+	 * Gets the path of this instance.
+	 * <p>
+	 * The path is computed once and cached until the name of this instance
+	 * or of one of its ancestors changes, or until the instance is moved.
+	 * </p>
+	 *
+	 * @return the path (not null)
+	 * @see InstanceHelpers#computeInstancePath(Instance)
+	 */
+	public String getPath() {
+
+		String result = this.path;
+		if( result == null ) {
+			StringBuilder sb = new StringBuilder();
+			if( this.parent != null )
+				sb.append( this.parent.getPath());
+
+			sb.append( "/" );
+			if( ! Utils.isEmptyOrWhitespaces( this.name ))
+				sb.append( this.name );
+
+			result = sb.toString();
+			this.path = result;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Computes the hash code.
+	 * <p>
+	 * Equal instances have the same path, and thus the same name. The hash code only
+	 * relies on the name, so that moving an instance (or renaming one of its ancestors)
+	 * does not change it. Renaming an instance does: its parent's children are hashed
+	 * again then, but other hash-based collections that contain it must be updated by
+	 * the caller (e.g. {@link Application#getRootInstances()}).
+	 * </p>
+	 */
 	@Override
 	public int hashCode() {
-		return InstanceHelpers.computeInstancePath( this ).hashCode();
+		return this.name == null ? 17 : this.name.hashCode();
 	}
 
 	@Override
 	public boolean equals( Object obj ) {
-		return obj instanceof Instance
-				&& InstanceHelpers.haveSamePath( this, (Instance) obj);
+		return obj == this
+				|| obj instanceof Instance
+				&& getPath().equals(((Instance) obj).getPath());
 	}
 
 	@Override
@@ -192,6 +248,73 @@ public class Instance implements Serializable {
 	}
 
 
+	/**
+	 * Invalidates the cached path of this instance and of all its children.
+	 */
+	private void invalidatePath() {
+
+		List<Instance> instances = new ArrayList<Instance> ();
+		instances.add( this );
+		for( int i=0; i<instances.size(); i++ ) {
+			Instance current = instances.get( i );
+			current.path = null;
+			instances.addAll( current.children );
+		}
+	}
+
+
+	/**
+	 * Adds the children again in their set, keeping their order, after the hash code of one of them changed.
+	 */
+	private void rehashChildren() {
+
+		if( ! this.children.isEmpty()) {
+			List<Instance> list = new ArrayList<Instance>( this.children );
+			this.children.clear();
+			this.children.addAll( list );
+		}
+	}
+
+
+	/**
+	 * Serializes this instance.
+	 * <p>
+	 * Children are written as a list, see {@link #readObject(ObjectInputStream)}.
+	 * </p>
+	 *
+	 * @param out the output stream
+	 * @throws IOException
+	 */
+	private void writeObject( ObjectOutputStream out ) throws IOException {
+		out.defaultWriteObject();
+		out.writeObject( new ArrayList<Instance>( this.children ));
+	}
+
+
+	/**
+	 * Deserializes this instance.
+	 * <p>
+	 * Hash codes are computed from names. So, the children set must only
+	 * be filled once the children were read.
+	 * </p>
+	 *
+	 * @param in the input stream
+	 * @throws IOException
+	 * @throws ClassNotFoundException
+	 */
+	@SuppressWarnings( "unchecked" )
+	private void readObject( ObjectInputStream in ) throws IOException, ClassNotFoundException {
+
+		in.defaultReadObject();
+		List<Instance> list = (List<Instance>) in.readObject();
+		this.children = new LinkedHashSet<Instance> ();
+		for( Instance child : list ) {
+			child.parent = this;
+			this.children.add( child );
+		}
+	}
+
+
 	/**
 	 * Updates the imports with new values.
 	 * @param variablePrefixToImports the new imports (can be null)
@@ -0,0 +1,192 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.model.runtime;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.roboconf.core.model.helpers.InstanceHelpers;
+
+/**
+ * An index of the instances of an application.
+ * <p>
+ * It associates instance paths and component names with instances,
+ * so that instances can be found without walking through the whole model.
+ * </p>
+ * <p>
+ * The index is built lazily, on the first search. After that, it is
+ * maintained by {@link InstanceHelpers#tryToInsertChildInstance(Application, Instance, Instance)}
+ * and {@link InstanceHelpers#removeInstance(Application, Instance)}. Searches do not
+ * check the model: other modifications (direct insertions or removals, renaming...)
+ * must be followed by a call to {@link #invalidate()}.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class InstanceIndex {
+
+	private final Application application;
+	private final Map<String,Instance> pathToInstance = new HashMap<String,Instance> ();
+	private final Map<String,Map<String,Instance>> componentNameToInstances = new HashMap<String,Map<String,Instance>> ();
+	private boolean built = false;
+
+
+	/**
+	 * Constructor.
+	 * @param application the application whose instances must be indexed (not null)
+	 */
+	public InstanceIndex( Application application ) {
+		this.application = application;
+	}
+
+
+	/**
+	 * Finds an instance by path.
+	 * @param instancePath an instance path (not null)
+	 * @return an instance, or null if it was not found
+	 */
+	public synchronized Instance findInstanceByPath( String instancePath ) {
+
+		if( ! this.built )
+			rebuild();
+
+		return this.pathToInstance.get( normalizePath( instancePath ));
+	}
+
+
+	/**
+	 * Finds instances by component name.
+	 * @param componentName a component name (not null)
+	 * @return a non-null list of instances
+	 */
+	public synchronized List<Instance> findInstancesByComponentName( String componentName ) {
+
+		if( ! this.built )
+			rebuild();
+
+		Map<String,Instance> instances = this.componentNameToInstances.get( componentName );
+		List<Instance> result = new ArrayList<Instance> ();
+		if( instances != null )
+			result.addAll( instances.values());
+
+		return result;
+	}
+
+
+	/**
+	 * Registers an instance and all its children.
+	 * <p>
+	 * This method must be invoked once the instance has been inserted in the model.
+	 * </p>
+	 *
+	 * @param instance an instance (not null)
+	 */
+	public synchronized void addInstance( Instance instance ) {
+
+		// Not built yet? Everything will be indexed on the first search.
+		if( ! this.built )
+			return;
+
+		for( Instance inst : InstanceHelpers.buildHierarchicalList( instance ))
+			register( inst );
+	}
+
+
+	/**
+	 * Unregisters an instance and all its children.
+	 * <p>
+	 * This method must be invoked before the instance is removed from the model
+	 * (paths are computed from the model).
+	 * </p>
+	 *
+	 * @param instance an instance (not null)
+	 */
+	public synchronized void removeInstance( Instance instance ) {
+
+		if( ! this.built )
+			return;
+
+		for( Instance inst : InstanceHelpers.buildHierarchicalList( instance )) {
+			String path = InstanceHelpers.computeInstancePath( inst );
+			if( this.pathToInstance.get( path ) == inst )
+				this.pathToInstance.remove( path );
+
+			if( inst.getComponent() != null ) {
+				Map<String,Instance> instances = this.componentNameToInstances.get( inst.getComponent().getName());
+				if( instances != null && instances.get( path ) == inst )
+					instances.remove( path );
+			}
+		}
+	}
+
+
+	/**
+	 * Invalidates the index.
+	 * <p>
+	 * It will be rebuilt on the next search.
+	 * </p>
+	 */
+	public synchronized void invalidate() {
+		this.built = false;
+	}
+
+
+	private void rebuild() {
+
+		this.pathToInstance.clear();
+		this.componentNameToInstances.clear();
+		for( Instance inst : InstanceHelpers.getAllInstances( this.application ))
+			register( inst );
+
+		this.built = true;
+	}
+
+
+	private void register( Instance instance ) {
+
+		String path = InstanceHelpers.computeInstancePath( instance );
+		this.pathToInstance.put( path, instance );
+		if( instance.getComponent() != null ) {
+			String componentName = instance.getComponent().getName();
+			Map<String,Instance> instances = this.componentNameToInstances.get( componentName );
+			if( instances == null ) {
+				instances = new LinkedHashMap<String,Instance> ();
+				this.componentNameToInstances.put( componentName, instances );
+			}
+
+			instances.put( path, instance );
+		}
+	}
+
+
+	/**
+	 * Normalizes a path so that it can be compared with {@link InstanceHelpers#computeInstancePath(Instance)}.
+	 * @param instancePath an instance path (not null)
+	 * @return a non-null string
+	 */
+	private static String normalizePath( String instancePath ) {
+
+		String result = instancePath.startsWith( "/" ) ? instancePath : "/" + instancePath;
+		while( result.length() > 1 && result.endsWith( "/" ))
+			result = result.substring( 0, result.length() - 1 );
+
+		return result;
+	}
+}
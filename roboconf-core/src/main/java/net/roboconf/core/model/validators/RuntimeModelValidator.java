@@ -226,6 +226,32 @@ public class RuntimeModelValidator {
 		if( Utils.isEmptyOrWhitespaces( descriptor.getGraphEntryPoint()))
 			errors.add( new RoboconfError( ErrorCode.RM_MISSING_APPLICATION_GEP ));
 
+		for( String setting : new String[] { descriptor.getHeartbeatPeriod(), descriptor.getMissedHeartbeatsThreshold()}) {
+			if( setting != null && ! isPositiveInteger( setting )) {
+				RoboconfError error = new RoboconfError( ErrorCode.RM_INVALID_HEARTBEAT_SETTING );
+				error.setDetails( "Value: " + setting );
+				errors.add( error );
+			}
+		}
+
 		return errors;
 	}
+
+
+	/**
+	 * @param s a string (not null)
+	 * @return true if it is a strictly positive integer, false otherwise
+	 */
+	private static boolean isPositiveInteger( String s ) {
+
+		boolean result;
+		try {
+			result = Integer.parseInt( s.trim()) > 0;
+
+		} catch( NumberFormatException e ) {
+			result = false;
+		}
+
+		return result;
+	}
 }
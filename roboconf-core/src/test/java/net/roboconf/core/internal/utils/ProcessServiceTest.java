@@ -0,0 +1,191 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.core.internal.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import junit.framework.Assert;
+import net.roboconf.core.internal.utils.ProcessService.ExecutionResult;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class ProcessServiceTest {
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+
+
+	@Before
+	public void checkShell() {
+		Assume.assumeTrue( new File( "/bin/sh" ).exists());
+	}
+
+
+	@Test
+	public void testExecute() throws Exception {
+
+		Map<String,String> env = new HashMap<String,String> ();
+		env.put( "ROBOCONF_VAR", "value" );
+
+		ProcessService service = new ProcessService( ProcessService.DEFAULT_CAPTURED_LINES );
+		ExecutionResult result = service.execute(
+				this.logger,
+				new String[] { "/bin/sh", "-c", "echo out $ROBOCONF_VAR; echo err 1>&2; printf last; exit 3" },
+				env, 0, null );
+
+		Assert.assertEquals( 3, result.getExitCode());
+		Assert.assertFalse( result.isTimedOut());
+		Assert.assertEquals( 3, result.getOutput().size());
+		Assert.assertTrue( result.getOutput().contains( "out value" ));
+		Assert.assertTrue( result.getOutput().contains( ProcessService.ERROR_PREFIX + "err" ));
+		Assert.assertTrue( result.getOutput().contains( "last" ));
+		Assert.assertEquals( 0, service.getRunningProcessesCount());
+	}
+
+
+	@Test
+	public void testExecute_capturedLinesAreBounded() throws Exception {
+
+		ProcessService service = new ProcessService( 3 );
+		ExecutionResult result = service.execute(
+				this.logger,
+				new String[] { "/bin/sh", "-c", "i=0; while [ $i -lt 50 ]; do i=$((i+1)); echo $i; done" },
+				null, 0, null );
+
+		Assert.assertEquals( 0, result.getExitCode());
+		Assert.assertEquals( Arrays.asList( "48", "49", "50" ), result.getOutput());
+
+		result = new ProcessService( 0 ).execute( this.logger, new String[] { "/bin/sh", "-c", "echo hop" }, null, 0, null );
+		Assert.assertEquals( 0, result.getOutput().size());
+	}
+
+
+	@Test
+	public void testExecute_longLinesAreSplit() throws Exception {
+
+		ProcessService service = new ProcessService( ProcessService.DEFAULT_CAPTURED_LINES );
+		ExecutionResult result = service.execute(
+				this.logger,
+				new String[] { "/bin/sh", "-c", "i=0; while [ $i -lt 500 ]; do i=$((i+1)); printf 0123456789; done; echo; echo end" },
+				null, 0, null );
+
+		Assert.assertEquals( 0, result.getExitCode());
+		Assert.assertEquals( 3, result.getOutput().size());
+		Assert.assertEquals( "end", result.getOutput().get( 2 ));
+
+		int length = 0;
+		for( String line : result.getOutput().subList( 0, result.getOutput().size() - 1 )) {
+			Assert.assertTrue( line.length() <= ProcessService.MAX_LINE_LENGTH );
+			length += line.length();
+		}
+
+		Assert.assertEquals( 5000, length );
+	}
+
+
+	@Test
+	public void testExecute_timeout() throws Exception {
+
+		ProcessService service = new ProcessService( ProcessService.DEFAULT_CAPTURED_LINES );
+		long start = System.currentTimeMillis();
+		ExecutionResult result = service.execute( this.logger, new String[] { "sleep", "20" }, null, 300, null );
+
+		Assert.assertTrue( result.isTimedOut());
+		Assert.assertFalse( result.getExitCode() == 0 );
+		Assert.assertTrue( System.currentTimeMillis() - start < 10000 );
+	}
+
+
+	@Test
+	public void testExecute_parallel() throws Exception {
+
+		final ProcessService service = new ProcessService( ProcessService.DEFAULT_CAPTURED_LINES );
+		final ExecutionResult[] results = new ExecutionResult[ 10 ];
+		Thread[] threads = new Thread[ results.length ];
+		for( int i=0; i<threads.length; i++ ) {
+			final int index = i;
+			threads[ i ] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						results[ index ] = service.execute(
+								ProcessServiceTest.this.logger,
+								new String[] { "/bin/sh", "-c", "sleep 0.2; echo " + index },
+								null, 0, null );
+
+					} catch( Exception e ) {
+						// results[ index ] remains null
+					}
+				}
+			};
+
+			threads[ i ].start();
+		}
+
+		for( Thread thread : threads )
+			thread.join();
+
+		for( int i=0; i<results.length; i++ ) {
+			Assert.assertNotNull( results[ i ]);
+			Assert.assertEquals( Arrays.asList( String.valueOf( i )), results[ i ].getOutput());
+		}
+
+		Assert.assertEquals( 0, service.getRunningProcessesCount());
+	}
+
+
+	@Test
+	public void testExecute_logFile() throws Exception {
+
+		File logFile = File.createTempFile( "roboconf_", ".log" );
+		try {
+			ProcessService service = new ProcessService( ProcessService.DEFAULT_CAPTURED_LINES );
+			service.execute( this.logger, new String[] { "/bin/sh", "-c", "echo first" }, null, 0, logFile );
+			service.execute( this.logger, new String[] { "/bin/sh", "-c", "echo second 1>&2" }, null, 0, logFile );
+
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			Utils.copyStream( logFile, os );
+			Assert.assertEquals( "first\n" + ProcessService.ERROR_PREFIX + "second\n", os.toString( "UTF-8" ));
+
+		} finally {
+			if( ! logFile.delete())
+				logFile.deleteOnExit();
+		}
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testExecute_invalidCommand() throws Exception {
+		new ProcessService( 1 ).execute( this.logger, new String[] { "roboconf-inexisting-command" }, null, 0, null );
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidCapturedLines() {
+		new ProcessService( -1 );
+	}
+}
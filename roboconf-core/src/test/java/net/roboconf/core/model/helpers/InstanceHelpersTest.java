@@ -20,6 +20,7 @@ import java.util.List;
 import java.util.Map;
 
 import junit.framework.Assert;
+import net.roboconf.core.model.runtime.Application;
 import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Instance;
 
@@ -49,6 +50,45 @@ public class InstanceHelpersTest {
 	}
 
 
+	@Test
+	public void testComputeInstancePath_cacheIsInvalidated() {
+
+		Instance root = new Instance( "root" );
+		Instance child = new Instance( "child" );
+		Instance grandChild = new Instance( "grand-child" );
+		InstanceHelpers.insertChild( root, child );
+		InstanceHelpers.insertChild( child, grandChild );
+		Assert.assertEquals( "/root/child/grand-child", InstanceHelpers.computeInstancePath( grandChild ));
+		int childHash = child.hashCode(), grandChildHash = grandChild.hashCode();
+
+		root.setName( "new-root" );
+		Assert.assertEquals( "/new-root/child/grand-child", InstanceHelpers.computeInstancePath( grandChild ));
+
+		Instance otherRoot = new Instance( "other" );
+		child.setParent( otherRoot );
+		Assert.assertEquals( "/other/child", InstanceHelpers.computeInstancePath( child ));
+		Assert.assertEquals( "/other/child/grand-child", InstanceHelpers.computeInstancePath( grandChild ));
+
+		// Moving an instance or renaming its ancestors does not change its hash code
+		Assert.assertEquals( childHash, child.hashCode());
+		Assert.assertEquals( grandChildHash, grandChild.hashCode());
+
+		// Renamed children are hashed again, they remain valid keys
+		Assert.assertTrue( child.getChildren().contains( grandChild ));
+		grandChild.setName( "renamed" );
+		Assert.assertTrue( child.getChildren().contains( grandChild ));
+
+		// Copies are equal and have the same hash code
+		Instance childCopy = new Instance( "child" );
+		Instance grandChildCopy = new Instance( "renamed" );
+		InstanceHelpers.insertChild( new Instance( "other" ), childCopy );
+		InstanceHelpers.insertChild( childCopy, grandChildCopy );
+		Assert.assertEquals( grandChild, grandChildCopy );
+		Assert.assertEquals( grandChild.hashCode(), grandChildCopy.hashCode());
+		Assert.assertSame( InstanceHelpers.computeInstancePath( grandChild ), InstanceHelpers.computeInstancePath( grandChild ));
+	}
+
+
 	@Test
 	public void testHaveSamePath() {
 
@@ -148,4 +188,123 @@ public class InstanceHelpersTest {
 		Assert.assertEquals( "another value", map.get( "var1" ));
 		Assert.assertEquals( "value2", map.get( "var2" ));
 	}
+
+
+	@Test
+	public void testFindInstanceByPath() {
+
+		Application app = new Application();
+		Instance root1 = new Instance( "root1" );
+		Instance root2 = new Instance( "root2" );
+		Instance child1 = new Instance( "child1" );
+		Instance child2 = new Instance( "child2" );
+		InstanceHelpers.insertChild( root1, child1 );
+		InstanceHelpers.insertChild( child1, child2 );
+		app.getRootInstances().add( root1 );
+
+		Assert.assertEquals( root1, InstanceHelpers.findInstanceByPath( app, "/root1" ));
+		Assert.assertEquals( root1, InstanceHelpers.findInstanceByPath( app, "root1" ));
+		Assert.assertEquals( root1, InstanceHelpers.findInstanceByPath( app, "/root1/" ));
+		Assert.assertEquals( child1, InstanceHelpers.findInstanceByPath( app, "/root1/child1" ));
+		Assert.assertEquals( child2, InstanceHelpers.findInstanceByPath( app, "/root1/child1/child2" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/root1/child2" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/root2" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "" ));
+
+		// Direct modifications require the index to be invalidated
+		app.getRootInstances().add( root2 );
+		app.getInstanceIndex().invalidate();
+		Assert.assertEquals( root2, InstanceHelpers.findInstanceByPath( app, "/root2" ));
+
+		child1.setName( "child1bis" );
+		app.getInstanceIndex().invalidate();
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/root1/child1" ));
+		Assert.assertEquals( child1, InstanceHelpers.findInstanceByPath( app, "/root1/child1bis" ));
+		Assert.assertEquals( child2, InstanceHelpers.findInstanceByPath( app, "/root1/child1bis/child2" ));
+
+		// Search from a root instance
+		Assert.assertEquals( child2, InstanceHelpers.findInstanceByPath( root1, "/root1/child1bis/child2" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( root1, "/root2" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( root1, "/" ));
+	}
+
+
+	@Test
+	public void testIndexIsMaintained() {
+
+		Component vmComponent = new Component( "vm" );
+		Component serverComponent = new Component( "server" );
+		vmComponent.getChildren().add( serverComponent );
+		serverComponent.getAncestors().add( vmComponent );
+
+		Application app = new Application();
+		Instance vm1 = new Instance( "vm1" );
+		vm1.setComponent( vmComponent );
+		Assert.assertTrue( InstanceHelpers.tryToInsertChildInstance( app, null, vm1 ));
+
+		Assert.assertEquals( vm1, InstanceHelpers.findInstanceByPath( app, "/vm1" ));
+		Assert.assertEquals( 1, InstanceHelpers.findInstancesByComponentName( app, "vm" ).size());
+		Assert.assertEquals( 0, InstanceHelpers.findInstancesByComponentName( app, "server" ).size());
+
+		// Insertions once the index was built
+		Instance vm2 = new Instance( "vm2" );
+		vm2.setComponent( vmComponent );
+		Assert.assertTrue( InstanceHelpers.tryToInsertChildInstance( app, null, vm2 ));
+
+		Instance server = new Instance( "server" );
+		server.setComponent( serverComponent );
+		Assert.assertTrue( InstanceHelpers.tryToInsertChildInstance( app, vm2, server ));
+		Assert.assertFalse( InstanceHelpers.tryToInsertChildInstance( app, vm2, new Instance( "server" )));
+
+		Assert.assertEquals( vm2, InstanceHelpers.findInstanceByPath( app, "/vm2" ));
+		Assert.assertEquals( server, InstanceHelpers.findInstanceByPath( app, "/vm2/server" ));
+		Assert.assertEquals( 2, InstanceHelpers.findInstancesByComponentName( app, "vm" ).size());
+		Assert.assertEquals( server, InstanceHelpers.findInstancesByComponentName( app, "server" ).get( 0 ));
+
+		// Removals
+		InstanceHelpers.removeInstance( app, server );
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/vm2/server" ));
+		Assert.assertEquals( 0, vm2.getChildren().size());
+		Assert.assertNull( server.getParent());
+		Assert.assertEquals( 0, InstanceHelpers.findInstancesByComponentName( app, "server" ).size());
+
+		Assert.assertTrue( InstanceHelpers.tryToInsertChildInstance( app, vm2, server ));
+		InstanceHelpers.removeInstance( app, vm2 );
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/vm2" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/vm2/server" ));
+		Assert.assertEquals( 1, app.getRootInstances().size());
+		Assert.assertEquals( vm1, InstanceHelpers.findInstancesByComponentName( app, "vm" ).get( 0 ));
+		Assert.assertEquals( 0, InstanceHelpers.findInstancesByComponentName( app, "server" ).size());
+
+		// Direct modifications + invalidation
+		InstanceHelpers.insertChild( vm1, server );
+		app.getInstanceIndex().invalidate();
+		Assert.assertEquals( server, InstanceHelpers.findInstanceByPath( app, "/vm1/server" ));
+	}
+
+
+	@Test
+	public void testIndexIgnoresDirectModifications() {
+
+		Application app = new Application();
+		Instance vm1 = new Instance( "vm1" );
+		app.getRootInstances().add( vm1 );
+		Assert.assertSame( vm1, InstanceHelpers.findInstanceByPath( app, "/vm1" ));
+
+		// Direct modifications are not seen by the index...
+		Instance vm2 = new Instance( "vm2" );
+		app.getRootInstances().remove( vm1 );
+		app.getRootInstances().add( vm2 );
+
+		Instance server = new Instance( "server" );
+		InstanceHelpers.insertChild( vm2, server );
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/vm2" ));
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/vm2/server" ));
+
+		// ... until it is invalidated
+		app.getInstanceIndex().invalidate();
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( app, "/vm1" ));
+		Assert.assertSame( vm2, InstanceHelpers.findInstanceByPath( app, "/vm2" ));
+		Assert.assertSame( server, InstanceHelpers.findInstanceByPath( app, "/vm2/server" ));
+	}
 }
@@ -16,9 +16,13 @@
 
 package net.roboconf.core.model.helpers;
 
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 
 import junit.framework.Assert;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
 
 import org.junit.Test;
 
@@ -67,4 +71,105 @@ public class VariableHelpersTest {
 			Assert.assertEquals( "Invalid default value for " + s, value[ 1 ], entry.getValue());
 		}
 	}
+
+
+	@Test
+	public void testFindVariablePrefixes() {
+
+		Component component = new Component( "comp" );
+		component.getExportedVariables().put( "comp.ip", null );
+		component.getExportedVariables().put( "facet.port", "8080" );
+		component.getImportedVariables().put( "db.ip", false );
+		component.getImportedVariables().put( "db.port", false );
+		component.getImportedVariables().put( "cache.ip", true );
+
+		Instance instance = new Instance( "inst" );
+		instance.setComponent( component );
+		Set<String> exported = VariableHelpers.findExportedVariablePrefixes( instance );
+		Assert.assertEquals( 2, exported.size());
+		Assert.assertTrue( exported.contains( "comp" ));
+		Assert.assertTrue( exported.contains( "facet" ));
+
+		Set<String> imported = VariableHelpers.findImportedVariablePrefixes( instance );
+		Assert.assertEquals( 1, imported.size());
+		Assert.assertTrue( imported.contains( "db" ));
+
+		Assert.assertTrue( VariableHelpers.instanceHasVariablesWithPrefix( instance, "db" ));
+		Assert.assertTrue( VariableHelpers.instanceHasVariablesWithPrefix( instance, "cache" ));
+		Assert.assertFalse( VariableHelpers.instanceHasVariablesWithPrefix( instance, "comp" ));
+
+		// Prefixes are computed once
+		Assert.assertSame( exported, VariableHelpers.findExportedVariablePrefixes( instance ));
+		Assert.assertSame( imported, VariableHelpers.findImportedVariablePrefixes( instance ));
+
+		// ... and updated when variables change
+		component.getImportedVariables().put( "cache.port", false );
+		Assert.assertTrue( VariableHelpers.findImportedVariablePrefixes( instance ).contains( "cache" ));
+		Assert.assertTrue( component.getRequiredImportedVariablePrefixes().contains( "cache" ));
+
+		component.getImportedVariables().remove( "cache.port" );
+		Assert.assertFalse( VariableHelpers.findImportedVariablePrefixes( instance ).contains( "cache" ));
+
+		component.getExportedVariables().put( "other.ip", null );
+		Assert.assertTrue( VariableHelpers.findExportedVariablePrefixes( instance ).contains( "other" ));
+
+		Iterator<String> it = component.getExportedVariables().keySet().iterator();
+		while( it.hasNext()) {
+			if( it.next().startsWith( "other." ))
+				it.remove();
+		}
+
+		Assert.assertFalse( VariableHelpers.findExportedVariablePrefixes( instance ).contains( "other" ));
+		Assert.assertFalse( component.getExportedVariables().containsKey( "other.ip" ));
+
+		component.getImportedVariables().put( "db.port", true );
+		Assert.assertTrue( component.getRequiredImportedVariablePrefixes().contains( "db" ));
+		for( String variableName : component.getImportedVariables().keySet())
+			component.getImportedVariables().put( variableName, Boolean.TRUE );
+
+		Assert.assertTrue( component.getImportedVariables().get( "db.ip" ));
+		Assert.assertFalse( component.getRequiredImportedVariablePrefixes().contains( "db" ));
+
+		// Entries are not wrapped
+		Assert.assertSame(
+				component.getImportedVariables().entrySet().iterator().next(),
+				component.getImportedVariables().entrySet().iterator().next());
+
+		component.getImportedVariables().clear();
+		Assert.assertEquals( 0, VariableHelpers.findImportedVariablePrefixes( instance ).size());
+	}
+
+
+	@Test( expected = UnsupportedOperationException.class )
+	public void testFindVariablePrefixes_notModifiable() {
+
+		Component component = new Component( "comp" );
+		component.getExportedVariables().put( "comp.ip", null );
+		Instance instance = new Instance( "inst" );
+		instance.setComponent( component );
+		VariableHelpers.findExportedVariablePrefixes( instance ).add( "other" );
+	}
+
+
+	@Test
+	public void testFindExportedVariablePrefixes_overriddenExports() {
+
+		Component component = new Component( "comp" );
+		component.getExportedVariables().put( "comp.ip", null );
+		Instance instance = new Instance( "inst" );
+		instance.setComponent( component );
+		Set<String> exported = VariableHelpers.findExportedVariablePrefixes( instance );
+
+		// Overriding a variable of the component does not create a new set
+		instance.getOverriddenExports().put( "comp.ip", "127.0.0.1" );
+		Assert.assertSame( exported, VariableHelpers.findExportedVariablePrefixes( instance ));
+
+		// Exporting a variable with another prefix does
+		instance.getOverriddenExports().put( "other.port", "8080" );
+		Set<String> extended = VariableHelpers.findExportedVariablePrefixes( instance );
+		Assert.assertEquals( 2, extended.size());
+		Assert.assertTrue( extended.contains( "comp" ));
+		Assert.assertTrue( extended.contains( "other" ));
+		Assert.assertEquals( 1, exported.size());
+	}
 }
@@ -18,12 +18,17 @@ package net.roboconf.dm.rest.api;
 
 import java.util.List;
 
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
 import net.roboconf.core.actions.ApplicationAction;
@@ -80,26 +85,112 @@ public interface IApplicationWs {
 
 	/**
 	 * Lists the paths of the children of an instance.
+	 * <p>
+	 * The response's entity tag is the version of the application's model.
+	 * If the request's "If-None-Match" header matches it, the response's status is 304 (not modified).
+	 * </p>
+	 *
 	 * @param applicationName the application name
 	 * @param instancePath the instance path (optional, null to consider the application as the root)
-	 * @return a non-null list
+	 * @param request the request (used to evaluate preconditions, can be null)
+	 * @return a response whose entity is a non-null list of instances
 	 */
 	@GET
 	@Path( "/children" + OPTIONAL_INSTANCE_PATH )
 	@Produces( MediaType.APPLICATION_JSON )
-	List<Instance> listChildrenInstances( @PathParam("name") String applicationName, @PathParam("instancePath") String instancePath );
+	Response listChildrenInstances( @PathParam("name") String applicationName, @PathParam("instancePath") String instancePath, @Context Request request );
 
 
 	/**
 	 * Lists the paths of the children of an instance.
+	 * <p>
+	 * The response's entity tag is the version of the application's model.
+	 * If the request's "If-None-Match" header matches it, the response's status is 304 (not modified).
+	 * </p>
+	 *
 	 * @param applicationName the application name
 	 * @param instancePath the instance path (optional, null to consider the application as the root)
-	 * @return a non-null list
+	 * @param request the request (used to evaluate preconditions, can be null)
+	 * @return a response whose entity is a non-null list of instances
 	 */
 	@GET
 	@Path( "/all-children" + OPTIONAL_INSTANCE_PATH )
 	@Produces( MediaType.APPLICATION_JSON )
-	List<Instance> listAllChildrenInstances( @PathParam("name") String applicationName, @PathParam("instancePath") String instancePath );
+	Response listAllChildrenInstances( @PathParam("name") String applicationName, @PathParam("instancePath") String instancePath, @Context Request request );
+
+
+	/**
+	 * Lists the instances that were added or modified (status, imports, data) since a given version.
+	 * <p>
+	 * The version is the entity tag returned by this operation or by the listing ones.
+	 * The response's entity tag is the new version of the application's model.
+	 * </p>
+	 * <p>
+	 * If the changes cannot be determined, e.g. because instances were removed since this version,
+	 * the response's status is 410 (gone). All the instances must then be listed again.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param sinceVersion the version of the model the client knows
+	 * @return a response whose entity is a non-null list of instances
+	 */
+	@GET
+	@Path( "/changes" )
+	@Produces( MediaType.APPLICATION_JSON )
+	Response listChangedInstances( @PathParam("name") String applicationName, @QueryParam("since") long sinceVersion );
+
+
+	/**
+	 * Subscribes to the modifications of the application's instances.
+	 * <p>
+	 * Events are recorded from this call: clients should subscribe before listing the instances.
+	 * They are retrieved with {@link #pollEvents(String, String, long)}.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @return a response whose entity is the subscription ID (404 if the application does not exist)
+	 */
+	@POST
+	@Path( "/events" )
+	@Produces( MediaType.TEXT_PLAIN )
+	Response subscribeToEvents( @PathParam("name") String applicationName );
+
+
+	/**
+	 * Waits for the modifications of the application's instances (long polling).
+	 * <p>
+	 * The response is sent as soon as events are available, or at the end of the timeout
+	 * (with an empty list). Events are removed once they were sent, and clients should poll
+	 * again immediately. If a client does not poll fast enough, the oldest events are lost
+	 * and the list starts with a RESYNC event: all the instances must then be listed again.
+	 * </p>
+	 * <p>
+	 * If the subscription does not exist, or if it expired, the response's status is 404.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param subscriptionId the subscription ID
+	 * @param timeout the maximum delay to wait for events, in milliseconds (at most 60 seconds)
+	 * @return a response whose entity is a non-null list of instance events
+	 */
+	@GET
+	@Path( "/events/{subscriptionId}" )
+	@Produces( MediaType.APPLICATION_JSON )
+	Response pollEvents(
+			@PathParam("name") String applicationName,
+			@PathParam("subscriptionId") String subscriptionId,
+			@QueryParam("timeout") @DefaultValue("20000") long timeout );
+
+
+	/**
+	 * Cancels a subscription to the modifications of the application's instances.
+	 * @param applicationName the application name
+	 * @param subscriptionId the subscription ID
+	 * @return a response (404 if the subscription does not exist)
+	 */
+	@DELETE
+	@Path( "/events/{subscriptionId}" )
+	Response unsubscribeFromEvents( @PathParam("name") String applicationName, @PathParam("subscriptionId") String subscriptionId );
 
 
 	/**
@@ -17,7 +17,6 @@
 package net.roboconf.dm.rest.api;
 
 import java.io.InputStream;
-import java.util.List;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
@@ -26,10 +25,11 @@ import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
 
-import net.roboconf.core.model.runtime.Application;
 import net.roboconf.dm.rest.UrlConstants;
 
 import com.sun.jersey.core.header.FormDataContentDisposition;
@@ -84,11 +84,17 @@ public interface IManagementWs {
 
 	/**
 	 * Lists the applications.
-	 * @return a non-null list
+	 * <p>
+	 * The response's entity tag changes when applications are added, removed or modified.
+	 * If the request's "If-None-Match" header matches it, the response's status is 304 (not modified).
+	 * </p>
+	 *
+	 * @param request the request (used to evaluate preconditions, can be null)
+	 * @return a response whose entity is a non-null list of applications
 	 */
 	@GET
 	@Produces( MediaType.APPLICATION_JSON )
-	List<Application> listApplications();
+	Response listApplications( @Context Request request );
 
 	/**
 	 * Gets the model of an application (model files in a ZIP archive).
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.rest.events;
+
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+
+/**
+ * An event about an instance, pushed by the DM to the clients that subscribed to an application.
+ * @author Vincent Zurczak - Linagora
+ */
+public class InstanceEvent {
+
+	/**
+	 * The kinds of events.
+	 */
+	public enum Kind {
+
+		/**
+		 * The status of an instance changed.
+		 */
+		STATUS_CHANGED,
+
+		/**
+		 * The imports of an instance changed.
+		 */
+		IMPORTS_CHANGED,
+
+		/**
+		 * An instance was added (with its children).
+		 */
+		INSTANCE_ADDED,
+
+		/**
+		 * An instance was removed (with its children).
+		 */
+		INSTANCE_REMOVED,
+
+		/**
+		 * Events were lost: the client must read all the instances again.
+		 */
+		RESYNC;
+
+
+		/**
+		 * A secured alternative to {@link Kind#valueOf(String)}.
+		 * @param s a string (can be null)
+		 * @return the associated kind, or null if it does not match any
+		 */
+		public static Kind whichKind( String s ) {
+
+			Kind result = null;
+			for( Kind kind : Kind.values()) {
+				if( kind.toString().equalsIgnoreCase( s )) {
+					result = kind;
+					break;
+				}
+			}
+
+			return result;
+		}
+	}
+
+
+	private Kind kind;
+	private String instancePath;
+	private InstanceStatus status;
+
+
+	/**
+	 * Constructor.
+	 */
+	public InstanceEvent() {
+		// nothing
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param kind the kind of event
+	 * @param instancePath the instance path (null for {@link Kind#RESYNC})
+	 * @param status the status of the instance when the event occurred (can be null)
+	 */
+	public InstanceEvent( Kind kind, String instancePath, InstanceStatus status ) {
+		this.kind = kind;
+		this.instancePath = instancePath;
+		this.status = status;
+	}
+
+
+	/**
+	 * @return the kind
+	 */
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	/**
+	 * @param kind the kind to set
+	 */
+	public void setKind( Kind kind ) {
+		this.kind = kind;
+	}
+
+	/**
+	 * @return the instance path
+	 */
+	public String getInstancePath() {
+		return this.instancePath;
+	}
+
+	/**
+	 * @param instancePath the instance path to set
+	 */
+	public void setInstancePath( String instancePath ) {
+		this.instancePath = instancePath;
+	}
+
+	/**
+	 * @return the status
+	 */
+	public InstanceStatus getStatus() {
+		return this.status;
+	}
+
+	/**
+	 * @param status the status to set
+	 */
+	public void setStatus( InstanceStatus status ) {
+		this.status = status;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return this.kind + " " + this.instancePath + " " + this.status;
+	}
+}
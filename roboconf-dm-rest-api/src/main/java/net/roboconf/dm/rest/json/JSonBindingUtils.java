@@ -17,6 +17,7 @@
 package net.roboconf.dm.rest.json;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import net.roboconf.core.model.runtime.Application;
@@ -24,6 +25,8 @@ import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.core.model.runtime.Instance.InstanceStatus;
 import net.roboconf.dm.rest.RestUtils;
+import net.roboconf.dm.rest.events.InstanceEvent;
+import net.roboconf.dm.rest.events.InstanceEvent.Kind;
 
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
@@ -59,6 +62,10 @@ public class JSonBindingUtils {
 	private static final String COMP_ALIAS = "alias";
 	private static final String COMP_INSTALLER = "installer";
 
+	private static final String EVENT_KIND = "kind";
+	private static final String EVENT_PATH = "path";
+	private static final String EVENT_STATUS = "status";
+
 
 	/**
 	 * Creates a mapper with specific binding for Roboconf types.
@@ -80,6 +87,9 @@ public class JSonBindingUtils {
 		module.addSerializer( Component.class, new ComponentSerializer());
 		module.addDeserializer( Component.class, new ComponentDeserializer());
 
+		module.addSerializer( InstanceEvent.class, new InstanceEventSerializer());
+		module.addDeserializer( InstanceEvent.class, new InstanceEventDeserializer());
+
 		mapper.registerModule( module );
 		return mapper;
 	}
@@ -172,11 +182,17 @@ public class JSonBindingUtils {
 
 			// Write some meta-data (useful for web clients).
 			// De-serializing this information is useless for the moment.
-			if( ! instance.getData().isEmpty()) {
+			// The data may be modified while the instance is serialized.
+			Map<String,String> data;
+			synchronized( instance.getData()) {
+				data = new LinkedHashMap<String,String>( instance.getData());
+			}
+
+			if( ! data.isEmpty()) {
 
 				generator.writeFieldName( INST_DATA );
 				generator.writeStartObject();
-				for( Map.Entry<String,String> entry : instance.getData().entrySet())
+				for( Map.Entry<String,String> entry : data.entrySet())
 					generator.writeObjectField( entry.getKey(), entry.getValue());
 
 				generator.writeEndObject();
@@ -280,4 +296,64 @@ public class JSonBindingUtils {
 			return component;
 		}
 	}
+
+
+	/**
+	 * A JSon serializer for instance events.
+	 * <p>
+	 * Like for instances, paths are written in their RESTful form.
+	 * </p>
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	public static class InstanceEventSerializer extends JsonSerializer<InstanceEvent> {
+
+		@Override
+		public void serialize(
+				InstanceEvent event,
+				JsonGenerator generator,
+				SerializerProvider provider )
+		throws IOException {
+
+			generator.writeStartObject();
+			if( event.getKind() != null )
+				generator.writeStringField( EVENT_KIND, String.valueOf( event.getKind()));
+
+			if( event.getInstancePath() != null )
+				generator.writeStringField( EVENT_PATH, RestUtils.toRestfulPath( event.getInstancePath()));
+
+			if( event.getStatus() != null )
+				generator.writeStringField( EVENT_STATUS, String.valueOf( event.getStatus()));
+
+			generator.writeEndObject();
+		}
+	}
+
+
+	/**
+	 * A JSon deserializer for instance events.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	public static class InstanceEventDeserializer extends JsonDeserializer<InstanceEvent> {
+
+		@Override
+		public InstanceEvent deserialize( JsonParser parser, DeserializationContext context ) throws IOException {
+
+			ObjectCodec oc = parser.getCodec();
+	        JsonNode node = oc.readTree( parser );
+	        InstanceEvent event = new InstanceEvent();
+
+	        JsonNode n;
+	        if(( n = node.get( EVENT_KIND )) != null )
+	        	event.setKind( Kind.whichKind( n.textValue()));
+
+	        if(( n = node.get( EVENT_PATH )) != null )
+	        	event.setInstancePath( RestUtils.fromRestfulPath( n.textValue()));
+
+	        if(( n = node.get( EVENT_STATUS )) != null )
+	        	event.setStatus( InstanceStatus.wichStatus( n.textValue()));
+
+			return event;
+		}
+	}
 }
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.rest.json;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * An immutable list whose JSon representation is rendered once and then cached.
+ * <p>
+ * Such lists are meant to be returned by REST resources whose result does not change until
+ * the model is modified. The same list can then be sent to many clients without being
+ * serialized again (see {@link JSonCachedListWriter}). The elements must not be modified
+ * after the list was created.
+ * </p>
+ *
+ * @param <T> the type of the elements
+ * @author Vincent Zurczak - Linagora
+ */
+public class JSonCachedList<T> extends AbstractList<T> implements RandomAccess {
+
+	private final List<T> elements;
+	private byte[] json;
+
+
+	/**
+	 * Constructor.
+	 * @param elements the elements (copied)
+	 */
+	public JSonCachedList( Collection<? extends T> elements ) {
+		this.elements = new ArrayList<T>( elements );
+	}
+
+
+	@Override
+	public T get( int index ) {
+		return this.elements.get( index );
+	}
+
+
+	@Override
+	public int size() {
+		return this.elements.size();
+	}
+
+
+	/**
+	 * Gets the JSon representation of this list.
+	 * <p>
+	 * It is rendered the first time this method is invoked. The following invocations
+	 * return the same array, whatever the mapper. Callers must not modify it.
+	 * </p>
+	 *
+	 * @param mapper the mapper to render the list with (not null)
+	 * @return the JSon representation, as UTF-8 bytes
+	 * @throws IOException if the list could not be serialized
+	 */
+	public synchronized byte[] toJson( ObjectMapper mapper ) throws IOException {
+
+		if( this.json == null )
+			this.json = mapper.writeValueAsBytes( this.elements );
+
+		return this.json;
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.rest.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Writes the cached JSon representation of a {@link JSonCachedList}.
+ * @author Vincent Zurczak - Linagora
+ */
+@Provider
+@Produces( MediaType.APPLICATION_JSON )
+public class JSonCachedListWriter implements MessageBodyWriter<JSonCachedList<?>> {
+
+	private final ObjectMapper mapper = JSonBindingUtils.createObjectMapper();
+
+
+	@Override
+	public boolean isWriteable( Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType ) {
+		return JSonCachedList.class.isAssignableFrom( type );
+	}
+
+
+	@Override
+	public long getSize( JSonCachedList<?> list, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType ) {
+
+		long result;
+		try {
+			result = list.toJson( this.mapper ).length;
+
+		} catch( IOException e ) {
+			// The error will be reported by writeTo
+			result = -1;
+		}
+
+		return result;
+	}
+
+
+	@Override
+	public void writeTo(
+			JSonCachedList<?> list,
+			Class<?> type,
+			Type genericType,
+			Annotation[] annotations,
+			MediaType mediaType,
+			MultivaluedMap<String,Object> httpHeaders,
+			OutputStream entityStream )
+	throws IOException, WebApplicationException {
+
+		entityStream.write( list.toJson( this.mapper ));
+	}
+}
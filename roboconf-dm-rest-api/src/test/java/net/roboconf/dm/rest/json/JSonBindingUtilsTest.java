@@ -24,6 +24,8 @@ import net.roboconf.core.model.runtime.Application;
 import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.dm.rest.events.InstanceEvent;
+import net.roboconf.dm.rest.events.InstanceEvent.Kind;
 
 import org.junit.Test;
 
@@ -266,4 +268,42 @@ public class JSonBindingUtilsTest {
 
 		Assert.assertEquals( result, s );
 	}
+
+
+	@Test
+	public void testInstanceEventBinding_1() throws Exception {
+
+		final String result = "{\"kind\":\"STATUS_CHANGED\",\"path\":\"|vm|server\",\"status\":\"DEPLOYED_STARTED\"}";
+		ObjectMapper mapper = JSonBindingUtils.createObjectMapper();
+		InstanceEvent event = new InstanceEvent( Kind.STATUS_CHANGED, "/vm/server", InstanceStatus.DEPLOYED_STARTED );
+
+		StringWriter writer = new StringWriter();
+		mapper.writeValue( writer, event );
+		String s = writer.toString();
+
+		Assert.assertEquals( result, s );
+		InstanceEvent readEvent = mapper.readValue( result, InstanceEvent.class );
+		Assert.assertEquals( Kind.STATUS_CHANGED, readEvent.getKind());
+		Assert.assertEquals( "/vm/server", readEvent.getInstancePath());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, readEvent.getStatus());
+	}
+
+
+	@Test
+	public void testInstanceEventBinding_2() throws Exception {
+
+		final String result = "{\"kind\":\"RESYNC\"}";
+		ObjectMapper mapper = JSonBindingUtils.createObjectMapper();
+		InstanceEvent event = new InstanceEvent( Kind.RESYNC, null, null );
+
+		StringWriter writer = new StringWriter();
+		mapper.writeValue( writer, event );
+		String s = writer.toString();
+
+		Assert.assertEquals( result, s );
+		InstanceEvent readEvent = mapper.readValue( result, InstanceEvent.class );
+		Assert.assertEquals( Kind.RESYNC, readEvent.getKind());
+		Assert.assertNull( readEvent.getInstancePath());
+		Assert.assertNull( readEvent.getStatus());
+	}
 }
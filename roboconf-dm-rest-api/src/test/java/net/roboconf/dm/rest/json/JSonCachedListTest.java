@@ -0,0 +1,87 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.rest.json;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class JSonCachedListTest {
+
+	@Test
+	public void testRenderingIsCached() throws Exception {
+
+		List<Instance> instances = new ArrayList<Instance> ();
+		for( int i=0; i<3; i++ ) {
+			Instance inst = new Instance( "inst " + i );
+			inst.setStatus( InstanceStatus.DEPLOYED_STARTED );
+			inst.setComponent( new Component( "comp" ));
+			instances.add( inst );
+		}
+
+		ObjectMapper mapper = JSonBindingUtils.createObjectMapper();
+		JSonCachedList<Instance> list = new JSonCachedList<Instance>( instances );
+		Assert.assertEquals( instances, list );
+
+		// The list is copied
+		instances.clear();
+		Assert.assertEquals( 3, list.size());
+
+		byte[] json = list.toJson( mapper );
+		Assert.assertEquals( mapper.writeValueAsString( new ArrayList<Instance>( list )), new String( json, "UTF-8" ));
+		Assert.assertSame( json, list.toJson( mapper ));
+	}
+
+
+	@Test
+	public void testWriter() throws Exception {
+
+		List<Instance> instances = new ArrayList<Instance> ();
+		instances.add( new Instance( "inst" ));
+		JSonCachedList<Instance> list = new JSonCachedList<Instance>( instances );
+
+		JSonCachedListWriter writer = new JSonCachedListWriter();
+		Assert.assertTrue( writer.isWriteable( JSonCachedList.class, null, null, null ));
+		Assert.assertFalse( writer.isWriteable( ArrayList.class, null, null, null ));
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		writer.writeTo( list, JSonCachedList.class, null, null, null, null, os );
+		Assert.assertEquals( writer.getSize( list, JSonCachedList.class, null, null, null ), os.size());
+
+		String expected = JSonBindingUtils.createObjectMapper().writeValueAsString( instances );
+		Assert.assertEquals( expected, os.toString( "UTF-8" ));
+	}
+
+
+	@Test( expected = UnsupportedOperationException.class )
+	public void testListIsImmutable() {
+		new JSonCachedList<Instance>( new ArrayList<Instance> ()).add( new Instance( "inst" ));
+	}
+}
@@ -0,0 +1,210 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.rest.client;
+
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.ws.rs.core.Response.Status;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.dm.rest.client.delegates.ApplicationWsDelegate;
+import net.roboconf.dm.rest.client.exceptions.ApplicationException;
+import net.roboconf.dm.rest.events.InstanceEvent;
+import net.roboconf.dm.rest.events.InstanceEvent.Kind;
+
+/**
+ * A subscription to the modifications of the instances of an application.
+ * <p>
+ * A daemon thread polls the DM and forwards the events to a listener. When events were lost,
+ * or when the subscription expired on the DM (it is then renewed), the listener is asked to
+ * list all the instances again. Network errors are retried after {@link #RETRY_DELAY}.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class EventSubscription {
+
+	public static final long POLL_TIMEOUT = 20000;
+	public static final long RETRY_DELAY = 5000;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final ApplicationWsDelegate delegate;
+	private final String applicationName;
+	private final IInstanceEventListener listener;
+	private final Thread thread;
+
+	private volatile String subscriptionId;
+	private boolean cancelled = false;
+
+
+	/**
+	 * Constructor.
+	 * <p>
+	 * The subscription is made on the DM, but events are only polled once {@link #start()} was invoked.
+	 * </p>
+	 *
+	 * @param delegate the delegate to use to poll the DM
+	 * @param applicationName the application name
+	 * @param listener the listener to notify (not null)
+	 * @throws ApplicationException if the subscription failed (e.g. the application does not exist)
+	 */
+	public EventSubscription( ApplicationWsDelegate delegate, String applicationName, IInstanceEventListener listener )
+	throws ApplicationException {
+
+		this.delegate = delegate;
+		this.applicationName = applicationName;
+		this.listener = listener;
+		this.subscriptionId = delegate.subscribeToEvents( applicationName );
+
+		this.thread = new Thread( "Roboconf - Events of " + applicationName ) {
+			@Override
+			public void run() {
+				pollEvents();
+			}
+		};
+
+		this.thread.setDaemon( true );
+	}
+
+
+	/**
+	 * Starts polling the events.
+	 */
+	public void start() {
+		this.thread.start();
+	}
+
+
+	/**
+	 * Cancels this subscription.
+	 * <p>
+	 * The listener may still be notified about events that were being processed.
+	 * </p>
+	 */
+	public void cancel() {
+
+		synchronized( this ) {
+			this.cancelled = true;
+			notifyAll();
+		}
+
+		try {
+			this.delegate.unsubscribeFromEvents( this.applicationName, this.subscriptionId );
+
+		} catch( ApplicationException e ) {
+			this.logger.finer( "The subscription to the events of " + this.applicationName + " was already closed." );
+
+		} catch( RuntimeException e ) {
+			this.logger.warning( "The subscription to the events of " + this.applicationName + " could not be cancelled. " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+		}
+	}
+
+
+	/**
+	 * @return true if this subscription was cancelled or lost, false otherwise
+	 */
+	public synchronized boolean isCancelled() {
+		return this.cancelled;
+	}
+
+
+	/**
+	 * @return the application name
+	 */
+	public String getApplicationName() {
+		return this.applicationName;
+	}
+
+
+	private void pollEvents() {
+
+		while( ! isCancelled()) {
+			try {
+				List<InstanceEvent> events = this.delegate.pollEvents( this.applicationName, this.subscriptionId, POLL_TIMEOUT );
+				for( InstanceEvent event : events )
+					notifyListener( event );
+
+			} catch( ApplicationException e ) {
+				if( isCancelled())
+					break;
+
+				if( e.getResponseStatus() == Status.NOT_FOUND.getStatusCode())
+					renewSubscription();
+				else
+					retryLater( e );
+
+			} catch( RuntimeException e ) {
+				retryLater( e );
+			}
+		}
+	}
+
+
+	private void notifyListener( InstanceEvent event ) {
+
+		try {
+			if( event.getKind() == Kind.RESYNC )
+				this.listener.resyncRequired( this.applicationName );
+			else
+				this.listener.instanceChanged( this.applicationName, event );
+
+		} catch( RuntimeException e ) {
+			this.logger.severe( "An event listener failed for " + this.applicationName + ". " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+		}
+	}
+
+
+	private void renewSubscription() {
+
+		this.logger.fine( "The subscription to the events of " + this.applicationName + " expired. Subscribing again..." );
+		try {
+			this.subscriptionId = this.delegate.subscribeToEvents( this.applicationName );
+			this.listener.resyncRequired( this.applicationName );
+
+		} catch( ApplicationException e ) {
+			this.logger.warning( "The subscription to the events of " + this.applicationName + " was lost. " + e.getMessage());
+			synchronized( this ) {
+				this.cancelled = true;
+			}
+
+			this.listener.subscriptionLost( this.applicationName );
+		}
+	}
+
+
+	private void retryLater( Exception e ) {
+
+		this.logger.warning( "The events of " + this.applicationName + " could not be retrieved. " + e.getMessage());
+		this.logger.finest( Utils.writeException( e ));
+		try {
+			synchronized( this ) {
+				if( ! this.cancelled )
+					wait( RETRY_DELAY );
+			}
+
+		} catch( InterruptedException ie ) {
+			Thread.currentThread().interrupt();
+			synchronized( this ) {
+				this.cancelled = true;
+			}
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.rest.client;
+
+import net.roboconf.dm.rest.events.InstanceEvent;
+
+/**
+ * A listener for the modifications of the instances of an application.
+ * <p>
+ * Listeners are invoked from the polling thread of their subscription (see {@link EventSubscription}).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IInstanceEventListener {
+
+	/**
+	 * Notifies that an instance was modified, added or removed.
+	 * @param applicationName the application name
+	 * @param event the event (never a RESYNC one)
+	 */
+	void instanceChanged( String applicationName, InstanceEvent event );
+
+	/**
+	 * Notifies that events were lost: all the instances must be listed again.
+	 * @param applicationName the application name
+	 */
+	void resyncRequired( String applicationName );
+
+	/**
+	 * Notifies that the subscription could not be renewed (e.g. the application was removed).
+	 * <p>
+	 * No other notification will be received.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 */
+	void subscriptionLost( String applicationName );
+}
@@ -0,0 +1,71 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.rest.client;
+
+import java.util.List;
+
+/**
+ * A list returned by the DM, with the version of the model it was read from.
+ * <p>
+ * When the client already had the latest version, the DM does not send the list again:
+ * {@link #isModified()} returns false and {@link #getItems()} returns null.
+ * </p>
+ *
+ * @param <T> the type of the items
+ * @author Vincent Zurczak - Linagora
+ */
+public class VersionedList<T> {
+
+	private final List<T> items;
+	private final String version;
+
+
+	/**
+	 * Constructor.
+	 * @param items the items (null if the list was not modified)
+	 * @param version the version (can be null if the DM did not send it)
+	 */
+	public VersionedList( List<T> items, String version ) {
+		this.items = items;
+		this.version = version;
+	}
+
+
+	/**
+	 * @return the items (null if the list was not modified since the version the client had)
+	 */
+	public List<T> getItems() {
+		return this.items;
+	}
+
+
+	/**
+	 * @return the version, to send with the next request (can be null)
+	 */
+	public String getVersion() {
+		return this.version;
+	}
+
+
+	/**
+	 * @return true if the DM sent the items, false if the client already had this version
+	 */
+	public boolean isModified() {
+		return this.items != null;
+	}
+}
@@ -16,12 +16,16 @@
 
 package net.roboconf.dm.rest.client;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import net.roboconf.dm.rest.api.IApplicationWs;
 import net.roboconf.dm.rest.api.IInitWs;
 import net.roboconf.dm.rest.api.IManagementWs;
 import net.roboconf.dm.rest.client.delegates.ApplicationWsDelegate;
 import net.roboconf.dm.rest.client.delegates.InitWsDelegate;
 import net.roboconf.dm.rest.client.delegates.ManagementWsDelegate;
+import net.roboconf.dm.rest.client.exceptions.ApplicationException;
 import net.roboconf.dm.rest.json.ObjectMapperProvider;
 
 import com.sun.jersey.api.client.Client;
@@ -56,6 +60,10 @@ import com.sun.jersey.api.client.config.DefaultClientConfig;
  * Thrown exceptions contain the error code and the error message.
  * </p>
  * <p>
+ * Clients can be notified about the modifications of instances.
+ * See {@link #subscribeToEvents(String, IInstanceEventListener)}.
+ * </p>
+ * <p>
  * About the logging policy...<br />
  * Every client method logs an entry when it is invoked.
  * It logs a second entry once the REST invocation has completed, and provided a runtime
@@ -75,6 +83,7 @@ public class WsClient {
 	private final ManagementWsDelegate managementDelegate;
 
 	private final Client client;
+	private final List<EventSubscription> subscriptions = new ArrayList<EventSubscription> ();
 
 
 	/**
@@ -116,12 +125,51 @@ public class WsClient {
 
 	/**
 	 * Force the destruction of the JAX-RS client.
+	 * <p>
+	 * Subscriptions to events are cancelled first.
+	 * </p>
 	 */
 	public void destroy() {
+
+		List<EventSubscription> toCancel;
+		synchronized( this.subscriptions ) {
+			toCancel = new ArrayList<EventSubscription>( this.subscriptions );
+			this.subscriptions.clear();
+		}
+
+		for( EventSubscription subscription : toCancel )
+			subscription.cancel();
+
 		this.client.destroy();
 	}
 
 
+	/**
+	 * Subscribes to the modifications of the instances of an application.
+	 * <p>
+	 * Events are polled by a daemon thread and forwarded to the listener, until the
+	 * subscription is cancelled. To not miss any modification, clients should subscribe
+	 * first, and then list the instances.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param listener the listener to notify (not null)
+	 * @return the subscription, that can be cancelled (not null)
+	 * @throws ApplicationException if the subscription failed (e.g. the application does not exist)
+	 */
+	public EventSubscription subscribeToEvents( String applicationName, IInstanceEventListener listener )
+	throws ApplicationException {
+
+		EventSubscription result = new EventSubscription( this.applicationDelegate, applicationName, listener );
+		synchronized( this.subscriptions ) {
+			this.subscriptions.add( result );
+		}
+
+		result.start();
+		return result;
+	}
+
+
 	/**
 	 * @return the initDelegate
 	 */
@@ -20,6 +20,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response.Status.Family;
 
@@ -29,7 +31,9 @@ import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.dm.rest.RestUtils;
 import net.roboconf.dm.rest.UrlConstants;
+import net.roboconf.dm.rest.client.VersionedList;
 import net.roboconf.dm.rest.client.exceptions.ApplicationException;
+import net.roboconf.dm.rest.events.InstanceEvent;
 
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.ClientResponse.Status;
@@ -128,16 +132,7 @@ public class ApplicationWsDelegate {
 	public List<Instance> listChildrenInstances( String applicationName, String instancePath, boolean all ) {
 		this.logger.finer( "Listing children instances for " + instancePath + " in " + applicationName + "." );
 
-		WebResource path = this.resource.path( UrlConstants.APP ).path( applicationName );
-		if( all )
-			path = path.path( "all-children" );
-		else
-			path = path.path( "children" );
-
-		if( ! Utils.isEmptyOrWhitespaces( instancePath ))
-			path = path.path( "instance" ).path( RestUtils.toRestfulPath( instancePath ));
-
-		List<Instance> result = path
+		List<Instance> result = buildChildrenPath( applicationName, instancePath, all )
 				.accept( MediaType.APPLICATION_JSON )
 				.get( new GenericType<List<Instance>> () {});
 
@@ -150,6 +145,143 @@ public class ApplicationWsDelegate {
 	}
 
 
+	/**
+	 * Lists all the children of an instance, unless they did not change since a given version.
+	 * @param applicationName the application name
+	 * @param instancePath the instance path (null to get root instances)
+	 * @param all true to list indirect children too, false to only list direct children
+	 * @param knownVersion the version returned by a previous invocation (null to get the list in any case)
+	 * @return a non-null versioned list, whose items are null if they did not change since the known version
+	 * @throws ApplicationException if the DM returned an error
+	 */
+	public VersionedList<Instance> listChildrenInstances( String applicationName, String instancePath, boolean all, String knownVersion )
+	throws ApplicationException {
+
+		this.logger.finer( "Listing children instances for " + instancePath + " in " + applicationName + " (known version: " + knownVersion + ")." );
+		WebResource.Builder builder = buildChildrenPath( applicationName, instancePath, all ).accept( MediaType.APPLICATION_JSON );
+		if( knownVersion != null )
+			builder = builder.header( HttpHeaders.IF_NONE_MATCH, new EntityTag( knownVersion ).toString());
+
+		ClientResponse response = builder.get( ClientResponse.class );
+		return readVersionedInstances( response, knownVersion );
+	}
+
+
+	/**
+	 * Lists the instances that were added or modified since a given version.
+	 * <p>
+	 * When the DM cannot determine these changes (e.g. because instances were removed), an
+	 * exception is thrown with the 410 status (gone). All the instances must then be listed again,
+	 * e.g. with {@link #listChildrenInstances(String, String, boolean, String)}.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param sinceVersion the version returned by a previous invocation or listing (not null)
+	 * @return a non-null versioned list, with the current state of the modified instances
+	 * @throws ApplicationException if the DM returned an error (e.g. the changes are not available)
+	 */
+	public VersionedList<Instance> listChangedInstances( String applicationName, String sinceVersion )
+	throws ApplicationException {
+
+		this.logger.finer( "Listing the instances that changed since version " + sinceVersion + " in " + applicationName + "." );
+		ClientResponse response = this.resource
+				.path( UrlConstants.APP ).path( applicationName ).path( "changes" )
+				.queryParam( "since", sinceVersion )
+				.accept( MediaType.APPLICATION_JSON )
+				.get( ClientResponse.class );
+
+		return readVersionedInstances( response, sinceVersion );
+	}
+
+
+	/**
+	 * Subscribes to the modifications of the instances of an application.
+	 * <p>
+	 * Clients should subscribe before listing the instances, so that no modification is missed.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @return the subscription ID (not null)
+	 * @throws ApplicationException if the DM returned an error (e.g. the application does not exist)
+	 */
+	public String subscribeToEvents( String applicationName ) throws ApplicationException {
+
+		this.logger.finer( "Subscribing to the events of " + applicationName + "..." );
+		ClientResponse response = this.resource
+				.path( UrlConstants.APP ).path( applicationName ).path( "events" )
+				.accept( MediaType.TEXT_PLAIN )
+				.post( ClientResponse.class );
+
+		String value = response.getEntity( String.class );
+		if( Family.SUCCESSFUL != response.getStatusInfo().getFamily()) {
+			this.logger.finer( response.getStatusInfo() + ": " + value );
+			throw new ApplicationException( response.getStatusInfo().getStatusCode(), value );
+		}
+
+		this.logger.finer( String.valueOf( response.getStatusInfo()));
+		return value;
+	}
+
+
+	/**
+	 * Waits for the modifications of the instances of an application (long polling).
+	 * <p>
+	 * If events were lost, the list starts with a RESYNC event and all the instances must be listed again.
+	 * If the subscription expired, an exception is thrown with the 404 status (not found): the client
+	 * must subscribe again and list all the instances.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param subscriptionId the subscription ID
+	 * @param timeout the maximum delay to wait for events, in milliseconds
+	 * @return a non-null list of events (empty if the timeout was reached)
+	 * @throws ApplicationException if the DM returned an error
+	 */
+	public List<InstanceEvent> pollEvents( String applicationName, String subscriptionId, long timeout )
+	throws ApplicationException {
+
+		this.logger.finest( "Polling the events of " + applicationName + " (subscription " + subscriptionId + ")." );
+		ClientResponse response = this.resource
+				.path( UrlConstants.APP ).path( applicationName ).path( "events" ).path( subscriptionId )
+				.queryParam( "timeout", String.valueOf( timeout ))
+				.accept( MediaType.APPLICATION_JSON )
+				.get( ClientResponse.class );
+
+		if( Family.SUCCESSFUL != response.getStatusInfo().getFamily()) {
+			String value = response.getEntity( String.class );
+			this.logger.finer( response.getStatusInfo() + ": " + value );
+			throw new ApplicationException( response.getStatusInfo().getStatusCode(), value );
+		}
+
+		List<InstanceEvent> result = response.getEntity( new GenericType<List<InstanceEvent>> () {});
+		this.logger.finest( result.size() + " events were received." );
+		return result;
+	}
+
+
+	/**
+	 * Cancels a subscription to the modifications of the instances of an application.
+	 * @param applicationName the application name
+	 * @param subscriptionId the subscription ID
+	 * @throws ApplicationException if the DM returned an error (e.g. the subscription does not exist)
+	 */
+	public void unsubscribeFromEvents( String applicationName, String subscriptionId ) throws ApplicationException {
+
+		this.logger.finer( "Unsubscribing from the events of " + applicationName + " (subscription " + subscriptionId + ")." );
+		ClientResponse response = this.resource
+				.path( UrlConstants.APP ).path( applicationName ).path( "events" ).path( subscriptionId )
+				.delete( ClientResponse.class );
+
+		if( Family.SUCCESSFUL != response.getStatusInfo().getFamily()) {
+			String value = response.getEntity( String.class );
+			this.logger.finer( response.getStatusInfo() + ": " + value );
+			throw new ApplicationException( response.getStatusInfo().getStatusCode(), value );
+		}
+
+		this.logger.finer( String.valueOf( response.getStatusInfo()));
+	}
+
+
 	/**
 	 * Adds an instance into an application.
 	 * @param applicationName the application name
@@ -278,4 +410,43 @@ public class ApplicationWsDelegate {
 
 		return result;
 	}
+
+
+	private WebResource buildChildrenPath( String applicationName, String instancePath, boolean all ) {
+
+		WebResource path = this.resource.path( UrlConstants.APP ).path( applicationName );
+		if( all )
+			path = path.path( "all-children" );
+		else
+			path = path.path( "children" );
+
+		if( ! Utils.isEmptyOrWhitespaces( instancePath ))
+			path = path.path( "instance" ).path( RestUtils.toRestfulPath( instancePath ));
+
+		return path;
+	}
+
+
+	private VersionedList<Instance> readVersionedInstances( ClientResponse response, String knownVersion )
+	throws ApplicationException {
+
+		VersionedList<Instance> result;
+		if( Status.NOT_MODIFIED.getStatusCode() == response.getStatusInfo().getStatusCode()) {
+			this.logger.finer( "The instances did not change since version " + knownVersion + "." );
+			result = new VersionedList<Instance>( null, knownVersion );
+
+		} else if( Family.SUCCESSFUL != response.getStatusInfo().getFamily()) {
+			String value = response.getEntity( String.class );
+			this.logger.finer( response.getStatusInfo() + ": " + value );
+			throw new ApplicationException( response.getStatusInfo().getStatusCode(), value );
+
+		} else {
+			List<Instance> instances = response.getEntity( new GenericType<List<Instance>> () {});
+			String version = response.getEntityTag() != null ? response.getEntityTag().getValue() : null;
+			this.logger.finer( instances.size() + " instances were received (version: " + version + ")." );
+			result = new VersionedList<Instance>( instances, version );
+		}
+
+		return result;
+	}
 }
@@ -22,12 +22,16 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Logger;
 
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.Response.Status.Family;
 
 import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.runtime.Application;
 import net.roboconf.dm.rest.UrlConstants;
+import net.roboconf.dm.rest.client.VersionedList;
 import net.roboconf.dm.rest.client.exceptions.ManagementException;
 
 import com.sun.jersey.api.client.ClientHandlerException;
@@ -140,6 +144,41 @@ public class ManagementWsDelegate {
 	}
 
 
+	/**
+	 * Lists applications, unless they did not change since a given version.
+	 * @param knownVersion the version returned by a previous invocation (null to get the list in any case)
+	 * @return a non-null versioned list, whose items are null if they did not change since the known version
+	 * @throws ManagementException if a problem occurred with the applications management
+	 */
+	public VersionedList<Application> listApplications( String knownVersion ) throws ManagementException {
+		this.logger.finer( "Listing applications (known version: " + knownVersion + ")..." );
+
+		WebResource.Builder builder = this.resource.path( UrlConstants.APPLICATIONS ).accept( MediaType.APPLICATION_JSON );
+		if( knownVersion != null )
+			builder = builder.header( HttpHeaders.IF_NONE_MATCH, new EntityTag( knownVersion ).toString());
+
+		ClientResponse response = builder.get( ClientResponse.class );
+		VersionedList<Application> result;
+		if( Status.NOT_MODIFIED.getStatusCode() == response.getStatusInfo().getStatusCode()) {
+			this.logger.finer( "The applications did not change since version " + knownVersion + "." );
+			result = new VersionedList<Application>( null, knownVersion );
+
+		} else if( Family.SUCCESSFUL != response.getStatusInfo().getFamily()) {
+			String value = response.getEntity( String.class );
+			this.logger.finer( response.getStatusInfo() + ": " + value );
+			throw new ManagementException( response.getStatusInfo().getStatusCode(), value );
+
+		} else {
+			List<Application> applications = response.getEntity( new GenericType<List<Application>> () {});
+			String version = response.getEntityTag() != null ? response.getEntityTag().getValue() : null;
+			this.logger.finer( applications.size() + " applications were found on the DM (version: " + version + ")." );
+			result = new VersionedList<Application>( applications, version );
+		}
+
+		return result;
+	}
+
+
 	/**
 	 * Gets the model data for an application.
 	 * @param applicationName the application name
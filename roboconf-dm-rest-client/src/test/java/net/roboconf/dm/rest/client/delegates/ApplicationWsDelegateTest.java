@@ -20,6 +20,10 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.Response.Status;
 
 import junit.framework.Assert;
 import net.roboconf.core.actions.ApplicationAction;
@@ -28,14 +32,20 @@ import net.roboconf.core.model.helpers.ComponentHelpers;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
 import net.roboconf.dm.internal.TestApplication;
 import net.roboconf.dm.internal.TestIaasResolver;
 import net.roboconf.dm.internal.TestMessageServerClient;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.Manager;
+import net.roboconf.dm.rest.client.EventSubscription;
+import net.roboconf.dm.rest.client.IInstanceEventListener;
+import net.roboconf.dm.rest.client.VersionedList;
 import net.roboconf.dm.rest.client.WsClient;
 import net.roboconf.dm.rest.client.exceptions.ApplicationException;
 import net.roboconf.dm.rest.client.test.RestTestUtils;
+import net.roboconf.dm.rest.events.InstanceEvent;
+import net.roboconf.dm.rest.events.InstanceEvent.Kind;
 import net.roboconf.dm.utils.ResourceUtils;
 
 import org.junit.Before;
@@ -198,6 +208,171 @@ public class ApplicationWsDelegateTest extends JerseyTest {
 	}
 
 
+	@Test
+	public void testListChildrenInstances_versioned() throws Exception {
+
+		TestApplication app = new TestApplication();
+		Manager.INSTANCE.getAppNameToManagedApplication().put(
+				app.getName(),
+				new ManagedApplication( app, null, new TestMessageServerClient()));
+
+		WsClient client = RestTestUtils.buildWsClient();
+		VersionedList<Instance> instances = client.getApplicationDelegate().listChildrenInstances( app.getName(), null, true, null );
+		Assert.assertTrue( instances.isModified());
+		Assert.assertEquals( InstanceHelpers.getAllInstances( app ).size(), instances.getItems().size());
+		Assert.assertNotNull( instances.getVersion());
+
+		// Nothing changed
+		VersionedList<Instance> sameInstances = client.getApplicationDelegate().listChildrenInstances( app.getName(), null, true, instances.getVersion());
+		Assert.assertFalse( sameInstances.isModified());
+		Assert.assertNull( sameInstances.getItems());
+		Assert.assertEquals( instances.getVersion(), sameInstances.getVersion());
+
+		// Modify the model
+		app.getTomcat().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		Manager.INSTANCE.getModelNotifier().statusChanged( app.getName(), app.getTomcat());
+
+		VersionedList<Instance> newInstances = client.getApplicationDelegate().listChildrenInstances( app.getName(), null, true, instances.getVersion());
+		Assert.assertTrue( newInstances.isModified());
+		Assert.assertEquals( instances.getItems().size(), newInstances.getItems().size());
+		Assert.assertFalse( instances.getVersion().equals( newInstances.getVersion()));
+	}
+
+
+	@Test
+	public void testListChangedInstances() throws Exception {
+
+		TestApplication app = new TestApplication();
+		Manager.INSTANCE.getAppNameToManagedApplication().put(
+				app.getName(),
+				new ManagedApplication( app, null, new TestMessageServerClient()));
+
+		WsClient client = RestTestUtils.buildWsClient();
+		String version = client.getApplicationDelegate().listChildrenInstances( app.getName(), null, true, null ).getVersion();
+		VersionedList<Instance> changes = client.getApplicationDelegate().listChangedInstances( app.getName(), version );
+		Assert.assertEquals( 0, changes.getItems().size());
+		Assert.assertEquals( version, changes.getVersion());
+
+		// Only the modified instance is returned
+		app.getTomcat().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		Manager.INSTANCE.getModelNotifier().statusChanged( app.getName(), app.getTomcat());
+
+		changes = client.getApplicationDelegate().listChangedInstances( app.getName(), version );
+		Assert.assertEquals( 1, changes.getItems().size());
+		Assert.assertEquals( app.getTomcat().getName(), changes.getItems().get( 0 ).getName());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, changes.getItems().get( 0 ).getStatus());
+		Assert.assertEquals( 0, client.getApplicationDelegate().listChangedInstances( app.getName(), changes.getVersion()).getItems().size());
+
+		// After a removal, all the instances must be listed again
+		String warPath = InstanceHelpers.computeInstancePath( app.getWar());
+		InstanceHelpers.removeInstance( app, app.getWar());
+		Manager.INSTANCE.getModelNotifier().instanceRemoved( app.getName(), warPath );
+		try {
+			client.getApplicationDelegate().listChangedInstances( app.getName(), changes.getVersion());
+			Assert.fail( "The changes should not be available." );
+
+		} catch( ApplicationException e ) {
+			Assert.assertEquals( Status.GONE.getStatusCode(), e.getResponseStatus());
+		}
+
+		// Unknown application
+		try {
+			client.getApplicationDelegate().listChangedInstances( "inexisting", version );
+			Assert.fail( "The application should not be found." );
+
+		} catch( ApplicationException e ) {
+			Assert.assertEquals( Status.NOT_FOUND.getStatusCode(), e.getResponseStatus());
+		}
+	}
+
+
+	@Test
+	public void testEvents() throws Exception {
+
+		TestApplication app = new TestApplication();
+		Manager.INSTANCE.getAppNameToManagedApplication().put(
+				app.getName(),
+				new ManagedApplication( app, null, new TestMessageServerClient()));
+
+		WsClient client = RestTestUtils.buildWsClient();
+		String id = client.getApplicationDelegate().subscribeToEvents( app.getName());
+		Assert.assertEquals( 0, client.getApplicationDelegate().pollEvents( app.getName(), id, 0 ).size());
+
+		app.getTomcat().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		Manager.INSTANCE.getModelNotifier().statusChanged( app.getName(), app.getTomcat());
+
+		List<InstanceEvent> events = client.getApplicationDelegate().pollEvents( app.getName(), id, 0 );
+		Assert.assertEquals( 1, events.size());
+		Assert.assertEquals( Kind.STATUS_CHANGED, events.get( 0 ).getKind());
+		Assert.assertEquals( InstanceHelpers.computeInstancePath( app.getTomcat()), events.get( 0 ).getInstancePath());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, events.get( 0 ).getStatus());
+
+		// Once closed, the subscription cannot be polled anymore
+		client.getApplicationDelegate().unsubscribeFromEvents( app.getName(), id );
+		try {
+			client.getApplicationDelegate().pollEvents( app.getName(), id, 0 );
+			Assert.fail( "The subscription should not be found." );
+
+		} catch( ApplicationException e ) {
+			Assert.assertEquals( Status.NOT_FOUND.getStatusCode(), e.getResponseStatus());
+		}
+
+		// Unknown application
+		try {
+			client.getApplicationDelegate().subscribeToEvents( "inexisting" );
+			Assert.fail( "The application should not be found." );
+
+		} catch( ApplicationException e ) {
+			Assert.assertEquals( Status.NOT_FOUND.getStatusCode(), e.getResponseStatus());
+		}
+	}
+
+
+	@Test( timeout = 20000 )
+	public void testEventSubscription() throws Exception {
+
+		TestApplication app = new TestApplication();
+		Manager.INSTANCE.getAppNameToManagedApplication().put(
+				app.getName(),
+				new ManagedApplication( app, null, new TestMessageServerClient()));
+
+		final CountDownLatch latch = new CountDownLatch( 1 );
+		final List<InstanceEvent> receivedEvents = new ArrayList<InstanceEvent> ();
+		IInstanceEventListener listener = new IInstanceEventListener() {
+			@Override
+			public void instanceChanged( String applicationName, InstanceEvent event ) {
+				receivedEvents.add( event );
+				latch.countDown();
+			}
+
+			@Override
+			public void resyncRequired( String applicationName ) {
+				Assert.fail( "No resync was expected." );
+			}
+
+			@Override
+			public void subscriptionLost( String applicationName ) {
+				Assert.fail( "The subscription should not be lost." );
+			}
+		};
+
+		WsClient client = RestTestUtils.buildWsClient();
+		EventSubscription subscription = client.subscribeToEvents( app.getName(), listener );
+		Assert.assertFalse( subscription.isCancelled());
+
+		app.getMySql().setStatus( InstanceStatus.STARTING );
+		Manager.INSTANCE.getModelNotifier().statusChanged( app.getName(), app.getMySql());
+		Assert.assertTrue( latch.await( 10, TimeUnit.SECONDS ));
+
+		Assert.assertEquals( 1, receivedEvents.size());
+		Assert.assertEquals( InstanceHelpers.computeInstancePath( app.getMySql()), receivedEvents.get( 0 ).getInstancePath());
+		Assert.assertEquals( InstanceStatus.STARTING, receivedEvents.get( 0 ).getStatus());
+
+		subscription.cancel();
+		Assert.assertTrue( subscription.isCancelled());
+	}
+
+
 	@Test
 	public void testListAllComponents() throws Exception {
 
@@ -24,6 +24,7 @@ import net.roboconf.dm.internal.TestApplication;
 import net.roboconf.dm.internal.TestMessageServerClient;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.Manager;
+import net.roboconf.dm.rest.client.VersionedList;
 import net.roboconf.dm.rest.client.WsClient;
 import net.roboconf.dm.rest.client.exceptions.ManagementException;
 import net.roboconf.dm.rest.client.test.RestTestUtils;
@@ -92,6 +93,31 @@ public class ManagementWsDelegateTest extends JerseyTest {
 	}
 
 
+	@Test
+	public void testListApplications_versioned() throws Exception {
+
+		WsClient client = RestTestUtils.buildWsClient();
+		VersionedList<Application> apps = client.getManagementDelegate().listApplications( null );
+		Assert.assertTrue( apps.isModified());
+		Assert.assertEquals( 0, apps.getItems().size());
+
+		VersionedList<Application> sameApps = client.getManagementDelegate().listApplications( apps.getVersion());
+		Assert.assertFalse( sameApps.isModified());
+		Assert.assertEquals( apps.getVersion(), sameApps.getVersion());
+
+		TestApplication app = new TestApplication();
+		Manager.INSTANCE.getAppNameToManagedApplication().put(
+				app.getName(),
+				new ManagedApplication( app, null, new TestMessageServerClient()));
+
+		VersionedList<Application> newApps = client.getManagementDelegate().listApplications( apps.getVersion());
+		Assert.assertTrue( newApps.isModified());
+		Assert.assertEquals( 1, newApps.getItems().size());
+		Assert.assertEquals( app.getName(), newApps.getItems().get( 0 ).getName());
+		Assert.assertFalse( client.getManagementDelegate().listApplications( newApps.getVersion()).isModified());
+	}
+
+
 	@Test
 	public void testShutdownApplication_success() throws Exception {
 
@@ -16,9 +16,14 @@
 
 package net.roboconf.dm.webapp.listener;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
+import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.dm.management.Manager;
 
 /**
@@ -26,9 +31,25 @@ import net.roboconf.dm.management.Manager;
  */
 public class ServletContextListenerImpl implements ServletContextListener {
 
+	/**
+	 * The system property that indicates where the DM's state is stored.
+	 */
+	public static final String STATE_DIRECTORY_PROPERTY = "roboconf.dm.state.directory";
+
+
 	@Override
 	public void contextInitialized( ServletContextEvent sce ) {
-		// nothing
+
+		String defaultDirectory = new File( System.getProperty( "java.io.tmpdir" ), "roboconf-dm-state" ).getAbsolutePath();
+		File stateDirectory = new File( System.getProperty( STATE_DIRECTORY_PROPERTY, defaultDirectory ));
+		try {
+			Manager.INSTANCE.restoreState( stateDirectory );
+
+		} catch( IOException e ) {
+			Logger logger = Logger.getLogger( getClass().getName());
+			logger.severe( "The DM's state could not be restored from " + stateDirectory + ". " + e.getMessage());
+			logger.finest( Utils.writeException( e ));
+		}
 	}
 
 
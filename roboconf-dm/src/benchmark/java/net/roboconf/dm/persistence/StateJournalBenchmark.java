@@ -0,0 +1,129 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.dm.persistence.DmState.ApplicationState;
+import net.roboconf.dm.persistence.DmState.InstanceState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the recovery of the DM's state from its journal.
+ * <p>
+ * Every machine has 4 children, so that 10,000 machines make 50,000 instances.
+ * The recovery of such an application is expected to take less than a second.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class StateJournalBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int machinesCount;
+
+	private File dir;
+
+
+	@Setup
+	public void writeJournal() throws Exception {
+
+		final DmState initialState = new DmState();
+		ApplicationState appState = new ApplicationState( "big-app", "/some/dir" );
+		initialState.getNameToApplication().put( appState.getName(), appState );
+		for( int i=0; i<this.machinesCount; i++ ) {
+			InstanceState vm = new InstanceState( "vm" + i, "vm" );
+			vm.status = InstanceStatus.DEPLOYED_STARTED;
+			vm.data.put( Instance.MACHINE_ID, "i-" + i );
+			vm.data.put( Instance.IP_ADDRESS, "10.0." + i / 256 + "." + i % 256 );
+			appState.addInstance( null, vm );
+
+			for( int j=0; j<4; j++ ) {
+				InstanceState server = new InstanceState( "server" + j, "tomcat" );
+				server.status = InstanceStatus.DEPLOYED_STARTED;
+				appState.addInstance( "/vm" + i, server );
+			}
+		}
+
+		this.dir = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_benchmark_state_journal" );
+		if( this.dir.exists())
+			Utils.deleteFilesRecursively( this.dir );
+
+		// Starting the journal takes a snapshot
+		StateJournal journal = new StateJournal();
+		journal.recover( this.dir );
+		journal.start( new StateJournal.StateProvider() {
+			@Override
+			public DmState captureState() {
+				return initialState;
+			}
+		});
+
+		journal.messageServerIpChanged( "127.0.0.1" );
+		journal.sync( 60000 );
+		journal.close();
+	}
+
+
+	@TearDown
+	public void deleteJournal() throws IOException {
+		Utils.deleteFilesRecursively( this.dir );
+	}
+
+
+	@Benchmark
+	public DmState recover() throws IOException {
+		return new StateJournal().recover( this.dir );
+	}
+
+
+	/**
+	 * Runs the benchmark.
+	 * @param args
+	 * @throws RunnerException
+	 */
+	public static void main( String[] args ) throws RunnerException {
+		new Runner( new OptionsBuilder().include( StateJournalBenchmark.class.getSimpleName()).build()).run();
+	}
+}
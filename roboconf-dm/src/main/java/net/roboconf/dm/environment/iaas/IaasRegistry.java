@@ -0,0 +1,259 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.environment.iaas;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.iaas.api.IaasFactory;
+import net.roboconf.iaas.api.IaasInterface;
+import net.roboconf.iaas.api.exceptions.IaasException;
+import net.roboconf.messaging.utils.MessagingUtils;
+
+/**
+ * A registry of IaaS factories and of configured IaaS interfaces.
+ * <p>
+ * Factories are found with a {@link ServiceLoader} (see {@link IaasFactory}).
+ * Configured IaaS interfaces are cached by application and by IaaS properties. Configuring an
+ * IaaS interface generally creates clients and authenticates them. They are thus reused for all
+ * the machines of an application that have the same IaaS properties.
+ * </p>
+ * <p>
+ * Clients may hold sessions that expire (e.g. authentication tokens). An IaaS interface that
+ * failed to communicate with its IaaS should be evicted (see {@link #evict(IaasInterface)}),
+ * so that it is configured again the next time it is requested.
+ * </p>
+ * <p>
+ * This class is thread-safe. An IaaS interface is configured only once, even when
+ * it is requested concurrently.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class IaasRegistry {
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final Map<String,IaasFactory> typeToFactory = new ConcurrentHashMap<String,IaasFactory> ();
+
+	// Key: application name + properties hash
+	private final ConcurrentHashMap<String,FutureTask<IaasInterface>> keyToIaasInterface = new ConcurrentHashMap<String,FutureTask<IaasInterface>> ();
+
+
+	/**
+	 * Registers the factories found by the {@link ServiceLoader}.
+	 * <p>
+	 * Factories that cannot be instantiated are ignored.
+	 * A factory replaces any factory registered before for the same IaaS type.
+	 * </p>
+	 *
+	 * @param classLoader the class loader to search factories with (null for the system class loader)
+	 * @return the number of factories that were registered
+	 */
+	public int loadFactories( ClassLoader classLoader ) {
+
+		int result = 0;
+		Iterator<IaasFactory> it = ServiceLoader.load( IaasFactory.class, classLoader ).iterator();
+		for( ;; ) {
+			try {
+				if( ! it.hasNext())
+					break;
+
+				register( it.next());
+				result ++;
+
+			} catch( ServiceConfigurationError e ) {
+				this.logger.severe( "A IaaS factory could not be loaded. " + e.getMessage());
+				this.logger.finest( Utils.writeException( new Exception( e )));
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Registers a factory.
+	 * @param factory a factory (not null)
+	 */
+	public void register( IaasFactory factory ) {
+		this.typeToFactory.put( factory.getIaasType(), factory );
+	}
+
+
+	/**
+	 * Finds a factory.
+	 * @param iaasType a IaaS type (can be null)
+	 * @return the associated factory, or null if none was found
+	 */
+	public IaasFactory findFactory( String iaasType ) {
+		return iaasType == null ? null : this.typeToFactory.get( iaasType );
+	}
+
+
+	/**
+	 * Finds a configured IaaS interface, or creates and configures it.
+	 * @param applicationName the application name
+	 * @param iaasProperties the IaaS properties (not null)
+	 * @return a configured IaaS interface, or null if no factory was found for the IaaS type
+	 * @throws IaasException if the IaaS interface could not be configured
+	 */
+	public IaasInterface findIaasInterface( String applicationName, final Map<String,String> iaasProperties )
+	throws IaasException {
+
+		final IaasFactory factory = findFactory( iaasProperties.get( IaasResolver.IAAS_TYPE ));
+		if( factory == null )
+			return null;
+
+		String key = buildKey( applicationName, iaasProperties );
+		FutureTask<IaasInterface> task = this.keyToIaasInterface.get( key );
+		if( task == null ) {
+			FutureTask<IaasInterface> newTask = new FutureTask<IaasInterface>( new Callable<IaasInterface>() {
+				@Override
+				public IaasInterface call() throws Exception {
+					IaasInterface iaasInterface = factory.newIaasInterface();
+					iaasInterface.setIaasProperties( iaasProperties );
+					return iaasInterface;
+				}
+			});
+
+			task = this.keyToIaasInterface.putIfAbsent( key, newTask );
+			if( task == null ) {
+				task = newTask;
+				task.run();
+			}
+		}
+
+		try {
+			return task.get();
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IaasException( e );
+
+		} catch( ExecutionException e ) {
+
+			// Failures are not cached: the properties or the IaaS may be fixed
+			this.keyToIaasInterface.remove( key, task );
+			throw new IaasException( e.getCause() == null ? e : e.getCause());
+		}
+	}
+
+
+	/**
+	 * Evicts a configured IaaS interface.
+	 * <p>
+	 * The next request for the same application and properties configures a new IaaS interface.
+	 * </p>
+	 *
+	 * @param iaasInterface an IaaS interface returned by {@link #findIaasInterface(String, Map)}
+	 */
+	public void evict( IaasInterface iaasInterface ) {
+
+		for( Map.Entry<String,FutureTask<IaasInterface>> entry : this.keyToIaasInterface.entrySet()) {
+			FutureTask<IaasInterface> task = entry.getValue();
+			if( task.isDone() && iaasInterface == findResult( task ))
+				this.keyToIaasInterface.remove( entry.getKey(), task );
+		}
+	}
+
+
+	/**
+	 * Removes the IaaS interface configured for an application and given properties.
+	 * @param applicationName the application name
+	 * @param iaasProperties the IaaS properties (not null)
+	 */
+	public void removeIaasInterface( String applicationName, Map<String,String> iaasProperties ) {
+		this.keyToIaasInterface.remove( buildKey( applicationName, iaasProperties ));
+	}
+
+
+	/**
+	 * Removes the IaaS interfaces configured for an application.
+	 * @param applicationName the application name
+	 */
+	public void removeApplication( String applicationName ) {
+
+		String prefix = applicationName + "|";
+		for( Iterator<String> it = this.keyToIaasInterface.keySet().iterator(); it.hasNext(); ) {
+			if( it.next().startsWith( prefix ))
+				it.remove();
+		}
+	}
+
+
+	/**
+	 * @return the number of configured IaaS interfaces
+	 */
+	public int getIaasInterfacesCount() {
+		return this.keyToIaasInterface.size();
+	}
+
+
+	/**
+	 * @param task a completed task
+	 * @return its result, or null if it failed
+	 */
+	private static IaasInterface findResult( FutureTask<IaasInterface> task ) {
+
+		IaasInterface result = null;
+		try {
+			result = task.get();
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+
+		} catch( ExecutionException e ) {
+			// nothing, failures are not cached
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Builds the cache key for an application and IaaS properties.
+	 * @param applicationName the application name
+	 * @param iaasProperties the IaaS properties
+	 * @return a non-null string
+	 */
+	static String buildKey( String applicationName, Map<String,String> iaasProperties ) {
+
+		Map<String,byte[]> map = new HashMap<String,byte[]> ();
+		try {
+			for( Map.Entry<String,String> entry : iaasProperties.entrySet()) {
+				String value = entry.getValue() == null ? "" : entry.getValue();
+				map.put( entry.getKey(), value.getBytes( "UTF-8" ));
+			}
+
+		} catch( UnsupportedEncodingException e ) {
+			// UTF-8 is always supported
+			throw new IllegalStateException( e );
+		}
+
+		return applicationName + "|" + MessagingUtils.computeResourcesHash( map );
+	}
+}
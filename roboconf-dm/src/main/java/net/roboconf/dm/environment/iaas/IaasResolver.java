@@ -16,27 +16,47 @@
 
 package net.roboconf.dm.environment.iaas;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.dm.management.ManagedApplication;
+import net.roboconf.dm.utils.ResourceUtils;
+import net.roboconf.iaas.api.IaasFactory;
 import net.roboconf.iaas.api.IaasInterface;
 import net.roboconf.iaas.api.exceptions.IaasException;
-import net.roboconf.iaas.api.exceptions.InvalidIaasPropertiesException;
-import net.roboconf.iaas.ec2.IaasEc2;
-import net.roboconf.iaas.local.IaasLocalhost;
-import net.roboconf.iaas.openstack.IaasOpenstack;
-import net.roboconf.iaas.vmware.IaasVmware;
 
 
 /**
+ * Finds the IaaS interfaces to use for root instances.
+ * <p>
+ * IaaS interfaces are found and cached by a {@link IaasRegistry}. The IaaS properties of
+ * root instances are also cached, as long as their file is not modified.
+ * </p>
+ *
  * @author Vincent Zurczak - Linagora
  */
 public class IaasResolver {
 
 	public static final String IAAS_TYPE = "iaas.type";
 
+	private final IaasRegistry registry = new IaasRegistry();
+
+	// Key: application name + properties file path
+	private final Map<String,IaasProperties> keyToIaasProperties = new ConcurrentHashMap<String,IaasProperties> ();
+
+
+	/**
+	 * Constructor.
+	 */
+	public IaasResolver() {
+		this.registry.loadFactories( getClass().getClassLoader());
+	}
+
 
 	/**
 	 * Finds the right IaaS interface for a given instance.
@@ -47,51 +67,132 @@ public class IaasResolver {
 	 */
 	public IaasInterface findIaasInterface( ManagedApplication ma, Instance instance ) throws IaasException {
 
-		// FIXME: Not very "plug-in-like"
 		IaasInterface iaasInterface;
 		try {
 			String installerName = instance.getComponent().getInstallerName();
 			if( ! "iaas".equalsIgnoreCase( installerName ))
 				throw new IaasException( "Unsupported installer name: " + installerName );
 
-			Map<String, String> props = IaasHelpers.loadIaasProperties( ma.getApplicationFilesDirectory(), instance );
-			iaasInterface = findIaasHandler( props );
+			String applicationName = ma.getApplication().getName();
+			Map<String, String> props = findIaasProperties( applicationName, ma.getApplicationFilesDirectory(), instance );
+			iaasInterface = this.registry.findIaasInterface( applicationName, props );
 			if( iaasInterface == null )
 				throw new IaasException( "No IaaS handler was found for " + instance.getName() + "." );
 
-			iaasInterface.setIaasProperties( props );
-
 		} catch( IOException e ) {
 			throw new IaasException( e );
-
-		} catch( InvalidIaasPropertiesException e ) {
-			throw new IaasException( e );
 		}
 
 		return iaasInterface;
 	}
 
 
+	/**
+	 * Evicts a IaaS interface that failed to communicate with its IaaS.
+	 * <p>
+	 * Its session (e.g. an authentication token) may have expired. A new IaaS
+	 * interface will be configured the next time one is needed.
+	 * </p>
+	 *
+	 * @param iaasInterface a IaaS interface returned by {@link #findIaasInterface(ManagedApplication, Instance)}
+	 */
+	public void evictIaasInterface( IaasInterface iaasInterface ) {
+		this.registry.evict( iaasInterface );
+	}
+
+
+	/**
+	 * Forgets the IaaS interfaces and properties cached for an application.
+	 * @param applicationName the application name
+	 */
+	public void removeApplication( String applicationName ) {
+
+		this.registry.removeApplication( applicationName );
+		String prefix = applicationName + "|";
+		for( Iterator<String> it = this.keyToIaasProperties.keySet().iterator(); it.hasNext(); ) {
+			if( it.next().startsWith( prefix ))
+				it.remove();
+		}
+	}
+
+
+	/**
+	 * @return the registry of IaaS factories and interfaces
+	 */
+	public IaasRegistry getRegistry() {
+		return this.registry;
+	}
+
+
 	/**
 	 * Finds the right IaaS handler.
 	 * @param iaasProperties non-null properties
-	 * @return a IaaS interface, or null if none matched
-	 * TODO: move this method in the IaaS implementations
+	 * @return a new IaaS interface (not configured), or null if none matched
 	 */
 	IaasInterface findIaasHandler(Map<String, String> iaasProperties) {
+		IaasFactory factory = this.registry.findFactory( iaasProperties.get( IAAS_TYPE ));
+		return factory == null ? null : factory.newIaasInterface();
+	}
+
+
+	/**
+	 * Finds the IaaS properties of a root instance.
+	 * <p>
+	 * The properties file is only read again when it was modified.
+	 * The IaaS interface configured with the previous properties is then removed from the registry.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param applicationFilesDirectory the directory where application resources are stored
+	 * @param rootInstance the root instance to find the IaaS properties
+	 * @return non-null properties (not modifiable)
+	 * @throws IOException if the IaaS properties file was not found
+	 */
+	Map<String,String> findIaasProperties( String applicationName, File applicationFilesDirectory, Instance rootInstance )
+	throws IOException {
 
-		IaasInterface result = null;
-		String iaasType = iaasProperties.get( IAAS_TYPE );
-		if( "local".equals( iaasType )) {
-			result = new IaasLocalhost();
-		} else if( "ec2".equals( iaasType )) {
-			result = new IaasEc2();
-		} else if("openstack".equals(iaasType)) {
-			result = new IaasOpenstack();
-		} else if("vmware".equals(iaasType)) {
-			result = new IaasVmware();
+		File f = ResourceUtils.findInstanceResourcesDirectory( applicationFilesDirectory, rootInstance );
+		f = new File( f, IaasInterface.DEFAULT_IAAS_PROPERTIES_FILE_NAME );
+
+		String key = applicationName + "|" + f.getAbsolutePath();
+		long lastModified = f.lastModified();
+		long length = f.length();
+
+		IaasProperties cached = this.keyToIaasProperties.get( key );
+		if( cached == null
+				|| cached.lastModified != lastModified
+				|| cached.length != length ) {
+
+			if( cached != null )
+				this.registry.removeIaasInterface( applicationName, cached.properties );
+
+			Map<String,String> props = IaasHelpers.loadIaasProperties( applicationFilesDirectory, rootInstance );
+			cached = new IaasProperties( lastModified, length, Collections.unmodifiableMap( props ));
+			this.keyToIaasProperties.put( key, cached );
 		}
 
-		return result;
+		return cached.properties;
+	}
+
+
+	/**
+	 * IaaS properties read from a file.
+	 */
+	private static class IaasProperties {
+		final long lastModified, length;
+		final Map<String,String> properties;
+
+
+		/**
+		 * Constructor.
+		 * @param lastModified
+		 * @param length
+		 * @param properties
+		 */
+		IaasProperties( long lastModified, long length, Map<String,String> properties ) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.properties = properties;
+		}
 	}
 }
@@ -16,25 +16,40 @@
 
 package net.roboconf.dm.environment.messaging;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Logger;
 
 import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Import;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.core.model.runtime.Instance.InstanceStatus;
 import net.roboconf.dm.management.ManagedApplication;
 import net.roboconf.dm.management.Manager;
 import net.roboconf.dm.management.exceptions.InexistingException;
 import net.roboconf.messaging.client.IMessageProcessor;
+import net.roboconf.messaging.codec.MessageCodecs;
 import net.roboconf.messaging.messages.Message;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifHeartbeat;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstancesChanged;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineDown;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineReadyToBeDeleted;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineUp;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifResourcesMissing;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdImportsResync;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
 import net.roboconf.messaging.utils.MessagingUtils;
 
@@ -51,6 +66,9 @@ public class DmMessageProcessor implements IMessageProcessor {
 	private final Application application;
 	private final Logger logger = Logger.getLogger( DmMessageProcessor.class.getName());
 
+	// The version of the imports of every instance (see MsgNotifInstanceChanged)
+	private final Map<String,Long> pathToImportsVersion = new HashMap<String,Long> ();
+
 
 	/**
 	 * Constructor.
@@ -77,6 +95,9 @@ public class DmMessageProcessor implements IMessageProcessor {
 		else if( message instanceof MsgNotifInstanceChanged )
 			processMsgNotifInstanceChanged((MsgNotifInstanceChanged) message );
 
+		else if( message instanceof MsgNotifInstancesChanged )
+			processMsgNotifInstancesChanged((MsgNotifInstancesChanged) message );
+
 		else if( message instanceof MsgNotifInstanceRemoved )
 			processMsgNotifInstanceRemoved((MsgNotifInstanceRemoved) message );
 
@@ -86,6 +107,9 @@ public class DmMessageProcessor implements IMessageProcessor {
 		else if( message instanceof MsgNotifMachineReadyToBeDeleted )
 			processMsgNotifReadyToBeDeleted((MsgNotifMachineReadyToBeDeleted) message );
 
+		else if( message instanceof MsgNotifResourcesMissing )
+			processMsgNotifResourcesMissing((MsgNotifResourcesMissing) message );
+
 		else
 			this.logger.warning( "The DM got an undetermined message to process: " + message.getClass().getName());
 	}
@@ -114,7 +138,31 @@ public class DmMessageProcessor implements IMessageProcessor {
 
 		String ipAddress = message.getIpAddress();
 		String rootInstanceName = message.getRootInstanceName();
-		Instance rootInstance = InstanceHelpers.findInstanceByPath( this.application, "/" + rootInstanceName );
+
+		// The model sent to the agent is copied under the lock, and published once it is released
+		Instance rootInstance, rootInstanceCopy = null;
+		Lock lock = this.application.getLock().writeLock();
+		lock.lock();
+		try {
+			rootInstance = InstanceHelpers.findInstanceByPath( this.application, "/" + rootInstanceName );
+			if( rootInstance != null ) {
+				try {
+					rootInstanceCopy = copyInstance( rootInstance );
+
+				} catch( IOException e ) {
+					this.logger.severe( "The DM failed to copy the agent's model for " + rootInstanceName + ". " + e.getMessage());
+					this.logger.finest( Utils.writeException( e ));
+				}
+
+				rootInstance.setStatus( InstanceStatus.DEPLOYED_STARTED );
+				rootInstance.getData().put( Instance.IP_ADDRESS, ipAddress );
+				Manager.INSTANCE.getModelNotifier().statusChanged( this.application.getName(), rootInstance );
+				Manager.INSTANCE.getModelNotifier().dataChanged( this.application.getName(), rootInstance, Instance.IP_ADDRESS );
+			}
+
+		} finally {
+			lock.unlock();
+		}
 
 		if( rootInstance == null ) {
 			StringBuilder sb = new StringBuilder();
@@ -125,24 +173,30 @@ public class DmMessageProcessor implements IMessageProcessor {
 			this.logger.warning( sb.toString());
 
 		} else {
-			ManagedApplication ma = Manager.INSTANCE.getAppNameToManagedApplication().get( this.application.getName());
-			try {
-				if( ma == null )
-					throw new IOException( "No manager was found for " + this.application.getName() + "." );
-
-				MsgCmdInstanceAdd newMsg = new MsgCmdInstanceAdd( null, rootInstance );
-				ma.getMessagingClient().publish(
-						false,
-						MessagingUtils.buildRoutingKeyToAgent( rootInstance ),
-						newMsg );
-
-			} catch( IOException e ) {
-				this.logger.severe( "The DM failed to send the agent's model for " + rootInstanceName + ". " + e.getMessage());
-				this.logger.finest( Utils.writeException( e ));
+			if( rootInstanceCopy != null ) {
+				ManagedApplication ma = Manager.INSTANCE.getAppNameToManagedApplication().get( this.application.getName());
+				try {
+					if( ma == null )
+						throw new IOException( "No manager was found for " + this.application.getName() + "." );
+
+					// The agent is told which codec to use, instead of guessing it from the messages it receives
+					String codecName = this.application.getMessagingCodec() != null ? this.application.getMessagingCodec() : MessageCodecs.DEFAULT_CODEC;
+					ma.getMessagingClient().publish(
+							false,
+							MessagingUtils.buildRoutingKeyToAgent( rootInstanceName ),
+							new MsgCmdInstanceAdd( null, rootInstanceCopy, codecName ));
+
+				} catch( IOException e ) {
+					this.logger.severe( "The DM failed to send the agent's model for " + rootInstanceName + ". " + e.getMessage());
+					this.logger.finest( Utils.writeException( e ));
+				}
 			}
 
-			rootInstance.setStatus( InstanceStatus.DEPLOYED_STARTED );
-			rootInstance.getData().put( Instance.IP_ADDRESS, ipAddress );
+			// Start monitoring the machine, even if it never sends heart beats
+			Manager.INSTANCE.getMachineMonitor().acknowledgeHeartBeat( this.application.getName(), rootInstance );
+
+			// A new agent does not hold any resource
+			Manager.INSTANCE.getResourceCache().forgetAgent( this.application.getName(), rootInstanceName );
 			this.logger.fine( rootInstanceName + " @ " + ipAddress + " is up and running." );
 		}
 	}
@@ -151,14 +205,54 @@ public class DmMessageProcessor implements IMessageProcessor {
 	private void processMsgNotifMachineDown( MsgNotifMachineDown message ) {
 
 		String rootInstanceName = message.getRootInstanceName();
-		Instance rootInstance = InstanceHelpers.findInstanceByPath( this.application, "/" + rootInstanceName );
+		Instance rootInstance;
+		Lock lock = this.application.getLock().writeLock();
+		lock.lock();
+		try {
+			rootInstance = InstanceHelpers.findInstanceByPath( this.application, "/" + rootInstanceName );
+			if( rootInstance != null ) {
+				rootInstance.setStatus( InstanceStatus.NOT_DEPLOYED );
+				Manager.INSTANCE.getModelNotifier().statusChanged( this.application.getName(), rootInstance );
+			}
 
-		if( rootInstance == null ) {
-			this.logger.warning( "A 'DOWN' notification was received from an unknown machine: " + rootInstanceName + "." );
+		} finally {
+			lock.unlock();
+		}
 
-		} else {
-			rootInstance.setStatus( InstanceStatus.NOT_DEPLOYED );
+		if( rootInstance == null )
+			this.logger.warning( "A 'DOWN' notification was received from an unknown machine: " + rootInstanceName + "." );
+		else
 			this.logger.info( rootInstanceName + " is now terminated. Back to NOT_DEPLOYED state." );
+	}
+
+
+	/**
+	 * Copies an instance and its children.
+	 * <p>
+	 * The lock of the application must be held.
+	 * The copy can then be serialized without it.
+	 * </p>
+	 *
+	 * @param instance an instance
+	 * @return a copy of this instance, with copies of its children (but without parent)
+	 * @throws IOException if the copy failed
+	 */
+	static Instance copyInstance( Instance instance ) throws IOException {
+
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream( os );
+		out.writeObject( instance );
+		out.close();
+
+		ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( os.toByteArray()));
+		try {
+			return (Instance) in.readObject();
+
+		} catch( ClassNotFoundException e ) {
+			throw new IOException( "An instance could not be copied.", e );
+
+		} finally {
+			in.close();
 		}
 	}
 
@@ -196,8 +290,18 @@ public class DmMessageProcessor implements IMessageProcessor {
 
 		} else {
 			InstanceStatus oldStatus = instance.getStatus();
-			instance.setStatus( message.getNewStatus());
-			instance.updateImports( message.getNewImports());
+			Lock lock = this.application.getLock().writeLock();
+			lock.lock();
+			try {
+				instance.setStatus( message.getNewStatus());
+				Manager.INSTANCE.getModelNotifier().statusChanged( this.application.getName(), instance );
+				instance.updateImports( message.getNewImports());
+				Manager.INSTANCE.getModelNotifier().importsChanged( this.application.getName(), instance );
+				this.pathToImportsVersion.remove( instancePath );
+
+			} finally {
+				lock.unlock();
+			}
 
 			StringBuilder sb = new StringBuilder();
 			sb.append( "Status changed from " );
@@ -212,20 +316,154 @@ public class DmMessageProcessor implements IMessageProcessor {
 	}
 
 
+	private void processMsgNotifInstancesChanged( MsgNotifInstancesChanged message ) {
+
+		// Batches are applied as a whole, they are not interleaved with other batches
+		int applied = 0;
+		List<Instance> toResync = new ArrayList<Instance> ();
+		Lock lock = this.application.getLock().writeLock();
+		lock.lock();
+		try {
+			for( MsgNotifInstanceChanged change : message.getChanges()) {
+				String instancePath = change.getInstancePath();
+				Instance instance = InstanceHelpers.findInstanceByPath( this.application, instancePath );
+
+				if( instance == null ) {
+					this.logger.warning( "A 'CHANGED' notification was received from an unknown instance: " + instancePath );
+					continue;
+				}
+
+				instance.setStatus( change.getNewStatus());
+				Manager.INSTANCE.getModelNotifier().statusChanged( this.application.getName(), instance );
+				applied ++;
+
+				// All the imports were sent
+				if( change.getNewImports() != null ) {
+					instance.updateImports( change.getNewImports());
+					Manager.INSTANCE.getModelNotifier().importsChanged( this.application.getName(), instance );
+					this.pathToImportsVersion.put( instancePath, change.getImportsVersion());
+				}
+
+				// Only the modified imports were sent
+				else if( change.isImportsDelta()) {
+					Long version = this.pathToImportsVersion.get( instancePath );
+					if( version != null && version + 1 == change.getImportsVersion()) {
+						applyImportsDelta( instance, change );
+						Manager.INSTANCE.getModelNotifier().importsChanged( this.application.getName(), instance );
+						this.pathToImportsVersion.put( instancePath, change.getImportsVersion());
+
+					} else {
+						this.logger.fine( "An imports delta was missed for " + instancePath + ". All its imports will be requested." );
+						this.pathToImportsVersion.remove( instancePath );
+						toResync.add( instance );
+					}
+				}
+			}
+
+		} finally {
+			lock.unlock();
+		}
+
+		this.logger.fine( applied + " instance(s) changed in " + this.application.getName() + "." );
+		for( Instance instance : toResync )
+			requestImportsResync( instance );
+	}
+
+
+	private void applyImportsDelta( Instance instance, MsgNotifInstanceChanged change ) {
+
+		if( change.getRemovedImports() != null ) {
+			for( Map.Entry<String,Collection<Import>> entry : change.getRemovedImports().entrySet()) {
+				Collection<Import> imports = instance.getImports().get( entry.getKey());
+				if( imports == null )
+					continue;
+
+				for( Import imp : entry.getValue())
+					imports.remove( imp );
+			}
+		}
+
+		// Added imports may replace previous versions of themselves
+		if( change.getAddedImports() != null ) {
+			for( Map.Entry<String,Collection<Import>> entry : change.getAddedImports().entrySet()) {
+				for( Import imp : entry.getValue()) {
+					Collection<Import> imports = instance.getImports().get( entry.getKey());
+					if( imports != null )
+						imports.remove( imp );
+
+					instance.addImport( entry.getKey(), imp );
+				}
+			}
+		}
+	}
+
+
+	private void requestImportsResync( Instance instance ) {
+
+		String instancePath = InstanceHelpers.computeInstancePath( instance );
+		ManagedApplication ma = Manager.INSTANCE.getAppNameToManagedApplication().get( this.application.getName());
+		try {
+			if( ma == null )
+				throw new IOException( "No manager was found for " + this.application.getName() + "." );
+
+			Instance rootInstance = InstanceHelpers.findRootInstance( instance );
+			ma.getMessagingClient().publish(
+					false,
+					MessagingUtils.buildRoutingKeyToAgent( rootInstance ),
+					new MsgCmdImportsResync( instancePath ));
+
+		} catch( IOException e ) {
+			this.logger.severe( "The DM failed to request the imports of " + instancePath + ". " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+		}
+	}
+
+
+	private void processMsgNotifResourcesMissing( MsgNotifResourcesMissing message ) {
+
+		String instancePath = message.getInstancePath();
+		this.logger.fine( "The agent of " + instancePath + " does not hold the resources " + message.getResourcesHash() + "." );
+		try {
+			Manager.INSTANCE.resendDeploymentRequest(
+					this.application.getName(), instancePath,
+					message.getResumeFileName(), message.getResumeOffset());
+
+		} catch( InexistingException e ) {
+			this.logger.warning( "Resources were requested for an unknown instance: " + instancePath + "." );
+
+		} catch( IOException e ) {
+			this.logger.severe( "The DM failed to send the resources of " + instancePath + ". " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+		}
+	}
+
+
 	private void processMsgNotifInstanceRemoved( MsgNotifInstanceRemoved message ) {
 
 		String instancePath = message.getInstancePath();
-		Instance instance = InstanceHelpers.findInstanceByPath( this.application, instancePath );
-		if( instance == null ) {
-			this.logger.warning( "A 'REMOVE' notification was received for an unknown instance: " + instancePath + "." );
+		Instance instance;
+		boolean removed = false;
+		Lock lock = this.application.getLock().writeLock();
+		lock.lock();
+		try {
+			instance = InstanceHelpers.findInstanceByPath( this.application, instancePath );
+			if( instance != null && instance.getParent() != null ) {
+				InstanceHelpers.removeInstance( this.application, instance );
+				Manager.INSTANCE.getModelNotifier().instanceRemoved( this.application.getName(), instancePath );
+				removed = true;
+			}
 
-		} else {
-			if( instance.getParent() == null )
-				this.logger.warning( "Anormal behavior. A 'REMOVE' notification was received for a root instance: " + instancePath + "." );
-			else
-				instance.getParent().getChildren().remove( instance );
+			this.pathToImportsVersion.remove( instancePath );
 
-			this.logger.info( "Instance " + instancePath + " was removed from the model." );
+		} finally {
+			lock.unlock();
 		}
+
+		if( instance == null )
+			this.logger.warning( "A 'REMOVE' notification was received for an unknown instance: " + instancePath + "." );
+		else if( ! removed )
+			this.logger.warning( "Anormal behavior. A 'REMOVE' notification was received for a root instance: " + instancePath + "." );
+		else
+			this.logger.info( "Instance " + instancePath + " was removed from the model." );
 	}
 }
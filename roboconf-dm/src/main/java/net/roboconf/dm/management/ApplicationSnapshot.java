@@ -0,0 +1,316 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.management;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.dm.rest.json.JSonCachedList;
+
+/**
+ * An immutable copy of the instances of an application, at a given version of the model.
+ * <p>
+ * Snapshots are built by {@link SnapshotRegistry}. Their instances are copies of the runtime
+ * instances: they can be read and serialized without any lock, and they must not be modified.
+ * The lists returned by this class are built once per snapshot and query, and they cache their
+ * JSon representation. Unknown instance paths result in empty lists, which are not cached.
+ * </p>
+ * <p>
+ * A new snapshot is built from the previous one and from the paths of the instances that changed
+ * in between. Copies keep a link to their parent, so the unit of copy is a root instance with all
+ * its descendants: only the root instances that contain a changed path are copied again. The other
+ * copies are shared with the previous snapshot, as are the cached lists that do not contain a
+ * changed instance. The instances of such lists may come from the previous snapshot: their own
+ * fields (and thus their JSon representation) are up-to-date, but their descendants may not be.
+ * Descendants must be found with {@link #findInstanceByPath(String)} or with the list methods.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class ApplicationSnapshot {
+
+	private static final String ROOT_KEY = "";
+
+	private final String applicationName;
+	private final long version;
+	private final List<Instance> rootInstances;
+
+	// Key: root instance path, value: the copies of this root instance and of its descendants, by path
+	private final Map<String,Map<String,Instance>> rootPathToInstances;
+
+	// Key: instance path (or ROOT_KEY), value: the result of the query
+	private final Map<String,JSonCachedList<Instance>> pathToChildren = new ConcurrentHashMap<String,JSonCachedList<Instance>> ();
+	private final Map<String,JSonCachedList<Instance>> pathToAllChildren = new ConcurrentHashMap<String,JSonCachedList<Instance>> ();
+
+
+	/**
+	 * Constructor.
+	 * @param applicationName the application name
+	 * @param version the version of the model this snapshot was captured at
+	 * @param rootInstances the copied root instances
+	 * @param rootPathToInstances the copied instances, by root instance path and by path
+	 */
+	private ApplicationSnapshot(
+			String applicationName,
+			long version,
+			List<Instance> rootInstances,
+			Map<String,Map<String,Instance>> rootPathToInstances ) {
+
+		this.applicationName = applicationName;
+		this.version = version;
+		this.rootInstances = Collections.unmodifiableList( rootInstances );
+		this.rootPathToInstances = rootPathToInstances;
+	}
+
+
+	/**
+	 * Captures the instances of an application.
+	 * <p>
+	 * The application's read lock is held during the copy. Since batches of modifications are
+	 * applied with the write lock, a snapshot never contains a partially applied batch.
+	 * </p>
+	 *
+	 * @param application an application
+	 * @param version the version of the model, read before this method is invoked
+	 * @param previous the previous snapshot of this application (null to copy everything)
+	 * @param changedPaths the paths of the instances that changed since the previous snapshot
+	 * (null if they are not known, to copy everything)
+	 * @return a new snapshot
+	 */
+	static ApplicationSnapshot capture(
+			Application application,
+			long version,
+			ApplicationSnapshot previous,
+			Collection<String> changedPaths ) {
+
+		boolean incremental = previous != null && changedPaths != null;
+		Set<String> changedRootPaths = new HashSet<String> ();
+		if( incremental ) {
+			for( String path : changedPaths )
+				changedRootPaths.add( findRootPath( path ));
+		}
+
+		List<Instance> rootInstances = new ArrayList<Instance> ();
+		Map<String,Map<String,Instance>> rootPathToInstances = new HashMap<String,Map<String,Instance>> ();
+
+		Lock lock = application.getLock().readLock();
+		lock.lock();
+		try {
+			for( Instance rootInstance : application.getRootInstances()) {
+				String rootPath = InstanceHelpers.computeInstancePath( rootInstance );
+				Map<String,Instance> pathToInstance = null;
+				if( incremental && ! changedRootPaths.contains( rootPath ))
+					pathToInstance = previous.rootPathToInstances.get( rootPath );
+
+				if( pathToInstance == null ) {
+					pathToInstance = new HashMap<String,Instance> ();
+					copy( rootInstance, null, pathToInstance );
+				}
+
+				rootInstances.add( pathToInstance.get( rootPath ));
+				rootPathToInstances.put( rootPath, pathToInstance );
+			}
+
+		} finally {
+			lock.unlock();
+		}
+
+		ApplicationSnapshot result = new ApplicationSnapshot( application.getName(), version, rootInstances, rootPathToInstances );
+		if( incremental )
+			result.keepCachedLists( previous, changedPaths );
+
+		return result;
+	}
+
+
+	/**
+	 * @return the application name
+	 */
+	public String getApplicationName() {
+		return this.applicationName;
+	}
+
+
+	/**
+	 * @return the version of the model this snapshot was captured at
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+
+	/**
+	 * @return the (copied) root instances (not null, unmodifiable)
+	 */
+	public List<Instance> getRootInstances() {
+		return this.rootInstances;
+	}
+
+
+	/**
+	 * @param instancePath an instance path
+	 * @return the copy of this instance, or null if it was not found
+	 */
+	public Instance findInstanceByPath( String instancePath ) {
+		Map<String,Instance> pathToInstance = this.rootPathToInstances.get( findRootPath( instancePath ));
+		return pathToInstance == null ? null : pathToInstance.get( instancePath );
+	}
+
+
+	/**
+	 * Lists the direct children of an instance.
+	 * @param instancePath an instance path (null for the root instances)
+	 * @return a non-null list
+	 */
+	public List<Instance> listChildrenInstances( String instancePath ) {
+
+		String key = instancePath == null ? ROOT_KEY : instancePath;
+		JSonCachedList<Instance> result = this.pathToChildren.get( key );
+		if( result == null ) {
+			Instance inst = null;
+			if( instancePath == null ) {
+				result = new JSonCachedList<Instance>( this.rootInstances );
+				this.pathToChildren.put( key, result );
+
+			} else if(( inst = findInstanceByPath( instancePath )) != null ) {
+				result = new JSonCachedList<Instance>( inst.getChildren());
+				this.pathToChildren.put( key, result );
+
+			} else {
+				result = new JSonCachedList<Instance>( Collections.<Instance>emptyList());
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Lists all the instances below an instance.
+	 * @param instancePath an instance path (null for all the instances of the application)
+	 * @return a non-null list, sorted from the root instances to the leaves
+	 */
+	public List<Instance> listAllChildrenInstances( String instancePath ) {
+
+		String key = instancePath == null ? ROOT_KEY : instancePath;
+		JSonCachedList<Instance> result = this.pathToAllChildren.get( key );
+		if( result == null ) {
+			Instance inst = null;
+			if( instancePath == null ) {
+				List<Instance> instances = new ArrayList<Instance> ();
+				for( Instance rootInstance : this.rootInstances )
+					instances.addAll( InstanceHelpers.buildHierarchicalList( rootInstance ));
+
+				result = new JSonCachedList<Instance>( instances );
+				this.pathToAllChildren.put( key, result );
+
+			} else if(( inst = findInstanceByPath( instancePath )) != null ) {
+				List<Instance> instances = InstanceHelpers.buildHierarchicalList( inst );
+				instances.remove( 0 );
+				result = new JSonCachedList<Instance>( instances );
+				this.pathToAllChildren.put( key, result );
+
+			} else {
+				result = new JSonCachedList<Instance>( Collections.<Instance>emptyList());
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Keeps the cached lists of the previous snapshot that do not contain any changed instance.
+	 * @param previous the previous snapshot
+	 * @param changedPaths the paths of the instances that changed since the previous snapshot
+	 */
+	private void keepCachedLists( ApplicationSnapshot previous, Collection<String> changedPaths ) {
+
+		// A list of children is outdated when it contains a changed instance.
+		// A list of all the children is outdated when one of the changed instances is below its instance.
+		Set<String> outdatedChildren = new HashSet<String> ();
+		Set<String> outdatedAllChildren = new HashSet<String> ();
+		for( String path : changedPaths ) {
+			int index = path.lastIndexOf( '/' );
+			outdatedChildren.add( index > 0 ? path.substring( 0, index ) : ROOT_KEY );
+			for( ; index > 0; index = path.lastIndexOf( '/', index - 1 ))
+				outdatedAllChildren.add( path.substring( 0, index ));
+
+			outdatedAllChildren.add( ROOT_KEY );
+		}
+
+		for( Map.Entry<String,JSonCachedList<Instance>> entry : previous.pathToChildren.entrySet()) {
+			if( ! outdatedChildren.contains( entry.getKey()))
+				this.pathToChildren.put( entry.getKey(), entry.getValue());
+		}
+
+		for( Map.Entry<String,JSonCachedList<Instance>> entry : previous.pathToAllChildren.entrySet()) {
+			if( ! outdatedAllChildren.contains( entry.getKey()))
+				this.pathToAllChildren.put( entry.getKey(), entry.getValue());
+		}
+	}
+
+
+	/**
+	 * @param instancePath an instance path
+	 * @return the path of its root instance
+	 */
+	static String findRootPath( String instancePath ) {
+		int index = instancePath.indexOf( '/', 1 );
+		return index < 0 ? instancePath : instancePath.substring( 0, index );
+	}
+
+
+	private static Instance copy( Instance instance, Instance parentCopy, Map<String,Instance> pathToInstance ) {
+
+		Instance result = new Instance( instance.getName());
+		result.setChannel( instance.getChannel());
+		result.setComponent( instance.getComponent());
+		result.setStatus( instance.getStatus());
+		result.getExports().putAll( instance.getExports());
+		result.getOverriddenExports().putAll( instance.getOverriddenExports());
+		synchronized( instance.getData()) {
+			result.getData().putAll( instance.getData());
+		}
+
+		for( Map.Entry<String,Collection<Import>> entry : instance.getImports().entrySet())
+			result.getImports().put( entry.getKey(), new LinkedHashSet<Import>( entry.getValue()));
+
+		if( parentCopy != null )
+			InstanceHelpers.insertChild( parentCopy, result );
+
+		pathToInstance.put( InstanceHelpers.computeInstancePath( result ), result );
+		for( Instance child : instance.getChildren())
+			copy( child, result, pathToInstance );
+
+		return result;
+	}
+}
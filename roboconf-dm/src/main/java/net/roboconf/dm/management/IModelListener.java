@@ -0,0 +1,92 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.management;
+
+import java.io.File;
+
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Instance;
+
+/**
+ * A listener for the modifications of the runtime model.
+ * <p>
+ * Listeners are notified after the model was modified, from the thread that modified it.
+ * They must return quickly.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IModelListener {
+
+	/**
+	 * Notifies that an application was added, with all its instances.
+	 * <p>
+	 * The caller must hold the application's lock (see {@link Application#getLock()}).
+	 * </p>
+	 *
+	 * @param application the application
+	 * @param directory the application's directory
+	 */
+	void applicationAdded( Application application, File directory );
+
+	/**
+	 * Notifies that an application was removed.
+	 * @param applicationName the application name
+	 */
+	void applicationRemoved( String applicationName );
+
+	/**
+	 * Notifies that an instance was added, with its children.
+	 * <p>
+	 * The caller must hold the application's lock (see {@link Application#getLock()}).
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param instance the instance (already inserted in the model)
+	 */
+	void instanceAdded( String applicationName, Instance instance );
+
+	/**
+	 * Notifies that an instance and its children were removed.
+	 * @param applicationName the application name
+	 * @param instancePath the path the instance had before being removed
+	 */
+	void instanceRemoved( String applicationName, String instancePath );
+
+	/**
+	 * Notifies that the status of an instance changed.
+	 * @param applicationName the application name
+	 * @param instance the instance
+	 */
+	void statusChanged( String applicationName, Instance instance );
+
+	/**
+	 * Notifies that the imports of an instance changed.
+	 * @param applicationName the application name
+	 * @param instance the instance
+	 */
+	void importsChanged( String applicationName, Instance instance );
+
+	/**
+	 * Notifies that the data of an instance changed.
+	 * @param applicationName the application name
+	 * @param instance the instance
+	 * @param key the data key (e.g. {@link Instance#MACHINE_ID})
+	 */
+	void dataChanged( String applicationName, Instance instance, String key );
+}
@@ -0,0 +1,365 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.management;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.dm.rest.events.InstanceEvent;
+import net.roboconf.dm.rest.events.InstanceEvent.Kind;
+
+/**
+ * Pushes the modifications of instances to the clients that subscribed to an application.
+ * <p>
+ * Every subscription has its own bounded buffer. Events are added to it as the model is modified
+ * (status changes, import changes, instances added or removed), and clients retrieve them with
+ * long polling: a poll returns as soon as events are available, or at the end of a timeout.
+ * </p>
+ * <p>
+ * When a client does not poll fast enough, the oldest events are dropped and the next poll starts
+ * with a {@link Kind#RESYNC} event. The client must then list all the instances again. Events
+ * contain the state of an instance, not a difference: replaying events after a listing is harmless.
+ * </p>
+ * <p>
+ * Subscriptions are indexed by application, so that events are only offered to the subscriptions
+ * of their application. Subscriptions that are not polled anymore expire: they are removed when an event
+ * is published for their application, or when a new subscription is made. They are closed when their
+ * application is removed.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class InstanceEventBroker implements IModelListener {
+
+	public static final int DEFAULT_CAPACITY = 1000;
+	public static final long MAX_POLL_TIMEOUT = 60000;
+	public static final long EXPIRATION_DELAY = 120000;
+
+	private final Map<String,Subscription> idToSubscription = new ConcurrentHashMap<String,Subscription> ();
+
+	// Key: application name, value: the subscriptions to this application, by ID
+	private final ConcurrentHashMap<String,Map<String,Subscription>> appNameToSubscriptions = new ConcurrentHashMap<String,Map<String,Subscription>> ();
+	private final int capacity;
+	private final long expirationDelay;
+
+
+	/**
+	 * Constructor.
+	 */
+	public InstanceEventBroker() {
+		this( DEFAULT_CAPACITY );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param capacity the maximum number of events kept for a subscription (> 0)
+	 */
+	public InstanceEventBroker( int capacity ) {
+		this( capacity, EXPIRATION_DELAY );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param capacity the maximum number of events kept for a subscription (> 0)
+	 * @param expirationDelay the delay after which a subscription that is not polled expires, in milliseconds
+	 */
+	InstanceEventBroker( int capacity, long expirationDelay ) {
+
+		if( capacity < 1 )
+			throw new IllegalArgumentException( "The capacity must be positive." );
+
+		this.capacity = capacity;
+		this.expirationDelay = expirationDelay;
+	}
+
+
+	/**
+	 * Subscribes to the events of an application.
+	 * <p>
+	 * Events are recorded from this call: clients should subscribe before listing the instances.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @return the subscription ID (not null)
+	 */
+	public String subscribe( String applicationName ) {
+
+		removeExpiredSubscriptions();
+		String subscriptionId = UUID.randomUUID().toString();
+		Subscription subscription = new Subscription( subscriptionId, applicationName );
+		this.idToSubscription.put( subscriptionId, subscription );
+
+		Map<String,Subscription> subscriptions = this.appNameToSubscriptions.get( applicationName );
+		if( subscriptions == null ) {
+			Map<String,Subscription> newSubscriptions = new ConcurrentHashMap<String,Subscription> ();
+			subscriptions = this.appNameToSubscriptions.putIfAbsent( applicationName, newSubscriptions );
+			if( subscriptions == null )
+				subscriptions = newSubscriptions;
+		}
+
+		subscriptions.put( subscriptionId, subscription );
+		return subscriptionId;
+	}
+
+
+	/**
+	 * Closes a subscription.
+	 * <p>
+	 * A client waiting for events on this subscription is released.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param subscriptionId the subscription ID
+	 * @return true if the subscription was found and closed, false otherwise
+	 */
+	public boolean unsubscribe( String applicationName, String subscriptionId ) {
+
+		boolean result = false;
+		Subscription subscription = this.idToSubscription.get( subscriptionId );
+		if( subscription != null
+				&& subscription.applicationName.equals( applicationName )) {
+
+			remove( subscription );
+			close( subscription );
+			result = true;
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Waits for the events of a subscription.
+	 * @param applicationName the application name
+	 * @param subscriptionId the subscription ID
+	 * @param timeout the maximum delay to wait for events, in milliseconds (at most {@link #MAX_POLL_TIMEOUT})
+	 * @return the events (possibly empty, if the timeout was reached), or null if the subscription was not found or was closed
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public List<InstanceEvent> poll( String applicationName, String subscriptionId, long timeout )
+	throws InterruptedException {
+
+		List<InstanceEvent> result = null;
+		Subscription subscription = this.idToSubscription.get( subscriptionId );
+		if( subscription != null
+				&& subscription.applicationName.equals( applicationName )) {
+
+			long delay = Math.min( Math.max( timeout, 0 ), MAX_POLL_TIMEOUT );
+			synchronized( subscription ) {
+				subscription.polling = true;
+				try {
+					long deadline = System.currentTimeMillis() + delay;
+					long remaining = delay;
+					while( ! subscription.closed
+							&& ! subscription.overflowed
+							&& subscription.events.isEmpty()
+							&& remaining > 0 ) {
+
+						subscription.wait( remaining );
+						remaining = deadline - System.currentTimeMillis();
+					}
+
+					if( ! subscription.closed ) {
+						result = new ArrayList<InstanceEvent> ();
+						if( subscription.overflowed )
+							result.add( new InstanceEvent( Kind.RESYNC, null, null ));
+
+						result.addAll( subscription.events );
+						subscription.events.clear();
+						subscription.overflowed = false;
+					}
+
+				} finally {
+					subscription.polling = false;
+					subscription.lastPollTime = System.currentTimeMillis();
+				}
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @return the number of open subscriptions
+	 */
+	public int getSubscriptionsCount() {
+		return this.idToSubscription.size();
+	}
+
+
+	@Override
+	public void applicationAdded( Application application, File directory ) {
+		// nothing, subscriptions are made on existing applications
+	}
+
+
+	@Override
+	public void applicationRemoved( String applicationName ) {
+
+		Map<String,Subscription> subscriptions = this.appNameToSubscriptions.remove( applicationName );
+		if( subscriptions != null ) {
+			for( Subscription subscription : subscriptions.values()) {
+				this.idToSubscription.remove( subscription.id );
+				close( subscription );
+			}
+		}
+	}
+
+
+	@Override
+	public void instanceAdded( String applicationName, Instance instance ) {
+		for( Instance i : InstanceHelpers.buildHierarchicalList( instance ))
+			publish( applicationName, Kind.INSTANCE_ADDED, i );
+	}
+
+
+	@Override
+	public void instanceRemoved( String applicationName, String instancePath ) {
+		publish( applicationName, new InstanceEvent( Kind.INSTANCE_REMOVED, instancePath, null ));
+	}
+
+
+	@Override
+	public void statusChanged( String applicationName, Instance instance ) {
+		publish( applicationName, Kind.STATUS_CHANGED, instance );
+	}
+
+
+	@Override
+	public void importsChanged( String applicationName, Instance instance ) {
+		publish( applicationName, Kind.IMPORTS_CHANGED, instance );
+	}
+
+
+	@Override
+	public void dataChanged( String applicationName, Instance instance, String key ) {
+		// nothing, clients are only notified about status and imports changes
+	}
+
+
+	private void publish( String applicationName, Kind kind, Instance instance ) {
+		String instancePath = InstanceHelpers.computeInstancePath( instance );
+		publish( applicationName, new InstanceEvent( kind, instancePath, instance.getStatus()));
+	}
+
+
+	private void publish( String applicationName, InstanceEvent event ) {
+
+		Map<String,Subscription> subscriptions = this.appNameToSubscriptions.get( applicationName );
+		if( subscriptions == null )
+			return;
+
+		long now = System.currentTimeMillis();
+		for( Subscription subscription : subscriptions.values()) {
+			synchronized( subscription ) {
+				if( subscription.isExpired( now, this.expirationDelay )) {
+					remove( subscription );
+					subscription.closed = true;
+					continue;
+				}
+
+				if( subscription.events.size() >= this.capacity ) {
+					subscription.events.removeFirst();
+					subscription.overflowed = true;
+				}
+
+				subscription.events.addLast( event );
+				subscription.notifyAll();
+			}
+		}
+	}
+
+
+	private void removeExpiredSubscriptions() {
+
+		long now = System.currentTimeMillis();
+		for( Subscription subscription : this.idToSubscription.values()) {
+			synchronized( subscription ) {
+				if( subscription.isExpired( now, this.expirationDelay )) {
+					remove( subscription );
+					subscription.closed = true;
+				}
+			}
+		}
+	}
+
+
+	private void remove( Subscription subscription ) {
+
+		this.idToSubscription.remove( subscription.id );
+		Map<String,Subscription> subscriptions = this.appNameToSubscriptions.get( subscription.applicationName );
+		if( subscriptions != null )
+			subscriptions.remove( subscription.id );
+	}
+
+
+	private static void close( Subscription subscription ) {
+		synchronized( subscription ) {
+			subscription.closed = true;
+			subscription.events.clear();
+			subscription.notifyAll();
+		}
+	}
+
+
+	/**
+	 * A subscription to the events of an application.
+	 */
+	private static class Subscription {
+		final String id, applicationName;
+		final Deque<InstanceEvent> events = new ArrayDeque<InstanceEvent> ();
+		long lastPollTime = System.currentTimeMillis();
+		boolean overflowed = false, closed = false, polling = false;
+
+
+		/**
+		 * Constructor.
+		 * @param id
+		 * @param applicationName
+		 */
+		Subscription( String id, String applicationName ) {
+			this.id = id;
+			this.applicationName = applicationName;
+		}
+
+
+		/**
+		 * Invoked with the subscription's monitor.
+		 * @param now the current time, in milliseconds
+		 * @param expirationDelay the expiration delay, in milliseconds
+		 * @return true if this subscription was not polled for too long
+		 */
+		boolean isExpired( long now, long expirationDelay ) {
+			return ! this.closed
+					&& ! this.polling
+					&& now - this.lastPollTime > expirationDelay;
+		}
+	}
+}
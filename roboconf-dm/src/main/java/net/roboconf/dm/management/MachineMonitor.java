@@ -17,49 +17,96 @@
 package net.roboconf.dm.management;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
-import net.roboconf.core.model.runtime.Application;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.core.model.runtime.Instance.InstanceStatus;
 import net.roboconf.messaging.utils.MessagingUtils;
 
 /**
+ * A DM-wide failure detector, based on the heart beats sent by the agents.
+ * <p>
+ * Every monitored machine has a deadline: the date of its last heart beat, plus the
+ * time needed to miss more than the allowed number of heart beats. Machines are stored in
+ * a hashed timing wheel, according to their deadline. Every tick only visits the slot of
+ * the wheel that matches the current time. Acknowledging a heart beat only moves a machine
+ * to another slot. Therefore, the work does not depend on the number of machines, but on
+ * the number of expirations.
+ * </p>
+ * <p>
+ * Machines whose deadline expired are marked with the {@link InstanceStatus#PROBLEM} status.
+ * Statuses are only updated when they actually change.
+ * </p>
+ * <p>
+ * Every application can have its own heart beat period and threshold
+ * (see {@link #addApplication(String, long, int)}).
+ * </p>
+ *
  * @author Noël - LIG
+ * @author Vincent Zurczak - Linagora
  */
 public class MachineMonitor {
 
-	final static int MISSED_HEARTBEATS_THRESHOLD = 2;
+	public static final int DEFAULT_MISSED_HEARTBEATS_THRESHOLD = 2;
+	public static final long DEFAULT_TICK_DURATION = 1000;
+	static final int WHEEL_SIZE = 512;
 
-	private final Application application;
-	private final Map<Instance,Integer> rootInstanceToMissedHeartBeatsCount;
-	private final Timer timer;
 	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final long tickDuration;
+	private final List<Set<Entry>> wheel;
+	private final Map<String,Long> appNameToTimeout = new HashMap<String,Long> ();
+	private final Map<String,Map<Instance,Entry>> appNameToEntries = new HashMap<String,Map<Instance,Entry>> ();
+	private final Timer timer;
+
+	private long lastProcessedTick = -1;
+	private IModelListener modelListener = new ModelNotifier();
 
 
 	/**
 	 * Constructor.
-	 * @param application
 	 */
-	public MachineMonitor( Application application ) {
+	public MachineMonitor() {
+		this( DEFAULT_TICK_DURATION, true );
+	}
 
-		this.application = application;
-		this.rootInstanceToMissedHeartBeatsCount = new ConcurrentHashMap<Instance,Integer> ();
-		this.timer = new Timer( "Roboconf's Heartbeat Timer", true );
 
-		TimerTask timerTask = new TimerTask() {
-			@Override
-			public void run() {
-				monitorAllMachine();
-			}
-		};
+	/**
+	 * Constructor.
+	 * @param tickDuration the duration of a tick, in milliseconds (> 0)
+	 * @param startTimer true to check expirations periodically, false to let the caller do it
+	 */
+	MachineMonitor( long tickDuration, boolean startTimer ) {
+
+		if( tickDuration < 1 )
+			throw new IllegalArgumentException( "The tick duration must be positive." );
+
+		this.tickDuration = tickDuration;
+		this.wheel = new ArrayList<Set<Entry>> ( WHEEL_SIZE );
+		for( int i=0; i<WHEEL_SIZE; i++ )
+			this.wheel.add( new HashSet<Entry> ());
 
-		this.timer.scheduleAtFixedRate( timerTask, 0, MessagingUtils.HEARTBEAT_PERIOD );
+		if( startTimer ) {
+			this.timer = new Timer( "Roboconf's Heartbeat Timer", true );
+			TimerTask timerTask = new TimerTask() {
+				@Override
+				public void run() {
+					processExpirations( System.currentTimeMillis());
+				}
+			};
+
+			this.timer.scheduleAtFixedRate( timerTask, tickDuration, tickDuration );
+
+		} else {
+			this.timer = null;
+		}
 	}
 
 
@@ -67,69 +114,262 @@ public class MachineMonitor {
 	 * Stops the timer.
 	 */
 	public void stopTimer() {
-		this.timer.cancel();
+		if( this.timer != null )
+			this.timer.cancel();
 	}
 
 
 	/**
-	 * This method updates the status of instances.
+	 * @param modelListener the listener notified of status changes (not null)
 	 */
-	void monitorAllMachine() {
-
-		// Check the state of the machines
-		// We copy the list of instances to avoid concurrent modifications.
-		Collection<Instance> instances = new ArrayList<Instance>( this.application.getRootInstances());
-		for( Instance rootInstance : instances ) {
-
-			// Never started instances,
-			// or root instances that have been stopped by an agent,
-			// are not processed anymore here
-			if( rootInstance.getStatus() == InstanceStatus.NOT_DEPLOYED
-					|| rootInstance.getStatus() == InstanceStatus.DEPLOYING
-					|| rootInstance.getStatus() == InstanceStatus.UNDEPLOYING ) {
-				this.rootInstanceToMissedHeartBeatsCount.remove( rootInstance );
-				continue;
-			}
+	public void setModelListener( IModelListener modelListener ) {
+		this.modelListener = modelListener;
+	}
 
-			// Otherwise
-			Integer count = this.rootInstanceToMissedHeartBeatsCount.get( rootInstance );
-			if( count == null ){
-				// We visited it once
-				count = 1;
 
-			} else if( ++ count > MISSED_HEARTBEATS_THRESHOLD ) {
-				rootInstance.setStatus( InstanceStatus.PROBLEM );
+	/**
+	 * Registers an application, or updates its settings.
+	 * <p>
+	 * New settings apply to the next heart beats.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param heartbeatPeriod the expected delay between two heart beats, in milliseconds (> 0)
+	 * @param missedHeartbeatsThreshold the number of heart beats a machine can miss (> 0)
+	 */
+	public synchronized void addApplication( String applicationName, long heartbeatPeriod, int missedHeartbeatsThreshold ) {
 
-				if( count == MISSED_HEARTBEATS_THRESHOLD + 1 )
-					this.logger.severe( "Machine " + rootInstance.getName() + " has not sent heartbeats for quite a long time. Status changed to PROBLEM." );
-			}
+		if( heartbeatPeriod < 1 || missedHeartbeatsThreshold < 1 )
+			throw new IllegalArgumentException( "Heart beat settings must be positive." );
 
-			this.rootInstanceToMissedHeartBeatsCount.put( rootInstance, count );
+		this.appNameToTimeout.put( applicationName, heartbeatPeriod * ( missedHeartbeatsThreshold + 1 ));
+	}
+
+
+	/**
+	 * Stops monitoring the machines of an application.
+	 * @param applicationName the application name
+	 */
+	public synchronized void removeApplication( String applicationName ) {
+
+		this.appNameToTimeout.remove( applicationName );
+		Map<Instance,Entry> entries = this.appNameToEntries.remove( applicationName );
+		if( entries != null ) {
+			for( Entry entry : entries.values())
+				unschedule( entry );
 		}
 	}
 
 
 	/**
 	 * Acknowledges a heart beat.
+	 * @param applicationName the application name
+	 * @param rootInstance a root instance
+	 */
+	public void acknowledgeHeartBeat( String applicationName, Instance rootInstance ) {
+		acknowledgeHeartBeat( applicationName, rootInstance, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Acknowledges a heart beat.
+	 * @param applicationName the application name
 	 * @param rootInstance a root instance
+	 * @param now the current time, in milliseconds
+	 */
+	synchronized void acknowledgeHeartBeat( String applicationName, Instance rootInstance, long now ) {
+
+		Entry entry = postponeDeadline( applicationName, rootInstance, now );
+		if( rootInstance.getStatus() != InstanceStatus.DEPLOYED_STARTED ) {
+			if( entry.expired && rootInstance.getStatus() == InstanceStatus.PROBLEM )
+				this.logger.info( "Machine " + rootInstance.getName() + " is alive and reachable again." );
+
+			rootInstance.setStatus( InstanceStatus.DEPLOYED_STARTED );
+			this.modelListener.statusChanged( applicationName, rootInstance );
+		}
+
+		entry.expired = false;
+	}
+
+
+	/**
+	 * Monitors a machine without changing its status (e.g. a machine restored with its application).
+	 * <p>
+	 * The machine has a full time out to send a heart beat. Otherwise, it is marked
+	 * with the {@link InstanceStatus#PROBLEM} status, as if it had missed heart beats.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param rootInstance a root instance
+	 */
+	public void monitorMachine( String applicationName, Instance rootInstance ) {
+		monitorMachine( applicationName, rootInstance, System.currentTimeMillis());
+	}
+
+
+	/**
+	 * Monitors a machine without changing its status.
+	 * @param applicationName the application name
+	 * @param rootInstance a root instance
+	 * @param now the current time, in milliseconds
+	 */
+	synchronized void monitorMachine( String applicationName, Instance rootInstance, long now ) {
+		postponeDeadline( applicationName, rootInstance, now );
+	}
+
+
+	/**
+	 * Processes the machines whose deadline expired.
+	 * @param now the current time, in milliseconds
 	 */
-	public void acknowledgeHeartBeat( Instance rootInstance ) {
+	synchronized void processExpirations( long now ) {
 
-		Integer count = this.rootInstanceToMissedHeartBeatsCount.get( rootInstance );
-		if( count != null
-				&& count > MISSED_HEARTBEATS_THRESHOLD
-				&& rootInstance.getStatus() == InstanceStatus.DEPLOYED_STARTED )
-			this.logger.info( "Machine " + rootInstance.getName() + " is alive and reachable again." );
+		// Visit every slot since the last processing (at most one round)
+		long currentTick = now / this.tickDuration;
+		long firstTick = Math.max( this.lastProcessedTick + 1, currentTick - WHEEL_SIZE + 1 );
+		for( long tick = firstTick; tick <= currentTick; tick ++ ) {
 
-		rootInstance.setStatus( InstanceStatus.DEPLOYED_STARTED );
-		this.rootInstanceToMissedHeartBeatsCount.put( rootInstance, 0 );
+			Set<Entry> slot = this.wheel.get( slotIndex( tick ));
+			for( Iterator<Entry> it = slot.iterator(); it.hasNext(); ) {
+
+				// Entries of the next rounds stay in the slot
+				Entry entry = it.next();
+				if( entry.deadline <= now ) {
+					it.remove();
+					entry.slot = -1;
+					expire( entry );
+				}
+			}
+		}
+
+		this.lastProcessedTick = Math.max( this.lastProcessedTick, currentTick );
+	}
+
+
+	/**
+	 * @return the number of machines whose deadline has not expired yet
+	 */
+	synchronized int getScheduledMachinesCount() {
+
+		int result = 0;
+		for( Set<Entry> slot : this.wheel )
+			result += slot.size();
+
+		return result;
+	}
+
+
+	/**
+	 * @return the number of monitored machines, including those whose deadline expired
+	 */
+	synchronized int getMonitoredMachinesCount() {
+
+		int result = 0;
+		for( Map<Instance,Entry> entries : this.appNameToEntries.values())
+			result += entries.size();
+
+		return result;
+	}
+
+
+	private Entry postponeDeadline( String applicationName, Instance rootInstance, long now ) {
+
+		Map<Instance,Entry> entries = this.appNameToEntries.get( applicationName );
+		if( entries == null ) {
+			entries = new HashMap<Instance,Entry> ();
+			this.appNameToEntries.put( applicationName, entries );
+		}
+
+		Entry entry = entries.get( rootInstance );
+		if( entry == null ) {
+			entry = new Entry( applicationName, rootInstance );
+			entries.put( rootInstance, entry );
+		}
+
+		Long timeout = this.appNameToTimeout.get( applicationName );
+		if( timeout == null )
+			timeout = MessagingUtils.HEARTBEAT_PERIOD * ( DEFAULT_MISSED_HEARTBEATS_THRESHOLD + 1 );
+
+		entry.deadline = now + timeout;
+		schedule( entry );
+
+		return entry;
+	}
+
+
+	private void schedule( Entry entry ) {
+
+		unschedule( entry );
+
+		// Deadlines in the past are processed at the next tick
+		long tick = Math.max( entry.deadline / this.tickDuration, this.lastProcessedTick + 1 );
+		entry.slot = slotIndex( tick );
+		this.wheel.get( entry.slot ).add( entry );
+	}
+
+
+	private void unschedule( Entry entry ) {
+
+		if( entry.slot >= 0 )
+			this.wheel.get( entry.slot ).remove( entry );
+
+		entry.slot = -1;
+	}
+
+
+	private void expire( Entry entry ) {
+
+		// Never started instances,
+		// or root instances that have been stopped by an agent,
+		// are not monitored anymore.
+		Instance rootInstance = entry.rootInstance;
+		InstanceStatus status = rootInstance.getStatus();
+		if( status == InstanceStatus.NOT_DEPLOYED
+				|| status == InstanceStatus.DEPLOYING
+				|| status == InstanceStatus.UNDEPLOYING ) {
+
+			Map<Instance,Entry> entries = this.appNameToEntries.get( entry.applicationName );
+			if( entries != null ) {
+				entries.remove( rootInstance );
+				if( entries.isEmpty())
+					this.appNameToEntries.remove( entry.applicationName );
+			}
+
+		} else {
+			entry.expired = true;
+			if( status != InstanceStatus.PROBLEM ) {
+				rootInstance.setStatus( InstanceStatus.PROBLEM );
+				this.modelListener.statusChanged( entry.applicationName, rootInstance );
+				this.logger.severe( "Machine " + rootInstance.getName() + " has not sent heartbeats for quite a long time. Status changed to PROBLEM." );
+			}
+		}
+	}
+
+
+	private int slotIndex( long tick ) {
+		return (int) ( tick % WHEEL_SIZE );
 	}
 
 
 	/**
-	 * @return the rootInstanceToMissedHeartBeatsCount
+	 * A monitored machine.
 	 */
-	Map<Instance,Integer> getRootInstanceToMissedHeartBeatsCount() {
-		return this.rootInstanceToMissedHeartBeatsCount;
+	private static class Entry {
+		final String applicationName;
+		final Instance rootInstance;
+		long deadline;
+		int slot = -1;
+		boolean expired = false;
+
+
+		/**
+		 * Constructor.
+		 * @param applicationName
+		 * @param rootInstance
+		 */
+		Entry( String applicationName, Instance rootInstance ) {
+			this.applicationName = applicationName;
+			this.rootInstance = rootInstance;
+		}
 	}
 }
@@ -0,0 +1,236 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.iaas.api.AsyncIaasInterface;
+import net.roboconf.iaas.api.MachineHandle;
+import net.roboconf.iaas.api.exceptions.IaasException;
+
+/**
+ * A DM-wide poller that advances the machines being created (see {@link AsyncIaasInterface}).
+ * <p>
+ * No thread waits for a given machine. Every machine is checked by a scheduled task, which
+ * is scheduled again (with a longer delay) as long as the machine is not ready. The delay
+ * starts at an initial value and is doubled after every check, up to a maximal value.
+ * Therefore, a few threads are enough to follow many machines at once.
+ * </p>
+ * <p>
+ * A callback is notified when a machine is ready, or when its creation failed
+ * (including when it was not ready before the time out).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class MachinePoller {
+
+	public static final int DEFAULT_THREADS_COUNT = 2;
+	public static final long DEFAULT_INITIAL_DELAY = 2000;
+	public static final long DEFAULT_MAX_DELAY = 30000;
+	public static final long DEFAULT_TIMEOUT = 15 * 60 * 1000;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final ScheduledThreadPoolExecutor executor;
+	private final AtomicInteger trackedMachines = new AtomicInteger( 0 );
+
+	private volatile long initialDelay = DEFAULT_INITIAL_DELAY;
+	private volatile long maxDelay = DEFAULT_MAX_DELAY;
+	private volatile long timeout = DEFAULT_TIMEOUT;
+
+
+	/**
+	 * Constructor.
+	 */
+	public MachinePoller() {
+		this( DEFAULT_THREADS_COUNT );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param threadsCount the number of threads that check machines (> 0)
+	 */
+	public MachinePoller( int threadsCount ) {
+
+		if( threadsCount < 1 )
+			throw new IllegalArgumentException( "The number of threads must be positive." );
+
+		this.executor = new ScheduledThreadPoolExecutor( threadsCount, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread( Runnable r ) {
+				Thread thread = new Thread( r, "Roboconf's Machine Poller " + this.count.incrementAndGet());
+				thread.setDaemon( true );
+				return thread;
+			}
+		});
+	}
+
+
+	/**
+	 * Sets the delays between two checks of a same machine.
+	 * <p>
+	 * New delays only apply to the machines tracked after this call.
+	 * </p>
+	 *
+	 * @param initialDelay the delay before the first check, in milliseconds (> 0)
+	 * @param maxDelay the maximal delay between two checks, in milliseconds (>= initial delay)
+	 */
+	public void setDelays( long initialDelay, long maxDelay ) {
+
+		if( initialDelay < 1 || maxDelay < initialDelay )
+			throw new IllegalArgumentException( "Delays must be positive, and the maximal delay cannot be less than the initial one." );
+
+		this.initialDelay = initialDelay;
+		this.maxDelay = maxDelay;
+	}
+
+
+	/**
+	 * Sets the maximal delay for a machine to be ready.
+	 * <p>
+	 * The new time out only applies to the machines tracked after this call.
+	 * </p>
+	 *
+	 * @param timeout a time out, in milliseconds (> 0)
+	 */
+	public void setTimeout( long timeout ) {
+
+		if( timeout < 1 )
+			throw new IllegalArgumentException( "The time out must be positive." );
+
+		this.timeout = timeout;
+	}
+
+
+	/**
+	 * Starts tracking a machine.
+	 * @param handle the handle of a machine being created
+	 * @param callback the callback to notify once the machine is ready or has failed
+	 */
+	public void track( MachineHandle handle, Callback callback ) {
+
+		PollTask task = new PollTask( handle, callback, this.initialDelay, System.currentTimeMillis() + this.timeout );
+		this.trackedMachines.incrementAndGet();
+		this.executor.schedule( task, task.delay, TimeUnit.MILLISECONDS );
+	}
+
+
+	/**
+	 * @return the number of machines that are not ready yet
+	 */
+	public int getTrackedMachinesCount() {
+		return this.trackedMachines.get();
+	}
+
+
+	private void poll( PollTask task ) {
+
+		boolean ready = false;
+		Exception error = null;
+		try {
+			ready = task.handle.advance();
+			if( ! ready && System.currentTimeMillis() >= task.deadline )
+				error = new IaasException( "Machine " + task.handle.getMachineId() + " was not ready before the time out." );
+
+		} catch( Exception e ) {
+			error = e;
+		}
+
+		if( ready || error != null ) {
+			this.trackedMachines.decrementAndGet();
+			notify( task, error );
+
+		} else {
+			task.delay = Math.min( task.delay * 2, this.maxDelay );
+			long delay = Math.min( task.delay, Math.max( 0, task.deadline - System.currentTimeMillis()));
+			this.executor.schedule( task, delay, TimeUnit.MILLISECONDS );
+		}
+	}
+
+
+	private void notify( PollTask task, Exception error ) {
+
+		try {
+			if( error == null )
+				task.callback.machineReady( task.handle );
+			else
+				task.callback.machineFailed( task.handle, error );
+
+		} catch( Exception e ) {
+			this.logger.severe( "A callback failed for machine " + task.handle.getMachineId() + ". " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+		}
+	}
+
+
+	/**
+	 * The callback notified once a machine is ready or has failed.
+	 */
+	public interface Callback {
+
+		/**
+		 * @param handle the handle of the machine that is ready
+		 */
+		void machineReady( MachineHandle handle );
+
+		/**
+		 * @param handle the handle of the machine that could not be created
+		 * @param error the error
+		 */
+		void machineFailed( MachineHandle handle, Exception error );
+	}
+
+
+	/**
+	 * The periodic check of a machine.
+	 */
+	private class PollTask implements Runnable {
+		final MachineHandle handle;
+		final Callback callback;
+		final long deadline;
+		long delay;
+
+
+		/**
+		 * Constructor.
+		 * @param handle
+		 * @param callback
+		 * @param delay
+		 * @param deadline
+		 */
+		PollTask( MachineHandle handle, Callback callback, long delay, long deadline ) {
+			this.handle = handle;
+			this.callback = callback;
+			this.delay = delay;
+			this.deadline = deadline;
+		}
+
+
+		@Override
+		public void run() {
+			poll( this );
+		}
+	}
+}
@@ -33,7 +33,6 @@ public class ManagedApplication {
 	private final File applicationFilesDirectory;
 	private final Logger logger;
 
-	private final MachineMonitor monitor;
 	private final IMessageServerClient messagingClient;
 
 
@@ -49,7 +48,6 @@ public class ManagedApplication {
 		this.application = application;
 		this.messagingClient = messagingClient;
 
-		this.monitor = new MachineMonitor( application );
 		this.logger = Logger.getLogger( Manager.class.getName() + "." + application.getName());
 	}
 
@@ -64,11 +62,6 @@ public class ManagedApplication {
 	}
 
 
-	public MachineMonitor getMonitor() {
-		return this.monitor;
-	}
-
-
 	public IMessageServerClient getMessagingClient() {
 		return this.messagingClient;
 	}
@@ -20,9 +20,13 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Logger;
 
 import net.roboconf.core.actions.ApplicationAction;
@@ -43,12 +47,12 @@ import net.roboconf.dm.management.exceptions.InexistingException;
 import net.roboconf.dm.management.exceptions.InvalidActionException;
 import net.roboconf.dm.management.exceptions.InvalidApplicationException;
 import net.roboconf.dm.management.exceptions.UnauthorizedActionException;
-import net.roboconf.dm.utils.ResourceUtils;
-import net.roboconf.iaas.api.IaasInterface;
-import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
-import net.roboconf.iaas.api.exceptions.IaasException;
+import net.roboconf.dm.persistence.DmState;
+import net.roboconf.dm.persistence.DmState.ApplicationState;
+import net.roboconf.dm.persistence.StateJournal;
 import net.roboconf.messaging.client.IMessageServerClient;
 import net.roboconf.messaging.client.MessageServerClientFactory;
+import net.roboconf.messaging.codec.MessageCodecs;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceDeploy;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceRemove;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStart;
@@ -78,8 +82,18 @@ public final class Manager {
 	public static final Manager INSTANCE = new Manager();
 
 	private final Map<String,ManagedApplication> appNameToManagedApplication;
+	private final ProvisioningEngine provisioningEngine;
+	private final MachineMonitor machineMonitor;
+	private final ResourceCache resourceCache;
+	private final StateJournal stateJournal;
+	private final SnapshotRegistry snapshotRegistry;
+	private final InstanceEventBroker eventBroker;
+	private final ModelNotifier modelNotifier;
 	private final Logger logger;
 
+	// Applications found in the journal but that could not be restored
+	private final Map<String,ApplicationState> unrestoredApplications;
+
 	private String messageServerIp;
 	private IaasResolver iaasResolver;
 	private MessageServerClientFactory messagingClientFactory;
@@ -90,22 +104,147 @@ public final class Manager {
 	 * Constructor.
 	 */
 	private Manager() {
-		this.appNameToManagedApplication = new HashMap<String,ManagedApplication> ();
+		this.appNameToManagedApplication = Collections.synchronizedMap( new HashMap<String,ManagedApplication> ());
+		this.provisioningEngine = new ProvisioningEngine();
+		this.machineMonitor = new MachineMonitor();
+		this.resourceCache = new ResourceCache();
+		this.stateJournal = new StateJournal();
+		this.snapshotRegistry = new SnapshotRegistry();
+		this.eventBroker = new InstanceEventBroker();
+		this.modelNotifier = new ModelNotifier();
+		this.unrestoredApplications = new LinkedHashMap<String,ApplicationState> ();
 		this.logger = Logger.getLogger( getClass().getName());
 
+		this.modelNotifier.addListener( this.stateJournal );
+		this.modelNotifier.addListener( this.snapshotRegistry );
+		this.modelNotifier.addListener( this.eventBroker );
+		this.provisioningEngine.setModelListener( this.modelNotifier );
+		this.machineMonitor.setModelListener( this.modelNotifier );
+
 		this.iaasResolver = new IaasResolver();
 		this.messagingClientFactory = new MessageServerClientFactory();
 	}
 
 
 	/**
-	 * @return the appNameToManagedApplication
+	 * @return the appNameToManagedApplication (synchronized, iterations must be made while holding its monitor)
 	 */
 	public Map<String, ManagedApplication> getAppNameToManagedApplication() {
 		return this.appNameToManagedApplication;
 	}
 
 
+	/**
+	 * @return the engine that creates and terminates machines
+	 */
+	public ProvisioningEngine getProvisioningEngine() {
+		return this.provisioningEngine;
+	}
+
+
+	/**
+	 * @return the failure detector shared by all the applications
+	 */
+	public MachineMonitor getMachineMonitor() {
+		return this.machineMonitor;
+	}
+
+
+	/**
+	 * @return the cache for the resources sent to the agents
+	 */
+	public ResourceCache getResourceCache() {
+		return this.resourceCache;
+	}
+
+
+	/**
+	 * @return the journal that records the modifications of the model
+	 */
+	public StateJournal getStateJournal() {
+		return this.stateJournal;
+	}
+
+
+	/**
+	 * @return the registry of the versions and snapshots of the applications
+	 */
+	public SnapshotRegistry getSnapshotRegistry() {
+		return this.snapshotRegistry;
+	}
+
+
+	/**
+	 * @return the broker that pushes the modifications of instances to the subscribed clients
+	 */
+	public InstanceEventBroker getEventBroker() {
+		return this.eventBroker;
+	}
+
+
+	/**
+	 * @return the object to notify when the model is modified (it forwards the notifications to all the model listeners)
+	 */
+	public ModelNotifier getModelNotifier() {
+		return this.modelNotifier;
+	}
+
+
+	/**
+	 * Restores the state saved in a directory, and then records all the modifications in it.
+	 * <p>
+	 * Applications are loaded again from their directory, and their instances are restored.
+	 * This method should be invoked once, when the DM starts.
+	 * </p>
+	 *
+	 * @param stateDirectory the directory where the state is stored
+	 * @throws IOException if the state could not be read
+	 */
+	public void restoreState( File stateDirectory ) throws IOException {
+
+		DmState state = this.stateJournal.recover( stateDirectory );
+		if( state.getMessageServerIp() != null )
+			this.messageServerIp = state.getMessageServerIp();
+
+		for( ApplicationState appState : state.getNameToApplication().values()) {
+			try {
+				restoreApplication( appState );
+
+			} catch( Exception e ) {
+				// Keep it in the journal, it may be restored the next time
+				this.unrestoredApplications.put( appState.getName(), appState );
+				this.logger.severe( "Application " + appState.getName() + " could not be restored. " + e.getMessage());
+				this.logger.finest( Utils.writeException( e ));
+			}
+		}
+
+		this.stateJournal.start( new StateJournal.StateProvider() {
+			@Override
+			public DmState captureState() {
+
+				DmState result = new DmState();
+				result.setMessageServerIp( Manager.this.messageServerIp );
+				for( ApplicationState appState : Manager.this.unrestoredApplications.values())
+					result.getNameToApplication().put( appState.getName(), appState );
+
+				List<ManagedApplication> managedApplications;
+				synchronized( Manager.this.appNameToManagedApplication ) {
+					managedApplications = new ArrayList<ManagedApplication>( Manager.this.appNameToManagedApplication.values());
+				}
+
+				for( ManagedApplication ma : managedApplications ) {
+					if( ma != null ) {
+						ApplicationState appState = ApplicationState.capture( ma.getApplication(), ma.getApplicationFilesDirectory().getAbsolutePath());
+						result.getNameToApplication().put( appState.getName(), appState );
+					}
+				}
+
+				return result;
+			}
+		});
+	}
+
+
 	/**
 	 * Tries to change the message server IP.
 	 * <p>
@@ -123,6 +262,7 @@ public final class Manager {
 
 		if( canChange ) {
 			this.messageServerIp = messageServerIp;
+			this.stateJournal.messageServerIpChanged( messageServerIp );
 			this.logger.info( "Changing the message server IP to " + messageServerIp );
 		} else {
 			this.logger.info( "Discarding a request to change the message server IP to " + messageServerIp );
@@ -146,8 +286,10 @@ public final class Manager {
 	public List<Application> listApplications() {
 
 		List<Application> result = new ArrayList<Application> ();
-		for( ManagedApplication ma : this.appNameToManagedApplication.values())
-			result.add( ma.getApplication());
+		synchronized( this.appNameToManagedApplication ) {
+			for( ManagedApplication ma : this.appNameToManagedApplication.values())
+				result.add( ma.getApplication());
+		}
 
 		return result;
 	}
@@ -187,15 +329,16 @@ public final class Manager {
 		if( null != findApplicationByName( application.getName()))
 			throw new AlreadyExistingException( application.getName());
 
-		final IMessageServerClient client = this.messagingClientFactory.create();
-		client.setApplicationName( application.getName());
-		client.setMessageServerIp( this.messageServerIp );
-		client.setSourceName( MessagingUtils.SOURCE_DM );
-		client.openConnection( new DmMessageProcessor( application ));
-		client.bind( MessagingUtils.buildRoutingKeyToDm());
+		ManagedApplication ma = register( application, applicationFilesDirectory );
+		Lock lock = application.getLock().readLock();
+		lock.lock();
+		try {
+			this.modelNotifier.applicationAdded( application, applicationFilesDirectory );
+
+		} finally {
+			lock.unlock();
+		}
 
-		ManagedApplication ma = new ManagedApplication( application, applicationFilesDirectory, client );
-		this.appNameToManagedApplication.put( application.getName(), ma );
 		ma.getLogger().fine( "Application " + application.getName() + " was successfully loaded and added." );
 
 		return ma;
@@ -215,7 +358,7 @@ public final class Manager {
 			throw new InexistingException( applicationName );
 
 		// Check we can do this
-		for( Instance rootInstance : ma.getApplication().getRootInstances()) {
+		for( Instance rootInstance : copyRootInstances( ma.getApplication())) {
 			if( rootInstance.getStatus() != InstanceStatus.NOT_DEPLOYED )
 				throw new UnauthorizedActionException( applicationName + " contains instances that are still deployed." );
 		}
@@ -226,6 +369,7 @@ public final class Manager {
 		cleanMessagingServer( ma );
 
 		this.appNameToManagedApplication.remove( applicationName );
+		this.modelNotifier.applicationRemoved( applicationName );
 		try {
 			Utils.deleteFilesRecursively( ma.getApplicationFilesDirectory());
 
@@ -337,15 +481,24 @@ public final class Manager {
 		if( ma == null )
 			throw new InexistingException( applicationName );
 
-		Instance parentInstance = null;
-		if( parentInstancePath != null
-				&& ( parentInstance = InstanceHelpers.findInstanceByPath( ma.getApplication(), parentInstancePath )) == null )
-			throw new InexistingException( parentInstancePath );
+		Lock lock = ma.getApplication().getLock().writeLock();
+		lock.lock();
+		try {
+			Instance parentInstance = null;
+			if( parentInstancePath != null
+					&& ( parentInstance = InstanceHelpers.findInstanceByPath( ma.getApplication(), parentInstancePath )) == null )
+				throw new InexistingException( parentInstancePath );
+
+			// 1. Insert the instance in the model first.
+			// 2. Only then, propagate the information.
+			if( ! InstanceHelpers.tryToInsertChildInstance( ma.getApplication(), parentInstance, instance ))
+				throw new ImpossibleInsertionException( instance.getName());
+
+			this.modelNotifier.instanceAdded( applicationName, instance );
 
-		// 1. Insert the instance in the model first.
-		// 2. Only then, propagate the information.
-		if( ! InstanceHelpers.tryToInsertChildInstance( ma.getApplication(), parentInstance, instance ))
-			throw new ImpossibleInsertionException( instance.getName());
+		} finally {
+			lock.unlock();
+		}
 
 		ma.getLogger().fine( "Instance " + InstanceHelpers.computeInstancePath( instance ) + " was successfully added in " + applicationName + "." );
 	}
@@ -371,7 +524,7 @@ public final class Manager {
 		// Undeploy everything correctly so that we keep the message server clean.
 		// Also, this is useful for deployments on machines (not just on VM).
 		BulkActionException bulkException = new BulkActionException( false );
-		for( Instance instance : ma.getApplication().getRootInstances()) {
+		for( Instance instance : copyRootInstances( ma.getApplication())) {
 			if( instance.getStatus() != InstanceStatus.NOT_DEPLOYED )
 				undeploy( ma, Arrays.asList( instance ));
 		}
@@ -399,7 +552,7 @@ public final class Manager {
 		if( ma == null )
 			throw new InexistingException( applicationName );
 
-		ma.getMonitor().acknowledgeHeartBeat( rootInstance );
+		this.machineMonitor.acknowledgeHeartBeat( applicationName, rootInstance );
 		ma.getLogger().finest( "A heart beat was acknowledged for " + rootInstance.getName() + " in the application " + applicationName + "." );
 	}
 
@@ -414,9 +567,12 @@ public final class Manager {
 	public void cleanUpAll() {
 
 		this.messageServerIp = null;
-		for( ManagedApplication ma : this.appNameToManagedApplication.values()) {
-			if( ma != null )
-				cleanUp( ma );
+		this.stateJournal.close();
+		synchronized( this.appNameToManagedApplication ) {
+			for( ManagedApplication ma : this.appNameToManagedApplication.values()) {
+				if( ma != null )
+					cleanUp( ma );
+			}
 		}
 
 		this.logger.info( "Cleaning up all the resources (connections, listeners, etc)." );
@@ -459,35 +615,35 @@ public final class Manager {
 
 	/**
 	 * Terminates a VM.
+	 * <p>
+	 * The termination is only queued. It is performed asynchronously
+	 * by the {@link ProvisioningEngine}.
+	 * </p>
+	 *
 	 * @param applicationName the application name
 	 * @param rootInstance the root instance associated with a machine
 	 */
 	public void terminateMachine( String applicationName, Instance rootInstance ) {
 
-		try {
-			ManagedApplication ma = this.appNameToManagedApplication.get( applicationName );
-			if( ma == null ) {
-				this.logger.severe( "Machine " + rootInstance.getName() + " failed to be resolved for application " + applicationName + "." );
-
-			} else {
-				this.logger.fine( "Machine " + rootInstance.getName() + " is about to be deleted." );
-				IaasInterface iaasInterface = this.iaasResolver.findIaasInterface( ma, rootInstance );
-				String machineId = rootInstance.getData().remove( Instance.MACHINE_ID );
-				iaasInterface.terminateVM( machineId );
+		ManagedApplication ma = this.appNameToManagedApplication.get( applicationName );
+		if( ma == null ) {
+			this.logger.severe( "Machine " + rootInstance.getName() + " failed to be resolved for application " + applicationName + "." );
 
-				this.logger.fine( "Machine " + rootInstance.getName() + " was successfully deleted." );
-				rootInstance.setStatus( InstanceStatus.NOT_DEPLOYED );
-			}
+		} else {
+			this.logger.fine( "Machine " + rootInstance.getName() + " is about to be deleted." );
+			ProvisioningEngine.Batch batch = new ProvisioningEngine.Batch( ma, false );
+			try {
+				this.provisioningEngine.submitTermination( ma, rootInstance, this.iaasResolver, batch );
 
-		} catch( IaasException e ) {
-			rootInstance.setStatus( InstanceStatus.PROBLEM );
-			this.logger.severe( "Machine " + rootInstance.getName() + " could not be deleted. " + e.getMessage());
-			this.logger.finest( Utils.writeException( e ));
+			} catch( RejectedExecutionException e ) {
+				rootInstance.setStatus( InstanceStatus.PROBLEM );
+				this.modelNotifier.statusChanged( applicationName, rootInstance );
+				this.logger.severe( "Machine " + rootInstance.getName() + " could not be deleted. " + e.getMessage());
+				this.logger.finest( Utils.writeException( e ));
 
-		} catch( CommunicationToIaasException e ) {
-			rootInstance.setStatus( InstanceStatus.PROBLEM );
-			this.logger.severe( "Machine " + rootInstance.getName() + " could not be deleted. " + e.getMessage());
-			this.logger.finest( Utils.writeException( e ));
+			} finally {
+				batch.seal();
+			}
 		}
 	}
 
@@ -505,17 +661,24 @@ public final class Manager {
 
 		List<Instance> instances = new ArrayList<Instance> ();
 		Instance initialInstance = null;
-		if( instancePath == null ) {
-			instances.addAll( InstanceHelpers.getAllInstances( app ));
+		Lock lock = app.getLock().readLock();
+		lock.lock();
+		try {
+			if( instancePath == null ) {
+				instances.addAll( InstanceHelpers.getAllInstances( app ));
 
-		} else if(( initialInstance = InstanceHelpers.findInstanceByPath( app, instancePath )) == null ) {
-			throw new InexistingException( instancePath );
+			} else if(( initialInstance = InstanceHelpers.findInstanceByPath( app, instancePath )) == null ) {
+				throw new InexistingException( instancePath );
 
-		} else if( applyToAllChildren ) {
-			instances.addAll( InstanceHelpers.buildHierarchicalList( initialInstance ));
+			} else if( applyToAllChildren ) {
+				instances.addAll( InstanceHelpers.buildHierarchicalList( initialInstance ));
 
-		} else {
-			instances.add( initialInstance );
+			} else {
+				instances.add( initialInstance );
+			}
+
+		} finally {
+			lock.unlock();
 		}
 
 		return instances;
@@ -550,7 +713,16 @@ public final class Manager {
 				}
 
 			} else {
-				ma.getApplication().getRootInstances().remove( instance );
+				Lock lock = ma.getApplication().getLock().writeLock();
+				lock.lock();
+				try {
+					String instancePath = InstanceHelpers.computeInstancePath( instance );
+					InstanceHelpers.removeInstance( ma.getApplication(), instance );
+					this.modelNotifier.instanceRemoved( ma.getApplication().getName(), instancePath );
+
+				} finally {
+					lock.unlock();
+				}
 			}
 		}
 
@@ -649,50 +821,50 @@ public final class Manager {
 
 	private void deploy( ManagedApplication ma, List<Instance> instances ) throws BulkActionException {
 
+		// Machines are created asynchronously by the provisioning engine.
+		// Errors that occur there are logged once the whole batch has completed.
+		// Only errors that prevent from queuing requests are reported here.
 		BulkActionException bulkException = new BulkActionException( true );
-		for( Instance instance : instances ) {
-			if( instance.getParent() == null ) {
-				try {
+		ProvisioningEngine.Batch batch = new ProvisioningEngine.Batch( ma, true );
+		try {
+			// Machines are submitted together, so that those with the same IaaS
+			// configuration can be created with a single request.
+			List<Instance> rootInstances = new ArrayList<Instance> ();
+			for( Instance instance : instances ) {
+				if( instance.getParent() == null ) {
 
 					// If the VM creation was already requested...
 					// ... then its machine ID has already been set.
 					// It does not mean the VM is already created, it may take stome time.
-					String machineId = instance.getData().get( Instance.MACHINE_ID );
-					if( machineId == null ) {
-						IaasInterface iaasInterface = this.iaasResolver.findIaasInterface( ma, instance );
-						machineId = iaasInterface.createVM(
-								null, this.messageServerIp, instance.getName(),
-								ma.getApplication().getName());
-
-						// FIXME: the channel name is skipped here
-						// As soon as we know what it is useful for, re-add it (it is in the instance)
-						instance.getData().put( Instance.MACHINE_ID, machineId );
-					}
+					if( instance.getData().get( Instance.MACHINE_ID ) == null )
+						rootInstances.add( instance );
 
-				} catch( IaasException e ) {
-					instance.setStatus( InstanceStatus.PROBLEM );
-					bulkException.getInstancesToException().put( instance, e );
+				} else {
+					try {
+						// FIXME: we may have to add the instance on the agent too, just like for root instances
+						sendDeploymentRequest( ma, instance, false, null, 0 );
 
-				} catch( CommunicationToIaasException e ) {
-					instance.setStatus( InstanceStatus.PROBLEM );
-					bulkException.getInstancesToException().put( instance, e );
+					} catch( IOException e ) {
+						// The instance does not have any problem, just keep trace of the exception
+						bulkException.getInstancesToException().put( instance, e );
+					}
 				}
+			}
 
-			} else {
-				try {
-					// FIXME: we may have to add the instance on the agent too, just like for root instances
-					Map<String,byte[]> instanceResources = ResourceUtils.storeInstanceResources( ma.getApplicationFilesDirectory(), instance );
-					MsgCmdInstanceDeploy message = new MsgCmdInstanceDeploy( InstanceHelpers.computeInstancePath( instance ), instanceResources );
-					ma.getMessagingClient().publish(
-							false,
-							MessagingUtils.buildRoutingKeyToAgent( instance ),
-							message );
+			try {
+				if( ! rootInstances.isEmpty())
+					this.provisioningEngine.submitCreations( ma, rootInstances, this.iaasResolver, this.messageServerIp, batch );
 
-				} catch( IOException e ) {
-					// The instance does not have any problem, just keep trace of the exception
+			} catch( RejectedExecutionException e ) {
+				for( Instance instance : rootInstances ) {
+					instance.setStatus( InstanceStatus.PROBLEM );
+					this.modelNotifier.statusChanged( ma.getApplication().getName(), instance );
 					bulkException.getInstancesToException().put( instance, e );
 				}
 			}
+
+		} finally {
+			batch.seal();
 		}
 
 		if( ! bulkException.getInstancesToException().isEmpty()) {
@@ -704,16 +876,180 @@ public final class Manager {
 
 
 
-	private void cleanUp( ManagedApplication ma ) {
+	/**
+	 * Sends a deployment request to an agent.
+	 * <p>
+	 * Resources are only sent if the agent does not already hold them.
+	 * Large resources are sent in chunks, before the deployment request.
+	 * </p>
+	 *
+	 * @param ma the managed application
+	 * @param instance the instance to deploy (not a root instance)
+	 * @param forceResources true to send the resources in any case
+	 * @param resumeFileName the file from which a chunked transfer must be resumed (null to send everything)
+	 * @param resumeOffset the offset in this file
+	 * @throws IOException if the resources could not be read or if the message could not be sent
+	 */
+	void sendDeploymentRequest(
+			ManagedApplication ma,
+			Instance instance,
+			boolean forceResources,
+			String resumeFileName,
+			long resumeOffset )
+	throws IOException {
+
+		String applicationName = ma.getApplication().getName();
+		String rootInstanceName = InstanceHelpers.findRootInstance( instance ).getName();
+		String routingKey = MessagingUtils.buildRoutingKeyToAgent( instance );
+
+		ResourceCache.Resources resources = this.resourceCache.findResources( ma, instance );
+		boolean sendResources = forceResources
+				|| ! this.resourceCache.isHeldByAgent( applicationName, rootInstanceName, resources.getHash());
+
+		Map<String,byte[]> files = null;
+		if( sendResources && resources.isChunked()) {
+			ResourceStreamer streamer = new ResourceStreamer( ma.getMessagingClient(), this.resourceCache.getChunkSize());
+			int count = streamer.send( routingKey, resources, resumeFileName, resumeOffset );
+			ma.getLogger().fine( count + " resource chunks were sent for " + instance.getName() + "." );
+
+		} else if( sendResources ) {
+			files = resources.getFiles();
+		}
+
+		MsgCmdInstanceDeploy message = new MsgCmdInstanceDeploy(
+				InstanceHelpers.computeInstancePath( instance ),
+				files,
+				resources.getHash());
+
+		ma.getMessagingClient().publish( false, routingKey, message );
+
+		// If the agent does not find the resources, it will ask for them
+		this.resourceCache.setHeldByAgent( applicationName, rootInstanceName, resources.getHash(), true );
+	}
+
+
+	/**
+	 * Sends a deployment request again, with the resources.
+	 * <p>
+	 * This method is invoked when an agent was asked to deploy an instance with
+	 * resources it did not hold.
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param instancePath the path of the instance to deploy
+	 * @param resumeFileName the file from which a chunked transfer must be resumed (null to send everything)
+	 * @param resumeOffset the offset in this file
+	 * @throws InexistingException if the application or the instance does not exist
+	 * @throws IOException if the resources could not be read or if the message could not be sent
+	 */
+	public void resendDeploymentRequest( String applicationName, String instancePath, String resumeFileName, long resumeOffset )
+	throws InexistingException, IOException {
+
+		ManagedApplication ma = this.appNameToManagedApplication.get( applicationName );
+		if( ma == null )
+			throw new InexistingException( applicationName );
+
+		Instance instance = InstanceHelpers.findInstanceByPath( ma.getApplication(), instancePath );
+		if( instance == null )
+			throw new InexistingException( instancePath );
+
+		ma.getLogger().fine( "Resources for " + instancePath + " are sent again to the agent." );
+		sendDeploymentRequest( ma, instance, true, resumeFileName, resumeOffset );
+	}
+
+
+
+	private void restoreApplication( ApplicationState appState )
+	throws AlreadyExistingException, InvalidApplicationException, IOException {
+
+		File applicationFilesDirectory = new File( appState.getDirectory());
+		LoadResult lr = RuntimeModelIo.loadApplication( applicationFilesDirectory );
+		if( RoboconfErrorHelpers.containsCriticalErrors( lr.getLoadErrors()))
+			throw new InvalidApplicationException( lr.getLoadErrors());
+
+		Application application = lr.getApplication();
+		if( null != findApplicationByName( application.getName()))
+			throw new AlreadyExistingException( application.getName());
+
+		int skipped = appState.restoreInstances( application );
+
+		// The machine creations that were in progress were lost with the previous DM.
+		// Their machines may still come up: a heart beat will then fix their status.
+		for( Instance rootInstance : application.getRootInstances()) {
+			if( rootInstance.getStatus() == InstanceStatus.DEPLOYING )
+				rootInstance.setStatus( InstanceStatus.PROBLEM );
+		}
+
+		ManagedApplication ma = register( application, applicationFilesDirectory );
+		if( skipped > 0 )
+			ma.getLogger().warning( skipped + " instance(s) of " + application.getName() + " could not be restored. Their component was not found." );
+
+		// Restored machines must send heart beats, like the others
+		for( Instance rootInstance : copyRootInstances( application )) {
+			if( rootInstance.getStatus() != InstanceStatus.NOT_DEPLOYED )
+				this.machineMonitor.monitorMachine( application.getName(), rootInstance );
+		}
+
+		ma.getLogger().info( "Application " + application.getName() + " was successfully restored." );
+	}
+
+
+	private ManagedApplication register( Application application, File applicationFilesDirectory )
+	throws AlreadyExistingException, IOException {
+
+		final IMessageServerClient client = this.messagingClientFactory.create();
+		client.setApplicationName( application.getName());
+		client.setMessageServerIp( this.messageServerIp );
+		client.setSourceName( MessagingUtils.SOURCE_DM );
+		client.setMessageCodec( application.getMessagingCodec() != null ? application.getMessagingCodec() : MessageCodecs.DEFAULT_CODEC );
+		client.setParallelProcessing( true );
+
+		// Another application with the same name may be loaded at the same time
+		ManagedApplication ma = new ManagedApplication( application, applicationFilesDirectory, client );
+		synchronized( this.appNameToManagedApplication ) {
+			if( this.appNameToManagedApplication.get( application.getName()) != null )
+				throw new AlreadyExistingException( application.getName());
+
+			this.appNameToManagedApplication.put( application.getName(), ma );
+		}
 
 		try {
-			MachineMonitor monitor = ma.getMonitor();
-			if( monitor != null )
-				monitor.stopTimer();
+			client.openConnection( new DmMessageProcessor( application ));
+			client.bind( MessagingUtils.buildRoutingKeyToDm());
 
-		} catch( Exception e ) {
-			ma.getLogger().finest( Utils.writeException( e ));
+		} catch( IOException e ) {
+			this.appNameToManagedApplication.remove( application.getName());
+			throw e;
+		}
+
+		this.machineMonitor.addApplication(
+				application.getName(),
+				application.getHeartbeatPeriod() != null ? application.getHeartbeatPeriod() : MessagingUtils.HEARTBEAT_PERIOD,
+				application.getMissedHeartbeatsThreshold() != null ? application.getMissedHeartbeatsThreshold() : MachineMonitor.DEFAULT_MISSED_HEARTBEATS_THRESHOLD );
+
+		return ma;
+	}
+
+
+	private static List<Instance> copyRootInstances( Application application ) {
+
+		Lock lock = application.getLock().readLock();
+		lock.lock();
+		try {
+			return new ArrayList<Instance>( application.getRootInstances());
+
+		} finally {
+			lock.unlock();
 		}
+	}
+
+
+
+	private void cleanUp( ManagedApplication ma ) {
+
+		this.machineMonitor.removeApplication( ma.getApplication().getName());
+		this.resourceCache.removeApplication( ma.getApplication().getName());
+		this.iaasResolver.removeApplication( ma.getApplication().getName());
 
 		try {
 			IMessageServerClient client = ma.getMessagingClient();
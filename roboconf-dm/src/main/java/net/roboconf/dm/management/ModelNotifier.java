@@ -0,0 +1,154 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.management;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Instance;
+
+/**
+ * Forwards the modifications of the model to several listeners.
+ * <p>
+ * A listener that fails does not prevent the other ones from being notified.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class ModelNotifier implements IModelListener {
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final List<IModelListener> listeners = new CopyOnWriteArrayList<IModelListener> ();
+
+
+	/**
+	 * @param listener a listener to add (not null)
+	 */
+	public void addListener( IModelListener listener ) {
+		this.listeners.add( listener );
+	}
+
+
+	/**
+	 * @param listener a listener to remove
+	 */
+	public void removeListener( IModelListener listener ) {
+		this.listeners.remove( listener );
+	}
+
+
+	@Override
+	public void applicationAdded( Application application, File directory ) {
+		for( IModelListener listener : this.listeners ) {
+			try {
+				listener.applicationAdded( application, directory );
+
+			} catch( RuntimeException e ) {
+				log( e );
+			}
+		}
+	}
+
+
+	@Override
+	public void applicationRemoved( String applicationName ) {
+		for( IModelListener listener : this.listeners ) {
+			try {
+				listener.applicationRemoved( applicationName );
+
+			} catch( RuntimeException e ) {
+				log( e );
+			}
+		}
+	}
+
+
+	@Override
+	public void instanceAdded( String applicationName, Instance instance ) {
+		for( IModelListener listener : this.listeners ) {
+			try {
+				listener.instanceAdded( applicationName, instance );
+
+			} catch( RuntimeException e ) {
+				log( e );
+			}
+		}
+	}
+
+
+	@Override
+	public void instanceRemoved( String applicationName, String instancePath ) {
+		for( IModelListener listener : this.listeners ) {
+			try {
+				listener.instanceRemoved( applicationName, instancePath );
+
+			} catch( RuntimeException e ) {
+				log( e );
+			}
+		}
+	}
+
+
+	@Override
+	public void statusChanged( String applicationName, Instance instance ) {
+		for( IModelListener listener : this.listeners ) {
+			try {
+				listener.statusChanged( applicationName, instance );
+
+			} catch( RuntimeException e ) {
+				log( e );
+			}
+		}
+	}
+
+
+	@Override
+	public void importsChanged( String applicationName, Instance instance ) {
+		for( IModelListener listener : this.listeners ) {
+			try {
+				listener.importsChanged( applicationName, instance );
+
+			} catch( RuntimeException e ) {
+				log( e );
+			}
+		}
+	}
+
+
+	@Override
+	public void dataChanged( String applicationName, Instance instance, String key ) {
+		for( IModelListener listener : this.listeners ) {
+			try {
+				listener.dataChanged( applicationName, instance, key );
+
+			} catch( RuntimeException e ) {
+				log( e );
+			}
+		}
+	}
+
+
+	private void log( RuntimeException e ) {
+		this.logger.severe( "A model listener failed. " + e.getMessage());
+		this.logger.finest( Utils.writeException( e ));
+	}
+}
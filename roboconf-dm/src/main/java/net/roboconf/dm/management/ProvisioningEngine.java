@@ -0,0 +1,776 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.dm.environment.iaas.IaasResolver;
+import net.roboconf.dm.management.exceptions.BulkActionException;
+import net.roboconf.iaas.api.AsyncIaasInterface;
+import net.roboconf.iaas.api.BatchIaasInterface;
+import net.roboconf.iaas.api.IaasInterface;
+import net.roboconf.iaas.api.MachineHandle;
+import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
+import net.roboconf.iaas.api.exceptions.IaasException;
+
+/**
+ * A DM-wide engine that creates and terminates machines in parallel.
+ * <p>
+ * IaaS requests are executed by a bounded pool of workers, so that
+ * REST threads and the messaging threads only have to queue them.
+ * Every kind of IaaS can be given its own concurrency limit and a minimal
+ * delay between two requests, so that large deployments are not throttled
+ * by the cloud provider.
+ * </p>
+ * <p>
+ * Machines submitted together are grouped by IaaS configuration. When a IaaS supports
+ * batch requests, a group results in a single request (split according to the maximum
+ * batch size). Otherwise, there is one request per machine.
+ * </p>
+ * <p>
+ * Workers do not wait for machines to be ready. Asynchronous IaaS only start the creation
+ * of machines, which are then followed by a {@link MachinePoller}. A creation request remains
+ * in flight until its machine is ready.
+ * </p>
+ * <p>
+ * IaaS are identified by the simple name of their implementation class
+ * (e.g. <code>IaasEc2</code>, <code>IaasVmware</code>).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class ProvisioningEngine {
+
+	public static final int DEFAULT_POOL_SIZE = 10;
+	public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 5;
+	public static final int DEFAULT_MAX_BATCH_SIZE = 20;
+
+	private final ThreadPoolExecutor executor;
+	private final MachinePoller machinePoller = new MachinePoller();
+	private final Map<String,IaasThrottle> iaasKeyToThrottle = new ConcurrentHashMap<String,IaasThrottle> ();
+	private final Set<String> pendingRequests = new HashSet<String> ();
+	private volatile int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	private volatile IModelListener modelListener = new ModelNotifier();
+
+	private final Object idleLock = new Object();
+	private int inFlightRequests = 0;
+
+
+	/**
+	 * Constructor.
+	 */
+	public ProvisioningEngine() {
+		this( DEFAULT_POOL_SIZE );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param poolSize the number of workers (> 0)
+	 */
+	public ProvisioningEngine( int poolSize ) {
+
+		this.executor = new ThreadPoolExecutor(
+				poolSize, poolSize,
+				60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable> (),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread( Runnable r ) {
+						Thread thread = new Thread( r, "Roboconf's Provisioning Worker " + this.count.incrementAndGet());
+						thread.setDaemon( true );
+						return thread;
+					}
+				});
+
+		this.executor.allowCoreThreadTimeOut( true );
+	}
+
+
+	/**
+	 * Changes the number of workers.
+	 * @param poolSize the number of workers (> 0)
+	 */
+	public void setPoolSize( int poolSize ) {
+
+		if( poolSize < 1 )
+			throw new IllegalArgumentException( "The pool size must be positive." );
+
+		// The order matters: the core size cannot exceed the maximum size
+		if( poolSize > this.executor.getMaximumPoolSize()) {
+			this.executor.setMaximumPoolSize( poolSize );
+			this.executor.setCorePoolSize( poolSize );
+
+		} else {
+			this.executor.setCorePoolSize( poolSize );
+			this.executor.setMaximumPoolSize( poolSize );
+		}
+	}
+
+
+	/**
+	 * @return the number of workers
+	 */
+	public int getPoolSize() {
+		return this.executor.getMaximumPoolSize();
+	}
+
+
+	/**
+	 * @return the poller that follows the machines being created by asynchronous IaaS
+	 */
+	public MachinePoller getMachinePoller() {
+		return this.machinePoller;
+	}
+
+
+	/**
+	 * Configures the limits for a given IaaS.
+	 * <p>
+	 * The new limits only apply to requests that have not been started yet.
+	 * </p>
+	 *
+	 * @param iaasKey the simple name of the IaaS implementation class
+	 * @param maxConcurrentRequests the maximum number of requests executed at once for this IaaS (> 0)
+	 * @param minDelayBetweenRequests the minimal delay, in milliseconds, between two requests to this IaaS (>= 0)
+	 */
+	public void setIaasLimits( String iaasKey, int maxConcurrentRequests, long minDelayBetweenRequests ) {
+
+		if( maxConcurrentRequests < 1 )
+			throw new IllegalArgumentException( "The maximum number of concurrent requests must be positive." );
+
+		this.iaasKeyToThrottle.put( iaasKey, new IaasThrottle( maxConcurrentRequests, minDelayBetweenRequests ));
+	}
+
+
+	/**
+	 * Sets the maximum number of machines created or terminated in a single IaaS request.
+	 * <p>
+	 * This limit only applies to IaaS that support batch requests.
+	 * </p>
+	 *
+	 * @param maxBatchSize the maximum number of machines per IaaS request (> 0)
+	 */
+	public void setMaxBatchSize( int maxBatchSize ) {
+
+		if( maxBatchSize < 1 )
+			throw new IllegalArgumentException( "The maximum batch size must be positive." );
+
+		this.maxBatchSize = maxBatchSize;
+	}
+
+
+	/**
+	 * @return the maximum number of machines created or terminated in a single IaaS request
+	 */
+	public int getMaxBatchSize() {
+		return this.maxBatchSize;
+	}
+
+
+	/**
+	 * @param modelListener the listener notified of machine IDs and status changes (not null)
+	 */
+	public void setModelListener( IModelListener modelListener ) {
+		this.modelListener = modelListener;
+	}
+
+
+	/**
+	 * Queues the creation of a machine.
+	 * @param ma the managed application
+	 * @param rootInstance the root instance associated with the machine
+	 * @param iaasResolver the IaaS resolver
+	 * @param messageServerIp the IP address of the messaging server
+	 * @param batch the batch this request belongs to
+	 * @return true if the request was queued, false if a request is already pending for this machine
+	 * @throws RejectedExecutionException if the request could not be queued
+	 */
+	public boolean submitCreation(
+			ManagedApplication ma,
+			Instance rootInstance,
+			IaasResolver iaasResolver,
+			String messageServerIp,
+			Batch batch ) {
+
+		return submitCreations( ma, Collections.singletonList( rootInstance ), iaasResolver, messageServerIp, batch ) == 1;
+	}
+
+
+	/**
+	 * Queues the creation of several machines.
+	 * <p>
+	 * Machines are grouped by IaaS configuration. Machines of a same group are created
+	 * with a single request when the IaaS supports it (see {@link BatchIaasInterface}).
+	 * </p>
+	 *
+	 * @param ma the managed application
+	 * @param rootInstances the root instances associated with the machines
+	 * @param iaasResolver the IaaS resolver
+	 * @param messageServerIp the IP address of the messaging server
+	 * @param batch the batch these requests belong to
+	 * @return the number of queued machines (machines with a pending request are skipped)
+	 * @throws RejectedExecutionException if the requests could not be queued
+	 */
+	public int submitCreations(
+			final ManagedApplication ma,
+			List<Instance> rootInstances,
+			IaasResolver iaasResolver,
+			final String messageServerIp,
+			Batch batch ) {
+
+		return submit( ma, rootInstances, iaasResolver, batch, new IaasRequest() {
+			@Override
+			public MachineHandle execute( IaasInterface iaasInterface, Instance rootInstance ) throws Exception {
+
+				// Asynchronous IaaS: the machine will be tracked by the poller
+				MachineHandle handle = null;
+				String machineId;
+				if( iaasInterface instanceof AsyncIaasInterface ) {
+					handle = ((AsyncIaasInterface) iaasInterface).startVM(
+							null, messageServerIp, rootInstance.getName(),
+							ma.getApplication().getName());
+
+					machineId = handle.getMachineId();
+
+				} else {
+					machineId = iaasInterface.createVM(
+							null, messageServerIp, rootInstance.getName(),
+							ma.getApplication().getName());
+				}
+
+				// FIXME: the channel name is skipped here
+				// As soon as we know what it is useful for, re-add it (it is in the instance)
+				rootInstance.getData().put( Instance.MACHINE_ID, machineId );
+				ProvisioningEngine.this.modelListener.dataChanged( ma.getApplication().getName(), rootInstance, Instance.MACHINE_ID );
+				ma.getLogger().fine( "Machine " + rootInstance.getName() + " was successfully requested." );
+				return handle;
+			}
+
+			@Override
+			public void execute( BatchIaasInterface iaasInterface, List<Instance> rootInstances ) throws Exception {
+
+				List<String> channelNames = new ArrayList<String> ();
+				for( Instance rootInstance : rootInstances )
+					channelNames.add( rootInstance.getName());
+
+				List<String> machineIds = iaasInterface.createVMs(
+						null, messageServerIp, channelNames,
+						ma.getApplication().getName());
+
+				for( int i=0; i<rootInstances.size(); i++ ) {
+					Instance rootInstance = rootInstances.get( i );
+					rootInstance.getData().put( Instance.MACHINE_ID, machineIds.get( i ));
+					ProvisioningEngine.this.modelListener.dataChanged( ma.getApplication().getName(), rootInstance, Instance.MACHINE_ID );
+					ma.getLogger().fine( "Machine " + rootInstance.getName() + " was successfully requested." );
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Queues the termination of a machine.
+	 * @param ma the managed application
+	 * @param rootInstance the root instance associated with the machine
+	 * @param iaasResolver the IaaS resolver
+	 * @param batch the batch this request belongs to
+	 * @return true if the request was queued, false if a request is already pending for this machine
+	 * @throws RejectedExecutionException if the request could not be queued
+	 */
+	public boolean submitTermination(
+			ManagedApplication ma,
+			Instance rootInstance,
+			IaasResolver iaasResolver,
+			Batch batch ) {
+
+		return submitTerminations( ma, Collections.singletonList( rootInstance ), iaasResolver, batch ) == 1;
+	}
+
+
+	/**
+	 * Queues the termination of several machines.
+	 * <p>
+	 * Machines are grouped by IaaS configuration. Machines of a same group are terminated
+	 * with a single request when the IaaS supports it (see {@link BatchIaasInterface}).
+	 * </p>
+	 *
+	 * @param ma the managed application
+	 * @param rootInstances the root instances associated with the machines
+	 * @param iaasResolver the IaaS resolver
+	 * @param batch the batch these requests belong to
+	 * @return the number of queued machines (machines with a pending request are skipped)
+	 * @throws RejectedExecutionException if the requests could not be queued
+	 */
+	public int submitTerminations(
+			final ManagedApplication ma,
+			List<Instance> rootInstances,
+			IaasResolver iaasResolver,
+			Batch batch ) {
+
+		return submit( ma, rootInstances, iaasResolver, batch, new IaasRequest() {
+			@Override
+			public MachineHandle execute( IaasInterface iaasInterface, Instance rootInstance ) throws Exception {
+
+				String machineId = rootInstance.getData().remove( Instance.MACHINE_ID );
+				ProvisioningEngine.this.modelListener.dataChanged( ma.getApplication().getName(), rootInstance, Instance.MACHINE_ID );
+				iaasInterface.terminateVM( machineId );
+
+				ma.getLogger().fine( "Machine " + rootInstance.getName() + " was successfully deleted." );
+				rootInstance.setStatus( InstanceStatus.NOT_DEPLOYED );
+				ProvisioningEngine.this.modelListener.statusChanged( ma.getApplication().getName(), rootInstance );
+				return null;
+			}
+
+			@Override
+			public void execute( BatchIaasInterface iaasInterface, List<Instance> rootInstances ) throws Exception {
+
+				List<String> machineIds = new ArrayList<String> ();
+				for( Instance rootInstance : rootInstances ) {
+					machineIds.add( rootInstance.getData().remove( Instance.MACHINE_ID ));
+					ProvisioningEngine.this.modelListener.dataChanged( ma.getApplication().getName(), rootInstance, Instance.MACHINE_ID );
+				}
+
+				iaasInterface.terminateVMs( machineIds );
+				for( Instance rootInstance : rootInstances ) {
+					ma.getLogger().fine( "Machine " + rootInstance.getName() + " was successfully deleted." );
+					rootInstance.setStatus( InstanceStatus.NOT_DEPLOYED );
+					ProvisioningEngine.this.modelListener.statusChanged( ma.getApplication().getName(), rootInstance );
+				}
+			}
+		});
+	}
+
+
+	/**
+	 * Waits for all the queued requests to complete.
+	 * @param timeout a time out, in milliseconds
+	 * @return true if all the requests completed, false if the time out was reached
+	 * @throws InterruptedException if the current thread was interrupted
+	 */
+	public boolean awaitIdle( long timeout ) throws InterruptedException {
+
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized( this.idleLock ) {
+			long remaining;
+			while( this.inFlightRequests > 0
+					&& ( remaining = deadline - System.currentTimeMillis()) > 0 )
+				this.idleLock.wait( remaining );
+
+			return this.inFlightRequests == 0;
+		}
+	}
+
+
+	/**
+	 * @return the number of requests that were queued and that did not complete yet
+	 */
+	public int getInFlightRequestsCount() {
+		synchronized( this.idleLock ) {
+			return this.inFlightRequests;
+		}
+	}
+
+
+	private int submit(
+			final ManagedApplication ma,
+			List<Instance> rootInstances,
+			final IaasResolver iaasResolver,
+			final Batch batch,
+			final IaasRequest request ) {
+
+		final List<Instance> accepted = new ArrayList<Instance> ();
+		synchronized( this.pendingRequests ) {
+			for( Instance rootInstance : rootInstances ) {
+				if( this.pendingRequests.add( buildRequestId( ma, rootInstance )))
+					accepted.add( rootInstance );
+			}
+		}
+
+		if( accepted.isEmpty())
+			return 0;
+
+		synchronized( this.idleLock ) {
+			this.inFlightRequests += accepted.size();
+		}
+
+		// IaaS interfaces are resolved by a worker, not by the caller
+		batch.expected.addAndGet( accepted.size());
+		try {
+			this.executor.execute( new Runnable() {
+				@Override
+				public void run() {
+					dispatch( ma, accepted, iaasResolver, batch, request );
+				}
+			});
+
+		} catch( RejectedExecutionException e ) {
+			batch.expected.addAndGet( - accepted.size());
+			for( Instance rootInstance : accepted )
+				release( buildRequestId( ma, rootInstance ));
+
+			throw e;
+		}
+
+		return accepted.size();
+	}
+
+
+	private void dispatch( ManagedApplication ma, List<Instance> rootInstances, IaasResolver iaasResolver, Batch batch, IaasRequest request ) {
+
+		// Group the machines by IaaS interface.
+		// IaaS interfaces are cached: machines with the same IaaS configuration share the same one.
+		Map<IaasInterface,List<Instance>> iaasToRootInstances = new LinkedHashMap<IaasInterface,List<Instance>> ();
+		for( Instance rootInstance : rootInstances ) {
+			try {
+				IaasInterface iaasInterface = iaasResolver.findIaasInterface( ma, rootInstance );
+				List<Instance> group = iaasToRootInstances.get( iaasInterface );
+				if( group == null ) {
+					group = new ArrayList<Instance> ();
+					iaasToRootInstances.put( iaasInterface, group );
+				}
+
+				group.add( rootInstance );
+
+			} catch( Exception e ) {
+				fail( rootInstance, batch, e );
+				complete( buildRequestId( ma, rootInstance ), batch );
+			}
+		}
+
+		// One request per group if the IaaS supports it, one request per machine otherwise
+		for( Map.Entry<IaasInterface,List<Instance>> entry : iaasToRootInstances.entrySet()) {
+			List<Instance> group = entry.getValue();
+			if( entry.getKey() instanceof BatchIaasInterface ) {
+				int max = this.maxBatchSize;
+				for( int i=0; i<group.size(); i+=max )
+					schedule( ma, iaasResolver, entry.getKey(), group.subList( i, Math.min( i + max, group.size())), batch, request );
+
+			} else {
+				for( Instance rootInstance : group )
+					schedule( ma, iaasResolver, entry.getKey(), Collections.singletonList( rootInstance ), batch, request );
+			}
+		}
+	}
+
+
+	private void schedule(
+			final ManagedApplication ma,
+			final IaasResolver iaasResolver,
+			final IaasInterface iaasInterface,
+			final List<Instance> rootInstances,
+			final Batch batch,
+			final IaasRequest request ) {
+
+		try {
+			this.executor.execute( new Runnable() {
+				@Override
+				public void run() {
+					execute( ma, iaasResolver, iaasInterface, rootInstances, batch, request );
+				}
+			});
+
+		} catch( RejectedExecutionException e ) {
+			for( Instance rootInstance : rootInstances ) {
+				fail( rootInstance, batch, e );
+				complete( buildRequestId( ma, rootInstance ), batch );
+			}
+		}
+	}
+
+
+	private void execute(
+			ManagedApplication ma,
+			IaasResolver iaasResolver,
+			IaasInterface iaasInterface,
+			List<Instance> rootInstances,
+			Batch batch,
+			IaasRequest request ) {
+
+		MachineHandle handle = null;
+		try {
+			IaasThrottle throttle = findThrottle( iaasInterface );
+			throttle.acquire();
+			try {
+				if( rootInstances.size() == 1 )
+					handle = request.execute( iaasInterface, rootInstances.get( 0 ));
+				else
+					request.execute((BatchIaasInterface) iaasInterface, rootInstances );
+
+			} finally {
+				throttle.release();
+			}
+
+		} catch( Exception e ) {
+			// The IaaS session may have expired: the next request will use a new IaaS interface
+			if( e instanceof IaasException || e instanceof CommunicationToIaasException )
+				iaasResolver.evictIaasInterface( iaasInterface );
+
+			for( Instance rootInstance : rootInstances )
+				fail( rootInstance, batch, e );
+
+		} finally {
+			// Machines that are not ready yet remain in flight until the poller is done with them
+			if( handle != null ) {
+				this.machinePoller.track( handle, new ReadinessCallback( ma, rootInstances.get( 0 ), batch ));
+
+			} else {
+				for( Instance rootInstance : rootInstances )
+					complete( buildRequestId( ma, rootInstance ), batch );
+			}
+		}
+	}
+
+
+	private void fail( Instance rootInstance, Batch batch, Exception e ) {
+		rootInstance.setStatus( InstanceStatus.PROBLEM );
+		this.modelListener.statusChanged( batch.ma.getApplication().getName(), rootInstance );
+		batch.bulkException.getInstancesToException().put( rootInstance, e );
+	}
+
+
+	private void complete( String requestId, Batch batch ) {
+
+		release( requestId );
+		batch.completeOne();
+	}
+
+
+	private void release( String requestId ) {
+
+		synchronized( this.pendingRequests ) {
+			this.pendingRequests.remove( requestId );
+		}
+
+		synchronized( this.idleLock ) {
+			this.inFlightRequests --;
+			this.idleLock.notifyAll();
+		}
+	}
+
+
+	private IaasThrottle findThrottle( IaasInterface iaasInterface ) {
+
+		String iaasKey = iaasInterface.getClass().getSimpleName();
+		IaasThrottle throttle = this.iaasKeyToThrottle.get( iaasKey );
+		if( throttle == null ) {
+			synchronized( this.iaasKeyToThrottle ) {
+				throttle = this.iaasKeyToThrottle.get( iaasKey );
+				if( throttle == null ) {
+					throttle = new IaasThrottle( DEFAULT_MAX_CONCURRENT_REQUESTS, 0 );
+					this.iaasKeyToThrottle.put( iaasKey, throttle );
+				}
+			}
+		}
+
+		return throttle;
+	}
+
+
+	private static String buildRequestId( ManagedApplication ma, Instance rootInstance ) {
+		return ma.getApplication().getName() + InstanceHelpers.computeInstancePath( rootInstance );
+	}
+
+
+	/**
+	 * A set of requests submitted at once (e.g. by a single REST call).
+	 * <p>
+	 * Errors are collected in a {@link BulkActionException} which is logged
+	 * once all the requests of the batch have completed.
+	 * </p>
+	 */
+	public static class Batch {
+
+		private final ManagedApplication ma;
+		private final BulkActionException bulkException;
+		private final AtomicInteger expected = new AtomicInteger( 0 );
+		private final AtomicInteger completed = new AtomicInteger( 0 );
+		private volatile boolean sealed = false;
+
+
+		/**
+		 * Constructor.
+		 * @param ma the managed application
+		 * @param create true if the requests create machines, false if they terminate them
+		 */
+		public Batch( ManagedApplication ma, boolean create ) {
+			this.ma = ma;
+			this.bulkException = new BulkActionException( create );
+		}
+
+
+		/**
+		 * Indicates no more request will be added to this batch.
+		 */
+		public void seal() {
+			this.sealed = true;
+			checkCompletion();
+		}
+
+
+		/**
+		 * @return the bulk exception that collects the errors of this batch
+		 */
+		public BulkActionException getBulkException() {
+			return this.bulkException;
+		}
+
+
+		private void completeOne() {
+			this.completed.incrementAndGet();
+			checkCompletion();
+		}
+
+
+		private void checkCompletion() {
+
+			if( ! this.sealed
+					|| this.completed.get() < this.expected.get())
+				return;
+
+			synchronized( this ) {
+				// Only report once
+				if( this.expected.get() < 0 )
+					return;
+
+				this.expected.set( -1 );
+			}
+
+			if( ! this.bulkException.getInstancesToException().isEmpty()) {
+				this.ma.getLogger().severe( this.bulkException.getLogMessage( false ));
+				this.ma.getLogger().finest( this.bulkException.getLogMessage( true ));
+			}
+		}
+	}
+
+
+	/**
+	 * Concurrency and rate limits for a given IaaS.
+	 */
+	private static class IaasThrottle {
+
+		private final Semaphore permits;
+		private final long minDelayBetweenRequests;
+		private long nextSlot = 0;
+
+
+		/**
+		 * Constructor.
+		 * @param maxConcurrentRequests
+		 * @param minDelayBetweenRequests
+		 */
+		IaasThrottle( int maxConcurrentRequests, long minDelayBetweenRequests ) {
+			this.permits = new Semaphore( maxConcurrentRequests, true );
+			this.minDelayBetweenRequests = Math.max( 0, minDelayBetweenRequests );
+		}
+
+
+		void acquire() throws InterruptedException {
+
+			this.permits.acquire();
+			long wait = 0;
+			synchronized( this ) {
+				long now = System.currentTimeMillis();
+				long slot = Math.max( now, this.nextSlot );
+				wait = slot - now;
+				this.nextSlot = slot + this.minDelayBetweenRequests;
+			}
+
+			try {
+				if( wait > 0 )
+					Thread.sleep( wait );
+
+			} catch( InterruptedException e ) {
+				this.permits.release();
+				throw e;
+			}
+		}
+
+
+		void release() {
+			this.permits.release();
+		}
+	}
+
+
+	/**
+	 * Completes a creation request once the machine is ready.
+	 */
+	private class ReadinessCallback implements MachinePoller.Callback {
+		private final ManagedApplication ma;
+		private final Instance rootInstance;
+		private final Batch batch;
+
+
+		/**
+		 * Constructor.
+		 * @param ma
+		 * @param rootInstance
+		 * @param batch
+		 */
+		ReadinessCallback( ManagedApplication ma, Instance rootInstance, Batch batch ) {
+			this.ma = ma;
+			this.rootInstance = rootInstance;
+			this.batch = batch;
+		}
+
+
+		@Override
+		public void machineReady( MachineHandle handle ) {
+			this.ma.getLogger().fine( "Machine " + this.rootInstance.getName() + " is ready." );
+			complete( buildRequestId( this.ma, this.rootInstance ), this.batch );
+		}
+
+
+		@Override
+		public void machineFailed( MachineHandle handle, Exception error ) {
+			fail( this.rootInstance, this.batch, error );
+			complete( buildRequestId( this.ma, this.rootInstance ), this.batch );
+		}
+	}
+
+
+	/**
+	 * A request to a IaaS.
+	 * <p>
+	 * A request on a single machine may return a handle, if the machine must then be polled.
+	 * </p>
+	 */
+	private interface IaasRequest {
+		MachineHandle execute( IaasInterface iaasInterface, Instance rootInstance ) throws Exception;
+		void execute( BatchIaasInterface iaasInterface, List<Instance> rootInstances ) throws Exception;
+	}
+}
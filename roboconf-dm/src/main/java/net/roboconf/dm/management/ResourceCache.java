@@ -0,0 +1,328 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.dm.utils.ResourceUtils;
+import net.roboconf.messaging.utils.MessagingUtils;
+
+/**
+ * A DM-wide cache for the resources of the components.
+ * <p>
+ * The resources of a component are read once and identified by a content hash.
+ * They are kept in memory, within a size limit (the least recently used are evicted first).
+ * </p>
+ * <p>
+ * Resources larger than a chunk are not loaded in memory: only their location is kept,
+ * and they are sent to the agents in chunks (see {@link ResourceStreamer}).
+ * </p>
+ * <p>
+ * This cache also remembers which agents hold which resources, so that
+ * the DM only sends resources to agents that do not have them yet.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class ResourceCache {
+
+	public static final long DEFAULT_MAX_SIZE = 256L * 1024 * 1024;
+	public static final int DEFAULT_CHUNK_SIZE = 512 * 1024;
+
+	private final Map<String,Resources> keyToResources = new LinkedHashMap<String,Resources>( 16, 0.75f, true );
+	private final Map<String,Set<String>> agentKeyToHashes = new HashMap<String,Set<String>> ();
+	private long maxSize = DEFAULT_MAX_SIZE;
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+	private long size = 0;
+
+
+	/**
+	 * Finds the resources of an instance.
+	 * @param ma the managed application
+	 * @param instance an instance (not null)
+	 * @return the resources (not null)
+	 * @throws IOException if the resources could not be read
+	 */
+	public Resources findResources( ManagedApplication ma, Instance instance ) throws IOException {
+
+		String key = ma.getApplication().getName() + "/" + instance.getComponent().getName();
+		Resources result;
+		int threshold;
+		synchronized( this ) {
+			result = this.keyToResources.get( key );
+			threshold = this.chunkSize;
+		}
+
+		// Read the files without holding the lock
+		if( result == null ) {
+			Map<String,File> fileNameToFile = ResourceUtils.findInstanceResourceFiles( ma.getApplicationFilesDirectory(), instance );
+			long total = 0;
+			for( File f : fileNameToFile.values())
+				total += f.length();
+
+			if( total > threshold )
+				result = new Resources( fileNameToFile, total );
+			else
+				result = new Resources( ResourceUtils.storeInstanceResources( ma.getApplicationFilesDirectory(), instance ));
+
+			synchronized( this ) {
+				Resources old = this.keyToResources.put( key, result );
+				if( old != null )
+					this.size -= old.getMemorySize();
+
+				this.size += result.getMemorySize();
+				evict();
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @param applicationName the application name
+	 * @param rootInstanceName the name of the root instance associated with the agent
+	 * @param hash a resources hash
+	 * @return true if the agent holds these resources, false otherwise
+	 */
+	public synchronized boolean isHeldByAgent( String applicationName, String rootInstanceName, String hash ) {
+		Set<String> hashes = this.agentKeyToHashes.get( buildAgentKey( applicationName, rootInstanceName ));
+		return hashes != null && hashes.contains( hash );
+	}
+
+
+	/**
+	 * Indicates whether an agent holds resources.
+	 * @param applicationName the application name
+	 * @param rootInstanceName the name of the root instance associated with the agent
+	 * @param hash a resources hash
+	 * @param held true if the agent holds these resources, false otherwise
+	 */
+	public synchronized void setHeldByAgent( String applicationName, String rootInstanceName, String hash, boolean held ) {
+
+		String agentKey = buildAgentKey( applicationName, rootInstanceName );
+		Set<String> hashes = this.agentKeyToHashes.get( agentKey );
+		if( held ) {
+			if( hashes == null ) {
+				hashes = new HashSet<String> ();
+				this.agentKeyToHashes.put( agentKey, hashes );
+			}
+
+			hashes.add( hash );
+
+		} else if( hashes != null ) {
+			hashes.remove( hash );
+			if( hashes.isEmpty())
+				this.agentKeyToHashes.remove( agentKey );
+		}
+	}
+
+
+	/**
+	 * Forgets the resources held by an agent (e.g. because it was restarted).
+	 * @param applicationName the application name
+	 * @param rootInstanceName the name of the root instance associated with the agent
+	 */
+	public synchronized void forgetAgent( String applicationName, String rootInstanceName ) {
+		this.agentKeyToHashes.remove( buildAgentKey( applicationName, rootInstanceName ));
+	}
+
+
+	/**
+	 * Removes all the cached data about an application.
+	 * @param applicationName the application name
+	 */
+	public synchronized void removeApplication( String applicationName ) {
+
+		String prefix = applicationName + "/";
+		for( Iterator<Map.Entry<String,Resources>> it = this.keyToResources.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String,Resources> entry = it.next();
+			if( entry.getKey().startsWith( prefix )) {
+				this.size -= entry.getValue().getMemorySize();
+				it.remove();
+			}
+		}
+
+		for( Iterator<String> it = this.agentKeyToHashes.keySet().iterator(); it.hasNext(); ) {
+			if( it.next().startsWith( prefix ))
+				it.remove();
+		}
+	}
+
+
+	/**
+	 * Sets the maximum size of the cached resources.
+	 * <p>
+	 * Resources are still read when they exceed this size, but they are not kept.
+	 * </p>
+	 *
+	 * @param maxSize the maximum size, in bytes (>= 0)
+	 */
+	public synchronized void setMaxSize( long maxSize ) {
+
+		if( maxSize < 0 )
+			throw new IllegalArgumentException( "The maximum size cannot be negative." );
+
+		this.maxSize = maxSize;
+		evict();
+	}
+
+
+	/**
+	 * Sets the size of the chunks.
+	 * <p>
+	 * Resources larger than a chunk are sent in chunks. This only applies to the
+	 * resources that are not cached yet.
+	 * </p>
+	 *
+	 * @param chunkSize the chunk size, in bytes (> 0)
+	 */
+	public synchronized void setChunkSize( int chunkSize ) {
+
+		if( chunkSize < 1 )
+			throw new IllegalArgumentException( "The chunk size must be positive." );
+
+		this.chunkSize = chunkSize;
+	}
+
+
+	/**
+	 * @return the size of the chunks, in bytes
+	 */
+	public synchronized int getChunkSize() {
+		return this.chunkSize;
+	}
+
+
+	/**
+	 * @return the size of the resources held in memory, in bytes
+	 */
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+
+	private void evict() {
+
+		// The iteration order goes from the least recently used to the most recently used
+		for( Iterator<Resources> it = this.keyToResources.values().iterator(); it.hasNext() && this.size > this.maxSize; ) {
+			this.size -= it.next().getMemorySize();
+			it.remove();
+		}
+	}
+
+
+	private static String buildAgentKey( String applicationName, String rootInstanceName ) {
+		return applicationName + "/" + rootInstanceName;
+	}
+
+
+	/**
+	 * The resources of a component.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	public static class Resources {
+		private final String hash;
+		private final Map<String,byte[]> files;
+		private final SortedMap<String,File> fileNameToFile;
+		private final long size;
+
+
+		/**
+		 * Constructor for resources held in memory.
+		 * @param files a map associating file names with their content
+		 */
+		Resources( Map<String,byte[]> files ) {
+			this.files = Collections.unmodifiableMap( files );
+			this.fileNameToFile = null;
+			this.hash = MessagingUtils.computeResourcesHash( files );
+
+			long total = 0;
+			for( byte[] content : files.values())
+				total += content.length;
+
+			this.size = total;
+		}
+
+
+		/**
+		 * Constructor for resources that are sent in chunks.
+		 * @param fileNameToFile a map associating file names with files
+		 * @param size the size of the files
+		 * @throws IOException if the files could not be read
+		 */
+		Resources( Map<String,File> fileNameToFile, long size ) throws IOException {
+			this.files = null;
+			this.fileNameToFile = Collections.unmodifiableSortedMap( new TreeMap<String,File>( fileNameToFile ));
+			this.hash = MessagingUtils.computeResourcesHashFromFiles( fileNameToFile );
+			this.size = size;
+		}
+
+		/**
+		 * @return the content hash
+		 */
+		public String getHash() {
+			return this.hash;
+		}
+
+		/**
+		 * @return a map associating file names with their content (read-only), or null if they are sent in chunks
+		 */
+		public Map<String,byte[]> getFiles() {
+			return this.files;
+		}
+
+		/**
+		 * @return a map associating file names with files, sorted by name (read-only), or null if they are held in memory
+		 */
+		public SortedMap<String,File> getFileNameToFile() {
+			return this.fileNameToFile;
+		}
+
+		/**
+		 * @return true if these resources are sent in chunks
+		 */
+		public boolean isChunked() {
+			return this.fileNameToFile != null;
+		}
+
+		/**
+		 * @return the size of the files, in bytes
+		 */
+		public long getSize() {
+			return this.size;
+		}
+
+		/**
+		 * @return the size of the files held in memory, in bytes
+		 */
+		long getMemorySize() {
+			return this.files == null ? 0 : this.size;
+		}
+	}
+}
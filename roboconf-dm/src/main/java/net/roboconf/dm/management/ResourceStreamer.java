@@ -0,0 +1,148 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.dm.management.ResourceCache.Resources;
+import net.roboconf.messaging.client.IMessageServerClient;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdResourceChunk;
+import net.roboconf.messaging.utils.MessagingUtils;
+
+/**
+ * Sends resources to an agent in chunks.
+ * <p>
+ * Files are sent one after the other, sorted by name. Only one chunk is read in memory at a time.
+ * Every file results in at least one chunk, even when it is empty. The transfer can be resumed
+ * from a given file and offset.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class ResourceStreamer {
+
+	private final IMessageServerClient messagingClient;
+	private final int chunkSize;
+
+
+	/**
+	 * Constructor.
+	 * @param messagingClient the messaging client to use
+	 * @param chunkSize the chunk size, in bytes (> 0)
+	 */
+	public ResourceStreamer( IMessageServerClient messagingClient, int chunkSize ) {
+
+		if( chunkSize < 1 )
+			throw new IllegalArgumentException( "The chunk size must be positive." );
+
+		this.messagingClient = messagingClient;
+		this.chunkSize = chunkSize;
+	}
+
+
+	/**
+	 * Sends resources in chunks.
+	 * @param routingKey the routing key of the agent
+	 * @param resources chunked resources (see {@link Resources#isChunked()})
+	 * @param resumeFileName the file from which the transfer must be resumed (null to send everything)
+	 * @param resumeOffset the offset in this file
+	 * @return the number of sent chunks
+	 * @throws IOException if a file could not be read or if a chunk could not be sent
+	 */
+	public int send( String routingKey, Resources resources, String resumeFileName, long resumeOffset ) throws IOException {
+
+		if( ! resources.isChunked())
+			throw new IllegalArgumentException( "These resources are not sent in chunks." );
+
+		int result = 0;
+		int fileIndex = -1;
+		int filesCount = resources.getFileNameToFile().size();
+		byte[] buffer = new byte[ this.chunkSize ];
+		for( Map.Entry<String,File> entry : resources.getFileNameToFile().entrySet()) {
+
+			// Files before the resume point were already received
+			fileIndex ++;
+			String fileName = entry.getKey();
+			if( resumeFileName != null && fileName.compareTo( resumeFileName ) < 0 )
+				continue;
+
+			File f = entry.getValue();
+			long fileSize = f.length();
+			long offset = fileName.equals( resumeFileName ) ? Math.min( resumeOffset, fileSize ) : 0;
+
+			InputStream in = null;
+			try {
+				in = new FileInputStream( f );
+				skipFully( in, offset );
+
+				do {
+					int read = readFully( in, buffer, (int) Math.min( this.chunkSize, fileSize - offset ));
+					byte[] data = Arrays.copyOf( buffer, read );
+					boolean last = fileIndex == filesCount - 1 && offset + read >= fileSize;
+
+					MsgCmdResourceChunk msg = new MsgCmdResourceChunk(
+							resources.getHash(), fileName, fileIndex, fileSize, offset,
+							data, MessagingUtils.computeChunkChecksum( data ), last );
+
+					this.messagingClient.publish( false, routingKey, msg );
+					offset += read;
+					result ++;
+
+				} while( offset < fileSize );
+
+			} finally {
+				Utils.closeQuietly( in );
+			}
+		}
+
+		return result;
+	}
+
+
+	private static void skipFully( InputStream in, long count ) throws IOException {
+
+		long remaining = count;
+		while( remaining > 0 ) {
+			long skipped = in.skip( remaining );
+			if( skipped <= 0 )
+				throw new IOException( "The file is shorter than expected." );
+
+			remaining -= skipped;
+		}
+	}
+
+
+	private static int readFully( InputStream in, byte[] buffer, int length ) throws IOException {
+
+		int total = 0;
+		while( total < length ) {
+			int read = in.read( buffer, total, length - total );
+			if( read == -1 )
+				throw new IOException( "The file is shorter than expected." );
+
+			total += read;
+		}
+
+		return total;
+	}
+}
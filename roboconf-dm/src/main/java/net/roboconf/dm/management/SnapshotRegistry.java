@@ -0,0 +1,290 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.management;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Instance;
+
+/**
+ * Versions the model of every application and publishes immutable snapshots of it.
+ * <p>
+ * Every modification of an application's model gives it a new version. Versions come from a
+ * single sequence: they increase, even when an application is deleted and deployed again. The
+ * sequence starts from the current time, so that versions also increase when the DM restarts.
+ * </p>
+ * <p>
+ * Snapshots are published lazily: the first read after a modification captures a new snapshot,
+ * and the following reads share it until the next modification. When a batch of modifications
+ * is applied, readers thus get a single snapshot for the whole batch. Snapshots are captured by
+ * the reading thread, from the previous snapshot and the instances that changed since then
+ * (see {@link ApplicationSnapshot#capture(Application, long, ApplicationSnapshot, java.util.Collection)}).
+ * </p>
+ * <p>
+ * The registry also remembers, for every instance, the version of its last modification (status,
+ * imports, data, or addition). This way, clients can only ask for the instances that changed since
+ * a given version. Removing an instance forgets all the previous modifications: clients that
+ * did not see the removal have to list all the instances again.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class SnapshotRegistry implements IModelListener {
+
+	private final AtomicLong sequence = new AtomicLong( System.currentTimeMillis() * 1000 );
+	private final Map<String,VersionedApplication> appNameToVersion = new ConcurrentHashMap<String,VersionedApplication> ();
+
+
+	/**
+	 * Gets the current version of an application's model.
+	 * @param application an application (not null)
+	 * @return a positive number, that changes every time the model is modified
+	 */
+	public long getVersion( Application application ) {
+		return findVersionedApplication( application ).version.get();
+	}
+
+
+	/**
+	 * Gets a version for a list of applications.
+	 * <p>
+	 * It changes when an application is added to or removed from the list, or when the model of
+	 * one of them is modified.
+	 * </p>
+	 *
+	 * @param applications a list of applications
+	 * @return a non-null string
+	 */
+	public String getVersion( List<Application> applications ) {
+
+		// New applications and modifications get greater versions than all the previous ones.
+		// So, the greatest version only decreases when the application that has it is removed.
+		long greatestVersion = 0;
+		for( Application application : applications )
+			greatestVersion = Math.max( greatestVersion, getVersion( application ));
+
+		return applications.size() + "-" + greatestVersion;
+	}
+
+
+	/**
+	 * Gets the latest snapshot of an application.
+	 * @param application an application (not null)
+	 * @return a snapshot whose version is at least the one the model had when this method was invoked
+	 */
+	public ApplicationSnapshot getSnapshot( Application application ) {
+
+		VersionedApplication va = findVersionedApplication( application );
+		ApplicationSnapshot result = va.snapshot;
+		if( result == null || result.getVersion() != va.version.get()) {
+
+			// A single thread captures a given version
+			synchronized( va ) {
+				result = va.snapshot;
+				long version = va.version.get();
+				if( result == null || result.getVersion() != version ) {
+					List<String> changedPaths = result == null ? null : findChangedInstancePaths( application, result.getVersion());
+					result = ApplicationSnapshot.capture( application, version, result, changedPaths );
+					va.snapshot = result;
+				}
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the instances that changed after a given version.
+	 * @param application an application (not null)
+	 * @param sinceVersion a version of the application's model
+	 * @return the paths of the instances that changed after this version, sorted by modification,
+	 * or null if they cannot be determined (unknown version, or instances were removed since then)
+	 */
+	public List<String> findChangedInstancePaths( Application application, long sinceVersion ) {
+
+		VersionedApplication va = findVersionedApplication( application );
+		List<String> result = null;
+		synchronized( va.changes ) {
+			if( sinceVersion >= va.changes.oldestVersion
+					&& sinceVersion <= va.version.get())
+				result = new ArrayList<String>( va.changes.versionToPath.tailMap( sinceVersion, false ).values());
+		}
+
+		return result;
+	}
+
+
+	@Override
+	public void applicationAdded( Application application, File directory ) {
+		modelChanged( application.getName(), null );
+	}
+
+
+	@Override
+	public void applicationRemoved( String applicationName ) {
+		this.appNameToVersion.remove( applicationName );
+	}
+
+
+	@Override
+	public void instanceAdded( String applicationName, Instance instance ) {
+
+		// The caller holds the application's lock
+		List<String> paths = new ArrayList<String> ();
+		for( Instance inst : InstanceHelpers.buildHierarchicalList( instance ))
+			paths.add( InstanceHelpers.computeInstancePath( inst ));
+
+		modelChanged( applicationName, paths );
+	}
+
+
+	@Override
+	public void instanceRemoved( String applicationName, String instancePath ) {
+
+		VersionedApplication va = this.appNameToVersion.get( applicationName );
+		if( va != null ) {
+			synchronized( va.changes ) {
+				long version = this.sequence.incrementAndGet();
+				va.version.set( version );
+				va.changes.versionToPath.clear();
+				va.changes.pathToVersion.clear();
+				va.changes.oldestVersion = version;
+			}
+		}
+	}
+
+
+	@Override
+	public void statusChanged( String applicationName, Instance instance ) {
+		instanceChanged( applicationName, instance );
+	}
+
+
+	@Override
+	public void importsChanged( String applicationName, Instance instance ) {
+		instanceChanged( applicationName, instance );
+	}
+
+
+	@Override
+	public void dataChanged( String applicationName, Instance instance, String key ) {
+		instanceChanged( applicationName, instance );
+	}
+
+
+	private void instanceChanged( String applicationName, Instance instance ) {
+		List<String> paths = new ArrayList<String>( 1 );
+		paths.add( InstanceHelpers.computeInstancePath( instance ));
+		modelChanged( applicationName, paths );
+	}
+
+
+	private void modelChanged( String applicationName, List<String> instancePaths ) {
+
+		// Versions are taken with the lock, so that they only increase for a given application.
+		// Every instance gets its own version.
+		VersionedApplication va = this.appNameToVersion.get( applicationName );
+		if( va != null ) {
+			synchronized( va.changes ) {
+				long version = this.sequence.incrementAndGet();
+				if( instancePaths != null ) {
+					for( String path : instancePaths ) {
+						Long oldVersion = va.changes.pathToVersion.put( path, version );
+						if( oldVersion != null )
+							va.changes.versionToPath.remove( oldVersion );
+
+						va.changes.versionToPath.put( version, path );
+						version = this.sequence.incrementAndGet();
+					}
+				}
+
+				va.version.set( version );
+			}
+		}
+	}
+
+
+	private VersionedApplication findVersionedApplication( Application application ) {
+
+		// Applications can be replaced by others with the same name
+		VersionedApplication result = this.appNameToVersion.get( application.getName());
+		if( result == null || result.application != application ) {
+			synchronized( this.appNameToVersion ) {
+				result = this.appNameToVersion.get( application.getName());
+				if( result == null || result.application != application ) {
+					result = new VersionedApplication( application, this.sequence.incrementAndGet());
+					this.appNameToVersion.put( application.getName(), result );
+				}
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * The version, the latest snapshot and the changes of an application.
+	 */
+	private static class VersionedApplication {
+		final Application application;
+		final AtomicLong version;
+		final ChangeLog changes;
+		volatile ApplicationSnapshot snapshot;
+
+
+		/**
+		 * Constructor.
+		 * @param application
+		 * @param version
+		 */
+		VersionedApplication( Application application, long version ) {
+			this.application = application;
+			this.version = new AtomicLong( version );
+			this.changes = new ChangeLog( version );
+		}
+	}
+
+
+	/**
+	 * The last modification of every instance (protected by its own monitor).
+	 */
+	private static class ChangeLog {
+		final TreeMap<Long,String> versionToPath = new TreeMap<Long,String> ();
+		final Map<String,Long> pathToVersion = new HashMap<String,Long> ();
+		long oldestVersion;
+
+
+		/**
+		 * Constructor.
+		 * @param oldestVersion the oldest version changes can be computed from
+		 */
+		ChangeLog( long oldestVersion ) {
+			this.oldestVersion = oldestVersion;
+		}
+	}
+}
@@ -16,6 +16,7 @@
 
 package net.roboconf.dm.management.exceptions;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -42,7 +43,7 @@ public class BulkActionException extends Exception {
 	 */
 	public BulkActionException( boolean create ) {
 		super( "Errors were encountered while " + (create ? "creating" : "terminating") + " machines." );
-		this.instancesToException = new HashMap<Instance,Exception> ();
+		this.instancesToException = Collections.synchronizedMap( new HashMap<Instance,Exception> ());
 	}
 
 
@@ -63,7 +64,13 @@ public class BulkActionException extends Exception {
 
 		StringBuilder sb = new StringBuilder();
 		sb.append( toString());
-		for( Map.Entry<Instance,Exception> entry : this.instancesToException.entrySet()) {
+
+		Map<Instance,Exception> copy;
+		synchronized( this.instancesToException ) {
+			copy = new HashMap<Instance,Exception>( this.instancesToException );
+		}
+
+		for( Map.Entry<Instance,Exception> entry : copy.entrySet()) {
 			sb.append( "\n\n- " );
 			sb.append( entry.getKey().getName());
 			sb.append( "\n" );
@@ -0,0 +1,394 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.persistence;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+
+/**
+ * The state of the DM that must survive a restart.
+ * <p>
+ * It is made up of the message server IP and, for every application, its directory
+ * and its instances (with their status and their data, e.g. machine IDs and IP addresses).
+ * Graphs are not part of it: they are loaded again from the application's directory.
+ * </p>
+ * <p>
+ * This state is built from snapshots and journal records (see {@link StateJournal}).
+ * Records can be applied several times with the same result.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class DmState {
+
+	private final Map<String,ApplicationState> nameToApplication = new LinkedHashMap<String,ApplicationState> ();
+	private String messageServerIp;
+
+
+	/**
+	 * @return the message server IP (can be null)
+	 */
+	public String getMessageServerIp() {
+		return this.messageServerIp;
+	}
+
+
+	/**
+	 * @param messageServerIp the message server IP to set
+	 */
+	public void setMessageServerIp( String messageServerIp ) {
+		this.messageServerIp = messageServerIp;
+	}
+
+
+	/**
+	 * @return the applications, by name (not null)
+	 */
+	public Map<String,ApplicationState> getNameToApplication() {
+		return this.nameToApplication;
+	}
+
+
+	/**
+	 * @return the total number of instances
+	 */
+	public int getInstancesCount() {
+
+		int result = 0;
+		for( ApplicationState app : this.nameToApplication.values())
+			result += app.pathToInstance.size();
+
+		return result;
+	}
+
+
+	/**
+	 * The state of an application.
+	 */
+	public static class ApplicationState {
+
+		private final String name, directory;
+		private final Collection<InstanceState> rootInstances = new LinkedHashSet<InstanceState> ();
+		private final Map<String,InstanceState> pathToInstance = new HashMap<String,InstanceState> ();
+
+
+		/**
+		 * Constructor.
+		 * @param name the application name
+		 * @param directory the path of the application's directory
+		 */
+		public ApplicationState( String name, String directory ) {
+			this.name = name;
+			this.directory = directory;
+		}
+
+
+		/**
+		 * Captures the state of an application.
+		 * @param application an application
+		 * @param directory the path of the application's directory
+		 * @return a new state
+		 */
+		public static ApplicationState capture( Application application, String directory ) {
+
+			ApplicationState result = new ApplicationState( application.getName(), directory );
+			Lock lock = application.getLock().readLock();
+			lock.lock();
+			try {
+				for( Instance instance : InstanceHelpers.getAllInstances( application )) {
+					String parentPath = instance.getParent() == null ? null : InstanceHelpers.computeInstancePath( instance.getParent());
+					result.addInstance( parentPath, InstanceState.capture( instance ));
+				}
+
+			} finally {
+				lock.unlock();
+			}
+
+			return result;
+		}
+
+
+		/**
+		 * Replaces the instances of an application by the ones of this state.
+		 * <p>
+		 * Instances whose component cannot be found anymore are skipped, along with their children.
+		 * </p>
+		 *
+		 * @param application an application whose graphs were loaded
+		 * @return the number of instances that could not be restored
+		 */
+		public int restoreInstances( Application application ) {
+
+			Map<String,Component> nameToComponent = new HashMap<String,Component> ();
+			for( Component component : ComponentHelpers.findAllComponents( application ))
+				nameToComponent.put( component.getName(), component );
+
+			// Instances are inserted directly: they were already validated when they were first added
+			application.getRootInstances().clear();
+			int[] skipped = { 0 };
+			for( InstanceState state : this.rootInstances ) {
+				Instance instance = restore( state, nameToComponent, skipped );
+				if( instance != null )
+					application.getRootInstances().add( instance );
+			}
+
+			application.getInstanceIndex().invalidate();
+			return skipped[ 0 ];
+		}
+
+
+		/**
+		 * Adds or updates an instance.
+		 * <p>
+		 * If the instance already exists, its properties are updated and its children are kept.
+		 * </p>
+		 *
+		 * @param parentPath the path of the parent instance (null for a root instance)
+		 * @param state the instance's state
+		 * @return true if the instance was added or updated, false if its parent does not exist
+		 */
+		public boolean addInstance( String parentPath, InstanceState state ) {
+
+			InstanceState parent = null;
+			if( parentPath != null
+					&& ( parent = this.pathToInstance.get( parentPath )) == null )
+				return false;
+
+			String path = ( parentPath == null ? "" : parentPath ) + "/" + state.name;
+			InstanceState existing = this.pathToInstance.get( path );
+			if( existing != null ) {
+				existing.copyProperties( state );
+
+			} else {
+				state.path = path;
+				state.children.clear();
+				this.pathToInstance.put( path, state );
+				if( parent == null )
+					this.rootInstances.add( state );
+				else
+					parent.children.add( state );
+			}
+
+			return true;
+		}
+
+
+		/**
+		 * Removes an instance and its children.
+		 * @param path the instance path
+		 */
+		public void removeInstance( String path ) {
+
+			InstanceState state = this.pathToInstance.get( path );
+			if( state != null ) {
+				int index = path.lastIndexOf( '/' );
+				InstanceState parent = index > 0 ? this.pathToInstance.get( path.substring( 0, index )) : null;
+				if( parent == null )
+					this.rootInstances.remove( state );
+				else
+					parent.children.remove( state );
+
+				forget( state );
+			}
+		}
+
+
+		/**
+		 * @param path an instance path
+		 * @return the instance's state, or null if it does not exist
+		 */
+		public InstanceState findInstance( String path ) {
+			return this.pathToInstance.get( path );
+		}
+
+
+		/**
+		 * @return the instances, parents before their children (not null)
+		 */
+		public List<InstanceState> listInstances() {
+
+			List<InstanceState> result = new ArrayList<InstanceState> ( this.pathToInstance.size());
+			List<InstanceState> toProcess = new ArrayList<InstanceState>( this.rootInstances );
+			for( int i=0; i<toProcess.size(); i++ ) {
+				InstanceState state = toProcess.get( i );
+				result.add( state );
+				toProcess.addAll( state.children );
+			}
+
+			return result;
+		}
+
+
+		/**
+		 * @return the name
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+
+		/**
+		 * @return the path of the application's directory
+		 */
+		public String getDirectory() {
+			return this.directory;
+		}
+
+
+		private void forget( InstanceState state ) {
+			this.pathToInstance.remove( state.path );
+			for( InstanceState child : state.children )
+				forget( child );
+		}
+
+
+		private static Instance restore( InstanceState state, Map<String,Component> nameToComponent, int[] skipped ) {
+
+			Component component = nameToComponent.get( state.componentName );
+			if( component == null ) {
+				skipped[ 0 ] += countInstances( state );
+				return null;
+			}
+
+			Instance instance = new Instance( state.name );
+			instance.setComponent( component );
+			instance.setChannel( state.channel );
+			instance.getOverriddenExports().putAll( state.overriddenExports );
+			instance.getExports().putAll( InstanceHelpers.getExportedVariables( instance ));
+			instance.getData().putAll( state.data );
+			instance.setStatus( state.status );
+
+			for( InstanceState childState : state.children ) {
+				Instance child = restore( childState, nameToComponent, skipped );
+				if( child != null )
+					InstanceHelpers.insertChild( instance, child );
+			}
+
+			return instance;
+		}
+
+
+		private static int countInstances( InstanceState state ) {
+
+			int result = 1;
+			for( InstanceState child : state.children )
+				result += countInstances( child );
+
+			return result;
+		}
+	}
+
+
+	/**
+	 * The state of an instance.
+	 */
+	public static class InstanceState {
+
+		final Collection<InstanceState> children = new LinkedHashSet<InstanceState> ();
+		final Map<String,String> overriddenExports = new HashMap<String,String> ();
+		final Map<String,String> data = new LinkedHashMap<String,String> ();
+		String name, componentName, channel, path;
+		InstanceStatus status = InstanceStatus.NOT_DEPLOYED;
+
+
+		/**
+		 * Constructor.
+		 * @param name the instance name
+		 * @param componentName the component name
+		 */
+		public InstanceState( String name, String componentName ) {
+			this.name = name;
+			this.componentName = componentName;
+		}
+
+
+		/**
+		 * Captures the state of an instance (without its children).
+		 * @param instance an instance
+		 * @return a new state
+		 */
+		public static InstanceState capture( Instance instance ) {
+
+			InstanceState result = new InstanceState( instance.getName(), instance.getComponent().getName());
+			result.channel = instance.getChannel();
+			result.status = instance.getStatus();
+			result.overriddenExports.putAll( instance.getOverriddenExports());
+			synchronized( instance.getData()) {
+				result.data.putAll( instance.getData());
+			}
+
+			return result;
+		}
+
+
+		/**
+		 * @return the instance status
+		 */
+		public InstanceStatus getStatus() {
+			return this.status;
+		}
+
+
+		/**
+		 * @return the instance data (not null)
+		 */
+		public Map<String,String> getData() {
+			return this.data;
+		}
+
+
+		/**
+		 * @return the instance path (null until the instance is added to an application state)
+		 */
+		public String getPath() {
+			return this.path;
+		}
+
+
+		/**
+		 * @return the children of this instance (not null)
+		 */
+		public Collection<InstanceState> getChildren() {
+			return this.children;
+		}
+
+
+		private void copyProperties( InstanceState state ) {
+
+			this.componentName = state.componentName;
+			this.channel = state.channel;
+			this.status = state.status;
+			this.overriddenExports.clear();
+			this.overriddenExports.putAll( state.overriddenExports );
+			this.data.clear();
+			this.data.putAll( state.data );
+		}
+	}
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.persistence;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.dm.persistence.DmState.ApplicationState;
+import net.roboconf.dm.persistence.DmState.InstanceState;
+
+/**
+ * A modification of the DM's state, as written in the journal.
+ * <p>
+ * This class also holds the binary encoding shared by records and snapshots.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+final class JournalRecord {
+
+	static final byte MESSAGE_SERVER_IP = 1;
+	static final byte APPLICATION_ADDED = 2;
+	static final byte APPLICATION_REMOVED = 3;
+	static final byte INSTANCE_ADDED = 4;
+	static final byte INSTANCE_REMOVED = 5;
+	static final byte STATUS_CHANGED = 6;
+	static final byte DATA_CHANGED = 7;
+
+	final byte type;
+	final String applicationName, path, key, value;
+	final InstanceState instance;
+
+
+	/**
+	 * Constructor.
+	 * @param type the record type
+	 * @param applicationName the application name (can be null)
+	 * @param path an instance path, or the parent path for added instances (can be null)
+	 * @param key a data key (can be null)
+	 * @param value a value: IP, directory, status or data value (can be null)
+	 * @param instance the state of an added instance (can be null)
+	 */
+	JournalRecord( byte type, String applicationName, String path, String key, String value, InstanceState instance ) {
+		this.type = type;
+		this.applicationName = applicationName;
+		this.path = path;
+		this.key = key;
+		this.value = value;
+		this.instance = instance;
+	}
+
+
+	/**
+	 * Applies this record to a state.
+	 * @param state the state to update
+	 */
+	void applyTo( DmState state ) {
+
+		if( this.type == MESSAGE_SERVER_IP ) {
+			state.setMessageServerIp( this.value );
+
+		} else if( this.type == APPLICATION_ADDED ) {
+			state.getNameToApplication().put( this.applicationName, new ApplicationState( this.applicationName, this.value ));
+
+		} else if( this.type == APPLICATION_REMOVED ) {
+			state.getNameToApplication().remove( this.applicationName );
+
+		} else {
+			// Records about unknown applications or instances are ignored
+			ApplicationState app = state.getNameToApplication().get( this.applicationName );
+			InstanceState inst;
+			if( app == null ) {
+				// nothing
+
+			} else if( this.type == INSTANCE_ADDED ) {
+				app.addInstance( this.path, this.instance );
+
+			} else if( this.type == INSTANCE_REMOVED ) {
+				app.removeInstance( this.path );
+
+			} else if(( inst = app.findInstance( this.path )) == null ) {
+				// nothing
+
+			} else if( this.type == STATUS_CHANGED ) {
+				inst.status = InstanceStatus.valueOf( this.value );
+
+			} else if( this.type == DATA_CHANGED ) {
+				if( this.value == null )
+					inst.data.remove( this.key );
+				else
+					inst.data.put( this.key, this.value );
+			}
+		}
+	}
+
+
+	/**
+	 * Writes this record.
+	 * @param out an output
+	 * @throws IOException if something went wrong
+	 */
+	void write( DataOutput out ) throws IOException {
+
+		out.writeByte( this.type );
+		writeString( out, this.applicationName );
+		writeString( out, this.path );
+		writeString( out, this.key );
+		writeString( out, this.value );
+		out.writeBoolean( this.instance != null );
+		if( this.instance != null )
+			writeInstance( out, this.instance );
+	}
+
+
+	/**
+	 * Reads a record.
+	 * @param in an input
+	 * @return a record (not null)
+	 * @throws IOException if the record is invalid or if something went wrong
+	 */
+	static JournalRecord read( DataInput in ) throws IOException {
+
+		byte type = in.readByte();
+		if( type < MESSAGE_SERVER_IP || type > DATA_CHANGED )
+			throw new IOException( "Unknown record type: " + type );
+
+		String applicationName = readString( in );
+		String path = readString( in );
+		String key = readString( in );
+		String value = readString( in );
+		InstanceState instance = in.readBoolean() ? readInstance( in ) : null;
+
+		return new JournalRecord( type, applicationName, path, key, value, instance );
+	}
+
+
+	/**
+	 * Writes the state of an instance (without its children).
+	 * @param out an output
+	 * @param state an instance state
+	 * @throws IOException if something went wrong
+	 */
+	static void writeInstance( DataOutput out, InstanceState state ) throws IOException {
+
+		out.writeUTF( state.name );
+		out.writeUTF( state.componentName );
+		writeString( out, state.channel );
+		out.writeUTF( state.status.name());
+		writeMap( out, state.overriddenExports );
+		writeMap( out, state.data );
+	}
+
+
+	/**
+	 * Reads the state of an instance.
+	 * @param in an input
+	 * @return an instance state (not null)
+	 * @throws IOException if something went wrong
+	 */
+	static InstanceState readInstance( DataInput in ) throws IOException {
+
+		InstanceState result = new InstanceState( in.readUTF(), in.readUTF());
+		result.channel = readString( in );
+		try {
+			result.status = InstanceStatus.valueOf( in.readUTF());
+
+		} catch( IllegalArgumentException e ) {
+			throw new IOException( "Invalid instance status. " + e.getMessage());
+		}
+
+		readMap( in, result.overriddenExports );
+		readMap( in, result.data );
+		return result;
+	}
+
+
+	/**
+	 * Writes a string that may be null.
+	 * @param out an output
+	 * @param s a string (can be null)
+	 * @throws IOException if something went wrong
+	 */
+	static void writeString( DataOutput out, String s ) throws IOException {
+		out.writeBoolean( s != null );
+		if( s != null )
+			out.writeUTF( s );
+	}
+
+
+	/**
+	 * Reads a string that may be null.
+	 * @param in an input
+	 * @return a string (can be null)
+	 * @throws IOException if something went wrong
+	 */
+	static String readString( DataInput in ) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+
+	private static void writeMap( DataOutput out, Map<String,String> map ) throws IOException {
+
+		out.writeInt( map.size());
+		for( Map.Entry<String,String> entry : map.entrySet()) {
+			out.writeUTF( entry.getKey());
+			writeString( out, entry.getValue());
+		}
+	}
+
+
+	private static void readMap( DataInput in, Map<String,String> map ) throws IOException {
+
+		int size = in.readInt();
+		if( size < 0 )
+			throw new IOException( "Invalid map size: " + size );
+
+		for( int i=0; i<size; i++ )
+			map.put( in.readUTF(), readString( in ));
+	}
+}
@@ -0,0 +1,767 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.dm.management.IModelListener;
+import net.roboconf.dm.persistence.DmState.ApplicationState;
+import net.roboconf.dm.persistence.DmState.InstanceState;
+
+/**
+ * A write-ahead journal for the DM's state (see {@link DmState}).
+ * <p>
+ * Every modification of the model (status change, instance added or removed, machine ID or IP
+ * address assigned...) is appended to a journal file. On startup, the state is rebuilt from
+ * the last snapshot and the journal files written after it.
+ * </p>
+ * <p>
+ * Recording a modification only queues a small record: the caller never waits for the disk.
+ * A single writer thread appends all the queued records at once, and then forces them to
+ * the disk (group commit). Records read the current values of the model while the queue is
+ * locked, so that the last record of a given property always matches its last value.
+ * </p>
+ * <p>
+ * After a given number of records, the writer starts a new journal file and writes a snapshot
+ * of the whole state. Snapshots are fuzzy: the model may be modified while it is captured.
+ * This is not a problem, since the records written after the snapshot started are applied on
+ * top of it, and since records can be applied several times. Older snapshots and journal
+ * files are then deleted.
+ * </p>
+ * <p>
+ * Records are checksummed. A record that was not completely written (e.g. because the DM crashed)
+ * ends the replay of its journal file.
+ * </p>
+ * <p>
+ * Until {@link #start(StateProvider)} is invoked, recording a modification does nothing.
+ * The journal is notified of the modifications like any other model listener (see {@link IModelListener}).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class StateJournal implements IModelListener {
+
+	public static final int DEFAULT_SNAPSHOT_THRESHOLD = 100000;
+
+	static final String SNAPSHOT_PREFIX = "snapshot-";
+	static final String SNAPSHOT_SUFFIX = ".dat";
+	static final String SEGMENT_PREFIX = "journal-";
+	static final String SEGMENT_SUFFIX = ".log";
+
+	private static final int SNAPSHOT_MAGIC = 0x52424353;
+	private static final int SNAPSHOT_VERSION = 1;
+	private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final Object lock = new Object();
+
+	// Protected by the lock
+	private List<JournalRecord> pendingRecords = new ArrayList<JournalRecord> ();
+	private long enqueuedCount = 0, writtenCount = 0;
+	private boolean started = false, closing = false, snapshotRequested = false;
+	private Thread writerThread;
+
+	private volatile int snapshotThreshold = DEFAULT_SNAPSHOT_THRESHOLD;
+	private File directory;
+	private StateProvider stateProvider;
+
+	// Only used by the writer thread (or before it starts)
+	private long segmentIndex = -1;
+	private FileOutputStream segmentFileStream;
+	private DataOutputStream segmentOut;
+	private int recordsSinceSnapshot = 0;
+	private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream( 256 );
+	private final CRC32 crc = new CRC32();
+
+
+	/**
+	 * Rebuilds the state from the files of a directory.
+	 * <p>
+	 * Must be invoked before {@link #start(StateProvider)}.
+	 * </p>
+	 *
+	 * @param directory the directory where the journal is stored (created if necessary)
+	 * @return the recovered state (not null, but may be empty)
+	 * @throws IOException if the directory could not be created or read
+	 */
+	public DmState recover( File directory ) throws IOException {
+
+		synchronized( this.lock ) {
+			if( this.started )
+				throw new IllegalStateException( "The journal was already started." );
+		}
+
+		if( ! directory.exists() && ! directory.mkdirs())
+			throw new IOException( "The directory " + directory + " could not be created." );
+
+		long start = System.currentTimeMillis();
+		this.directory = directory;
+		List<Long> snapshotIndexes = listIndexes( SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX );
+		List<Long> segmentIndexes = listIndexes( SEGMENT_PREFIX, SEGMENT_SUFFIX );
+
+		// Find the most recent valid snapshot
+		DmState result = null;
+		long baseIndex = Long.MIN_VALUE;
+		for( int i=snapshotIndexes.size() - 1; i >= 0 && result == null; i-- ) {
+			File f = new File( directory, SNAPSHOT_PREFIX + snapshotIndexes.get( i ) + SNAPSHOT_SUFFIX );
+			try {
+				result = readSnapshot( f );
+				baseIndex = snapshotIndexes.get( i );
+
+			} catch( IOException e ) {
+				this.logger.warning( "Snapshot " + f + " could not be read. " + e.getMessage());
+				this.logger.finest( Utils.writeException( e ));
+			}
+		}
+
+		if( result == null )
+			result = new DmState();
+
+		// Replay the journal files written since then
+		int recordsCount = 0;
+		for( Long index : segmentIndexes ) {
+			if( index >= baseIndex )
+				recordsCount += replaySegment( new File( directory, SEGMENT_PREFIX + index + SEGMENT_SUFFIX ), result );
+		}
+
+		for( Long index : snapshotIndexes )
+			this.segmentIndex = Math.max( this.segmentIndex, index );
+
+		for( Long index : segmentIndexes )
+			this.segmentIndex = Math.max( this.segmentIndex, index );
+
+		this.logger.info(
+				"The DM's state was recovered in " + ( System.currentTimeMillis() - start ) + " ms ("
+				+ result.getNameToApplication().size() + " application(s), "
+				+ result.getInstancesCount() + " instance(s), "
+				+ recordsCount + " journal record(s))." );
+
+		return result;
+	}
+
+
+	/**
+	 * Starts recording modifications.
+	 * <p>
+	 * A snapshot is taken immediately, so that the next recovery does
+	 * not have to replay the records that were already recovered.
+	 * </p>
+	 *
+	 * @param stateProvider the object that captures the state for snapshots
+	 */
+	public void start( StateProvider stateProvider ) {
+
+		synchronized( this.lock ) {
+			if( this.directory == null )
+				throw new IllegalStateException( "The journal must be recovered before being started." );
+
+			if( this.started )
+				throw new IllegalStateException( "The journal was already started." );
+
+			this.stateProvider = stateProvider;
+			this.started = true;
+			this.closing = false;
+			this.snapshotRequested = true;
+			this.writerThread = new Thread( "Roboconf's State Journal Writer" ) {
+				@Override
+				public void run() {
+					runWriter();
+				}
+			};
+
+			this.writerThread.setDaemon( true );
+			this.writerThread.start();
+		}
+	}
+
+
+	/**
+	 * Writes the pending records and stops the journal.
+	 * <p>
+	 * Modifications recorded after this call are ignored.
+	 * </p>
+	 */
+	public void close() {
+
+		Thread thread;
+		synchronized( this.lock ) {
+			if( ! this.started )
+				return;
+
+			this.started = false;
+			this.closing = true;
+			this.lock.notifyAll();
+			thread = this.writerThread;
+		}
+
+		try {
+			thread.join();
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/**
+	 * @return true if modifications are recorded
+	 */
+	public boolean isStarted() {
+		synchronized( this.lock ) {
+			return this.started;
+		}
+	}
+
+
+	/**
+	 * Waits for the records queued before this call to be written.
+	 * @param timeout a time out, in milliseconds
+	 * @return true if they were written, false if the time out was reached
+	 * @throws InterruptedException if the current thread was interrupted
+	 */
+	public boolean sync( long timeout ) throws InterruptedException {
+
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized( this.lock ) {
+			long target = this.enqueuedCount;
+			long remaining;
+			while( this.writtenCount < target
+					&& this.started
+					&& ( remaining = deadline - System.currentTimeMillis()) > 0 )
+				this.lock.wait( remaining );
+
+			return this.writtenCount >= target;
+		}
+	}
+
+
+	/**
+	 * Asks the writer to take a snapshot as soon as possible.
+	 */
+	public void requestSnapshot() {
+		synchronized( this.lock ) {
+			this.snapshotRequested = true;
+			this.lock.notifyAll();
+		}
+	}
+
+
+	/**
+	 * @param snapshotThreshold the number of records after which a snapshot is taken (> 0)
+	 */
+	public void setSnapshotThreshold( int snapshotThreshold ) {
+
+		if( snapshotThreshold < 1 )
+			throw new IllegalArgumentException( "The snapshot threshold must be positive." );
+
+		this.snapshotThreshold = snapshotThreshold;
+	}
+
+
+	/**
+	 * Records a new message server IP.
+	 * @param messageServerIp the message server IP
+	 */
+	public void messageServerIpChanged( String messageServerIp ) {
+		synchronized( this.lock ) {
+			enqueue( new JournalRecord( JournalRecord.MESSAGE_SERVER_IP, null, null, null, messageServerIp, null ));
+		}
+	}
+
+
+	/**
+	 * Records a new application, with all its instances.
+	 * <p>
+	 * The caller must hold the application's lock (see {@link Application#getLock()}).
+	 * </p>
+	 *
+	 * @param application the application
+	 * @param directory the application's directory
+	 */
+	@Override
+	public void applicationAdded( Application application, File directory ) {
+
+		synchronized( this.lock ) {
+			if( ! this.started )
+				return;
+
+			String applicationName = application.getName();
+			enqueue( new JournalRecord( JournalRecord.APPLICATION_ADDED, applicationName, null, null, directory.getAbsolutePath(), null ));
+			for( Instance rootInstance : application.getRootInstances())
+				enqueueInstances( applicationName, rootInstance );
+		}
+	}
+
+
+	/**
+	 * Records the removal of an application.
+	 * @param applicationName the application name
+	 */
+	@Override
+	public void applicationRemoved( String applicationName ) {
+		synchronized( this.lock ) {
+			enqueue( new JournalRecord( JournalRecord.APPLICATION_REMOVED, applicationName, null, null, null, null ));
+		}
+	}
+
+
+	/**
+	 * Records a new instance, with its children.
+	 * <p>
+	 * The caller must hold the application's lock (see {@link Application#getLock()}).
+	 * </p>
+	 *
+	 * @param applicationName the application name
+	 * @param instance the instance (already inserted in the model)
+	 */
+	@Override
+	public void instanceAdded( String applicationName, Instance instance ) {
+
+		synchronized( this.lock ) {
+			if( this.started )
+				enqueueInstances( applicationName, instance );
+		}
+	}
+
+
+	/**
+	 * Records the removal of an instance and its children.
+	 * @param applicationName the application name
+	 * @param instancePath the path the instance had before being removed
+	 */
+	@Override
+	public void instanceRemoved( String applicationName, String instancePath ) {
+		synchronized( this.lock ) {
+			enqueue( new JournalRecord( JournalRecord.INSTANCE_REMOVED, applicationName, instancePath, null, null, null ));
+		}
+	}
+
+
+	/**
+	 * Records the current status of an instance.
+	 * @param applicationName the application name
+	 * @param instance the instance
+	 */
+	@Override
+	public void statusChanged( String applicationName, Instance instance ) {
+
+		synchronized( this.lock ) {
+			if( this.started ) {
+				String path = InstanceHelpers.computeInstancePath( instance );
+				String status = instance.getStatus().name();
+				enqueue( new JournalRecord( JournalRecord.STATUS_CHANGED, applicationName, path, null, status, null ));
+			}
+		}
+	}
+
+
+	/**
+	 * Records the current value of an instance's data.
+	 * @param applicationName the application name
+	 * @param instance the instance
+	 * @param key the data key (e.g. {@link Instance#MACHINE_ID})
+	 */
+	@Override
+	public void dataChanged( String applicationName, Instance instance, String key ) {
+
+		synchronized( this.lock ) {
+			if( this.started ) {
+				String path = InstanceHelpers.computeInstancePath( instance );
+				String value = instance.getData().get( key );
+				enqueue( new JournalRecord( JournalRecord.DATA_CHANGED, applicationName, path, key, value, null ));
+			}
+		}
+	}
+
+
+	/**
+	 * Does nothing: imports are not journaled.
+	 * <p>
+	 * Agents send all the imports of their instances again when the DM does not know their version.
+	 * </p>
+	 */
+	@Override
+	public void importsChanged( String applicationName, Instance instance ) {
+		// nothing
+	}
+
+
+	private void enqueue( JournalRecord record ) {
+
+		// Invoked with the lock
+		if( this.started ) {
+			if( this.pendingRecords.isEmpty())
+				this.lock.notifyAll();
+
+			this.pendingRecords.add( record );
+			this.enqueuedCount ++;
+		}
+	}
+
+
+	private void enqueueInstances( String applicationName, Instance instance ) {
+
+		// Invoked with the lock. Parents are recorded before their children.
+		for( Instance inst : InstanceHelpers.buildHierarchicalList( instance )) {
+			String parentPath = inst.getParent() == null ? null : InstanceHelpers.computeInstancePath( inst.getParent());
+			InstanceState state = InstanceState.capture( inst );
+			enqueue( new JournalRecord( JournalRecord.INSTANCE_ADDED, applicationName, parentPath, null, null, state ));
+		}
+	}
+
+
+	private void runWriter() {
+
+		for( ;; ) {
+			List<JournalRecord> records;
+			long count;
+			boolean snapshot, stop;
+			synchronized( this.lock ) {
+				try {
+					while( this.pendingRecords.isEmpty()
+							&& ! this.snapshotRequested
+							&& ! this.closing )
+						this.lock.wait();
+
+				} catch( InterruptedException e ) {
+					this.closing = true;
+				}
+
+				records = this.pendingRecords;
+				this.pendingRecords = new ArrayList<JournalRecord> ();
+				count = this.enqueuedCount;
+				snapshot = this.snapshotRequested;
+				this.snapshotRequested = false;
+				stop = this.closing;
+			}
+
+			if( snapshot || this.segmentOut == null )
+				takeSnapshot();
+
+			writeRecords( records );
+			if( this.recordsSinceSnapshot >= this.snapshotThreshold )
+				takeSnapshot();
+
+			synchronized( this.lock ) {
+				this.writtenCount = count;
+				this.lock.notifyAll();
+			}
+
+			if( stop ) {
+				closeSegment();
+
+				// The writer may also stop because it was interrupted.
+				// The journal is then not started anymore (unless it was restarted with another writer).
+				synchronized( this.lock ) {
+					if( this.writerThread == Thread.currentThread())
+						this.started = false;
+
+					this.lock.notifyAll();
+				}
+
+				break;
+			}
+		}
+	}
+
+
+	private void writeRecords( List<JournalRecord> records ) {
+
+		if( records.isEmpty())
+			return;
+
+		try {
+			if( this.segmentOut == null )
+				throw new IOException( "No journal file is open." );
+
+			DataOutputStream recordOut = new DataOutputStream( this.recordBuffer );
+			for( JournalRecord record : records ) {
+				this.recordBuffer.reset();
+				record.write( recordOut );
+				recordOut.flush();
+
+				byte[] bytes = this.recordBuffer.toByteArray();
+				this.crc.reset();
+				this.crc.update( bytes );
+
+				this.segmentOut.writeInt( bytes.length );
+				this.segmentOut.writeInt((int) this.crc.getValue());
+				this.segmentOut.write( bytes );
+			}
+
+			// Group commit: a single flush for all the records
+			this.segmentOut.flush();
+			this.segmentFileStream.getChannel().force( false );
+			this.recordsSinceSnapshot += records.size();
+
+		} catch( IOException e ) {
+			this.logger.severe( records.size() + " record(s) could not be written in the DM's journal. " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+		}
+	}
+
+
+	private void takeSnapshot() {
+
+		// Records written from now on go into a new journal file
+		closeSegment();
+		this.segmentIndex ++;
+		this.recordsSinceSnapshot = 0;
+		File segmentFile = new File( this.directory, SEGMENT_PREFIX + this.segmentIndex + SEGMENT_SUFFIX );
+		try {
+			this.segmentFileStream = new FileOutputStream( segmentFile, true );
+			this.segmentOut = new DataOutputStream( new BufferedOutputStream( this.segmentFileStream, 64 * 1024 ));
+
+		} catch( IOException e ) {
+			this.logger.severe( "A journal file could not be created. " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+			return;
+		}
+
+		// The model may be modified while being captured. Failures will be retried later.
+		File tmpFile = new File( this.directory, SNAPSHOT_PREFIX + this.segmentIndex + ".tmp" );
+		try {
+			long start = System.currentTimeMillis();
+			DmState state = this.stateProvider.captureState();
+			writeSnapshot( state, tmpFile );
+
+			File snapshotFile = new File( this.directory, SNAPSHOT_PREFIX + this.segmentIndex + SNAPSHOT_SUFFIX );
+			if( ! tmpFile.renameTo( snapshotFile ))
+				throw new IOException( "The snapshot could not be renamed to " + snapshotFile );
+
+			deleteFilesBefore( SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX, this.segmentIndex );
+			deleteFilesBefore( SEGMENT_PREFIX, SEGMENT_SUFFIX, this.segmentIndex );
+			this.logger.fine(
+					"A snapshot of the DM's state was written in " + ( System.currentTimeMillis() - start ) + " ms ("
+					+ state.getInstancesCount() + " instance(s))." );
+
+		} catch( Exception e ) {
+			this.logger.warning( "A snapshot of the DM's state could not be written. It will be retried later. " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+			if( tmpFile.exists() && ! tmpFile.delete())
+				this.logger.finest( "File " + tmpFile + " could not be deleted." );
+		}
+	}
+
+
+	private void closeSegment() {
+
+		if( this.segmentOut != null ) {
+			try {
+				this.segmentOut.flush();
+				this.segmentFileStream.getChannel().force( false );
+
+			} catch( IOException e ) {
+				this.logger.severe( "The DM's journal could not be flushed. " + e.getMessage());
+				this.logger.finest( Utils.writeException( e ));
+			}
+
+			Utils.closeQuietly( this.segmentOut );
+			this.segmentOut = null;
+			this.segmentFileStream = null;
+		}
+	}
+
+
+	private int replaySegment( File f, DmState state ) throws IOException {
+
+		int result = 0;
+		DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( f ), 64 * 1024 ));
+		try {
+			CRC32 checksum = new CRC32();
+			for( ;; ) {
+				int size;
+				try {
+					size = in.readInt();
+
+				} catch( EOFException e ) {
+					break;
+				}
+
+				JournalRecord record;
+				try {
+					int expectedCrc = in.readInt();
+					if( size < 0 || size > MAX_RECORD_SIZE )
+						throw new IOException( "Invalid record size: " + size );
+
+					byte[] bytes = new byte[ size ];
+					in.readFully( bytes );
+					checksum.reset();
+					checksum.update( bytes );
+					if((int) checksum.getValue() != expectedCrc )
+						throw new IOException( "Invalid checksum." );
+
+					record = JournalRecord.read( new DataInputStream( new ByteArrayInputStream( bytes )));
+
+				} catch( IOException e ) {
+					// Typically, the DM stopped while writing this record
+					this.logger.warning( "The journal file " + f.getName() + " ends with an incomplete record. " + e.getMessage());
+					break;
+				}
+
+				record.applyTo( state );
+				result ++;
+			}
+
+		} finally {
+			Utils.closeQuietly( in );
+		}
+
+		return result;
+	}
+
+
+	private DmState readSnapshot( File f ) throws IOException {
+
+		DmState result = new DmState();
+		CheckedInputStream checkedIn = new CheckedInputStream( new BufferedInputStream( new FileInputStream( f ), 64 * 1024 ), new CRC32());
+		DataInputStream in = new DataInputStream( checkedIn );
+		try {
+			if( in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION )
+				throw new IOException( "Unsupported snapshot format." );
+
+			result.setMessageServerIp( JournalRecord.readString( in ));
+			int appCount = in.readInt();
+			for( int i=0; i<appCount; i++ ) {
+				ApplicationState app = new ApplicationState( in.readUTF(), in.readUTF());
+				result.getNameToApplication().put( app.getName(), app );
+
+				int instanceCount = in.readInt();
+				for( int j=0; j<instanceCount; j++ ) {
+					String parentPath = JournalRecord.readString( in );
+					if( ! app.addInstance( parentPath, JournalRecord.readInstance( in )))
+						throw new IOException( "Instances are not ordered correctly." );
+				}
+			}
+
+			long expectedChecksum = checkedIn.getChecksum().getValue();
+			if( in.readLong() != expectedChecksum )
+				throw new IOException( "Invalid checksum." );
+
+		} finally {
+			Utils.closeQuietly( in );
+		}
+
+		return result;
+	}
+
+
+	private void writeSnapshot( DmState state, File f ) throws IOException {
+
+		FileOutputStream fos = new FileOutputStream( f );
+		CheckedOutputStream checkedOut = new CheckedOutputStream( new BufferedOutputStream( fos, 64 * 1024 ), new CRC32());
+		DataOutputStream out = new DataOutputStream( checkedOut );
+		try {
+			out.writeInt( SNAPSHOT_MAGIC );
+			out.writeInt( SNAPSHOT_VERSION );
+			JournalRecord.writeString( out, state.getMessageServerIp());
+			out.writeInt( state.getNameToApplication().size());
+			for( ApplicationState app : state.getNameToApplication().values()) {
+				out.writeUTF( app.getName());
+				out.writeUTF( app.getDirectory());
+
+				List<InstanceState> instances = app.listInstances();
+				out.writeInt( instances.size());
+				for( InstanceState inst : instances ) {
+					int index = inst.path.lastIndexOf( '/' );
+					JournalRecord.writeString( out, index > 0 ? inst.path.substring( 0, index ) : null );
+					JournalRecord.writeInstance( out, inst );
+				}
+			}
+
+			out.flush();
+			out.writeLong( checkedOut.getChecksum().getValue());
+			out.flush();
+			fos.getChannel().force( false );
+
+		} finally {
+			Utils.closeQuietly( out );
+		}
+	}
+
+
+	private List<Long> listIndexes( String prefix, String suffix ) {
+
+		List<Long> result = new ArrayList<Long> ();
+		File[] files = this.directory.listFiles();
+		if( files != null ) {
+			for( File f : files ) {
+				String name = f.getName();
+				if( ! name.startsWith( prefix ) || ! name.endsWith( suffix ))
+					continue;
+
+				try {
+					result.add( Long.parseLong( name.substring( prefix.length(), name.length() - suffix.length())));
+
+				} catch( NumberFormatException e ) {
+					this.logger.finest( "Ignoring file " + name + " in the DM's journal directory." );
+				}
+			}
+		}
+
+		Collections.sort( result );
+		return result;
+	}
+
+
+	private void deleteFilesBefore( String prefix, String suffix, long index ) {
+
+		for( Long i : listIndexes( prefix, suffix )) {
+			File f = new File( this.directory, prefix + i + suffix );
+			if( i < index && ! f.delete())
+				this.logger.warning( "File " + f + " could not be deleted." );
+		}
+	}
+
+
+	/**
+	 * The object that captures the state for snapshots.
+	 */
+	public interface StateProvider {
+
+		/**
+		 * Captures the current state.
+		 * <p>
+		 * This method is invoked by the writer thread, while the model may be modified.
+		 * </p>
+		 *
+		 * @return the current state (not null)
+		 */
+		DmState captureState();
+	}
+}
@@ -18,10 +18,14 @@ package net.roboconf.dm.server;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
 import java.util.logging.Logger;
 
 import javax.ws.rs.Path;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 
 import net.roboconf.core.internal.utils.Utils;
@@ -30,6 +34,7 @@ import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.Application;
 import net.roboconf.core.model.runtime.Component;
 import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.dm.management.ApplicationSnapshot;
 import net.roboconf.dm.management.Manager;
 import net.roboconf.dm.management.exceptions.ImpossibleInsertionException;
 import net.roboconf.dm.management.exceptions.InexistingException;
@@ -38,6 +43,7 @@ import net.roboconf.dm.management.exceptions.BulkActionException;
 import net.roboconf.dm.management.exceptions.UnauthorizedActionException;
 import net.roboconf.dm.rest.RestUtils;
 import net.roboconf.dm.rest.api.IApplicationWs;
+import net.roboconf.dm.rest.events.InstanceEvent;
 
 /**
  * @author Vincent Zurczak - Linagora
@@ -109,10 +115,10 @@ public class ApplicationWs implements IApplicationWs {
 	/*
 	 * (non-Javadoc)
 	 * @see net.roboconf.dm.rest.api.IApplicationWs
-	 * #listAllChildrenInstances(java.lang.String, java.lang.String)
+	 * #listAllChildrenInstances(java.lang.String, java.lang.String, javax.ws.rs.core.Request)
 	 */
 	@Override
-	public List<Instance> listAllChildrenInstances( String applicationName, String instancePath ) {
+	public Response listAllChildrenInstances( String applicationName, String instancePath, Request request ) {
 
 		// Restore the real instance path
 		String realInstancePath = null;
@@ -127,31 +133,33 @@ public class ApplicationWs implements IApplicationWs {
 		else
 			this.logger.fine( "Request: list all the children instances for " + realInstancePath + " in " + applicationName + "." );
 
-		List<Instance> result = new ArrayList<Instance> ();
+		// Results are read from the latest snapshot, and their JSon representation is cached
+		Response response;
 		Application app = Manager.INSTANCE.findApplicationByName( applicationName );
-		Instance inst = null;
-
-		if( app != null ) {
-			if( realInstancePath == null ) {
-				result.addAll( InstanceHelpers.getAllInstances( app ));
+		if( app == null ) {
+			response = Response.ok( new ArrayList<Instance> ()).build();
 
-			} else if(( inst = InstanceHelpers.findInstanceByPath( app, realInstancePath )) != null ) {
-				result.addAll( InstanceHelpers.buildHierarchicalList( inst ));
-				result.remove( inst );
+		} else {
+			ResponseBuilder rb = evaluateVersion( app, request );
+			if( rb == null ) {
+				ApplicationSnapshot snapshot = Manager.INSTANCE.getSnapshotRegistry().getSnapshot( app );
+				rb = Response.ok( snapshot.listAllChildrenInstances( realInstancePath )).tag( buildEntityTag( snapshot.getVersion()));
 			}
+
+			response = rb.build();
 		}
 
-		return result;
+		return response;
 	}
 
 
 	/*
 	 * (non-Javadoc)
 	 * @see net.roboconf.dm.rest.api.IApplicationWs
-	 * #listChildrenInstances(java.lang.String, java.lang.String)
+	 * #listChildrenInstances(java.lang.String, java.lang.String, javax.ws.rs.core.Request)
 	 */
 	@Override
-	public List<Instance> listChildrenInstances( String applicationName, String instancePath ) {
+	public Response listChildrenInstances( String applicationName, String instancePath, Request request ) {
 
 		// Restore the real instance path
 		String realInstancePath = null;
@@ -166,19 +174,131 @@ public class ApplicationWs implements IApplicationWs {
 		else
 			this.logger.fine( "Request: list direct children instances for " + realInstancePath + " in " + applicationName + "." );
 
-		List<Instance> result = new ArrayList<Instance> ();
+		// Results are read from the latest snapshot, and their JSon representation is cached
+		Response response;
 		Application app = Manager.INSTANCE.findApplicationByName( applicationName );
+		if( app == null ) {
+			response = Response.ok( new ArrayList<Instance> ()).build();
 
-		Instance inst;
-		if( app != null ) {
-			if( realInstancePath == null )
-				result.addAll( app.getRootInstances());
+		} else {
+			ResponseBuilder rb = evaluateVersion( app, request );
+			if( rb == null ) {
+				ApplicationSnapshot snapshot = Manager.INSTANCE.getSnapshotRegistry().getSnapshot( app );
+				rb = Response.ok( snapshot.listChildrenInstances( realInstancePath )).tag( buildEntityTag( snapshot.getVersion()));
+			}
 
-			else if(( inst = InstanceHelpers.findInstanceByPath( app, realInstancePath )) != null )
-				result.addAll( inst.getChildren());
+			response = rb.build();
 		}
 
-		return result;
+		return response;
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.dm.rest.api.IApplicationWs
+	 * #listChangedInstances(java.lang.String, long)
+	 */
+	@Override
+	public Response listChangedInstances( String applicationName, long sinceVersion ) {
+
+		this.logger.fine( "Request: list the instances that changed since version " + sinceVersion + " in " + applicationName + "." );
+		Response response;
+		Application app = Manager.INSTANCE.findApplicationByName( applicationName );
+		if( app == null ) {
+			response = Response.status( Status.NOT_FOUND ).entity( "Application " + applicationName + " was not found." ).build();
+
+		} else {
+			// Changes found after the snapshot's version will be sent again the next time
+			ApplicationSnapshot snapshot = Manager.INSTANCE.getSnapshotRegistry().getSnapshot( app );
+			List<String> paths = Manager.INSTANCE.getSnapshotRegistry().findChangedInstancePaths( app, sinceVersion );
+			if( paths == null ) {
+				response = Response.status( Status.GONE )
+						.entity( "The changes since version " + sinceVersion + " are not available. All the instances must be listed again." )
+						.tag( buildEntityTag( snapshot.getVersion()))
+						.build();
+
+			} else {
+				List<Instance> result = new ArrayList<Instance> ();
+				for( String path : paths ) {
+					Instance inst = snapshot.findInstanceByPath( path );
+					if( inst != null )
+						result.add( inst );
+				}
+
+				response = Response.ok( result ).tag( buildEntityTag( snapshot.getVersion())).build();
+			}
+		}
+
+		return response;
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.dm.rest.api.IApplicationWs
+	 * #subscribeToEvents(java.lang.String)
+	 */
+	@Override
+	public Response subscribeToEvents( String applicationName ) {
+
+		this.logger.fine( "Request: subscribe to the events of " + applicationName + "." );
+		Response response;
+		Application app = Manager.INSTANCE.findApplicationByName( applicationName );
+		if( app == null ) {
+			response = Response.status( Status.NOT_FOUND ).entity( "Application " + applicationName + " was not found." ).build();
+
+		} else {
+			String subscriptionId = Manager.INSTANCE.getEventBroker().subscribe( applicationName );
+			response = Response.ok( subscriptionId ).build();
+		}
+
+		return response;
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.dm.rest.api.IApplicationWs
+	 * #pollEvents(java.lang.String, java.lang.String, long)
+	 */
+	@Override
+	public Response pollEvents( String applicationName, String subscriptionId, long timeout ) {
+
+		this.logger.finest( "Request: poll the events of " + applicationName + " (subscription " + subscriptionId + ")." );
+		Response response;
+		try {
+			List<InstanceEvent> events = Manager.INSTANCE.getEventBroker().poll( applicationName, subscriptionId, timeout );
+			if( events == null )
+				response = Response.status( Status.NOT_FOUND ).entity( "Subscription " + subscriptionId + " was not found." ).build();
+			else
+				response = Response.ok( events ).build();
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			response = Response.status( Status.SERVICE_UNAVAILABLE ).entity( "The request was interrupted." ).build();
+		}
+
+		return response;
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.dm.rest.api.IApplicationWs
+	 * #unsubscribeFromEvents(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public Response unsubscribeFromEvents( String applicationName, String subscriptionId ) {
+
+		this.logger.fine( "Request: unsubscribe from the events of " + applicationName + " (subscription " + subscriptionId + ")." );
+		Response response;
+		if( Manager.INSTANCE.getEventBroker().unsubscribe( applicationName, subscriptionId ))
+			response = Response.ok().build();
+		else
+			response = Response.status( Status.NOT_FOUND ).entity( "Subscription " + subscriptionId + " was not found." ).build();
+
+		return response;
 	}
 
 
@@ -290,7 +410,17 @@ public class ApplicationWs implements IApplicationWs {
 		// Run through all the instances.
 		// See if their component can support a child "of type componentName".
 		if( app != null ) {
-			for( Instance instance : InstanceHelpers.getAllInstances( app )) {
+			List<Instance> instances;
+			Lock lock = app.getLock().readLock();
+			lock.lock();
+			try {
+				instances = InstanceHelpers.getAllInstances( app );
+
+			} finally {
+				lock.unlock();
+			}
+
+			for( Instance instance : instances ) {
 				for( Component c : instance.getComponent().getChildren()) {
 					if( componentName.equals( c.getName())) {
 						String instancePath = InstanceHelpers.computeInstancePath( instance );
@@ -330,4 +460,29 @@ public class ApplicationWs implements IApplicationWs {
 
 		return result;
 	}
+
+
+	/**
+	 * Evaluates the request's preconditions against the current version of an application.
+	 * @param app an application
+	 * @param request the request (can be null)
+	 * @return a response builder if the client already has this version, null otherwise
+	 */
+	private static ResponseBuilder evaluateVersion( Application app, Request request ) {
+
+		ResponseBuilder result = null;
+		if( request != null ) {
+			EntityTag tag = buildEntityTag( Manager.INSTANCE.getSnapshotRegistry().getVersion( app ));
+			result = request.evaluatePreconditions( tag );
+			if( result != null )
+				result.tag( tag );
+		}
+
+		return result;
+	}
+
+
+	private static EntityTag buildEntityTag( long version ) {
+		return new EntityTag( String.valueOf( version ));
+	}
 }
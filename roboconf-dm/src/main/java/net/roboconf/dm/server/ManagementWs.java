@@ -23,7 +23,10 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import javax.ws.rs.Path;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.ResponseBuilder;
 import javax.ws.rs.core.Response.Status;
 
 import net.roboconf.core.internal.utils.Utils;
@@ -111,12 +114,19 @@ public class ManagementWs implements IManagementWs {
 
 	/* (non-Javadoc)
 	 * @see net.roboconf.dm.rest.client.exceptions.server.IApplicationWs
-	 * #listApplications()
+	 * #listApplications(javax.ws.rs.core.Request)
 	 */
 	@Override
-	public List<Application> listApplications() {
+	public Response listApplications( Request request ) {
 		this.logger.fine( "Request: list all the applications." );
-		return Manager.INSTANCE.listApplications();
+
+		List<Application> applications = Manager.INSTANCE.listApplications();
+		EntityTag tag = new EntityTag( Manager.INSTANCE.getSnapshotRegistry().getVersion( applications ));
+		ResponseBuilder rb = request == null ? null : request.evaluatePreconditions( tag );
+		if( rb == null )
+			rb = Response.ok( applications );
+
+		return rb.tag( tag ).build();
 	}
 
 
@@ -50,6 +50,26 @@ public final class ResourceUtils {
 	 */
 	public static Map<String,byte[]> storeInstanceResources( File applicationFilesDirectory, Instance instance ) throws IOException {
 
+		Map<String,byte[]> result = new HashMap<String,byte[]> ();
+		for( Map.Entry<String,File> entry : findInstanceResourceFiles( applicationFilesDirectory, instance ).entrySet()) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			Utils.copyStream( entry.getValue(), os );
+			result.put( entry.getKey(), os.toByteArray());
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the resource files of an instance, without reading them.
+	 * @param applicationFilesDirectory the application's directory
+	 * @param instance an instance (not null)
+	 * @return a non-null map (key = the file location, relative to the instance's directory, value = the file)
+	 * @throws IOException if the instance's resource directory does not exist
+	 */
+	public static Map<String,File> findInstanceResourceFiles( File applicationFilesDirectory, Instance instance ) throws IOException {
+
 		File instanceResourcesDirectory = findInstanceResourcesDirectory( applicationFilesDirectory, instance );
 		if( ! instanceResourcesDirectory.exists())
 			throw new IOException( "The resource directory was not found for instance " + instance.getName() + ". " + instanceResourcesDirectory.getAbsolutePath());
@@ -57,15 +77,9 @@ public final class ResourceUtils {
 		if( ! instanceResourcesDirectory.isDirectory())
 			throw new IOException( "The resource directory for instance " + instance.getName() + " is not a valid directory. " + instanceResourcesDirectory.getAbsolutePath());
 
-		Map<String,byte[]> result = new HashMap<String,byte[]> ();
-		List<File> resourceFiles = listAllFiles( instanceResourcesDirectory );
-		for( File file : resourceFiles ) {
-
-			String key = computeFileRelativeLocation( instanceResourcesDirectory, file );
-			ByteArrayOutputStream os = new ByteArrayOutputStream();
-			Utils.copyStream( file, os );
-			result.put( key, os.toByteArray());
-		}
+		Map<String,File> result = new HashMap<String,File> ();
+		for( File file : listAllFiles( instanceResourcesDirectory ))
+			result.put( computeFileRelativeLocation( instanceResourcesDirectory, file ), file );
 
 		return result;
 	}
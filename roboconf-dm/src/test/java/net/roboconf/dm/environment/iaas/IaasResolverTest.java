@@ -16,10 +16,21 @@
 
 package net.roboconf.dm.environment.iaas;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 
 import junit.framework.Assert;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.dm.utils.ResourceUtils;
+import net.roboconf.iaas.api.IaasFactory;
+import net.roboconf.iaas.api.IaasInterface;
+import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
+import net.roboconf.iaas.api.exceptions.IaasException;
+import net.roboconf.iaas.api.exceptions.InvalidIaasPropertiesException;
 import net.roboconf.iaas.ec2.IaasEc2;
 import net.roboconf.iaas.local.IaasLocalhost;
 
@@ -42,5 +53,177 @@ public class IaasResolverTest {
 
 		props.put( IaasResolver.IAAS_TYPE, "ec2" );
 		Assert.assertTrue( resolver.findIaasHandler( props ) instanceof IaasEc2 );
+
+		// Factories are found with the service loader
+		Assert.assertNotNull( resolver.getRegistry().findFactory( "openstack" ));
+		Assert.assertNotNull( resolver.getRegistry().findFactory( "vmware" ));
+	}
+
+
+	@Test
+	public void testRegistryCachesIaasInterfaces() throws Exception {
+
+		TestIaasFactory factory = new TestIaasFactory();
+		IaasRegistry registry = new IaasRegistry();
+		registry.register( factory );
+
+		Map<String, String> props = new HashMap<String, String>();
+		props.put( IaasResolver.IAAS_TYPE, "test" );
+		props.put( "key", "value" );
+
+		// Configured interfaces are reused
+		IaasInterface iaas = registry.findIaasInterface( "app", props );
+		Assert.assertNotNull( iaas );
+		Assert.assertSame( iaas, registry.findIaasInterface( "app", new HashMap<String,String>( props )));
+		Assert.assertEquals( 1, factory.configurationsCount );
+
+		// ... per application and per properties
+		Assert.assertNotSame( iaas, registry.findIaasInterface( "app2", props ));
+		props.put( "key", "other value" );
+		Assert.assertNotSame( iaas, registry.findIaasInterface( "app", props ));
+		Assert.assertEquals( 3, factory.configurationsCount );
+		Assert.assertEquals( 3, registry.getIaasInterfacesCount());
+
+		registry.removeApplication( "app" );
+		Assert.assertEquals( 1, registry.getIaasInterfacesCount());
+
+		// Unknown IaaS types
+		props.put( IaasResolver.IAAS_TYPE, "unknown" );
+		Assert.assertNull( registry.findIaasInterface( "app", props ));
+	}
+
+
+	@Test
+	public void testRegistryDoesNotCacheFailures() throws Exception {
+
+		TestIaasFactory factory = new TestIaasFactory();
+		IaasRegistry registry = new IaasRegistry();
+		registry.register( factory );
+
+		Map<String, String> props = new HashMap<String, String>();
+		props.put( IaasResolver.IAAS_TYPE, "test" );
+		props.put( "fail", "true" );
+
+		try {
+			registry.findIaasInterface( "app", props );
+			Assert.fail( "An exception was expected." );
+
+		} catch( IaasException e ) {
+			Assert.assertTrue( e.getCause() instanceof InvalidIaasPropertiesException );
+		}
+
+		Assert.assertEquals( 0, registry.getIaasInterfacesCount());
+	}
+
+
+	@Test
+	public void testRegistryEvictsIaasInterfaces() throws Exception {
+
+		TestIaasFactory factory = new TestIaasFactory();
+		IaasRegistry registry = new IaasRegistry();
+		registry.register( factory );
+
+		Map<String, String> props = new HashMap<String, String>();
+		props.put( IaasResolver.IAAS_TYPE, "test" );
+
+		IaasInterface iaas = registry.findIaasInterface( "app", props );
+		IaasInterface otherIaas = registry.findIaasInterface( "app2", props );
+		Assert.assertEquals( 2, registry.getIaasInterfacesCount());
+
+		// Evicted interfaces are configured again
+		registry.evict( iaas );
+		Assert.assertEquals( 1, registry.getIaasInterfacesCount());
+		Assert.assertSame( otherIaas, registry.findIaasInterface( "app2", props ));
+
+		IaasInterface newIaas = registry.findIaasInterface( "app", props );
+		Assert.assertNotSame( iaas, newIaas );
+		Assert.assertEquals( 3, factory.configurationsCount );
+
+		// Evicting an unknown interface has no effect
+		registry.evict( iaas );
+		Assert.assertEquals( 2, registry.getIaasInterfacesCount());
+
+		registry.removeIaasInterface( "app", props );
+		Assert.assertEquals( 1, registry.getIaasInterfacesCount());
+		Assert.assertSame( otherIaas, registry.findIaasInterface( "app2", props ));
+	}
+
+
+	@Test
+	public void testFindIaasProperties() throws Exception {
+
+		File applicationDirectory = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_test_iaas_resolver" );
+		Utils.deleteFilesRecursively( applicationDirectory );
+
+		Instance instance = new Instance( "vm" );
+		instance.setComponent( new Component( "my-vm" ));
+		File f = ResourceUtils.findInstanceResourcesDirectory( applicationDirectory, instance );
+		f = new File( f, IaasInterface.DEFAULT_IAAS_PROPERTIES_FILE_NAME );
+		try {
+			Assert.assertTrue( f.getParentFile().mkdirs());
+			Utils.copyStream( new ByteArrayInputStream( "iaas.type: local".getBytes( "UTF-8" )), f );
+
+			IaasResolver resolver = new IaasResolver();
+			Map<String,String> props = resolver.findIaasProperties( "app", applicationDirectory, instance );
+			Assert.assertEquals( "local", props.get( IaasResolver.IAAS_TYPE ));
+			Assert.assertSame( props, resolver.findIaasProperties( "app", applicationDirectory, instance ));
+
+			resolver.getRegistry().findIaasInterface( "app", props );
+			Assert.assertEquals( 1, resolver.getRegistry().getIaasInterfacesCount());
+
+			// Modified files are read again, the IaaS interface configured with the previous properties is removed
+			Utils.copyStream( new ByteArrayInputStream( "iaas.type: ec2".getBytes( "UTF-8" )), f );
+			props = resolver.findIaasProperties( "app", applicationDirectory, instance );
+			Assert.assertEquals( "ec2", props.get( IaasResolver.IAAS_TYPE ));
+			Assert.assertEquals( 0, resolver.getRegistry().getIaasInterfacesCount());
+
+			// Removed applications are read again
+			resolver.removeApplication( "app" );
+			Assert.assertNotSame( props, resolver.findIaasProperties( "app", applicationDirectory, instance ));
+
+		} finally {
+			Utils.deleteFilesRecursively( applicationDirectory );
+		}
+	}
+
+
+	/**
+	 * A factory that counts configurations.
+	 */
+	private static class TestIaasFactory implements IaasFactory {
+		int configurationsCount = 0;
+
+		@Override
+		public String getIaasType() {
+			return "test";
+		}
+
+		@Override
+		public IaasInterface newIaasInterface() {
+			return new IaasInterface() {
+
+				@Override
+				public void setIaasProperties( Map<String,String> iaasProperties )
+				throws InvalidIaasPropertiesException {
+
+					if( iaasProperties.containsKey( "fail" ))
+						throw new InvalidIaasPropertiesException( "Invalid properties." );
+
+					TestIaasFactory.this.configurationsCount ++;
+				}
+
+				@Override
+				public String createVM( String machineImageId, String ipMessagingServer, String channelName, String applicationName )
+				throws IaasException, CommunicationToIaasException {
+					return null;
+				}
+
+				@Override
+				public void terminateVM( String machineId )
+				throws IaasException, CommunicationToIaasException {
+					// nothing
+				}
+			};
+		}
 	}
 }
@@ -16,13 +16,33 @@
 
 package net.roboconf.dm.environment.messaging;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import junit.framework.Assert;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Import;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.core.model.runtime.Instance.InstanceStatus;
 import net.roboconf.dm.internal.TestApplication;
+import net.roboconf.dm.internal.TestMessageServerClient;
+import net.roboconf.dm.management.ManagedApplication;
+import net.roboconf.dm.management.Manager;
+import net.roboconf.messaging.codec.MessageCodecs;
+import net.roboconf.messaging.messages.Message;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstancesChanged;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineDown;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineUp;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdImportsResync;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
+import net.roboconf.messaging.utils.MessagingUtils;
 
 import org.junit.Test;
 
@@ -60,6 +80,43 @@ public class DmMessageProcessorTest {
 	}
 
 
+	@Test
+	public void testProcessMsgNotifMachineUp_modelIsSent() throws Exception {
+
+		TestApplication app = new TestApplication();
+		File f = File.createTempFile( "roboconf_", ".folder" );
+		TestMessageServerClient client = new TestMessageServerClient();
+		Manager.INSTANCE.getAppNameToManagedApplication().put( app.getName(), new ManagedApplication( app, f, client ));
+
+		try {
+			DmMessageProcessor processor = new DmMessageProcessor( app );
+			processor.processMessage( new MsgNotifMachineUp( app.getTomcatVm().getName(), "192.168.1.2" ));
+			Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, app.getTomcatVm().getStatus());
+			Assert.assertEquals( 1, client.messageToRoutingKey.size());
+
+			Map.Entry<Message,String> entry = client.messageToRoutingKey.entrySet().iterator().next();
+			Assert.assertEquals( MessagingUtils.buildRoutingKeyToAgent( app.getTomcatVm()), entry.getValue());
+
+			// The agent gets a copy of the model, which can be serialized without the lock
+			Assert.assertEquals( MessageCodecs.DEFAULT_CODEC, ((MsgCmdInstanceAdd) entry.getKey()).getMessagingCodec());
+			Instance sent = ((MsgCmdInstanceAdd) entry.getKey()).getInstanceToAdd();
+			Assert.assertNotSame( app.getTomcatVm(), sent );
+			Assert.assertEquals( app.getTomcatVm(), sent );
+			Assert.assertEquals(
+					InstanceHelpers.buildHierarchicalList( app.getTomcatVm()).size(),
+					InstanceHelpers.buildHierarchicalList( sent ).size());
+
+			Instance sentTomcat = InstanceHelpers.findInstanceByPath( sent, InstanceHelpers.computeInstancePath( app.getTomcat()));
+			Assert.assertNotNull( sentTomcat );
+			Assert.assertNotSame( app.getTomcat(), sentTomcat );
+
+		} finally {
+			Manager.INSTANCE.getAppNameToManagedApplication().remove( app.getName());
+			Utils.deleteFilesRecursively( f );
+		}
+	}
+
+
 	@Test
 	public void testProcessMsgNotifMachineDown_1() {
 
@@ -109,4 +166,84 @@ public class DmMessageProcessorTest {
 
 		Assert.assertTrue( "We are supposed to reach here without any error.", true );
 	}
+
+
+	@Test
+	public void testProcessMsgNotifInstancesChanged() {
+
+		TestApplication app = new TestApplication();
+		app.getMySql().addImport( "Tomcat", new Import( "/tomcat-vm/tomcat-server" ));
+		Instance copy = new Instance( app.getTomcat().getName());
+		copy.addImport( "MySQL", new Import( InstanceHelpers.computeInstancePath( app.getMySql())));
+
+		List<MsgNotifInstanceChanged> changes = new ArrayList<MsgNotifInstanceChanged> ();
+		changes.add( new MsgNotifInstanceChanged( InstanceHelpers.computeInstancePath( app.getMySql()), null, InstanceStatus.DEPLOYED_STOPPED ));
+		changes.add( new MsgNotifInstanceChanged( "/invalid/path", null, InstanceStatus.DEPLOYED_STOPPED ));
+		changes.add( new MsgNotifInstanceChanged( InstanceHelpers.computeInstancePath( app.getTomcat()), copy.getImports(), InstanceStatus.STARTING ));
+
+		DmMessageProcessor processor = new DmMessageProcessor( app );
+		processor.processMessage( new MsgNotifInstancesChanged( changes ));
+
+		// Null imports mean the imports did not change
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, app.getMySql().getStatus());
+		Assert.assertEquals( 1, app.getMySql().getImports().size());
+
+		// Unknown instances do not prevent the other changes from being applied
+		Assert.assertEquals( InstanceStatus.STARTING, app.getTomcat().getStatus());
+		Assert.assertEquals( 1, app.getTomcat().getImports().get( "MySQL" ).size());
+	}
+
+
+	@Test
+	public void testProcessMsgNotifInstancesChanged_importsDeltas() throws Exception {
+
+		TestApplication app = new TestApplication();
+		String path = InstanceHelpers.computeInstancePath( app.getTomcat());
+		File f = File.createTempFile( "roboconf_", ".folder" );
+		TestMessageServerClient client = new TestMessageServerClient();
+		Manager.INSTANCE.getAppNameToManagedApplication().put( app.getName(), new ManagedApplication( app, f, client ));
+
+		try {
+			DmMessageProcessor processor = new DmMessageProcessor( app );
+
+			// All the imports
+			Map<String,Collection<Import>> imports = new HashMap<String,Collection<Import>> ();
+			imports.put( "MySQL", new ArrayList<Import>( Arrays.asList( new Import( "/vm1/mysql" ), new Import( "/vm2/mysql" ))));
+			processChange( processor, new MsgNotifInstanceChanged( path, imports, InstanceStatus.STARTING, null, null, 1 ));
+			Assert.assertEquals( 2, app.getTomcat().getImports().get( "MySQL" ).size());
+
+			// A delta on the next version
+			Map<String,Collection<Import>> added = new HashMap<String,Collection<Import>> ();
+			added.put( "MySQL", Arrays.asList( new Import( "/vm3/mysql" )));
+			Map<String,Collection<Import>> removed = new HashMap<String,Collection<Import>> ();
+			removed.put( "MySQL", Arrays.asList( new Import( "/vm1/mysql" )));
+			processChange( processor, new MsgNotifInstanceChanged( path, null, InstanceStatus.STARTING, added, removed, 2 ));
+
+			Assert.assertEquals(
+					Arrays.asList( new Import( "/vm2/mysql" ), new Import( "/vm3/mysql" )),
+					new ArrayList<Import>( app.getTomcat().getImports().get( "MySQL" )));
+			Assert.assertEquals( 0, client.messageToRoutingKey.size());
+
+			// A delta was missed: it is not applied, all the imports are requested
+			added.put( "MySQL", Arrays.asList( new Import( "/vm4/mysql" )));
+			processChange( processor, new MsgNotifInstanceChanged( path, null, InstanceStatus.DEPLOYED_STARTED, added, null, 4 ));
+
+			Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, app.getTomcat().getStatus());
+			Assert.assertEquals( 2, app.getTomcat().getImports().get( "MySQL" ).size());
+			Assert.assertEquals( 1, client.messageToRoutingKey.size());
+
+			Map.Entry<Message,String> entry = client.messageToRoutingKey.entrySet().iterator().next();
+			Assert.assertEquals( path, ((MsgCmdImportsResync) entry.getKey()).getInstancePath());
+			Assert.assertEquals( MessagingUtils.buildRoutingKeyToAgent( app.getTomcatVm()), entry.getValue());
+
+		} finally {
+			Manager.INSTANCE.getAppNameToManagedApplication().remove( app.getName());
+			Utils.deleteFilesRecursively( f );
+		}
+	}
+
+
+	private static void processChange( DmMessageProcessor processor, MsgNotifInstanceChanged change ) {
+		processor.processMessage( new MsgNotifInstancesChanged( Arrays.asList( change )));
+	}
 }
@@ -17,7 +17,7 @@
 package net.roboconf.dm.internal;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -31,7 +31,7 @@ import net.roboconf.messaging.messages.Message;
  */
 public class TestMessageServerClient implements IMessageServerClient {
 
-	public final Map<Message,String> messageToRoutingKey = new HashMap<Message,String> ();
+	public final Map<Message,String> messageToRoutingKey = new LinkedHashMap<Message,String> ();
 	public AtomicBoolean connectionOpen = new AtomicBoolean( false );
 	public AtomicBoolean connectionClosed = new AtomicBoolean( false );
 
@@ -55,6 +55,18 @@ public class TestMessageServerClient implements IMessageServerClient {
 	}
 
 
+	@Override
+	public void setMessageCodec( String codecName ) {
+		// nothing, we do not care
+	}
+
+
+	@Override
+	public void setParallelProcessing( boolean parallelProcessing ) {
+		// nothing, we do not care
+	}
+
+
 	@Override
 	public void openConnection( IMessageProcessor messageProcessor ) throws IOException {
 		this.connectionOpen.set( true );
@@ -0,0 +1,214 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.management;
+
+import java.util.List;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.dm.internal.TestApplication;
+import net.roboconf.dm.rest.events.InstanceEvent;
+import net.roboconf.dm.rest.events.InstanceEvent.Kind;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class InstanceEventBrokerTest {
+
+	@Test
+	public void testEventsAreOnlySentToTheApplicationSubscribers() throws Exception {
+
+		TestApplication app = new TestApplication();
+		InstanceEventBroker broker = new InstanceEventBroker();
+		String id = broker.subscribe( app.getName());
+		String otherId = broker.subscribe( "other" );
+		Assert.assertEquals( 2, broker.getSubscriptionsCount());
+
+		app.getTomcat().setStatus( InstanceStatus.DEPLOYING );
+		broker.statusChanged( app.getName(), app.getTomcat());
+		broker.importsChanged( app.getName(), app.getWar());
+		broker.dataChanged( app.getName(), app.getTomcatVm(), "key" );
+
+		List<InstanceEvent> events = broker.poll( app.getName(), id, 0 );
+		Assert.assertEquals( 2, events.size());
+		Assert.assertEquals( Kind.STATUS_CHANGED, events.get( 0 ).getKind());
+		Assert.assertEquals( InstanceHelpers.computeInstancePath( app.getTomcat()), events.get( 0 ).getInstancePath());
+		Assert.assertEquals( InstanceStatus.DEPLOYING, events.get( 0 ).getStatus());
+		Assert.assertEquals( Kind.IMPORTS_CHANGED, events.get( 1 ).getKind());
+		Assert.assertEquals( InstanceHelpers.computeInstancePath( app.getWar()), events.get( 1 ).getInstancePath());
+
+		// Events are removed once they were sent
+		Assert.assertEquals( 0, broker.poll( app.getName(), id, 0 ).size());
+		Assert.assertEquals( 0, broker.poll( "other", otherId, 0 ).size());
+
+		// A subscription is bound to an application
+		Assert.assertNull( broker.poll( "other", id, 0 ));
+		Assert.assertNull( broker.poll( app.getName(), "unknown", 0 ));
+	}
+
+
+	@Test
+	public void testExpiredSubscriptionsAreRemovedWhenPublishing() throws Exception {
+
+		TestApplication app = new TestApplication();
+		InstanceEventBroker broker = new InstanceEventBroker( InstanceEventBroker.DEFAULT_CAPACITY, 500 );
+		String id = broker.subscribe( app.getName());
+		String otherId = broker.subscribe( "other" );
+		Thread.sleep( 600 );
+
+		// Only the subscriptions of the application are visited
+		broker.statusChanged( app.getName(), app.getTomcat());
+		Assert.assertEquals( 1, broker.getSubscriptionsCount());
+		Assert.assertNull( broker.poll( app.getName(), id, 0 ));
+		Assert.assertNotNull( broker.poll( "other", otherId, 0 ));
+
+		// Polled subscriptions do not expire
+		id = broker.subscribe( app.getName());
+		broker.statusChanged( app.getName(), app.getTomcat());
+		Assert.assertEquals( 1, broker.poll( app.getName(), id, 0 ).size());
+		Assert.assertEquals( 2, broker.getSubscriptionsCount());
+
+		// Removing the application closes its subscriptions
+		broker.applicationRemoved( app.getName());
+		Assert.assertEquals( 1, broker.getSubscriptionsCount());
+		Assert.assertNull( broker.poll( app.getName(), id, 0 ));
+	}
+
+
+	@Test
+	public void testAddedAndRemovedInstances() throws Exception {
+
+		TestApplication app = new TestApplication();
+		InstanceEventBroker broker = new InstanceEventBroker();
+		String id = broker.subscribe( app.getName());
+
+		broker.instanceAdded( app.getName(), app.getTomcatVm());
+		broker.instanceRemoved( app.getName(), "/some/path" );
+
+		List<InstanceEvent> events = broker.poll( app.getName(), id, 0 );
+		int addedCount = InstanceHelpers.buildHierarchicalList( app.getTomcatVm()).size();
+		Assert.assertEquals( addedCount + 1, events.size());
+		for( int i=0; i<addedCount; i++ )
+			Assert.assertEquals( Kind.INSTANCE_ADDED, events.get( i ).getKind());
+
+		Assert.assertEquals( Kind.INSTANCE_REMOVED, events.get( addedCount ).getKind());
+		Assert.assertEquals( "/some/path", events.get( addedCount ).getInstancePath());
+	}
+
+
+	@Test
+	public void testOverflowRequiresResync() throws Exception {
+
+		TestApplication app = new TestApplication();
+		InstanceEventBroker broker = new InstanceEventBroker( 3 );
+		String id = broker.subscribe( app.getName());
+
+		InstanceStatus[] statuses = {
+			InstanceStatus.DEPLOYING, InstanceStatus.DEPLOYED_STOPPED,
+			InstanceStatus.STARTING, InstanceStatus.DEPLOYED_STARTED
+		};
+
+		for( InstanceStatus status : statuses ) {
+			app.getTomcat().setStatus( status );
+			broker.statusChanged( app.getName(), app.getTomcat());
+		}
+
+		// The oldest event was dropped
+		List<InstanceEvent> events = broker.poll( app.getName(), id, 0 );
+		Assert.assertEquals( 4, events.size());
+		Assert.assertEquals( Kind.RESYNC, events.get( 0 ).getKind());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, events.get( 1 ).getStatus());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, events.get( 3 ).getStatus());
+
+		// The next poll does not require a resync
+		broker.statusChanged( app.getName(), app.getTomcat());
+		events = broker.poll( app.getName(), id, 0 );
+		Assert.assertEquals( 1, events.size());
+		Assert.assertEquals( Kind.STATUS_CHANGED, events.get( 0 ).getKind());
+	}
+
+
+	@Test( timeout = 10000 )
+	public void testPollWaitsForEvents() throws Exception {
+
+		final TestApplication app = new TestApplication();
+		final InstanceEventBroker broker = new InstanceEventBroker();
+		String id = broker.subscribe( app.getName());
+
+		// Timeout without events
+		long before = System.currentTimeMillis();
+		Assert.assertEquals( 0, broker.poll( app.getName(), id, 100 ).size());
+		Assert.assertTrue( System.currentTimeMillis() - before >= 100 );
+
+		// An event releases the poll
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep( 200 );
+					broker.statusChanged( app.getName(), app.getTomcat());
+
+				} catch( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		thread.start();
+		List<InstanceEvent> events = broker.poll( app.getName(), id, InstanceEventBroker.MAX_POLL_TIMEOUT );
+		Assert.assertEquals( 1, events.size());
+		thread.join();
+	}
+
+
+	@Test( timeout = 10000 )
+	public void testClosingReleasesThePoll() throws Exception {
+
+		final TestApplication app = new TestApplication();
+		final InstanceEventBroker broker = new InstanceEventBroker();
+		final String id1 = broker.subscribe( app.getName());
+		String id2 = broker.subscribe( app.getName());
+
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep( 200 );
+					broker.unsubscribe( app.getName(), id1 );
+
+				} catch( InterruptedException e ) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+
+		thread.start();
+		Assert.assertNull( broker.poll( app.getName(), id1, InstanceEventBroker.MAX_POLL_TIMEOUT ));
+		thread.join();
+		Assert.assertFalse( broker.unsubscribe( app.getName(), id1 ));
+		Assert.assertEquals( 1, broker.getSubscriptionsCount());
+
+		// Removing the application closes its subscriptions
+		broker.applicationRemoved( app.getName());
+		Assert.assertEquals( 0, broker.getSubscriptionsCount());
+		Assert.assertNull( broker.poll( app.getName(), id2, 0 ));
+	}
+}
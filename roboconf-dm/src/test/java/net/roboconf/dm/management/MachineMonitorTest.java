@@ -17,79 +17,193 @@
 package net.roboconf.dm.management;
 
 import junit.framework.Assert;
-import net.roboconf.core.model.runtime.Application;
 import net.roboconf.core.model.runtime.Instance;
 import net.roboconf.core.model.runtime.Instance.InstanceStatus;
 
 import org.junit.Test;
 
 /**
- * Test MachineMonitor (timers are disabled).
+ * Test MachineMonitor (timers are disabled, time is simulated).
  * @author Vincent Zurczak - Linagora
  */
 public class MachineMonitorTest {
 
+	private static final long TICK = 1000;
+	private static final long PERIOD = 60000;
+
+
 	@Test
-	public void testMonitor_1() throws Exception {
+	public void testMonitor_empty() throws Exception {
 
-		// Test an empty application
-		MachineMonitor monitor = new MachineMonitor( new Application());
-		monitor.stopTimer();
-		Assert.assertTrue( monitor.getRootInstanceToMissedHeartBeatsCount().isEmpty());
+		MachineMonitor monitor = new MachineMonitor( TICK, false );
+		monitor.processExpirations( System.currentTimeMillis());
+		Assert.assertEquals( 0, monitor.getMonitoredMachinesCount());
+		Assert.assertEquals( 0, monitor.getScheduledMachinesCount());
 	}
 
 
 	@Test
-	public void testMonitor_2() throws Exception {
+	public void testMonitor_expirationAndRecovery() throws Exception {
 
-		// Prepare our application
-		Application app = new Application();
-		app.setName(  "app1"  );
+		MachineMonitor monitor = new MachineMonitor( TICK, false );
+		monitor.addApplication( "app1", PERIOD, 2 );
 
 		Instance ri1 = new Instance( "ri1" );
-		app.getRootInstances().add( ri1 );
+		long now = 1000000;
+		monitor.acknowledgeHeartBeat( "app1", ri1, now );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ri1.getStatus());
+		Assert.assertEquals( 1, monitor.getScheduledMachinesCount());
 
-		Instance ri2 = new Instance( "ri2" );
-		ri2.setStatus( InstanceStatus.UNDEPLOYING );
-		app.getRootInstances().add( ri2 );
+		// Two missed heart beats are tolerated
+		for( long time = now; time < now + 3 * PERIOD; time += TICK ) {
+			monitor.processExpirations( time );
+			Assert.assertEquals( "Time " + time, InstanceStatus.DEPLOYED_STARTED, ri1.getStatus());
+		}
 
-		Instance ri3 = new Instance( "ri3" );
-		ri3.setStatus( InstanceStatus.DEPLOYING );
-		app.getRootInstances().add( ri3 );
+		// Not three
+		monitor.processExpirations( now + 3 * PERIOD );
+		Assert.assertEquals( InstanceStatus.PROBLEM, ri1.getStatus());
+		Assert.assertEquals( 0, monitor.getScheduledMachinesCount());
+		Assert.assertEquals( 1, monitor.getMonitoredMachinesCount());
 
-		// They should not appear in the map
-		MachineMonitor monitor = new MachineMonitor( app );
-		monitor.stopTimer();
-		Assert.assertTrue( monitor.getRootInstanceToMissedHeartBeatsCount().isEmpty());
+		// Nothing changes later
+		monitor.processExpirations( now + 10 * PERIOD );
+		Assert.assertEquals( InstanceStatus.PROBLEM, ri1.getStatus());
 
-		// Put one as candidate for problems
-		ri1.setStatus( InstanceStatus.DEPLOYED_STARTED );
-		monitor = new MachineMonitor( app );
-		monitor.stopTimer();
-		Assert.assertTrue( monitor.getRootInstanceToMissedHeartBeatsCount().isEmpty());
-
-		for( int i=0; i<MachineMonitor.MISSED_HEARTBEATS_THRESHOLD + 5; i++ ) {
-			Integer iteration = i+1;
-			monitor.monitorAllMachine();
-			Assert.assertEquals( "Iteration " + iteration, 1, monitor.getRootInstanceToMissedHeartBeatsCount().size());
-
-			Integer count = monitor.getRootInstanceToMissedHeartBeatsCount().get( ri1 );
-			Assert.assertEquals( "Iteration " + iteration, iteration, count );
-
-			if( i < MachineMonitor.MISSED_HEARTBEATS_THRESHOLD )
-				Assert.assertEquals( "Iteration " + iteration, InstanceStatus.DEPLOYED_STARTED, ri1.getStatus());
-			else
-				Assert.assertEquals( "Iteration " + iteration, InstanceStatus.PROBLEM, ri1.getStatus());
+		// Back to a normal state
+		monitor.acknowledgeHeartBeat( "app1", ri1, now + 10 * PERIOD );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ri1.getStatus());
+		Assert.assertEquals( 1, monitor.getScheduledMachinesCount());
+	}
+
+
+	@Test
+	public void testMonitor_heartBeatsPostponeTheDeadline() throws Exception {
+
+		MachineMonitor monitor = new MachineMonitor( TICK, false );
+		monitor.addApplication( "app1", PERIOD, 2 );
+
+		Instance ri1 = new Instance( "ri1" );
+		long now = 1000000;
+		for( int i=0; i<50; i++ ) {
+			monitor.acknowledgeHeartBeat( "app1", ri1, now );
+			now += PERIOD;
+			monitor.processExpirations( now );
 		}
 
-		Integer count = monitor.getRootInstanceToMissedHeartBeatsCount().get( ri1 );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ri1.getStatus());
+		Assert.assertEquals( 1, monitor.getScheduledMachinesCount());
+	}
+
+
+	@Test
+	public void testMonitor_perApplicationThresholds() throws Exception {
+
+		MachineMonitor monitor = new MachineMonitor( TICK, false );
+		monitor.addApplication( "app1", PERIOD, 2 );
+		monitor.addApplication( "app2", 5000, 1 );
+
+		// Instances are identified by their path: applications can have the same ones
+		Instance ri1 = new Instance( "ri" );
+		Instance ri2 = new Instance( "ri" );
+
+		long now = 1000000;
+		monitor.acknowledgeHeartBeat( "app1", ri1, now );
+		monitor.acknowledgeHeartBeat( "app2", ri2, now );
+		Assert.assertEquals( 2, monitor.getMonitoredMachinesCount());
+
+		monitor.processExpirations( now + 10000 );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ri1.getStatus());
+		Assert.assertEquals( InstanceStatus.PROBLEM, ri2.getStatus());
+
+		// Removing an application stops the monitoring of its machines
+		monitor.removeApplication( "app1" );
+		Assert.assertEquals( 1, monitor.getMonitoredMachinesCount());
+		Assert.assertEquals( 0, monitor.getScheduledMachinesCount());
+
+		monitor.processExpirations( now + 10 * PERIOD );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ri1.getStatus());
+	}
+
+
+	@Test
+	public void testMonitor_deadlinesBeyondOneRound() throws Exception {
+
+		// The wheel covers less than the timeout
+		MachineMonitor monitor = new MachineMonitor( 10, false );
+		monitor.addApplication( "app1", PERIOD, 2 );
+
+		Instance ri1 = new Instance( "ri1" );
+		long now = 1000000;
+		monitor.acknowledgeHeartBeat( "app1", ri1, now );
+		for( long time = now; time < now + 3 * PERIOD; time += 10 )
+			monitor.processExpirations( time );
+
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ri1.getStatus());
+		monitor.processExpirations( now + 3 * PERIOD );
 		Assert.assertEquals( InstanceStatus.PROBLEM, ri1.getStatus());
-		Assert.assertEquals( 1, monitor.getRootInstanceToMissedHeartBeatsCount().size());
+	}
 
-		// Back to a normal state
-		monitor.acknowledgeHeartBeat( ri1 );
-		count = monitor.getRootInstanceToMissedHeartBeatsCount().get( ri1 );
-		Assert.assertEquals( 0, count.intValue());
+
+	@Test
+	public void testMonitor_stoppedMachinesAreForgotten() throws Exception {
+
+		MachineMonitor monitor = new MachineMonitor( TICK, false );
+		monitor.addApplication( "app1", PERIOD, 2 );
+
+		Instance ri1 = new Instance( "ri1" );
+		Instance ri2 = new Instance( "ri2" );
+		Instance ri3 = new Instance( "ri3" );
+
+		long now = 1000000;
+		monitor.acknowledgeHeartBeat( "app1", ri1, now );
+		monitor.acknowledgeHeartBeat( "app1", ri2, now );
+		monitor.acknowledgeHeartBeat( "app1", ri3, now );
+		Assert.assertEquals( 3, monitor.getMonitoredMachinesCount());
+
+		ri1.setStatus( InstanceStatus.UNDEPLOYING );
+		ri2.setStatus( InstanceStatus.NOT_DEPLOYED );
+
+		// Expirations are processed even if the timer was late
+		monitor.processExpirations( now + 10 * PERIOD );
+		Assert.assertEquals( InstanceStatus.UNDEPLOYING, ri1.getStatus());
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, ri2.getStatus());
+		Assert.assertEquals( InstanceStatus.PROBLEM, ri3.getStatus());
+		Assert.assertEquals( 1, monitor.getMonitoredMachinesCount());
+	}
+
+
+	@Test
+	public void testMonitor_restoredMachines() throws Exception {
+
+		MachineMonitor monitor = new MachineMonitor( TICK, false );
+		monitor.addApplication( "app1", PERIOD, 2 );
+
+		Instance ri1 = new Instance( "ri1" );
+		ri1.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		Instance ri2 = new Instance( "ri2" );
+		ri2.setStatus( InstanceStatus.PROBLEM );
+
+		// Monitoring a machine does not change its status
+		long now = 1000000;
+		monitor.monitorMachine( "app1", ri1, now );
+		monitor.monitorMachine( "app1", ri2, now );
+		Assert.assertEquals( 2, monitor.getScheduledMachinesCount());
 		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ri1.getStatus());
+		Assert.assertEquals( InstanceStatus.PROBLEM, ri2.getStatus());
+
+		// Machines that do not send heart beats are detected
+		monitor.acknowledgeHeartBeat( "app1", ri2, now + PERIOD );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ri2.getStatus());
+
+		monitor.processExpirations( now + 3 * PERIOD + TICK );
+		Assert.assertEquals( InstanceStatus.PROBLEM, ri1.getStatus());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, ri2.getStatus());
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testMonitor_invalidSettings() throws Exception {
+		new MachineMonitor( TICK, false ).addApplication( "app1", PERIOD, 0 );
 	}
 }
@@ -0,0 +1,166 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import net.roboconf.iaas.api.MachineHandle;
+import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
+import net.roboconf.iaas.api.exceptions.IaasException;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class MachinePollerTest {
+
+	@Test
+	public void testManyMachinesInFlight() throws Exception {
+
+		// 1,000 machines, each one being ready 300 ms after its creation.
+		// Waiting for them in 2 threads would take 150 seconds.
+		final int machinesCount = 1000;
+		MachinePoller poller = new MachinePoller( 2 );
+		poller.setDelays( 10, 50 );
+
+		CountingCallback callback = new CountingCallback( machinesCount );
+		long start = System.currentTimeMillis();
+		for( int i=0; i<machinesCount; i++ )
+			poller.track( new SimulatedMachine( "vm-" + i, start + 300, false ), callback );
+
+		Assert.assertTrue( callback.latch.await( 10, TimeUnit.SECONDS ));
+		long duration = System.currentTimeMillis() - start;
+
+		Assert.assertEquals( machinesCount, callback.readyCount.get());
+		Assert.assertEquals( 0, callback.failedCount.get());
+		Assert.assertEquals( 0, poller.getTrackedMachinesCount());
+		Assert.assertTrue( "Duration: " + duration + " ms", duration < 5000 );
+	}
+
+
+	@Test
+	public void testBackoff() throws Exception {
+
+		MachinePoller poller = new MachinePoller( 1 );
+		poller.setDelays( 10, 40 );
+
+		// Checks at ~ 10, 30, 70, 110, 150, 190, 230, 270 and 310 ms
+		CountingCallback callback = new CountingCallback( 1 );
+		SimulatedMachine machine = new SimulatedMachine( "vm", System.currentTimeMillis() + 300, false );
+		poller.track( machine, callback );
+
+		Assert.assertTrue( callback.latch.await( 5, TimeUnit.SECONDS ));
+		Assert.assertEquals( 1, callback.readyCount.get());
+		Assert.assertTrue( "Checks: " + machine.checksCount.get(), machine.checksCount.get() <= 10 );
+		Assert.assertTrue( "Checks: " + machine.checksCount.get(), machine.checksCount.get() >= 5 );
+	}
+
+
+	@Test
+	public void testFailures() throws Exception {
+
+		MachinePoller poller = new MachinePoller( 1 );
+		poller.setDelays( 10, 20 );
+		poller.setTimeout( 200 );
+
+		// One machine fails, the other is never ready
+		CountingCallback callback = new CountingCallback( 2 );
+		poller.track( new SimulatedMachine( "vm-1", 0, true ), callback );
+		poller.track( new SimulatedMachine( "vm-2", Long.MAX_VALUE, false ), callback );
+
+		Assert.assertTrue( callback.latch.await( 5, TimeUnit.SECONDS ));
+		Assert.assertEquals( 0, callback.readyCount.get());
+		Assert.assertEquals( 2, callback.failedCount.get());
+		Assert.assertEquals( 0, poller.getTrackedMachinesCount());
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidDelays() {
+		new MachinePoller().setDelays( 100, 10 );
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidTimeout() {
+		new MachinePoller().setTimeout( 0 );
+	}
+
+
+	/**
+	 * A machine that is ready at a given time.
+	 */
+	private static class SimulatedMachine implements MachineHandle {
+		private final String machineId;
+		private final long readyTime;
+		private final boolean fail;
+		final AtomicInteger checksCount = new AtomicInteger();
+
+
+		SimulatedMachine( String machineId, long readyTime, boolean fail ) {
+			this.machineId = machineId;
+			this.readyTime = readyTime;
+			this.fail = fail;
+		}
+
+		@Override
+		public String getMachineId() {
+			return this.machineId;
+		}
+
+		@Override
+		public boolean advance() throws IaasException, CommunicationToIaasException {
+
+			this.checksCount.incrementAndGet();
+			if( this.fail )
+				throw new IaasException( "Simulated failure." );
+
+			return System.currentTimeMillis() >= this.readyTime;
+		}
+	}
+
+
+	/**
+	 * A callback that counts notifications.
+	 */
+	private static class CountingCallback implements MachinePoller.Callback {
+		final AtomicInteger readyCount = new AtomicInteger();
+		final AtomicInteger failedCount = new AtomicInteger();
+		final CountDownLatch latch;
+
+
+		CountingCallback( int expected ) {
+			this.latch = new CountDownLatch( expected );
+		}
+
+		@Override
+		public void machineReady( MachineHandle handle ) {
+			this.readyCount.incrementAndGet();
+			this.latch.countDown();
+		}
+
+		@Override
+		public void machineFailed( MachineHandle handle, Exception error ) {
+			this.failedCount.incrementAndGet();
+			this.latch.countDown();
+		}
+	}
+}
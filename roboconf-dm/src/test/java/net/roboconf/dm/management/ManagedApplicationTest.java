@@ -42,24 +42,18 @@ public class ManagedApplicationTest {
 		if( ! f.mkdir())
 			throw new IOException( "Failed to create a temporary directory." );
 
-		ManagedApplication ma = null;
 		try {
 			Application app = new TestApplication();
 			TestMessageServerClient client = new TestMessageServerClient();
-			ma = new ManagedApplication( app, f, client );
+			ManagedApplication ma = new ManagedApplication( app, f, client );
 
 			Assert.assertNotNull( ma.getLogger());
 			Assert.assertTrue( ma.getLogger().getName().endsWith( "." + app.getName()));
 
-			Assert.assertNotNull( ma.getMonitor());
 			Assert.assertEquals( client, ma.getMessagingClient());
 			Assert.assertEquals( app, ma.getApplication());
 
 		} finally {
-			if( ma != null
-					&& ma.getMonitor() != null )
-				ma.getMonitor().stopTimer();
-
 			Utils.deleteFilesRecursively( f );
 		}
 	}
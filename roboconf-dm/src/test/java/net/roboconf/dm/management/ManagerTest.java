@@ -428,6 +428,7 @@ public class ManagerTest {
 
 			String instancePath = InstanceHelpers.computeInstancePath( app.getMySqlVm());
 			Manager.INSTANCE.perform( app.getName(), ApplicationAction.deploy.toString(), instancePath, true );
+			Assert.assertTrue( Manager.INSTANCE.getProvisioningEngine().awaitIdle( 5000 ));
 
 			Assert.assertNotNull( iaasResolver.instanceToRunningStatus.get( app.getMySqlVm()));
 			Assert.assertTrue( iaasResolver.instanceToRunningStatus.get( app.getMySqlVm()));
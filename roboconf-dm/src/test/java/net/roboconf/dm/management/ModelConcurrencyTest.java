@@ -0,0 +1,206 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.Assert;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.dm.environment.messaging.DmMessageProcessor;
+import net.roboconf.dm.internal.TestApplication;
+import net.roboconf.dm.internal.TestIaasResolver;
+import net.roboconf.dm.internal.TestMessageServerClient;
+import net.roboconf.dm.rest.json.JSonBindingUtils;
+import net.roboconf.dm.server.ApplicationWs;
+import net.roboconf.messaging.client.IMessageServerClient;
+import net.roboconf.messaging.client.MessageServerClientFactory;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstancesChanged;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Checks the model can be read and modified concurrently.
+ * @author Vincent Zurczak - Linagora
+ */
+public class ModelConcurrencyTest {
+
+	private static final int MUTATORS_COUNT = 4;
+	private static final int READERS_COUNT = 4;
+	private static final int MACHINES_PER_MUTATOR = 250;
+
+	private TestApplication app;
+	private File dir;
+
+
+	@Before
+	public void resetManager() throws Exception {
+
+		Manager.INSTANCE.getAppNameToManagedApplication().clear();
+		Manager.INSTANCE.setIaasResolver( new TestIaasResolver());
+		Manager.INSTANCE.setMessagingClientFactory( new MessageServerClientFactory() {
+			@Override
+			public IMessageServerClient create() {
+				return new TestMessageServerClient();
+			}
+		});
+
+		this.app = new TestApplication();
+		this.dir = File.createTempFile( "roboconf_", ".folder" );
+		Manager.INSTANCE.getAppNameToManagedApplication().put(
+				this.app.getName(),
+				new ManagedApplication( this.app, this.dir, new TestMessageServerClient()));
+	}
+
+
+	@After
+	public void cleanManager() throws Exception {
+		Manager.INSTANCE.getAppNameToManagedApplication().clear();
+		Utils.deleteFilesRecursively( this.dir );
+	}
+
+
+	@Test
+	public void testConcurrentReadsAndModifications() throws Exception {
+
+		final DmMessageProcessor processor = new DmMessageProcessor( this.app );
+		final List<Throwable> errors = Collections.synchronizedList( new ArrayList<Throwable> ());
+		final CountDownLatch startSignal = new CountDownLatch( 1 );
+		final CountDownLatch mutatorsDone = new CountDownLatch( MUTATORS_COUNT );
+		List<Thread> threads = new ArrayList<Thread> ();
+
+		// Mutators add machines and servers through the manager,
+		// and remove half of the servers through agent notifications.
+		for( int i=0; i<MUTATORS_COUNT; i++ ) {
+			final int mutatorIndex = i;
+			threads.add( new Thread() {
+				@Override
+				public void run() {
+					try {
+						startSignal.await();
+						for( int j=0; j<MACHINES_PER_MUTATOR; j++ ) {
+							String vmName = "vm-" + mutatorIndex + "-" + j;
+							Instance vm = new Instance( vmName );
+							vm.setComponent( ModelConcurrencyTest.this.app.getTomcatVm().getComponent());
+							Manager.INSTANCE.addInstance( ModelConcurrencyTest.this.app.getName(), null, vm );
+							vm.getData().put( Instance.MACHINE_ID, "i-" + vmName );
+
+							Instance server = new Instance( "server" );
+							server.setComponent( ModelConcurrencyTest.this.app.getTomcat().getComponent());
+							Manager.INSTANCE.addInstance( ModelConcurrencyTest.this.app.getName(), "/" + vmName, server );
+
+							if( j % 2 == 0 )
+								processor.processMessage( new MsgNotifInstanceRemoved( "/" + vmName + "/server" ));
+						}
+
+					} catch( Throwable t ) {
+						errors.add( t );
+
+					} finally {
+						mutatorsDone.countDown();
+					}
+				}
+			});
+		}
+
+		// Agents keep on sending status and imports changes
+		threads.add( new Thread() {
+			@Override
+			public void run() {
+				try {
+					startSignal.await();
+					InstanceStatus[] statuses = InstanceStatus.values();
+					for( int i=0; mutatorsDone.getCount() > 0; i++ ) {
+						Map<String,Collection<Import>> imports = new HashMap<String,Collection<Import>> ();
+						imports.put( "mysql", Collections.singletonList( new Import( "/mysql-vm/mysql-server" )));
+
+						List<MsgNotifInstanceChanged> changes = new ArrayList<MsgNotifInstanceChanged> ();
+						changes.add( new MsgNotifInstanceChanged( "/tomcat-vm/tomcat-server", imports, statuses[ i % statuses.length ]));
+						changes.add( new MsgNotifInstanceChanged( "/mysql-vm", null, statuses[ i % statuses.length ]));
+						processor.processMessage( new MsgNotifInstancesChanged( changes ));
+					}
+
+				} catch( Throwable t ) {
+					errors.add( t );
+				}
+			}
+		});
+
+		// Readers list and serialize the instances, like REST clients
+		for( int i=0; i<READERS_COUNT; i++ ) {
+			threads.add( new Thread() {
+				@Override
+				public void run() {
+					try {
+						startSignal.await();
+						ApplicationWs ws = new ApplicationWs();
+						ObjectMapper mapper = JSonBindingUtils.createObjectMapper();
+						String appName = ModelConcurrencyTest.this.app.getName();
+						while( mutatorsDone.getCount() > 0 ) {
+							mapper.writeValueAsString( ws.listAllChildrenInstances( appName, null, null ).getEntity());
+							mapper.writeValueAsString( ws.listChildrenInstances( appName, null, null ).getEntity());
+							ws.findPossibleParentInstances( appName, "tomcat" );
+							Manager.INSTANCE.findInstancesToProcess( ModelConcurrencyTest.this.app, null, true );
+						}
+
+					} catch( Throwable t ) {
+						errors.add( t );
+					}
+				}
+			});
+		}
+
+		for( Thread thread : threads )
+			thread.start();
+
+		startSignal.countDown();
+		for( Thread thread : threads )
+			thread.join( 60000 );
+
+		if( ! errors.isEmpty())
+			Assert.fail( "Concurrent accesses failed: " + Utils.writeException( new Exception( errors.get( 0 ))));
+
+		// No update was lost
+		int machinesCount = MUTATORS_COUNT * MACHINES_PER_MUTATOR;
+		Assert.assertEquals( 2 + machinesCount, this.app.getRootInstances().size());
+		Assert.assertEquals( 5 + machinesCount + machinesCount / 2, InstanceHelpers.getAllInstances( this.app ).size());
+		for( int i=0; i<MUTATORS_COUNT; i++ ) {
+			for( int j=0; j<MACHINES_PER_MUTATOR; j++ ) {
+				Instance vm = InstanceHelpers.findInstanceByPath( this.app, "/vm-" + i + "-" + j );
+				Assert.assertNotNull( vm );
+				Assert.assertEquals( "i-vm-" + i + "-" + j, vm.getData().get( Instance.MACHINE_ID ));
+				Assert.assertEquals( j % 2 == 0 ? 0 : 1, vm.getChildren().size());
+			}
+		}
+	}
+}
@@ -0,0 +1,464 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.dm.environment.iaas.IaasResolver;
+import net.roboconf.dm.internal.TestMessageServerClient;
+import net.roboconf.iaas.api.AsyncIaasInterface;
+import net.roboconf.iaas.api.BatchIaasInterface;
+import net.roboconf.iaas.api.IaasInterface;
+import net.roboconf.iaas.api.MachineHandle;
+import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
+import net.roboconf.iaas.api.exceptions.IaasException;
+import net.roboconf.iaas.api.exceptions.InvalidIaasPropertiesException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class ProvisioningEngineTest {
+
+	private static final int MACHINES_COUNT = 40;
+	private static final long IAAS_LATENCY = 50;
+
+	private ManagedApplication ma;
+	private SlowIaasResolver resolver;
+
+
+	@Before
+	public void createApplication() {
+
+		Application app = new Application();
+		app.setName( "app" );
+
+		Component vmComponent = new Component( "vm" );
+		vmComponent.setInstallerName( "iaas" );
+		for( int i=0; i<MACHINES_COUNT; i++ ) {
+			Instance rootInstance = new Instance( "vm-" + i );
+			rootInstance.setComponent( vmComponent );
+			app.getRootInstances().add( rootInstance );
+		}
+
+		this.ma = new ManagedApplication( app, null, new TestMessageServerClient());
+		this.resolver = new SlowIaasResolver();
+	}
+
+
+	@Test
+	public void testCreationAndTermination() throws Exception {
+
+		ProvisioningEngine engine = new ProvisioningEngine( 4 );
+		ProvisioningEngine.Batch batch = new ProvisioningEngine.Batch( this.ma, true );
+		for( Instance rootInstance : this.ma.getApplication().getRootInstances())
+			Assert.assertTrue( engine.submitCreation( this.ma, rootInstance, this.resolver, "127.0.0.1", batch ));
+
+		batch.seal();
+		Assert.assertTrue( engine.awaitIdle( 10000 ));
+		Assert.assertEquals( 0, engine.getInFlightRequestsCount());
+		Assert.assertTrue( batch.getBulkException().getInstancesToException().isEmpty());
+		Assert.assertEquals( MACHINES_COUNT, this.resolver.createdCount.get());
+
+		for( Instance rootInstance : this.ma.getApplication().getRootInstances())
+			Assert.assertEquals( "id-" + rootInstance.getName(), rootInstance.getData().get( Instance.MACHINE_ID ));
+
+		batch = new ProvisioningEngine.Batch( this.ma, false );
+		for( Instance rootInstance : this.ma.getApplication().getRootInstances())
+			Assert.assertTrue( engine.submitTermination( this.ma, rootInstance, this.resolver, batch ));
+
+		batch.seal();
+		Assert.assertTrue( engine.awaitIdle( 10000 ));
+		Assert.assertEquals( MACHINES_COUNT, this.resolver.terminatedCount.get());
+		for( Instance rootInstance : this.ma.getApplication().getRootInstances()) {
+			Assert.assertNull( rootInstance.getData().get( Instance.MACHINE_ID ));
+			Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, rootInstance.getStatus());
+		}
+	}
+
+
+	@Test
+	public void testBatchCreationAndTermination() throws Exception {
+
+		// All the machines share the same IaaS configuration
+		BatchIaas iaas = new BatchIaas( this.resolver );
+		this.resolver.sharedIaas = iaas;
+
+		ProvisioningEngine engine = new ProvisioningEngine( 4 );
+		engine.setMaxBatchSize( 15 );
+		ProvisioningEngine.Batch batch = new ProvisioningEngine.Batch( this.ma, true );
+		List<Instance> rootInstances = new ArrayList<Instance>( this.ma.getApplication().getRootInstances());
+		Assert.assertEquals( MACHINES_COUNT, engine.submitCreations( this.ma, rootInstances, this.resolver, "127.0.0.1", batch ));
+		Assert.assertEquals( 0, engine.submitCreations( this.ma, rootInstances, this.resolver, "127.0.0.1", batch ));
+
+		batch.seal();
+		Assert.assertTrue( engine.awaitIdle( 10000 ));
+		Assert.assertTrue( batch.getBulkException().getInstancesToException().isEmpty());
+
+		// 40 machines, at most 15 per request
+		Assert.assertEquals( 3, iaas.batchCallsCount.get());
+		Assert.assertEquals( MACHINES_COUNT, this.resolver.createdCount.get());
+		for( Instance rootInstance : rootInstances )
+			Assert.assertEquals( "id-" + rootInstance.getName(), rootInstance.getData().get( Instance.MACHINE_ID ));
+
+		batch = new ProvisioningEngine.Batch( this.ma, false );
+		engine.setMaxBatchSize( 100 );
+		Assert.assertEquals( MACHINES_COUNT, engine.submitTerminations( this.ma, rootInstances, this.resolver, batch ));
+
+		batch.seal();
+		Assert.assertTrue( engine.awaitIdle( 10000 ));
+		Assert.assertEquals( 4, iaas.batchCallsCount.get());
+		Assert.assertEquals( MACHINES_COUNT, this.resolver.terminatedCount.get());
+		for( Instance rootInstance : rootInstances ) {
+			Assert.assertNull( rootInstance.getData().get( Instance.MACHINE_ID ));
+			Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, rootInstance.getStatus());
+		}
+	}
+
+
+	@Test
+	public void testBatchErrorsAreCollected() throws Exception {
+
+		this.resolver.sharedIaas = new BatchIaas( this.resolver );
+		this.resolver.fail = true;
+
+		ProvisioningEngine engine = new ProvisioningEngine( 4 );
+		ProvisioningEngine.Batch batch = new ProvisioningEngine.Batch( this.ma, true );
+		engine.submitCreations( this.ma, new ArrayList<Instance>( this.ma.getApplication().getRootInstances()), this.resolver, null, batch );
+
+		batch.seal();
+		Assert.assertTrue( engine.awaitIdle( 10000 ));
+		Assert.assertEquals( MACHINES_COUNT, batch.getBulkException().getInstancesToException().size());
+		for( Instance rootInstance : this.ma.getApplication().getRootInstances())
+			Assert.assertEquals( InstanceStatus.PROBLEM, rootInstance.getStatus());
+	}
+
+
+	@Test
+	public void testAsynchronousCreation() throws Exception {
+
+		// Machines are ready 200 ms after their creation started.
+		// If workers waited for them, it would take 4 seconds with 2 workers.
+		this.resolver.sharedIaas = new AsyncIaas( 200 );
+		ProvisioningEngine engine = new ProvisioningEngine( 2 );
+		engine.getMachinePoller().setDelays( 10, 50 );
+
+		long start = System.currentTimeMillis();
+		ProvisioningEngine.Batch batch = new ProvisioningEngine.Batch( this.ma, true );
+		List<Instance> rootInstances = new ArrayList<Instance>( this.ma.getApplication().getRootInstances());
+		engine.submitCreations( this.ma, rootInstances, this.resolver, null, batch );
+		batch.seal();
+
+		// Requests remain in flight until the machines are ready
+		Assert.assertTrue( engine.awaitIdle( 10000 ));
+		long duration = System.currentTimeMillis() - start;
+
+		Assert.assertTrue( "Duration: " + duration + " ms", duration < 2000 );
+		Assert.assertTrue( batch.getBulkException().getInstancesToException().isEmpty());
+		Assert.assertEquals( 0, engine.getMachinePoller().getTrackedMachinesCount());
+		for( Instance rootInstance : rootInstances )
+			Assert.assertEquals( "id-" + rootInstance.getName(), rootInstance.getData().get( Instance.MACHINE_ID ));
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidMaxBatchSize() {
+		new ProvisioningEngine().setMaxBatchSize( 0 );
+	}
+
+
+	@Test
+	public void testPendingRequestsAreNotDuplicated() throws Exception {
+
+		ProvisioningEngine engine = new ProvisioningEngine( 1 );
+		Instance rootInstance = this.ma.getApplication().getRootInstances().iterator().next();
+
+		ProvisioningEngine.Batch batch = new ProvisioningEngine.Batch( this.ma, true );
+		Assert.assertTrue( engine.submitCreation( this.ma, rootInstance, this.resolver, null, batch ));
+		Assert.assertFalse( engine.submitCreation( this.ma, rootInstance, this.resolver, null, batch ));
+		batch.seal();
+
+		Assert.assertTrue( engine.awaitIdle( 10000 ));
+		Assert.assertEquals( 1, this.resolver.createdCount.get());
+	}
+
+
+	@Test
+	public void testErrorsAreCollected() throws Exception {
+
+		this.resolver.fail = true;
+		ProvisioningEngine engine = new ProvisioningEngine( 4 );
+		ProvisioningEngine.Batch batch = new ProvisioningEngine.Batch( this.ma, true );
+		for( Instance rootInstance : this.ma.getApplication().getRootInstances())
+			engine.submitCreation( this.ma, rootInstance, this.resolver, null, batch );
+
+		batch.seal();
+		Assert.assertTrue( engine.awaitIdle( 10000 ));
+		Assert.assertEquals( MACHINES_COUNT, batch.getBulkException().getInstancesToException().size());
+		for( Instance rootInstance : this.ma.getApplication().getRootInstances())
+			Assert.assertEquals( InstanceStatus.PROBLEM, rootInstance.getStatus());
+	}
+
+
+	@Test
+	public void testDeployTimeScalesWithPoolSize() throws Exception {
+
+		long sequentialTime = measureDeploymentTime( 1, MACHINES_COUNT );
+		long parallelTime = measureDeploymentTime( 8, MACHINES_COUNT );
+
+		// 40 x 50 ms = 2 s with a single worker, ~ 250 ms with 8 workers
+		Assert.assertTrue( sequentialTime >= MACHINES_COUNT * IAAS_LATENCY );
+		Assert.assertTrue( "Sequential: " + sequentialTime + " ms, parallel: " + parallelTime + " ms", parallelTime * 3 < sequentialTime );
+	}
+
+
+	@Test
+	public void testIaasConcurrencyLimit() throws Exception {
+
+		// 8 workers, but the IaaS only accepts 2 requests at once
+		ProvisioningEngine engine = new ProvisioningEngine( 8 );
+		engine.setIaasLimits( SlowIaas.class.getSimpleName(), 2, 0 );
+		deployAll( engine );
+
+		Assert.assertEquals( 2, this.resolver.maxConcurrentCalls.get());
+	}
+
+
+	@Test
+	public void testIaasRateLimit() throws Exception {
+
+		// At most one request every 10 ms
+		ProvisioningEngine engine = new ProvisioningEngine( 8 );
+		engine.setIaasLimits( SlowIaas.class.getSimpleName(), 8, 10 );
+		long duration = deployAll( engine );
+
+		Assert.assertTrue( duration >= ( MACHINES_COUNT - 1 ) * 10 );
+	}
+
+
+	@Test
+	public void testPoolSize() {
+
+		ProvisioningEngine engine = new ProvisioningEngine( 3 );
+		Assert.assertEquals( 3, engine.getPoolSize());
+
+		engine.setPoolSize( 12 );
+		Assert.assertEquals( 12, engine.getPoolSize());
+
+		engine.setPoolSize( 2 );
+		Assert.assertEquals( 2, engine.getPoolSize());
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidPoolSize() {
+		new ProvisioningEngine().setPoolSize( 0 );
+	}
+
+
+	private long measureDeploymentTime( int poolSize, int concurrencyLimit ) throws Exception {
+
+		for( Instance rootInstance : this.ma.getApplication().getRootInstances())
+			rootInstance.getData().clear();
+
+		ProvisioningEngine engine = new ProvisioningEngine( poolSize );
+		engine.setIaasLimits( SlowIaas.class.getSimpleName(), concurrencyLimit, 0 );
+		return deployAll( engine );
+	}
+
+
+	private long deployAll( ProvisioningEngine engine ) throws Exception {
+
+		long start = System.currentTimeMillis();
+		ProvisioningEngine.Batch batch = new ProvisioningEngine.Batch( this.ma, true );
+		for( Instance rootInstance : this.ma.getApplication().getRootInstances())
+			engine.submitCreation( this.ma, rootInstance, this.resolver, null, batch );
+
+		batch.seal();
+		Assert.assertTrue( engine.awaitIdle( 30000 ));
+		return System.currentTimeMillis() - start;
+	}
+
+
+	/**
+	 * A IaaS resolver that returns a IaaS with an artificial latency.
+	 */
+	private static class SlowIaasResolver extends IaasResolver {
+
+		final AtomicInteger createdCount = new AtomicInteger();
+		final AtomicInteger terminatedCount = new AtomicInteger();
+		final AtomicInteger concurrentCalls = new AtomicInteger();
+		final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+		volatile boolean fail = false;
+		volatile IaasInterface sharedIaas;
+
+
+		@Override
+		public IaasInterface findIaasInterface( ManagedApplication ma, Instance instance ) throws IaasException {
+			return this.sharedIaas != null ? this.sharedIaas : new SlowIaas( this );
+		}
+
+
+		void simulateLatency() throws IaasException {
+
+			int current = this.concurrentCalls.incrementAndGet();
+			int max;
+			while(( max = this.maxConcurrentCalls.get()) < current
+					&& ! this.maxConcurrentCalls.compareAndSet( max, current ));
+
+			try {
+				Thread.sleep( IAAS_LATENCY );
+
+			} catch( InterruptedException e ) {
+				throw new IaasException( e );
+
+			} finally {
+				this.concurrentCalls.decrementAndGet();
+			}
+
+			if( this.fail )
+				throw new IaasException( "Simulated failure." );
+		}
+	}
+
+
+	/**
+	 * A IaaS with an artificial latency.
+	 */
+	private static class SlowIaas implements IaasInterface {
+		private final SlowIaasResolver resolver;
+
+
+		SlowIaas( SlowIaasResolver resolver ) {
+			this.resolver = resolver;
+		}
+
+		@Override
+		public void setIaasProperties( Map<String,String> iaasProperties ) throws InvalidIaasPropertiesException {
+			// nothing
+		}
+
+		@Override
+		public String createVM( String machineImageId, String ipMessagingServer, String channelName, String applicationName )
+		throws IaasException, CommunicationToIaasException {
+
+			this.resolver.simulateLatency();
+			this.resolver.createdCount.incrementAndGet();
+			return "id-" + channelName;
+		}
+
+		@Override
+		public void terminateVM( String machineId ) throws IaasException, CommunicationToIaasException {
+			this.resolver.simulateLatency();
+			this.resolver.terminatedCount.incrementAndGet();
+		}
+	}
+
+
+	/**
+	 * A IaaS with an artificial latency, that supports batch requests.
+	 */
+	private static class BatchIaas extends SlowIaas implements BatchIaasInterface {
+		private final SlowIaasResolver resolver;
+		final AtomicInteger batchCallsCount = new AtomicInteger();
+
+
+		BatchIaas( SlowIaasResolver resolver ) {
+			super( resolver );
+			this.resolver = resolver;
+		}
+
+		@Override
+		public List<String> createVMs( String machineImageId, String ipMessagingServer, List<String> channelNames, String applicationName )
+		throws IaasException, CommunicationToIaasException {
+
+			this.batchCallsCount.incrementAndGet();
+			this.resolver.simulateLatency();
+
+			List<String> result = new ArrayList<String> ();
+			for( String channelName : channelNames )
+				result.add( "id-" + channelName );
+
+			this.resolver.createdCount.addAndGet( channelNames.size());
+			return result;
+		}
+
+		@Override
+		public void terminateVMs( List<String> machineIds ) throws IaasException, CommunicationToIaasException {
+			this.batchCallsCount.incrementAndGet();
+			this.resolver.simulateLatency();
+			this.resolver.terminatedCount.addAndGet( machineIds.size());
+		}
+	}
+
+
+	/**
+	 * A IaaS whose machines are ready after a given delay.
+	 */
+	private static class AsyncIaas implements AsyncIaasInterface {
+		private final long readyDelay;
+
+
+		AsyncIaas( long readyDelay ) {
+			this.readyDelay = readyDelay;
+		}
+
+		@Override
+		public void setIaasProperties( Map<String,String> iaasProperties ) throws InvalidIaasPropertiesException {
+			// nothing
+		}
+
+		@Override
+		public MachineHandle startVM( String machineImageId, String ipMessagingServer, final String channelName, String applicationName )
+		throws IaasException, CommunicationToIaasException {
+
+			final long readyTime = System.currentTimeMillis() + this.readyDelay;
+			return new MachineHandle() {
+				@Override
+				public String getMachineId() {
+					return "id-" + channelName;
+				}
+
+				@Override
+				public boolean advance() throws IaasException, CommunicationToIaasException {
+					return System.currentTimeMillis() >= readyTime;
+				}
+			};
+		}
+
+		@Override
+		public String createVM( String machineImageId, String ipMessagingServer, String channelName, String applicationName )
+		throws IaasException, CommunicationToIaasException {
+			throw new IaasException( "Machines must be created asynchronously." );
+		}
+
+		@Override
+		public void terminateVM( String machineId ) throws IaasException, CommunicationToIaasException {
+			// nothing
+		}
+	}
+}
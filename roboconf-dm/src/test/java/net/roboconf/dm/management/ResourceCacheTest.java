@@ -0,0 +1,191 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import junit.framework.Assert;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.dm.internal.TestApplication;
+import net.roboconf.dm.internal.TestMessageServerClient;
+import net.roboconf.dm.management.ResourceCache.Resources;
+import net.roboconf.dm.utils.ResourceUtils;
+import net.roboconf.messaging.utils.MessagingUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class ResourceCacheTest {
+
+	private File dir;
+	private TestApplication app;
+	private ManagedApplication ma;
+
+
+	@Before
+	public void createApplication() throws Exception {
+
+		this.dir = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_test_resource_cache" );
+		if( this.dir.exists())
+			Utils.deleteFilesRecursively( this.dir );
+
+		this.app = new TestApplication();
+		this.ma = new ManagedApplication( this.app, this.dir, new TestMessageServerClient());
+
+		createFile( "tomcat", "script.sh", "tomcat content" );
+		createFile( "mysql", "script.sh", "mysql content" );
+		createFile( "mysql", "conf/my.cnf", "some configuration" );
+	}
+
+
+	@After
+	public void deleteApplication() throws Exception {
+		Utils.deleteFilesRecursively( this.dir );
+	}
+
+
+	@Test
+	public void testFindResources() throws Exception {
+
+		ResourceCache cache = new ResourceCache();
+		Resources res = cache.findResources( this.ma, this.app.getMySql());
+		Assert.assertEquals( 2, res.getFiles().size());
+		Assert.assertEquals( MessagingUtils.computeResourcesHash( res.getFiles()), res.getHash());
+		Assert.assertEquals( 31, res.getSize());
+		Assert.assertEquals( 31, cache.getSize());
+
+		// Cached resources are not read again
+		createFile( "mysql", "script.sh", "modified content" );
+		Assert.assertSame( res, cache.findResources( this.ma, this.app.getMySql()));
+
+		// Different components have different resources
+		Resources res2 = cache.findResources( this.ma, this.app.getTomcat());
+		Assert.assertNotSame( res, res2 );
+		Assert.assertFalse( res.getHash().equals( res2.getHash()));
+		Assert.assertEquals( 45, cache.getSize());
+
+		// Removing the application clears the cache
+		cache.removeApplication( this.app.getName());
+		Assert.assertEquals( 0, cache.getSize());
+		Assert.assertNotSame( res, cache.findResources( this.ma, this.app.getMySql()));
+	}
+
+
+	@Test
+	public void testEviction() throws Exception {
+
+		ResourceCache cache = new ResourceCache();
+		cache.setMaxSize( 40 );
+
+		Resources mysql = cache.findResources( this.ma, this.app.getMySql());
+		Resources tomcat = cache.findResources( this.ma, this.app.getTomcat());
+
+		// The least recently used resources were evicted
+		Assert.assertEquals( 14, cache.getSize());
+		Assert.assertSame( tomcat, cache.findResources( this.ma, this.app.getTomcat()));
+		Assert.assertNotSame( mysql, cache.findResources( this.ma, this.app.getMySql()));
+
+		// Resources are still returned, even when they cannot be kept
+		cache.setMaxSize( 0 );
+		Assert.assertEquals( 0, cache.getSize());
+		Assert.assertEquals( 2, cache.findResources( this.ma, this.app.getMySql()).getFiles().size());
+		Assert.assertEquals( 0, cache.getSize());
+	}
+
+
+	@Test
+	public void testFindResources_chunked() throws Exception {
+
+		ResourceCache cache = new ResourceCache();
+		cache.setChunkSize( 20 );
+		Assert.assertEquals( 20, cache.getChunkSize());
+
+		// Large resources are not loaded in memory
+		Resources mysql = cache.findResources( this.ma, this.app.getMySql());
+		Assert.assertTrue( mysql.isChunked());
+		Assert.assertNull( mysql.getFiles());
+		Assert.assertEquals( 2, mysql.getFileNameToFile().size());
+		Assert.assertEquals( "conf/my.cnf", mysql.getFileNameToFile().firstKey());
+		Assert.assertEquals( 31, mysql.getSize());
+		Assert.assertEquals( 0, cache.getSize());
+
+		// The hash does not depend on the way resources are sent
+		Map<String,byte[]> files = ResourceUtils.storeInstanceResources( this.dir, this.app.getMySql());
+		Assert.assertEquals( MessagingUtils.computeResourcesHash( files ), mysql.getHash());
+
+		// Small resources are still held in memory
+		Resources tomcat = cache.findResources( this.ma, this.app.getTomcat());
+		Assert.assertFalse( tomcat.isChunked());
+		Assert.assertEquals( 14, cache.getSize());
+	}
+
+
+	@Test
+	public void testHeldByAgent() throws Exception {
+
+		ResourceCache cache = new ResourceCache();
+		Assert.assertFalse( cache.isHeldByAgent( "app", "vm1", "hash1" ));
+
+		cache.setHeldByAgent( "app", "vm1", "hash1", true );
+		cache.setHeldByAgent( "app", "vm1", "hash2", true );
+		cache.setHeldByAgent( "app2", "vm2", "hash1", true );
+		Assert.assertTrue( cache.isHeldByAgent( "app", "vm1", "hash1" ));
+		Assert.assertTrue( cache.isHeldByAgent( "app", "vm1", "hash2" ));
+		Assert.assertFalse( cache.isHeldByAgent( "app", "vm2", "hash1" ));
+
+		cache.setHeldByAgent( "app", "vm1", "hash2", false );
+		Assert.assertFalse( cache.isHeldByAgent( "app", "vm1", "hash2" ));
+
+		cache.forgetAgent( "app", "vm1" );
+		Assert.assertFalse( cache.isHeldByAgent( "app", "vm1", "hash1" ));
+		Assert.assertTrue( cache.isHeldByAgent( "app2", "vm2", "hash1" ));
+
+		cache.removeApplication( "app2" );
+		Assert.assertFalse( cache.isHeldByAgent( "app2", "vm2", "hash1" ));
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidMaxSize() {
+		new ResourceCache().setMaxSize( -1 );
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidChunkSize() {
+		new ResourceCache().setChunkSize( 0 );
+	}
+
+
+	private void createFile( String componentName, String relativePath, String content ) throws IOException {
+
+		File componentDir = ResourceUtils.findInstanceResourcesDirectory( this.dir, componentName );
+		File f = new File( componentDir, relativePath );
+		if( ! f.getParentFile().exists()
+				&& ! f.getParentFile().mkdirs())
+			throw new IOException( "Failed to create a directory." );
+
+		Utils.copyStream( new ByteArrayInputStream( content.getBytes( "UTF-8" )), f );
+	}
+}
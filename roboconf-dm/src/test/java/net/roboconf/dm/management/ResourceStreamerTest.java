@@ -0,0 +1,173 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.management;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.dm.internal.TestMessageServerClient;
+import net.roboconf.dm.management.ResourceCache.Resources;
+import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdResourceChunk;
+import net.roboconf.messaging.utils.MessagingUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class ResourceStreamerTest {
+
+	private File dir;
+	private Map<String,byte[]> files;
+	private Resources resources;
+
+
+	@Before
+	public void createFiles() throws Exception {
+
+		this.dir = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_test_resource_streamer" );
+		Utils.deleteFilesRecursively( this.dir );
+		if( ! this.dir.mkdirs())
+			throw new Exception( "Failed to create a temporary directory." );
+
+		byte[] big = new byte[ 2500 ];
+		for( int i=0; i<big.length; i++ )
+			big[ i ] = (byte) i;
+
+		this.files = new LinkedHashMap<String,byte[]> ();
+		this.files.put( "c.txt", new byte[ 0 ]);
+		this.files.put( "a.txt", "0123456789".getBytes( "UTF-8" ));
+		this.files.put( "b/b.bin", big );
+
+		Map<String,File> fileNameToFile = new HashMap<String,File> ();
+		long size = 0;
+		for( Map.Entry<String,byte[]> entry : this.files.entrySet()) {
+			File f = new File( this.dir, entry.getKey());
+			if( ! f.getParentFile().exists()
+					&& ! f.getParentFile().mkdirs())
+				throw new Exception( "Failed to create a directory." );
+
+			Utils.copyStream( new ByteArrayInputStream( entry.getValue()), f );
+			fileNameToFile.put( entry.getKey(), f );
+			size += entry.getValue().length;
+		}
+
+		this.resources = new Resources( fileNameToFile, size );
+	}
+
+
+	@After
+	public void deleteFiles() throws Exception {
+		Utils.deleteFilesRecursively( this.dir );
+	}
+
+
+	@Test
+	public void testSend() throws Exception {
+
+		Assert.assertTrue( this.resources.isChunked());
+		Assert.assertNull( this.resources.getFiles());
+		Assert.assertEquals( MessagingUtils.computeResourcesHash( this.files ), this.resources.getHash());
+
+		TestMessageServerClient client = new TestMessageServerClient();
+		int count = new ResourceStreamer( client, 1000 ).send( "machine.vm", this.resources, null, 0 );
+		List<MsgCmdResourceChunk> chunks = findChunks( client );
+
+		// a.txt: 1 chunk, b/b.bin: 3 chunks, c.txt: 1 chunk
+		Assert.assertEquals( 5, count );
+		Assert.assertEquals( 5, chunks.size());
+		Assert.assertEquals( "machine.vm", client.messageToRoutingKey.values().iterator().next());
+
+		// Files are sent in order, every chunk is valid
+		Map<String,ByteArrayOutputStream> received = new LinkedHashMap<String,ByteArrayOutputStream> ();
+		for( int i=0; i<chunks.size(); i++ ) {
+			MsgCmdResourceChunk chunk = chunks.get( i );
+			Assert.assertEquals( this.resources.getHash(), chunk.getResourcesHash());
+			Assert.assertEquals( MessagingUtils.computeChunkChecksum( chunk.getData()), chunk.getChecksum());
+			Assert.assertEquals( i == chunks.size() - 1, chunk.isLast());
+			Assert.assertTrue( chunk.getData().length <= 1000 );
+
+			ByteArrayOutputStream os = received.get( chunk.getFileName());
+			if( os == null ) {
+				os = new ByteArrayOutputStream();
+				received.put( chunk.getFileName(), os );
+			}
+
+			Assert.assertEquals( os.size(), chunk.getOffset());
+			Assert.assertEquals( this.files.get( chunk.getFileName()).length, chunk.getFileSize());
+			os.write( chunk.getData());
+		}
+
+		Assert.assertEquals( Arrays.asList( "a.txt", "b/b.bin", "c.txt" ), new ArrayList<String>( received.keySet()));
+		Assert.assertEquals( 0, chunks.get( 0 ).getFileIndex());
+		Assert.assertEquals( 2, chunks.get( 4 ).getFileIndex());
+		for( Map.Entry<String,ByteArrayOutputStream> entry : received.entrySet())
+			Assert.assertTrue( entry.getKey(), Arrays.equals( this.files.get( entry.getKey()), entry.getValue().toByteArray()));
+	}
+
+
+	@Test
+	public void testSend_resume() throws Exception {
+
+		TestMessageServerClient client = new TestMessageServerClient();
+		Assert.assertEquals( 2, new ResourceStreamer( client, 1000 ).send( "machine.vm", this.resources, "b/b.bin", 1500 ));
+
+		List<MsgCmdResourceChunk> chunks = findChunks( client );
+		Assert.assertEquals( "b/b.bin", chunks.get( 0 ).getFileName());
+		Assert.assertEquals( 1, chunks.get( 0 ).getFileIndex());
+		Assert.assertEquals( 1500, chunks.get( 0 ).getOffset());
+		Assert.assertEquals( 1000, chunks.get( 0 ).getData().length );
+		Assert.assertEquals( "c.txt", chunks.get( 1 ).getFileName());
+		Assert.assertTrue( chunks.get( 1 ).isLast());
+
+		// Resuming at the end of a file still sends a chunk
+		client = new TestMessageServerClient();
+		Assert.assertEquals( 1, new ResourceStreamer( client, 1000 ).send( "machine.vm", this.resources, "c.txt", 0 ));
+		Assert.assertTrue( findChunks( client ).get( 0 ).isLast());
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testSend_notChunked() throws Exception {
+
+		Resources inMemory = new Resources( this.files );
+		Assert.assertFalse( inMemory.isChunked());
+		new ResourceStreamer( new TestMessageServerClient(), 1000 ).send( "machine.vm", inMemory, null, 0 );
+	}
+
+
+	private static List<MsgCmdResourceChunk> findChunks( TestMessageServerClient client ) {
+
+		List<MsgCmdResourceChunk> result = new ArrayList<MsgCmdResourceChunk> ();
+		for( Message msg : client.messageToRoutingKey.keySet())
+			result.add((MsgCmdResourceChunk) msg );
+
+		return result;
+	}
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.roboconf.dm.management;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Application;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.dm.internal.TestApplication;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class SnapshotRegistryTest {
+
+	@Test
+	public void testSnapshotIsSharedUntilTheModelChanges() {
+
+		TestApplication app = new TestApplication();
+		SnapshotRegistry registry = new SnapshotRegistry();
+
+		ApplicationSnapshot snapshot = registry.getSnapshot( app );
+		Assert.assertEquals( app.getName(), snapshot.getApplicationName());
+		Assert.assertEquals( registry.getVersion( app ), snapshot.getVersion());
+		Assert.assertSame( snapshot, registry.getSnapshot( app ));
+
+		// Cached lists are shared too
+		Assert.assertSame( snapshot.listAllChildrenInstances( null ), snapshot.listAllChildrenInstances( null ));
+		Assert.assertSame( snapshot.listChildrenInstances( null ), snapshot.listChildrenInstances( null ));
+
+		// A modification results in a new snapshot
+		long version = snapshot.getVersion();
+		app.getTomcat().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		registry.statusChanged( app.getName(), app.getTomcat());
+		Assert.assertTrue( registry.getVersion( app ) > version );
+
+		ApplicationSnapshot newSnapshot = registry.getSnapshot( app );
+		Assert.assertNotSame( snapshot, newSnapshot );
+		Assert.assertEquals( registry.getVersion( app ), newSnapshot.getVersion());
+
+		String path = InstanceHelpers.computeInstancePath( app.getTomcat());
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, snapshot.findInstanceByPath( path ).getStatus());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, newSnapshot.findInstanceByPath( path ).getStatus());
+	}
+
+
+	@Test
+	public void testSnapshotsAreIncremental() {
+
+		TestApplication app = new TestApplication();
+		SnapshotRegistry registry = new SnapshotRegistry();
+		ApplicationSnapshot snapshot = registry.getSnapshot( app );
+
+		String tomcatVmPath = InstanceHelpers.computeInstancePath( app.getTomcatVm());
+		String tomcatPath = InstanceHelpers.computeInstancePath( app.getTomcat());
+		String mySqlVmPath = InstanceHelpers.computeInstancePath( app.getMySqlVm());
+		List<Instance> tomcatVmChildren = snapshot.listChildrenInstances( tomcatVmPath );
+		List<Instance> tomcatChildren = snapshot.listChildrenInstances( tomcatPath );
+		List<Instance> mySqlVmChildren = snapshot.listAllChildrenInstances( mySqlVmPath );
+		List<Instance> rootInstances = snapshot.listChildrenInstances( null );
+		List<Instance> allInstances = snapshot.listAllChildrenInstances( null );
+
+		// Only the root instance that contains the modification is copied again
+		app.getTomcat().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		registry.statusChanged( app.getName(), app.getTomcat());
+		ApplicationSnapshot newSnapshot = registry.getSnapshot( app );
+
+		Assert.assertSame( snapshot.findInstanceByPath( mySqlVmPath ), newSnapshot.findInstanceByPath( mySqlVmPath ));
+		Assert.assertNotSame( snapshot.findInstanceByPath( tomcatVmPath ), newSnapshot.findInstanceByPath( tomcatVmPath ));
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, newSnapshot.findInstanceByPath( tomcatPath ).getStatus());
+		Assert.assertEquals(
+				InstanceStatus.DEPLOYED_STARTED,
+				newSnapshot.findInstanceByPath( tomcatVmPath ).getChildren().iterator().next().getStatus());
+
+		// Only the cached lists that contain the modification are built again
+		Assert.assertSame( tomcatChildren, newSnapshot.listChildrenInstances( tomcatPath ));
+		Assert.assertSame( mySqlVmChildren, newSnapshot.listAllChildrenInstances( mySqlVmPath ));
+		Assert.assertSame( rootInstances, newSnapshot.listChildrenInstances( null ));
+		Assert.assertNotSame( tomcatVmChildren, newSnapshot.listChildrenInstances( tomcatVmPath ));
+		Assert.assertNotSame( allInstances, newSnapshot.listAllChildrenInstances( null ));
+		Assert.assertEquals(
+				InstanceStatus.DEPLOYED_STARTED,
+				newSnapshot.listChildrenInstances( tomcatVmPath ).get( 0 ).getStatus());
+
+		// Removals result in a full copy
+		registry.instanceRemoved( app.getName(), "/whatever" );
+		ApplicationSnapshot lastSnapshot = registry.getSnapshot( app );
+		Assert.assertNotSame( newSnapshot.findInstanceByPath( mySqlVmPath ), lastSnapshot.findInstanceByPath( mySqlVmPath ));
+		Assert.assertNotSame( rootInstances, lastSnapshot.listChildrenInstances( null ));
+	}
+
+
+	@Test
+	public void testFindRootPath() {
+
+		Assert.assertEquals( "/vm", ApplicationSnapshot.findRootPath( "/vm" ));
+		Assert.assertEquals( "/vm", ApplicationSnapshot.findRootPath( "/vm/server/app" ));
+	}
+
+
+	@Test
+	public void testSnapshotContainsCopies() {
+
+		TestApplication app = new TestApplication();
+		app.getMySqlVm().getData().put( Instance.IP_ADDRESS, "192.168.1.2" );
+		ApplicationSnapshot snapshot = new SnapshotRegistry().getSnapshot( app );
+
+		List<Instance> allInstances = snapshot.listAllChildrenInstances( null );
+		List<Instance> realInstances = InstanceHelpers.getAllInstances( app );
+		Assert.assertEquals( realInstances.size(), allInstances.size());
+		for( int i=0; i<realInstances.size(); i++ ) {
+			Instance real = realInstances.get( i );
+			Instance copy = allInstances.get( i );
+
+			Assert.assertNotSame( real, copy );
+			Assert.assertEquals( InstanceHelpers.computeInstancePath( real ), InstanceHelpers.computeInstancePath( copy ));
+			Assert.assertEquals( real.getComponent(), copy.getComponent());
+			Assert.assertEquals( real.getData(), copy.getData());
+		}
+
+		// Modifying the model does not modify the snapshot
+		String ip = snapshot.findInstanceByPath( "/" + app.getMySqlVm().getName()).getData().get( Instance.IP_ADDRESS );
+		app.getMySqlVm().getData().put( Instance.IP_ADDRESS, "192.168.1.3" );
+		Assert.assertEquals( "192.168.1.2", ip );
+		Assert.assertEquals( ip, snapshot.findInstanceByPath( "/" + app.getMySqlVm().getName()).getData().get( Instance.IP_ADDRESS ));
+	}
+
+
+	@Test
+	public void testQueries() {
+
+		TestApplication app = new TestApplication();
+		ApplicationSnapshot snapshot = new SnapshotRegistry().getSnapshot( app );
+
+		Assert.assertEquals( app.getRootInstances().size(), snapshot.listChildrenInstances( null ).size());
+		Assert.assertEquals( app.getRootInstances().size(), snapshot.getRootInstances().size());
+		Assert.assertEquals( 0, snapshot.listChildrenInstances( "/bip/bip" ).size());
+		Assert.assertEquals( 0, snapshot.listAllChildrenInstances( "/bip/bip" ).size());
+
+		String tomcatVmPath = InstanceHelpers.computeInstancePath( app.getTomcatVm());
+		List<Instance> children = snapshot.listChildrenInstances( tomcatVmPath );
+		Assert.assertEquals( 1, children.size());
+		Assert.assertEquals( app.getTomcat().getName(), children.get( 0 ).getName());
+
+		List<Instance> allChildren = snapshot.listAllChildrenInstances( tomcatVmPath );
+		Assert.assertEquals( 2, allChildren.size());
+		Assert.assertEquals( app.getTomcat().getName(), allChildren.get( 0 ).getName());
+		Assert.assertEquals( app.getWar().getName(), allChildren.get( 1 ).getName());
+	}
+
+
+	@Test
+	public void testVersions() {
+
+		TestApplication app = new TestApplication();
+		SnapshotRegistry registry = new SnapshotRegistry();
+
+		// Unknown applications are ignored until they are read
+		registry.statusChanged( app.getName(), app.getTomcat());
+		long v1 = registry.getVersion( app );
+		Assert.assertEquals( v1, registry.getVersion( app ));
+
+		registry.importsChanged( app.getName(), app.getTomcat());
+		long v2 = registry.getVersion( app );
+		Assert.assertTrue( v2 > v1 );
+
+		registry.instanceRemoved( app.getName(), "/whatever" );
+		registry.dataChanged( app.getName(), app.getTomcatVm(), Instance.MACHINE_ID );
+		long v3 = registry.getVersion( app );
+		Assert.assertTrue( v3 > v2 );
+
+		// Another application with the same name starts with a greater version
+		registry.applicationRemoved( app.getName());
+		TestApplication otherApp = new TestApplication();
+		Assert.assertTrue( registry.getVersion( otherApp ) > v3 );
+		Assert.assertEquals( registry.getVersion( otherApp ), registry.getSnapshot( otherApp ).getVersion());
+	}
+
+
+	@Test
+	public void testChangedInstances() {
+
+		TestApplication app = new TestApplication();
+		SnapshotRegistry registry = new SnapshotRegistry();
+		long version = registry.getVersion( app );
+		Assert.assertEquals( 0, registry.findChangedInstancePaths( app, version ).size());
+
+		// Unknown versions
+		Assert.assertNull( registry.findChangedInstancePaths( app, version - 1 ));
+		Assert.assertNull( registry.findChangedInstancePaths( app, version + 1 ));
+
+		// Modifications are sorted, an instance appears only once
+		String tomcatPath = InstanceHelpers.computeInstancePath( app.getTomcat());
+		String mySqlPath = InstanceHelpers.computeInstancePath( app.getMySql());
+		registry.statusChanged( app.getName(), app.getTomcat());
+		registry.importsChanged( app.getName(), app.getMySql());
+		long intermediateVersion = registry.getVersion( app );
+		registry.statusChanged( app.getName(), app.getTomcat());
+
+		List<String> paths = registry.findChangedInstancePaths( app, version );
+		Assert.assertEquals( 2, paths.size());
+		Assert.assertEquals( mySqlPath, paths.get( 0 ));
+		Assert.assertEquals( tomcatPath, paths.get( 1 ));
+
+		paths = registry.findChangedInstancePaths( app, intermediateVersion );
+		Assert.assertEquals( 1, paths.size());
+		Assert.assertEquals( tomcatPath, paths.get( 0 ));
+
+		// Added instances are changes too
+		registry.instanceAdded( app.getName(), app.getTomcatVm());
+		paths = registry.findChangedInstancePaths( app, intermediateVersion );
+		Assert.assertEquals( 3, paths.size());
+		Assert.assertTrue( paths.contains( InstanceHelpers.computeInstancePath( app.getWar())));
+
+		// Removals make the previous versions useless
+		registry.instanceRemoved( app.getName(), "/whatever" );
+		Assert.assertNull( registry.findChangedInstancePaths( app, version ));
+		Assert.assertEquals( 0, registry.findChangedInstancePaths( app, registry.getVersion( app )).size());
+	}
+
+
+	@Test
+	public void testApplicationsVersion() {
+
+		SnapshotRegistry registry = new SnapshotRegistry();
+		List<Application> applications = new ArrayList<Application> ();
+		String v1 = registry.getVersion( applications );
+
+		TestApplication app = new TestApplication();
+		applications.add( app );
+		String v2 = registry.getVersion( applications );
+		Assert.assertFalse( v1.equals( v2 ));
+		Assert.assertEquals( v2, registry.getVersion( applications ));
+
+		registry.statusChanged( app.getName(), app.getTomcat());
+		String v3 = registry.getVersion( applications );
+		Assert.assertFalse( v2.equals( v3 ));
+
+		applications.clear();
+		Assert.assertEquals( v1, registry.getVersion( applications ));
+	}
+}
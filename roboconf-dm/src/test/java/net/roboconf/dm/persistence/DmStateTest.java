@@ -0,0 +1,154 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.persistence;
+
+import java.util.List;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.dm.internal.TestApplication;
+import net.roboconf.dm.persistence.DmState.ApplicationState;
+import net.roboconf.dm.persistence.DmState.InstanceState;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class DmStateTest {
+
+	@Test
+	public void testCaptureAndRestore() {
+
+		TestApplication app = new TestApplication();
+		app.getTomcatVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		app.getTomcatVm().getData().put( Instance.MACHINE_ID, "i-12345" );
+		app.getTomcatVm().getData().put( Instance.IP_ADDRESS, "10.0.0.2" );
+		app.getTomcat().setStatus( InstanceStatus.DEPLOYED_STOPPED );
+		app.getWar().getOverriddenExports().put( "war.port", "8081" );
+
+		ApplicationState state = ApplicationState.capture( app, "/some/dir" );
+		Assert.assertEquals( "test-app", state.getName());
+		Assert.assertEquals( "/some/dir", state.getDirectory());
+		Assert.assertEquals( 5, state.listInstances().size());
+
+		// Parents are listed before their children
+		List<InstanceState> instances = state.listInstances();
+		Assert.assertEquals( "/mysql-vm", instances.get( 0 ).getPath());
+		Assert.assertEquals( "/tomcat-vm", instances.get( 1 ).getPath());
+		Assert.assertEquals( "/tomcat-vm/tomcat-server/hello-world", instances.get( 4 ).getPath());
+
+		// Restore it in an application loaded from the same graphs
+		TestApplication restoredApp = new TestApplication();
+		Assert.assertEquals( 0, state.restoreInstances( restoredApp ));
+		Assert.assertEquals( 5, InstanceHelpers.getAllInstances( restoredApp ).size());
+
+		Instance tomcatVm = InstanceHelpers.findInstanceByPath( restoredApp, "/tomcat-vm" );
+		Assert.assertNotSame( restoredApp.getTomcatVm(), tomcatVm );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, tomcatVm.getStatus());
+		Assert.assertEquals( "i-12345", tomcatVm.getData().get( Instance.MACHINE_ID ));
+		Assert.assertEquals( "10.0.0.2", tomcatVm.getData().get( Instance.IP_ADDRESS ));
+		Assert.assertEquals( "vm", tomcatVm.getComponent().getName());
+
+		Instance tomcat = InstanceHelpers.findInstanceByPath( restoredApp, "/tomcat-vm/tomcat-server" );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STOPPED, tomcat.getStatus());
+		Assert.assertSame( tomcatVm, tomcat.getParent());
+
+		Instance war = InstanceHelpers.findInstanceByPath( restoredApp, "/tomcat-vm/tomcat-server/hello-world" );
+		Assert.assertEquals( "8081", war.getOverriddenExports().get( "war.port" ));
+		Assert.assertEquals( InstanceStatus.NOT_DEPLOYED, war.getStatus());
+	}
+
+
+	@Test
+	public void testRestore_unknownComponent() {
+
+		ApplicationState state = ApplicationState.capture( new TestApplication(), "/some/dir" );
+		Assert.assertTrue( state.addInstance( null, new InstanceState( "unknown", "unknown-component" )));
+		Assert.assertTrue( state.addInstance( "/unknown", new InstanceState( "child", "war" )));
+
+		// Children of skipped instances are skipped too
+		TestApplication restoredApp = new TestApplication();
+		Assert.assertEquals( 2, state.restoreInstances( restoredApp ));
+		Assert.assertEquals( 5, InstanceHelpers.getAllInstances( restoredApp ).size());
+		Assert.assertNull( InstanceHelpers.findInstanceByPath( restoredApp, "/unknown" ));
+	}
+
+
+	@Test
+	public void testAddAndRemoveInstances() {
+
+		ApplicationState state = new ApplicationState( "app", "/some/dir" );
+		Assert.assertFalse( state.addInstance( "/vm", new InstanceState( "server", "tomcat" )));
+		Assert.assertTrue( state.addInstance( null, new InstanceState( "vm", "vm" )));
+		Assert.assertTrue( state.addInstance( "/vm", new InstanceState( "server", "tomcat" )));
+
+		// Adding an existing instance updates it and keeps its children
+		InstanceState newVm = new InstanceState( "vm", "vm" );
+		newVm.status = InstanceStatus.DEPLOYING;
+		Assert.assertTrue( state.addInstance( null, newVm ));
+		Assert.assertEquals( InstanceStatus.DEPLOYING, state.findInstance( "/vm" ).getStatus());
+		Assert.assertEquals( 1, state.findInstance( "/vm" ).getChildren().size());
+		Assert.assertNotNull( state.findInstance( "/vm/server" ));
+
+		// Removing an instance removes its children
+		state.removeInstance( "/vm" );
+		Assert.assertNull( state.findInstance( "/vm" ));
+		Assert.assertNull( state.findInstance( "/vm/server" ));
+		Assert.assertEquals( 0, state.listInstances().size());
+	}
+
+
+	@Test
+	public void testRecordsCanBeAppliedSeveralTimes() {
+
+		DmState state = new DmState();
+		InstanceState vm = new InstanceState( "vm", "vm" );
+		JournalRecord[] records = {
+			new JournalRecord( JournalRecord.MESSAGE_SERVER_IP, null, null, null, "127.0.0.1", null ),
+			new JournalRecord( JournalRecord.APPLICATION_ADDED, "app", null, null, "/some/dir", null ),
+			new JournalRecord( JournalRecord.INSTANCE_ADDED, "app", null, null, null, vm ),
+			new JournalRecord( JournalRecord.INSTANCE_ADDED, "app", "/vm", null, null, new InstanceState( "server", "tomcat" )),
+			new JournalRecord( JournalRecord.STATUS_CHANGED, "app", "/vm", null, InstanceStatus.DEPLOYED_STARTED.name(), null ),
+			new JournalRecord( JournalRecord.DATA_CHANGED, "app", "/vm", Instance.MACHINE_ID, "i-12345", null ),
+			new JournalRecord( JournalRecord.INSTANCE_REMOVED, "app", "/vm/server", null, null, null ),
+			new JournalRecord( JournalRecord.STATUS_CHANGED, "unknown-app", "/vm", null, InstanceStatus.PROBLEM.name(), null ),
+			new JournalRecord( JournalRecord.STATUS_CHANGED, "app", "/unknown", null, InstanceStatus.PROBLEM.name(), null )
+		};
+
+		for( int i=0; i<2; i++ ) {
+			for( JournalRecord record : records )
+				record.applyTo( state );
+
+			Assert.assertEquals( "127.0.0.1", state.getMessageServerIp());
+			Assert.assertEquals( 1, state.getNameToApplication().size());
+			Assert.assertEquals( 1, state.getInstancesCount());
+
+			InstanceState restoredVm = state.getNameToApplication().get( "app" ).findInstance( "/vm" );
+			Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, restoredVm.getStatus());
+			Assert.assertEquals( "i-12345", restoredVm.getData().get( Instance.MACHINE_ID ));
+		}
+
+		new JournalRecord( JournalRecord.DATA_CHANGED, "app", "/vm", Instance.MACHINE_ID, null, null ).applyTo( state );
+		Assert.assertFalse( state.getNameToApplication().get( "app" ).findInstance( "/vm" ).getData().containsKey( Instance.MACHINE_ID ));
+
+		new JournalRecord( JournalRecord.APPLICATION_REMOVED, "app", null, null, null, null ).applyTo( state );
+		Assert.assertEquals( 0, state.getNameToApplication().size());
+	}
+}
@@ -0,0 +1,356 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.dm.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.dm.internal.TestApplication;
+import net.roboconf.dm.persistence.DmState.ApplicationState;
+import net.roboconf.dm.persistence.DmState.InstanceState;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class StateJournalTest {
+
+	private File dir;
+	private TestApplication app;
+	private StateJournal journal;
+
+
+	@Before
+	public void createDirectory() throws Exception {
+
+		this.dir = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_test_state_journal" );
+		if( this.dir.exists())
+			Utils.deleteFilesRecursively( this.dir );
+
+		this.app = new TestApplication();
+		this.journal = new StateJournal();
+	}
+
+
+	@After
+	public void deleteDirectory() throws Exception {
+		this.journal.close();
+		Utils.deleteFilesRecursively( this.dir );
+	}
+
+
+	@Test
+	public void testRecordsAreIgnoredUntilStarted() throws Exception {
+
+		this.journal.statusChanged( this.app.getName(), this.app.getTomcatVm());
+		this.journal.messageServerIpChanged( "127.0.0.1" );
+		Assert.assertFalse( this.journal.isStarted());
+		Assert.assertTrue( this.journal.sync( 100 ));
+
+		DmState state = this.journal.recover( this.dir );
+		Assert.assertNull( state.getMessageServerIp());
+		Assert.assertEquals( 0, state.getNameToApplication().size());
+	}
+
+
+	@Test
+	public void testRecordAndRecover() throws Exception {
+
+		this.journal.recover( this.dir );
+		this.journal.start( new ApplicationProvider( null ));
+		this.journal.messageServerIpChanged( "127.0.0.1" );
+		this.journal.applicationAdded( this.app, new File( "/some/dir" ));
+
+		this.app.getTomcatVm().setStatus( InstanceStatus.DEPLOYED_STARTED );
+		this.journal.statusChanged( this.app.getName(), this.app.getTomcatVm());
+		this.app.getTomcatVm().getData().put( Instance.MACHINE_ID, "i-12345" );
+		this.journal.dataChanged( this.app.getName(), this.app.getTomcatVm(), Instance.MACHINE_ID );
+
+		Instance newWar = new Instance( "other-war" );
+		newWar.setComponent( this.app.getWar().getComponent());
+		InstanceHelpers.insertChild( this.app.getTomcat(), newWar );
+		this.journal.instanceAdded( this.app.getName(), newWar );
+
+		String mySqlPath = InstanceHelpers.computeInstancePath( this.app.getMySql());
+		InstanceHelpers.removeInstance( this.app, this.app.getMySql());
+		this.journal.instanceRemoved( this.app.getName(), mySqlPath );
+
+		Assert.assertTrue( this.journal.sync( 5000 ));
+		this.journal.close();
+		Assert.assertFalse( this.journal.isStarted());
+
+		// Recover it
+		DmState state = new StateJournal().recover( this.dir );
+		Assert.assertEquals( "127.0.0.1", state.getMessageServerIp());
+		ApplicationState appState = state.getNameToApplication().get( this.app.getName());
+		Assert.assertNotNull( appState );
+		Assert.assertEquals( new File( "/some/dir" ).getAbsolutePath(), appState.getDirectory());
+		Assert.assertEquals( 5, appState.listInstances().size());
+
+		InstanceState vmState = appState.findInstance( "/tomcat-vm" );
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, vmState.getStatus());
+		Assert.assertEquals( "i-12345", vmState.getData().get( Instance.MACHINE_ID ));
+		Assert.assertNotNull( appState.findInstance( "/tomcat-vm/tomcat-server/other-war" ));
+		Assert.assertNull( appState.findInstance( mySqlPath ));
+		Assert.assertNotNull( appState.findInstance( "/mysql-vm" ));
+	}
+
+
+	@Test
+	public void testRecover_incompleteRecord() throws Exception {
+
+		this.journal.recover( this.dir );
+		this.journal.start( new ApplicationProvider( null ));
+		this.journal.applicationAdded( this.app, new File( "/some/dir" ));
+		this.app.getMySqlVm().setStatus( InstanceStatus.DEPLOYING );
+		this.journal.statusChanged( this.app.getName(), this.app.getMySqlVm());
+		this.journal.close();
+
+		// Simulate a crash while a record was being written
+		File segment = findLastFile( StateJournal.SEGMENT_PREFIX );
+		FileOutputStream out = new FileOutputStream( segment, true );
+		try {
+			out.write( new byte[] { 0, 0, 0, 40, 1, 2, 3, 4, 5 });
+
+		} finally {
+			out.close();
+		}
+
+		DmState state = new StateJournal().recover( this.dir );
+		ApplicationState appState = state.getNameToApplication().get( this.app.getName());
+		Assert.assertEquals( InstanceStatus.DEPLOYING, appState.findInstance( "/mysql-vm" ).getStatus());
+	}
+
+
+	@Test
+	public void testRecover_corruptedRecord() throws Exception {
+
+		this.journal.recover( this.dir );
+		this.journal.start( new ApplicationProvider( null ));
+		this.journal.applicationAdded( this.app, new File( "/some/dir" ));
+		this.journal.messageServerIpChanged( "127.0.0.1" );
+		this.journal.close();
+
+		// Change the last byte of the last record
+		File segment = findLastFile( StateJournal.SEGMENT_PREFIX );
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Utils.copyStream( segment, os );
+		byte[] bytes = os.toByteArray();
+		bytes[ bytes.length - 1 ] ++;
+		Utils.copyStream( new ByteArrayInputStream( bytes ), segment );
+
+		// Records before the corrupted one are kept
+		DmState state = new StateJournal().recover( this.dir );
+		Assert.assertNull( state.getMessageServerIp());
+		Assert.assertNotNull( state.getNameToApplication().get( this.app.getName()));
+	}
+
+
+	@Test
+	public void testSnapshotsCompactTheJournal() throws Exception {
+
+		this.journal.recover( this.dir );
+		this.journal.setSnapshotThreshold( 10 );
+		this.journal.start( new ApplicationProvider( "/some/dir" ));
+		this.journal.applicationAdded( this.app, new File( "/some/dir" ));
+
+		InstanceStatus[] statuses = InstanceStatus.values();
+		for( int i=0; i<100; i++ ) {
+			this.app.getTomcatVm().setStatus( statuses[ i % statuses.length ]);
+			this.journal.statusChanged( this.app.getName(), this.app.getTomcatVm());
+			Assert.assertTrue( this.journal.sync( 5000 ));
+		}
+
+		this.journal.close();
+
+		// Older files were deleted
+		List<File> snapshots = listFiles( StateJournal.SNAPSHOT_PREFIX );
+		Assert.assertEquals( 1, snapshots.size());
+		long snapshotIndex = findIndex( snapshots.get( 0 ), StateJournal.SNAPSHOT_PREFIX );
+		List<File> segments = listFiles( StateJournal.SEGMENT_PREFIX );
+		Assert.assertTrue( segments.size() <= 2 );
+		for( File f : segments )
+			Assert.assertTrue( findIndex( f, StateJournal.SEGMENT_PREFIX ) >= snapshotIndex );
+
+		DmState state = new StateJournal().recover( this.dir );
+		InstanceState vmState = state.getNameToApplication().get( this.app.getName()).findInstance( "/tomcat-vm" );
+		Assert.assertEquals( statuses[ 99 % statuses.length ], vmState.getStatus());
+	}
+
+
+	@Test
+	public void testRecover_manyInstances() throws Exception {
+
+		// 50,000 instances: 10,000 machines with 4 children each
+		final DmState initialState = new DmState();
+		ApplicationState appState = new ApplicationState( "big-app", "/some/dir" );
+		initialState.getNameToApplication().put( appState.getName(), appState );
+		for( int i=0; i<10000; i++ ) {
+			InstanceState vm = new InstanceState( "vm" + i, "vm" );
+			vm.status = InstanceStatus.DEPLOYED_STARTED;
+			vm.data.put( Instance.MACHINE_ID, "i-" + i );
+			vm.data.put( Instance.IP_ADDRESS, "10.0." + i / 256 + "." + i % 256 );
+			appState.addInstance( null, vm );
+
+			for( int j=0; j<4; j++ ) {
+				InstanceState server = new InstanceState( "server" + j, "tomcat" );
+				server.status = InstanceStatus.DEPLOYED_STARTED;
+				appState.addInstance( "/vm" + i, server );
+			}
+		}
+
+		this.journal.recover( this.dir );
+		this.journal.start( new StateJournal.StateProvider() {
+			@Override
+			public DmState captureState() {
+				return initialState;
+			}
+		});
+
+		this.journal.applicationAdded( this.app, new File( "/other/dir" ));
+		Assert.assertTrue( this.journal.sync( 10000 ));
+		this.journal.close();
+
+		// Recovery times are measured by StateJournalBenchmark
+		DmState state = new StateJournal().recover( this.dir );
+		Assert.assertEquals( 50005, state.getInstancesCount());
+		Assert.assertEquals( "i-9999", state.getNameToApplication().get( "big-app" ).findInstance( "/vm9999" ).getData().get( Instance.MACHINE_ID ));
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, state.getNameToApplication().get( "big-app" ).findInstance( "/vm9999/server3" ).getStatus());
+	}
+
+
+	@Test
+	public void testInterruptedWriter() throws Exception {
+
+		this.journal.recover( this.dir );
+		this.journal.start( new ApplicationProvider( null ));
+		Assert.assertTrue( this.journal.isStarted());
+
+		Thread writer = null;
+		for( Thread thread : Thread.getAllStackTraces().keySet()) {
+			if( "Roboconf's State Journal Writer".equals( thread.getName()) && thread.isAlive())
+				writer = thread;
+		}
+
+		Assert.assertNotNull( writer );
+		writer.interrupt();
+		writer.join( 10000 );
+
+		Assert.assertFalse( writer.isAlive());
+		Assert.assertFalse( this.journal.isStarted());
+
+		// It can be started again
+		this.journal.start( new ApplicationProvider( null ));
+		Assert.assertTrue( this.journal.isStarted());
+		this.journal.messageServerIpChanged( "127.0.0.1" );
+		Assert.assertTrue( this.journal.sync( 10000 ));
+		this.journal.close();
+
+		Assert.assertEquals( "127.0.0.1", new StateJournal().recover( this.dir ).getMessageServerIp());
+	}
+
+
+	@Test( expected = IllegalStateException.class )
+	public void testStartWithoutRecovery() {
+		this.journal.start( new ApplicationProvider( null ));
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidSnapshotThreshold() {
+		this.journal.setSnapshotThreshold( 0 );
+	}
+
+
+	private List<File> listFiles( String prefix ) {
+
+		List<File> result = new ArrayList<File> ();
+		File[] files = this.dir.listFiles();
+		if( files != null ) {
+			for( File f : files ) {
+				if( f.getName().startsWith( prefix ))
+					result.add( f );
+			}
+		}
+
+		return result;
+	}
+
+
+	private File findLastFile( String prefix ) throws IOException {
+
+		File result = null;
+		for( File f : listFiles( prefix )) {
+			if( result == null || findIndex( f, prefix ) > findIndex( result, prefix ))
+				result = f;
+		}
+
+		if( result == null )
+			throw new IOException( "No file starts with " + prefix );
+
+		return result;
+	}
+
+
+	private static long findIndex( File f, String prefix ) {
+		String name = f.getName();
+		return Long.parseLong( name.substring( prefix.length(), name.lastIndexOf( '.' )));
+	}
+
+
+	/**
+	 * Captures the test application, if it was added.
+	 */
+	private class ApplicationProvider implements StateJournal.StateProvider {
+		private final String directory;
+
+
+		/**
+		 * Constructor.
+		 * @param directory the application's directory (null if it was not added)
+		 */
+		ApplicationProvider( String directory ) {
+			this.directory = directory;
+		}
+
+
+		@Override
+		public DmState captureState() {
+
+			DmState result = new DmState();
+			if( this.directory != null ) {
+				ApplicationState appState = ApplicationState.capture( StateJournalTest.this.app, new File( this.directory ).getAbsolutePath());
+				result.getNameToApplication().put( appState.getName(), appState );
+			}
+
+			return result;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.iaas.api;
+
+import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
+import net.roboconf.iaas.api.exceptions.IaasException;
+
+/**
+ * A IaaS interface that does not wait for machines to be ready.
+ * <p>
+ * Creating a machine often requires several steps (e.g. clone, power on, associate an IP address),
+ * each one taking several seconds. Rather than blocking a thread until all of them have completed,
+ * such a IaaS interface only starts the creation and returns a handle, that is then polled.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface AsyncIaasInterface extends IaasInterface {
+
+	/**
+	 * Starts the creation of a VM, without waiting for it to be ready.
+	 * @param machineImageId the machine image ID (can be null)
+	 * @param ipMessagingServer the IP of the messaging server
+	 * @param channelName the channel name
+	 * @param applicationName the application name
+	 * @return a handle to follow the creation of the VM (not null)
+	 * @throws IaasException
+	 * @throws CommunicationToIaasException
+	 */
+	MachineHandle startVM(
+			String machineImageId,
+			String ipMessagingServer,
+			String channelName,
+			String applicationName )
+	throws IaasException, CommunicationToIaasException;
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.iaas.api;
+
+import java.util.List;
+
+import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
+import net.roboconf.iaas.api.exceptions.IaasException;
+
+/**
+ * A IaaS interface that can create and terminate several machines in a single request.
+ * <p>
+ * IaaS interfaces that only implement {@link IaasInterface} are invoked once per machine.
+ * Implementing this interface reduces the number of requests sent to the IaaS (and thus
+ * the risk of being throttled) when many machines are created or terminated at once.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface BatchIaasInterface extends IaasInterface {
+
+	/**
+	 * Creates several VMs at once.
+	 * <p>
+	 * The creation should be all or nothing: if an exception is thrown,
+	 * none of the VMs is expected to have been created.
+	 * </p>
+	 *
+	 * @param machineImageId the machine image ID (can be null)
+	 * @param ipMessagingServer the IP of the messaging server
+	 * @param channelNames the channel names, one per VM (not null, not empty)
+	 * @param applicationName the application name
+	 * @return the (machine) IDs of the VMs, in the same order than the channel names
+	 * @throws IaasException
+	 * @throws CommunicationToIaasException
+	 */
+	List<String> createVMs(
+			String machineImageId,
+			String ipMessagingServer,
+			List<String> channelNames,
+			String applicationName )
+	throws IaasException, CommunicationToIaasException;
+
+
+	/**
+	 * Asks for the termination of several VMs.
+	 * @param machineIds the machine IDs (not null, not empty)
+	 * @throws IaasException
+	 * @throws CommunicationToIaasException
+	 */
+	void terminateVMs( List<String> machineIds ) throws IaasException, CommunicationToIaasException;
+}
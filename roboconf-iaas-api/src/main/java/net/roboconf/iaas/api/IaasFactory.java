@@ -0,0 +1,47 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.iaas.api;
+
+/**
+ * Creates IaaS interfaces of a given type.
+ * <p>
+ * Factories are found with a {@link java.util.ServiceLoader}. To support a new IaaS, an implementation
+ * must be listed in a <code>META-INF/services/net.roboconf.iaas.api.IaasFactory</code> file of its JAR,
+ * and have a public constructor without parameter.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IaasFactory {
+
+	/**
+	 * @return the IaaS type, as found in the "iaas.type" property of the IaaS properties (not null)
+	 */
+	String getIaasType();
+
+
+	/**
+	 * Creates a new IaaS interface.
+	 * <p>
+	 * Once configured, the created interface may be shared to create and terminate several machines,
+	 * possibly in parallel.
+	 * </p>
+	 *
+	 * @return a new IaaS interface, not configured yet (not null)
+	 */
+	IaasInterface newIaasInterface();
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.iaas.api;
+
+import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
+import net.roboconf.iaas.api.exceptions.IaasException;
+
+/**
+ * Utilities for IaaS implementations.
+ * @author Vincent Zurczak - Linagora
+ */
+public final class IaasUtils {
+
+	/**
+	 * Private empty constructor.
+	 */
+	private IaasUtils() {
+		// nothing
+	}
+
+
+	/**
+	 * Advances a machine handle until the machine is ready, in the current thread.
+	 * <p>
+	 * This is how {@link AsyncIaasInterface} implementations can implement
+	 * {@link IaasInterface#createVM(String, String, String, String)}.
+	 * </p>
+	 *
+	 * @param handle a machine handle
+	 * @param period the delay between two checks, in milliseconds
+	 * @param timeout the maximal delay to wait for the machine, in milliseconds
+	 * @return the machine ID
+	 * @throws IaasException if the creation failed or if the time out was reached
+	 * @throws CommunicationToIaasException if the IaaS could not be reached
+	 */
+	public static String waitUntilReady( MachineHandle handle, long period, long timeout )
+	throws IaasException, CommunicationToIaasException {
+
+		long deadline = System.currentTimeMillis() + timeout;
+		try {
+			while( ! handle.advance()) {
+				if( System.currentTimeMillis() + period > deadline )
+					throw new IaasException( "Machine " + handle.getMachineId() + " was not ready after " + timeout + " ms." );
+
+				Thread.sleep( period );
+			}
+
+		} catch( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+			throw new IaasException( e );
+		}
+
+		return handle.getMachineId();
+	}
+}
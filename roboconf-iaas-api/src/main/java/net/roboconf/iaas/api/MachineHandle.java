@@ -0,0 +1,47 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.iaas.api;
+
+import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
+import net.roboconf.iaas.api.exceptions.IaasException;
+
+/**
+ * A machine whose creation was requested but which may not be ready yet.
+ * <p>
+ * Handles are advanced by a poller, that invokes {@link #advance()} periodically
+ * until the machine is ready. Invocations of {@link #advance()} must not block
+ * more than the time of a request to the IaaS: waiting is the poller's job.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface MachineHandle {
+
+	/**
+	 * @return the (machine) ID of the VM relative to the IaaS (not null)
+	 */
+	String getMachineId();
+
+
+	/**
+	 * Checks the state of the machine and performs the next creation step if possible.
+	 * @return true if the machine is ready, false if it must be checked again later
+	 * @throws IaasException if the creation failed
+	 * @throws CommunicationToIaasException if the IaaS could not be reached
+	 */
+	boolean advance() throws IaasException, CommunicationToIaasException;
+}
@@ -19,11 +19,12 @@ package net.roboconf.iaas.ec2;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import net.roboconf.iaas.api.IaasInterface;
+import net.roboconf.iaas.api.BatchIaasInterface;
 import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
 import net.roboconf.iaas.api.exceptions.IaasException;
 import net.roboconf.iaas.api.exceptions.InvalidIaasPropertiesException;
@@ -48,7 +49,7 @@ import com.amazonaws.services.ec2.model.TerminateInstancesRequest;
 /**
  * @author Noël - LIG
  */
-public class IaasEc2 implements IaasInterface {
+public class IaasEc2 implements BatchIaasInterface {
 
 	private Logger logger;
 	private AmazonEC2 ec2;
@@ -102,42 +103,92 @@ public class IaasEc2 implements IaasInterface {
 			String applicationName)
 	throws IaasException, CommunicationToIaasException {
 
-		String instanceId = null;
+		List<String> channelNames = Collections.singletonList( channelName );
+		return createVMs( machineImageId, ipMessagingServer, channelNames, applicationName ).get( 0 );
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.iaas.api.BatchIaasInterface
+	 * #createVMs(java.lang.String, java.lang.String, java.util.List, java.lang.String)
+	 */
+	@Override
+	public List<String> createVMs(
+			String machineImageId,
+			String ipMessagingServer,
+			List<String> channelNames,
+			String applicationName )
+	throws IaasException, CommunicationToIaasException {
+
+		String[] instanceIds = new String[ channelNames.size()];
+		List<String> createdIds = new ArrayList<String> ();
 		try {
+			// A single request for all the VMs.
+			// Since MinCount = MaxCount, either all of them are created, or none.
 			RunInstancesRequest runInstancesRequest = prepareEC2RequestNode(
 					this.ec2Properties.getAmiVmNode(),
 					ipMessagingServer,
-					channelName,
+					channelNames,
 					applicationName );
 
 			RunInstancesResult runInstanceResult = this.ec2.runInstances( runInstancesRequest );
-			instanceId = runInstanceResult.getReservation().getInstances().get( 0 ).getInstanceId();
-
-			// Set name tag for instance (human-readable in AWS webapp)
-			List<Tag> tags = new ArrayList<Tag>();
-			Tag t = new Tag();
-			t.setKey("Name");
-			t.setValue(applicationName + "." + channelName);
-			tags.add(t);
-			CreateTagsRequest ctr = new CreateTagsRequest();
-			ctr.setTags(tags);
-			ctr.withResources(instanceId);
-			this.ec2.createTags(ctr);
+			for( com.amazonaws.services.ec2.model.Instance instance : runInstanceResult.getReservation().getInstances()) {
+				createdIds.add( instance.getInstanceId());
+				int index = instance.getAmiLaunchIndex() == null ? 0 : instance.getAmiLaunchIndex();
+				instanceIds[ index ] = instance.getInstanceId();
+			}
 
 		} catch( AmazonServiceException e ) {
-			this.logger.severe( "An error occurred on Amazon while instantiating a machine. " + e.getMessage());
+			this.logger.severe( "An error occurred on Amazon while instantiating machines. " + e.getMessage());
 			throw new IaasException( e );
 
 		} catch( AmazonClientException e ) {
-			this.logger.severe( "An error occurred while creating a machine on Amazon EC2. " + e.getMessage());
+			this.logger.severe( "An error occurred while creating machines on Amazon EC2. " + e.getMessage());
 			throw new CommunicationToIaasException( e );
 
 		} catch( UnsupportedEncodingException e ) {
 			this.logger.severe( "An error occurred while contacting Amazon EC2. " + e.getMessage());
 			throw new CommunicationToIaasException( e );
+
+		} catch( IndexOutOfBoundsException e ) {
+			this.logger.severe( "Amazon EC2 returned an unexpected launch index. " + e.getMessage());
+
+			// All or nothing: do not leave the created machines behind
+			try {
+				TerminateInstancesRequest terminateInstancesRequest = new TerminateInstancesRequest();
+				terminateInstancesRequest.withInstanceIds( createdIds );
+				this.ec2.terminateInstances( terminateInstancesRequest );
+
+			} catch( AmazonClientException e1 ) {
+				this.logger.severe( "The created machines could not be terminated: " + createdIds + ". " + e1.getMessage());
+			}
+
+			throw new IaasException( e );
+		}
+
+		// Set name tag for instances (human-readable in AWS webapp).
+		// A tag request applies the same tags to all its resources,
+		// and names differ from one VM to another.
+		// The machines exist at this point: a tagging failure must not make them orphans.
+		for( int i=0; i<instanceIds.length; i++ ) {
+			try {
+				List<Tag> tags = new ArrayList<Tag>();
+				Tag t = new Tag();
+				t.setKey("Name");
+				t.setValue(applicationName + "." + channelNames.get( i ));
+				tags.add(t);
+				CreateTagsRequest ctr = new CreateTagsRequest();
+				ctr.setTags(tags);
+				ctr.withResources(instanceIds[ i ]);
+				this.ec2.createTags(ctr);
+
+			} catch( AmazonClientException e ) {
+				this.logger.warning( "The name tag of machine " + instanceIds[ i ] + " could not be set. " + e.getMessage());
+			}
 		}
 
-		return instanceId;
+		return Arrays.asList( instanceIds );
 	}
 
 
@@ -148,17 +199,28 @@ public class IaasEc2 implements IaasInterface {
 	 */
 	@Override
 	public void terminateVM( String instanceId ) throws IaasException, CommunicationToIaasException {
+		terminateVMs( Collections.singletonList( instanceId ));
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.iaas.api.BatchIaasInterface
+	 * #terminateVMs(java.util.List)
+	 */
+	@Override
+	public void terminateVMs( List<String> instanceIds ) throws IaasException, CommunicationToIaasException {
 		try {
 			TerminateInstancesRequest terminateInstancesRequest = new TerminateInstancesRequest();
-			terminateInstancesRequest.withInstanceIds( instanceId );
+			terminateInstancesRequest.withInstanceIds( instanceIds );
 			this.ec2.terminateInstances( terminateInstancesRequest );
 
 		} catch( AmazonServiceException e ) {
-			this.logger.severe( "An error occurred on Amazon while terminating the machine. " + e.getMessage());
+			this.logger.severe( "An error occurred on Amazon while terminating machines. " + e.getMessage());
 			throw new IaasException( e );
 
 		} catch( AmazonClientException e ) {
-			this.logger.severe( "An error occurred while terminating a machine on Amazon EC2. " + e.getMessage());
+			this.logger.severe( "An error occurred while terminating machines on Amazon EC2. " + e.getMessage());
 			throw new CommunicationToIaasException( e );
 		}
 	}
@@ -203,12 +265,12 @@ public class IaasEc2 implements IaasInterface {
 	 * Prepares the request.
 	 * @param machineImageId
 	 * @param ipMessagingServer
-	 * @param channelName
+	 * @param channelNames
 	 * @param applicationName
 	 * @return a request
 	 * @throws UnsupportedEncodingException
 	 */
-	private RunInstancesRequest prepareEC2RequestNode( String machineImageId, String ipMessagingServer, String channelName, String applicationName ) throws UnsupportedEncodingException {
+	private RunInstancesRequest prepareEC2RequestNode( String machineImageId, String ipMessagingServer, List<String> channelNames, String applicationName ) throws UnsupportedEncodingException {
 
 		RunInstancesRequest runInstancesRequest = new RunInstancesRequest();
 		runInstancesRequest.setInstanceType( this.ec2Properties.getVmInstanceType());
@@ -219,17 +281,25 @@ public class IaasEc2 implements IaasInterface {
 
 		// FIXME (VZ): why this kernel ID?
 		runInstancesRequest.setKernelId( "aki-62695816" );
-		runInstancesRequest.setMinCount( 1 );
-		runInstancesRequest.setMaxCount( 1 );
+		runInstancesRequest.setMinCount( channelNames.size());
+		runInstancesRequest.setMaxCount( channelNames.size());
 		runInstancesRequest.setKeyName( this.ec2Properties.getSshKeyName());
 		runInstancesRequest.setSecurityGroups( Arrays.asList( this.ec2Properties.getSecurityGroupName()));
 
 		// The following part enables to transmit data to the VM.
 		// When the VM is up, it will be able to read this data.
+		// All the VMs of a request share the same user data: when there are several of them,
+		// a VM finds its channel name thanks to its launch index.
 		StringBuilder data = new StringBuilder();
 		data.append( "ipMessagingServer=" + ipMessagingServer + "\n" );
 		data.append( "applicationName=" + applicationName + "\n" );
-		data.append( "channelName=" + channelName + "\n" );
+		if( channelNames.size() == 1 ) {
+			data.append( "channelName=" + channelNames.get( 0 ) + "\n" );
+
+		} else {
+			for( int i=0; i<channelNames.size(); i++ )
+				data.append( "channelName." + i + "=" + channelNames.get( i ) + "\n" );
+		}
 
 		String dataToPass = data.toString();
 		String userData = new String( Base64.encodeBase64( dataToPass.getBytes( "UTF-8" )));
@@ -18,6 +18,7 @@ package net.roboconf.iaas.local;
 
 import java.io.File;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import net.roboconf.agent.AgentData;
 import net.roboconf.agent.AgentLauncher;
@@ -33,7 +34,8 @@ import net.roboconf.plugin.api.ExecutionLevel;
  */
 public class IaasLocalhost implements IaasInterface {
 
-	private AgentLauncher agentLauncher;
+	// Machine ID => agent launcher (this class may be used for several machines)
+	private final Map<String,AgentLauncher> machineIdToAgentLauncher = new ConcurrentHashMap<String,AgentLauncher> ();
 
 
 	/*
@@ -69,19 +71,21 @@ public class IaasLocalhost implements IaasInterface {
 
 		// Messaging subscriptions are handled automatically in a new thread (see *.messaging).
 		String agentName = rootInstanceName + " - In-Memory Agent";
-		this.agentLauncher = new AgentLauncher( agentName );
+		final AgentLauncher agentLauncher = new AgentLauncher( agentName );
+		String machineId = rootInstanceName + " @ localhost";
+		this.machineIdToAgentLauncher.put( machineId, agentLauncher );
 
 		new Thread() {
 			@Override
 			public void run() {
-				IaasLocalhost.this.agentLauncher.launchAgent(
+				agentLauncher.launchAgent(
 						agentData,
 						ExecutionLevel.RUNNING,
 						new File( System.getProperty( "java.io.tmpdir" )));
 			};
 		}.start();
 
-		return rootInstanceName + " @ localhost";
+		return machineId;
 	}
 
 
@@ -94,7 +98,8 @@ public class IaasLocalhost implements IaasInterface {
 	public void terminateVM( String instanceId )
 	throws IaasException, CommunicationToIaasException {
 
-		if( this.agentLauncher != null )
-			this.agentLauncher.forceAgentToStop();
+		AgentLauncher agentLauncher = this.machineIdToAgentLauncher.remove( instanceId );
+		if( agentLauncher != null )
+			agentLauncher.forceAgentToStop();
 	}
 }
\ No newline at end of file
@@ -18,11 +18,11 @@ package net.roboconf.iaas.openstack;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
-import net.roboconf.iaas.api.IaasInterface;
+import net.roboconf.iaas.api.AsyncIaasInterface;
+import net.roboconf.iaas.api.IaasUtils;
+import net.roboconf.iaas.api.MachineHandle;
 import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
 import net.roboconf.iaas.api.exceptions.IaasException;
 import net.roboconf.iaas.api.exceptions.InvalidIaasPropertiesException;
@@ -44,9 +44,11 @@ import com.woorea.openstack.nova.model.ServerForCreate;
 /**
  * @author Pierre-Yves Gibello - Linagora
  */
-public class IaasOpenstack implements IaasInterface {
+public class IaasOpenstack implements AsyncIaasInterface {
+
+	private static final long POLLING_PERIOD = 5000;
+	private static final long CREATION_TIMEOUT = 120 * 1000;
 
-	//TODO replace all println() with logger...
 	private Logger logger;
 
 	private String machineImageId;
@@ -136,6 +138,24 @@ public class IaasOpenstack implements IaasInterface {
 			String applicationName)
 	throws IaasException, CommunicationToIaasException {
 
+		MachineHandle handle = startVM( machineImageId, ipMessagingServer, channelName, applicationName );
+		return IaasUtils.waitUntilReady( handle, POLLING_PERIOD, CREATION_TIMEOUT );
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.iaas.api.AsyncIaasInterface
+	 * #startVM(java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public MachineHandle startVM(
+			String machineImageId,
+			String ipMessagingServer,
+			String channelName,
+			String applicationName)
+	throws IaasException, CommunicationToIaasException {
+
 		if(machineImageId == null || "".equals(machineImageId))
 			machineImageId = this.machineImageId;
 
@@ -154,7 +174,7 @@ public class IaasOpenstack implements IaasInterface {
 		if(this.keypair != null) serverForCreate.setKeyName(this.keypair);
 		serverForCreate.getSecurityGroups().add(
 			new ServerForCreate.SecurityGroup(this.securityGroup));
-		
+
 		// User data will be retrieved (like on Amazon WS) on guest OS as
 		// http://169.254.169.254/latest/user-data
 		String userData = "applicationName=" + applicationName
@@ -162,45 +182,13 @@ public class IaasOpenstack implements IaasInterface {
 				+ "\nchannelName=" + channelName
 				+ "\nipMessagingServer=" + ipMessagingServer;
 		serverForCreate.setUserData(new String(Base64.encodeBase64(userData.getBytes())));
-		
-		final Server server = this.novaClient.servers().boot(serverForCreate).execute();
-		System.out.println(server);
-
-		// Wait for server to be in ACTIVE state, before associating floating IP
-		try {
-			final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1);
-			timer.scheduleAtFixedRate(new Runnable() {
-				
-				@Override
-				public void run() {
-					Server checked = IaasOpenstack.this.novaClient.servers().show(server.getId()).execute();
-					if("ACTIVE".equals(checked.getStatus())) {
-						timer.shutdown();
-					}
-				}
-			}, 10, 5, TimeUnit.SECONDS);
-			timer.awaitTermination(120, TimeUnit.SECONDS);
-		} catch (Exception ignore) { /*ignore*/ }
 
-		// Associate floating IP
-		if(this.floatingIpPool != null) {
-			FloatingIps ips = this.novaClient.floatingIps().list().execute();
-			
-			FloatingIp ip = null;
-			for(FloatingIp ip2 : ips) {
-				System.out.println("ip=" + ip2);
-				ip = ip2;
-			}
-			//FloatingIp ip = ips.allocate(this.floatingIpPool).execute();
-			if(ip != null) {
-				this.novaClient.servers().associateFloatingIp(
-						server.getId(), ip.getIp()).execute();
-			}
-		}
-		
-		return server.getId();
+		Server server = this.novaClient.servers().boot(serverForCreate).execute();
+		this.logger.fine( "Server " + server.getId() + " was requested." );
+		return new OpenstackMachineHandle( server.getId());
 	}
 
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.roboconf.iaas.api.IaasInterface
@@ -215,6 +203,63 @@ public class IaasOpenstack implements IaasInterface {
 		}
 	}
 
+	/**
+	 * Follows the creation of a server.
+	 * <p>
+	 * A floating IP can only be associated with the server once it is in the ACTIVE state.
+	 * </p>
+	 */
+	private class OpenstackMachineHandle implements MachineHandle {
+		private final String serverId;
+
+
+		/**
+		 * Constructor.
+		 * @param serverId
+		 */
+		OpenstackMachineHandle( String serverId ) {
+			this.serverId = serverId;
+		}
+
+
+		@Override
+		public String getMachineId() {
+			return this.serverId;
+		}
+
+
+		@Override
+		public boolean advance() throws IaasException, CommunicationToIaasException {
+
+			Nova novaClient = IaasOpenstack.this.novaClient;
+			Server checked = novaClient.servers().show(this.serverId).execute();
+			if("ERROR".equals(checked.getStatus()))
+				throw new IaasException("Server " + this.serverId + " could not be created.");
+
+			if(! "ACTIVE".equals(checked.getStatus()))
+				return false;
+
+			// Associate floating IP
+			if(IaasOpenstack.this.floatingIpPool != null) {
+				FloatingIps ips = novaClient.floatingIps().list().execute();
+
+				FloatingIp ip = null;
+				for(FloatingIp ip2 : ips) {
+					IaasOpenstack.this.logger.finest("ip=" + ip2);
+					ip = ip2;
+				}
+				//FloatingIp ip = ips.allocate(this.floatingIpPool).execute();
+				if(ip != null) {
+					novaClient.servers().associateFloatingIp(
+							this.serverId, ip.getIp()).execute();
+				}
+			}
+
+			return true;
+		}
+	}
+
+
 	public static void main(String args[]) throws Exception {
 		
 		Map<String, String> conf = new HashMap<String, String>();
@@ -21,7 +21,9 @@ import java.rmi.RemoteException;
 import java.util.Map;
 import java.util.logging.Logger;
 
-import net.roboconf.iaas.api.IaasInterface;
+import net.roboconf.iaas.api.AsyncIaasInterface;
+import net.roboconf.iaas.api.IaasUtils;
+import net.roboconf.iaas.api.MachineHandle;
 import net.roboconf.iaas.api.exceptions.CommunicationToIaasException;
 import net.roboconf.iaas.api.exceptions.IaasException;
 import net.roboconf.iaas.api.exceptions.InvalidIaasPropertiesException;
@@ -31,9 +33,11 @@ import com.vmware.vim25.GuestProgramSpec;
 import com.vmware.vim25.InvalidProperty;
 import com.vmware.vim25.NamePasswordAuthentication;
 import com.vmware.vim25.RuntimeFault;
+import com.vmware.vim25.TaskInfoState;
 import com.vmware.vim25.VirtualMachineCloneSpec;
 import com.vmware.vim25.VirtualMachineConfigSpec;
 import com.vmware.vim25.VirtualMachineRelocateSpec;
+import com.vmware.vim25.VirtualMachineToolsRunningStatus;
 import com.vmware.vim25.mo.ComputeResource;
 import com.vmware.vim25.mo.Datacenter;
 import com.vmware.vim25.mo.Folder;
@@ -47,9 +51,11 @@ import com.vmware.vim25.mo.VirtualMachine;
 /**
  * @author Pierre-Yves Gibello - Linagora
  */
-public class IaasVmware implements IaasInterface {
+public class IaasVmware implements AsyncIaasInterface {
+
+	private static final long POLLING_PERIOD = 2000;
+	private static final long CREATION_TIMEOUT = 10 * 60 * 1000;
 
-	//TODO replace all println() with logger...
 	private Logger logger;
 	private ServiceInstance vmwareServiceInstance;
 	private ComputeResource vmwareComputeResource;
@@ -112,19 +118,33 @@ public class IaasVmware implements IaasInterface {
 			String applicationName)
 	throws IaasException, CommunicationToIaasException {
 
+		MachineHandle handle = startVM( machineImageId, ipMessagingServer, channelName, applicationName );
+		return IaasUtils.waitUntilReady( handle, POLLING_PERIOD, CREATION_TIMEOUT );
+	}
+
+
+	/*
+	 * (non-Javadoc)
+	 * @see net.roboconf.iaas.api.AsyncIaasInterface
+	 * #startVM(java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	public MachineHandle startVM(
+			String machineImageId,
+			String ipMessagingServer,
+			String channelName,
+			String applicationName)
+	throws IaasException, CommunicationToIaasException {
+
 		if(machineImageId == null || "".equals(machineImageId))
 			machineImageId = this.machineImageId;
 
 		try {
-			
-			//String instanceId = null;
 			VirtualMachine vm = getVirtualMachine(machineImageId);
-			//Folder vmFolder = this.vmwareServiceInstance.getRootFolder();
 			Folder vmFolder = ((Datacenter)(new InventoryNavigator(this.vmwareServiceInstance.getRootFolder())
 				.searchManagedEntity("Datacenter", this.vmwareDataCenter))).getVmFolder();
 
-			// TODO remove system.out logs (in the whole file...)
-			System.out.println("machineImageId=" + machineImageId);
+			this.logger.fine("machineImageId=" + machineImageId);
 			if (vm == null || vmFolder == null)
 				throw new IaasException("VirtualMachine (= " + vm + " ) or Datacenter path (= " + vmFolder + " ) is NOT correct. Pls double check.");
 
@@ -139,60 +159,19 @@ public class IaasVmware implements IaasInterface {
 					+ "\\nchannelName=" + channelName
 					+ "\\nipMessagingServer=" + ipMessagingServer;
 			vmSpec.setAnnotation(userData);
-			
+
 			cloneSpec.setConfig(vmSpec);
 
 			Task task = vm.cloneVM_Task(vmFolder, channelName, cloneSpec);
-			System.out.println("Cloning the template: "+machineImageId+" ...");	
-			String status = task.waitForTask();
-			if (!status.equals(Task.SUCCESS)) {
-				throw new IaasException("Failure: Virtual Machine cannot be cloned");
-			}
+			this.logger.fine("Cloning the template: "+machineImageId+" ...");
+			return new VmwareMachineHandle(channelName, userData, task);
 
-			VirtualMachine vm2 = getVirtualMachine(channelName);		
-			System.out.println("Transforming the clone template to Virtual machine ...");
-			vm2.markAsVirtualMachine(this.vmwareComputeResource.getResourcePool(), null); // host=null means IaaS-managed choice
-			
-			DynamicProperty dprop = new DynamicProperty();
-            dprop.setName("guestinfo.userdata");
-            dprop.setVal(userData);
-            vm2.getGuest().setDynamicProperty(new DynamicProperty[]{dprop});
-			
-			task = vm2.powerOnVM_Task(null);
-			System.out.println("Starting the virtual machine: "+channelName+" ...");	
-			status = task.waitForTask();
-			if (!status.equals(Task.SUCCESS)) {
-				throw new IaasException("Failure -: Virtual Machine cannot be started");
-			}
-			
-			Thread.sleep(10000); // VMWare tools not yet started (!)
-			
-			GuestOperationsManager gom = vmwareServiceInstance.getGuestOperationsManager();
-			//GuestAuthManager gam = gom.getAuthManager(vm2);
-		    NamePasswordAuthentication npa = new NamePasswordAuthentication();
-		    npa.username = iaasProperties.get("vmware.vmuser");
-		    npa.password = iaasProperties.get("vmware.vmpassword");
-		    GuestProgramSpec spec = new GuestProgramSpec();
-
-		    spec.programPath = "/bin/echo";
-		    spec.arguments = "$\'" + userData + "\' > /tmp/roboconf.properties";
-		    //System.out.println(spec.programPath + " " + spec.arguments);
-		    
-		    GuestProcessManager gpm = gom.getProcessManager(vm2);
-		    long pid = gpm.startProgramInGuest(npa, spec);
-		    System.out.println("pid: " + pid);
-
-			return vm2.getName();
-			//return instanceId;
 		} catch(RemoteException e) {
-			e.printStackTrace();
-			throw new CommunicationToIaasException(e);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
 			throw new CommunicationToIaasException(e);
 		}
 	}
 
+
 	/*
 	 * (non-Javadoc)
 	 * @see net.roboconf.iaas.api.IaasInterface
@@ -232,4 +211,105 @@ public class IaasVmware implements IaasInterface {
 		return (VirtualMachine) new InventoryNavigator(rootFolder).searchManagedEntity("VirtualMachine", virtualmachineName);
 	}
 
+
+	/**
+	 * Follows the creation of a VM: clone, power on and configuration.
+	 * <p>
+	 * VMWare tools must be running to configure the VM. Rather than waiting
+	 * an arbitrary delay, their status is checked on every step.
+	 * </p>
+	 */
+	private class VmwareMachineHandle implements MachineHandle {
+
+		private final String vmName, userData;
+		private Task task;
+		private boolean poweringOn = false;
+
+
+		/**
+		 * Constructor.
+		 * @param vmName
+		 * @param userData
+		 * @param cloneTask
+		 */
+		VmwareMachineHandle( String vmName, String userData, Task cloneTask ) {
+			this.vmName = vmName;
+			this.userData = userData;
+			this.task = cloneTask;
+		}
+
+
+		@Override
+		public String getMachineId() {
+			return this.vmName;
+		}
+
+
+		@Override
+		public boolean advance() throws IaasException, CommunicationToIaasException {
+
+			boolean ready = false;
+			try {
+				if( this.task != null ) {
+					TaskInfoState state = this.task.getTaskInfo().getState();
+					if( state == TaskInfoState.error )
+						throw new IaasException( this.poweringOn ? "Failure -: Virtual Machine cannot be started" : "Failure: Virtual Machine cannot be cloned" );
+
+					if( state == TaskInfoState.success ) {
+						if( this.poweringOn )
+							this.task = null;
+						else
+							powerOn();
+					}
+
+				} else {
+					VirtualMachine vm = getVirtualMachine( this.vmName );
+					String toolsStatus = vm.getGuest().getToolsRunningStatus();
+					if( VirtualMachineToolsRunningStatus.guestToolsRunning.toString().equals( toolsStatus )) {
+						configure( vm );
+						ready = true;
+					}
+				}
+
+			} catch( RemoteException e ) {
+				throw new CommunicationToIaasException( e );
+			}
+
+			return ready;
+		}
+
+
+		private void powerOn() throws RemoteException {
+
+			VirtualMachine vm2 = getVirtualMachine(this.vmName);
+			IaasVmware.this.logger.fine("Transforming the clone template to Virtual machine ...");
+			vm2.markAsVirtualMachine(IaasVmware.this.vmwareComputeResource.getResourcePool(), null); // host=null means IaaS-managed choice
+
+			DynamicProperty dprop = new DynamicProperty();
+			dprop.setName("guestinfo.userdata");
+			dprop.setVal(this.userData);
+			vm2.getGuest().setDynamicProperty(new DynamicProperty[]{dprop});
+
+			this.task = vm2.powerOnVM_Task(null);
+			this.poweringOn = true;
+			IaasVmware.this.logger.fine("Starting the virtual machine: "+this.vmName+" ...");
+		}
+
+
+		private void configure( VirtualMachine vm2 ) throws RemoteException {
+
+			GuestOperationsManager gom = IaasVmware.this.vmwareServiceInstance.getGuestOperationsManager();
+			NamePasswordAuthentication npa = new NamePasswordAuthentication();
+			npa.username = IaasVmware.this.iaasProperties.get("vmware.vmuser");
+			npa.password = IaasVmware.this.iaasProperties.get("vmware.vmpassword");
+			GuestProgramSpec spec = new GuestProgramSpec();
+
+			spec.programPath = "/bin/echo";
+			spec.arguments = "$\'" + this.userData + "\' > /tmp/roboconf.properties";
+
+			GuestProcessManager gpm = gom.getProcessManager(vm2);
+			long pid = gpm.startProgramInGuest(npa, spec);
+			IaasVmware.this.logger.fine("pid: " + pid);
+		}
+	}
 }
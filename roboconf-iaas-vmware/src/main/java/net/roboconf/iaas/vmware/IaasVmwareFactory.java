@@ -0,0 +1,41 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.iaas.vmware;
+
+import net.roboconf.iaas.api.IaasFactory;
+import net.roboconf.iaas.api.IaasInterface;
+
+/**
+ * Creates {@link IaasVmware} instances.
+ * @author Vincent Zurczak - Linagora
+ */
+public class IaasVmwareFactory implements IaasFactory {
+
+	public static final String IAAS_TYPE = "vmware";
+
+
+	@Override
+	public String getIaasType() {
+		return IAAS_TYPE;
+	}
+
+
+	@Override
+	public IaasInterface newIaasInterface() {
+		return new IaasVmware();
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.codec;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.codec.MessageCodecs;
+import net.roboconf.messaging.messages.Message;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the codecs, for every message type.
+ * <p>
+ * JMH measures the encoding and decoding times. The size of the
+ * encoded messages is printed by {@link #main(String[])}.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 )
+@Measurement( iterations = 5 )
+@Fork( 1 )
+public class MessageCodecBenchmark {
+
+	@Param({ MessageCodecs.JAVA_SERIALIZATION, MessageCodecs.BINARY })
+	public String codecName;
+
+	@Param({
+		"MsgCmdImportAdd", "MsgCmdImportRemove", "MsgCmdImportRequest",
+		"MsgNotifHeartbeat", "MsgNotifInstanceChanged", "MsgNotifInstanceRemoved",
+		"MsgNotifMachineDown", "MsgNotifMachineReadyToBeDeleted", "MsgNotifMachineUp",
+		"MsgCmdFirewallAdd", "MsgCmdFirewallRemove", "MsgCmdInstanceAdd",
+		"MsgCmdInstanceDeploy", "MsgCmdInstanceRemove", "MsgCmdInstanceStart",
+		"MsgCmdInstanceStop", "MsgCmdInstanceUndeploy", "MsgNotifResourcesMissing",
+		"MsgCmdResourceChunk", "MsgNotifInstancesChanged", "MsgCmdImportsResync"
+	})
+	public String messageType;
+
+	private IMessageCodec codec;
+	private Message message;
+	private byte[] bytes;
+
+
+	@Setup
+	public void prepare() throws IOException {
+
+		this.codec = MessageCodecs.findCodec( this.codecName );
+		this.message = findMessage( this.messageType );
+		this.bytes = this.codec.encode( this.message );
+	}
+
+
+	@Benchmark
+	public byte[] encode() throws IOException {
+		return this.codec.encode( this.message );
+	}
+
+
+	@Benchmark
+	public Message decode() throws IOException {
+		return this.codec.decode( this.bytes );
+	}
+
+
+	private static Message findMessage( String messageType ) {
+
+		Message result = null;
+		for( Message msg : BinaryMessageCodecTest.buildSampleMessages()) {
+			if( msg.getClass().getSimpleName().equals( messageType )) {
+				result = msg;
+				break;
+			}
+		}
+
+		if( result == null )
+			throw new IllegalArgumentException( "Unknown message type: " + messageType );
+
+		return result;
+	}
+
+
+	/**
+	 * Prints the size of the encoded messages and runs the benchmark.
+	 * @param args
+	 * @throws IOException
+	 * @throws RunnerException
+	 */
+	public static void main( String[] args ) throws IOException, RunnerException {
+
+		IMessageCodec javaCodec = MessageCodecs.findCodec( MessageCodecs.JAVA_SERIALIZATION );
+		IMessageCodec binaryCodec = MessageCodecs.findCodec( MessageCodecs.BINARY );
+
+		System.out.println( String.format( "%-35s %10s %10s", "Message", "Java", "Binary" ));
+		for( Message msg : BinaryMessageCodecTest.buildSampleMessages()) {
+			System.out.println( String.format(
+					"%-35s %10d %10d",
+					msg.getClass().getSimpleName(),
+					javaCodec.encode( msg ).length,
+					binaryCodec.encode( msg ).length ));
+		}
+
+		new Runner( new OptionsBuilder().include( MessageCodecBenchmark.class.getSimpleName()).build()).run();
+	}
+}
@@ -18,6 +18,7 @@ package net.roboconf.messaging.client;
 
 import java.io.IOException;
 
+import net.roboconf.messaging.codec.MessageCodecs;
 import net.roboconf.messaging.messages.Message;
 import net.roboconf.messaging.utils.MessagingUtils;
 
@@ -56,6 +57,41 @@ public interface IMessageServerClient {
 	 */
 	void setSourceName( String sourceName );
 
+	/**
+	 * Sets the codec used to encode the messages this client publishes.
+	 * <p>
+	 * Received messages are decoded whatever the codec that encoded them.
+	 * The DM sends the codec of an application to its agents when their machine is up
+	 * (see {@link net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd#getMessagingCodec()}).
+	 * Agents must then set it with this method, and may do so at any time.
+	 * </p>
+	 * <p>
+	 * If no codec is set, messages are first encoded with Java serialization.
+	 * Then, the client adopts the codec of the first message it receives that was not encoded
+	 * with Java serialization. It never switches back. This is only useful with DMs that do
+	 * not send the codec.
+	 * </p>
+	 *
+	 * @param codecName a codec name (see {@link MessageCodecs}), or null to negotiate it
+	 */
+	void setMessageCodec( String codecName );
+
+	/**
+	 * Indicates whether received messages can be processed in parallel.
+	 * <p>
+	 * When enabled, messages sent by different sources (e.g. different agents) may be
+	 * processed concurrently, but messages sent by a same source are always processed
+	 * in the order they were sent. The message processor must then be thread-safe.
+	 * </p>
+	 * <p>
+	 * Disabled by default: messages are processed one after the other.
+	 * It must be set before {@link #openConnection(IMessageProcessor)} is invoked.
+	 * </p>
+	 *
+	 * @param parallelProcessing true to process messages from different sources in parallel
+	 */
+	void setParallelProcessing( boolean parallelProcessing );
+
 	/**
 	 * Opens a connection with the message server.
 	 * <p>
@@ -0,0 +1,67 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.codec;
+
+import java.io.IOException;
+
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * A codec converts messages into bytes, and bytes into messages.
+ * <p>
+ * Codecs are registered in {@link MessageCodecs}. Each codec must mark
+ * the bytes it produces, so that a receiver can find which codec must be
+ * used to decode a message (see {@link #canDecode(byte[])}).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public interface IMessageCodec {
+
+	/**
+	 * @return the codec name (not null, unique among the registered codecs)
+	 */
+	String getName();
+
+	/**
+	 * @param message a message (not null)
+	 * @return true if this codec can encode this message, false otherwise
+	 */
+	boolean canEncode( Message message );
+
+	/**
+	 * @param bytes a non-null array of bytes
+	 * @return true if these bytes were produced by this codec, false otherwise
+	 */
+	boolean canDecode( byte[] bytes );
+
+	/**
+	 * Encodes a message.
+	 * @param message a message (not null)
+	 * @return a non-null array of bytes
+	 * @throws IOException if the message could not be encoded
+	 */
+	byte[] encode( Message message ) throws IOException;
+
+	/**
+	 * Decodes a message.
+	 * @param bytes a non-null array of bytes
+	 * @return a non-null message
+	 * @throws IOException if the message could not be decoded
+	 */
+	Message decode( byte[] bytes ) throws IOException;
+}
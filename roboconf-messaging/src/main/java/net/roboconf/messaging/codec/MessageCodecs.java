@@ -0,0 +1,172 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.codec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import net.roboconf.messaging.internal.codec.BinaryMessageCodec;
+import net.roboconf.messaging.internal.codec.JavaSerializationCodec;
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * The registry of message codecs.
+ * <p>
+ * Two codecs are always available: {@value #JAVA_SERIALIZATION}, which relies on
+ * Java serialization, and {@value #BINARY}, a compact and versioned binary format.
+ * Java serialization is the fallback: it is used to encode messages the selected codec
+ * does not support, and to decode messages sent by clients that did not select any codec.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public final class MessageCodecs {
+
+	public static final String JAVA_SERIALIZATION = "java";
+	public static final String BINARY = "binary";
+	public static final String DEFAULT_CODEC = BINARY;
+
+	private static final IMessageCodec FALLBACK_CODEC = new JavaSerializationCodec();
+	private static final List<IMessageCodec> CODECS = new CopyOnWriteArrayList<IMessageCodec> ();
+	static {
+		CODECS.add( new BinaryMessageCodec());
+		CODECS.add( FALLBACK_CODEC );
+	}
+
+
+	/**
+	 * Private empty constructor.
+	 */
+	private MessageCodecs() {
+		// nothing
+	}
+
+
+	/**
+	 * Registers a codec.
+	 * <p>
+	 * A codec that has the same name is replaced.
+	 * </p>
+	 *
+	 * @param codec a codec (not null)
+	 */
+	public static synchronized void registerCodec( IMessageCodec codec ) {
+
+		IMessageCodec existing = findCodec( codec.getName());
+		if( existing != null )
+			CODECS.remove( existing );
+
+		// Custom codecs are tested before the built-in ones
+		CODECS.add( 0, codec );
+	}
+
+
+	/**
+	 * Unregisters a codec.
+	 * <p>
+	 * Java serialization cannot be unregistered.
+	 * </p>
+	 *
+	 * @param codecName a codec name
+	 */
+	public static synchronized void unregisterCodec( String codecName ) {
+
+		IMessageCodec codec = findCodec( codecName );
+		if( codec != null && codec != FALLBACK_CODEC )
+			CODECS.remove( codec );
+	}
+
+
+	/**
+	 * Finds a codec by name.
+	 * @param codecName a codec name (can be null)
+	 * @return a codec, or null if it was not found
+	 */
+	public static IMessageCodec findCodec( String codecName ) {
+
+		IMessageCodec result = null;
+		for( IMessageCodec codec : CODECS ) {
+			if( codec.getName().equalsIgnoreCase( codecName )) {
+				result = codec;
+				break;
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Finds the codec that produced an array of bytes.
+	 * @param bytes a non-null array of bytes
+	 * @return a codec, or null if no registered codec can decode these bytes
+	 */
+	public static IMessageCodec findCodec( byte[] bytes ) {
+
+		IMessageCodec result = null;
+		for( IMessageCodec codec : CODECS ) {
+			if( codec.canDecode( bytes )) {
+				result = codec;
+				break;
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * @return the codec based on Java serialization (not null)
+	 */
+	public static IMessageCodec getFallbackCodec() {
+		return FALLBACK_CODEC;
+	}
+
+
+	/**
+	 * Encodes a message.
+	 * @param codec the codec to use (null to use the fallback codec)
+	 * @param message a message (not null)
+	 * @return a non-null array of bytes
+	 * @throws IOException if the message could not be encoded
+	 */
+	public static byte[] encode( IMessageCodec codec, Message message ) throws IOException {
+
+		IMessageCodec codecToUse = codec;
+		if( codecToUse == null || ! codecToUse.canEncode( message ))
+			codecToUse = FALLBACK_CODEC;
+
+		return codecToUse.encode( message );
+	}
+
+
+	/**
+	 * Decodes a message, whatever the codec that encoded it.
+	 * @param bytes a non-null array of bytes
+	 * @return a non-null message
+	 * @throws IOException if no codec could decode these bytes, or if decoding failed
+	 */
+	public static Message decode( byte[] bytes ) throws IOException {
+
+		IMessageCodec codec = findCodec( bytes );
+		if( codec == null )
+			throw new IOException( "No codec was found to decode this message." );
+
+		return codec.decode( bytes );
+	}
+}
@@ -22,15 +22,17 @@ import java.util.logging.Logger;
 import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.messaging.client.IMessageProcessor;
 import net.roboconf.messaging.client.IMessageServerClient;
-import net.roboconf.messaging.internal.utils.SerializationUtils;
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.codec.MessageCodecs;
+import net.roboconf.messaging.internal.client.RabbitMqConnectionManager.SharedConnection;
 import net.roboconf.messaging.messages.Message;
 import net.roboconf.messaging.utils.MessagingUtils;
 
+import com.rabbitmq.client.AMQP.BasicProperties;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
-import com.rabbitmq.client.ConnectionFactory;
-import com.rabbitmq.client.ConsumerCancelledException;
-import com.rabbitmq.client.QueueingConsumer;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
 import com.rabbitmq.client.ShutdownSignalException;
 
 /**
@@ -40,16 +42,50 @@ import com.rabbitmq.client.ShutdownSignalException;
 public final class MessageServerClientRabbitMq implements IMessageServerClient {
 
 	private static final String TOPIC = "topic";
+
+	/**
+	 * The maximum number of messages delivered to a client and not yet acknowledged.
+	 * <p>
+	 * When the processing is slower than the message flow, the message server stops
+	 * sending messages until the pending ones have been processed.
+	 * </p>
+	 */
+	public static final int DEFAULT_PREFETCH_COUNT = 100;
+
 	private final String loggerName = getClass().getName();
 
+	private final RabbitMqConnectionManager connectionManager;
+	private volatile SharedConnection sharedConnection;
+
 	Connection connection;
 	Channel	channel;
-	boolean connected = false;
+	volatile boolean connected = false;
 	String queueName, consumerTag;
 
 	private String messageServerIp, applicationName;
 	private String sourceName = MessagingUtils.SOURCE_DM;
 
+	private volatile boolean negotiateCodec = true;
+	volatile IMessageCodec messageCodec = MessageCodecs.getFallbackCodec();
+	private boolean parallelProcessing = false;
+
+
+
+	/**
+	 * Constructor.
+	 */
+	public MessageServerClientRabbitMq() {
+		this( RabbitMqConnectionManager.INSTANCE );
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param connectionManager the connection manager
+	 */
+	MessageServerClientRabbitMq( RabbitMqConnectionManager connectionManager ) {
+		this.connectionManager = connectionManager;
+	}
 
 
 	@Override
@@ -71,113 +107,87 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 
 
 	@Override
-	public void openConnection( final IMessageProcessor messageProcessor ) throws IOException {
-
-		// Already connected? Do nothing
-		if( this.connected )
-			return;
-
-		// Initialize the connection
-		ConnectionFactory factory = new ConnectionFactory();
-		factory.setHost( this.messageServerIp );
-		this.connection = factory.newConnection();
-		this.channel = this.connection.createChannel();
-		this.connected = true;
-
-		// 1 agent or 1 dm <=> 1 queue
-		String exchangeName = getExchangeName();
-
-		// Exchange declaration is idem-potent
-		this.channel.exchangeDeclare( exchangeName, TOPIC );
+	public void setMessageCodec( String codecName ) {
+
+		this.negotiateCodec = codecName == null;
+		this.messageCodec = MessageCodecs.getFallbackCodec();
+		if( codecName != null ) {
+			IMessageCodec codec = MessageCodecs.findCodec( codecName );
+			if( codec != null )
+				this.messageCodec = codec;
+			else
+				Logger.getLogger( this.loggerName ).warning( "Unknown message codec: " + codecName + ". Java serialization will be used instead." );
+		}
+	}
 
-		// Queue declaration is idem-potent
-		this.queueName = this.applicationName + "." + this.sourceName;
-		this.channel.queueDeclare( this.queueName, true, false, true, null );
 
-		// Start to listen to the queue
-		final QueueingConsumer consumer = new QueueingConsumer( this.channel );
-		this.consumerTag = this.channel.basicConsume( this.queueName, true, consumer );
+	@Override
+	public synchronized void setParallelProcessing( boolean parallelProcessing ) {
+		this.parallelProcessing = parallelProcessing;
+	}
 
-		new Thread( "Roboconf - Queue listener for " + this.queueName ) {
-			@Override
-			public void run() {
 
-				final Logger logger = Logger.getLogger( MessageServerClientRabbitMq.this.loggerName );
-				logger.fine( getName() + " starts listening to new messages." );
+	@Override
+	public synchronized void openConnection( final IMessageProcessor messageProcessor ) throws IOException {
 
-				// We listen to messages until the consumer is cancelled
-				for( ;; ) {
+		// Already connected? Do nothing
+		if( this.connected )
+			return;
 
-					try {
-						QueueingConsumer.Delivery delivery = consumer.nextDelivery();
-						Message message = SerializationUtils.deserializeObject( delivery.getBody());
-
-						StringBuilder sb = new StringBuilder();
-						sb.append( MessageServerClientRabbitMq.this.sourceName );
-						sb.append( " received a message " );
-						sb.append( message.getClass().getSimpleName());
-						sb.append( " on routing key '" );
-						sb.append( delivery.getEnvelope().getRoutingKey());
-						sb.append( "'." );
-						// FIXME: should be logged in finer
-						logger.info( sb.toString());
-
-						messageProcessor.processMessage( message );
-
-					} catch( ShutdownSignalException e ) {
-						logger.finest( MessageServerClientRabbitMq.this.sourceName + ": the message server is shutting down." );
-						break;
-
-					} catch( ConsumerCancelledException e ) {
-						logger.fine( getName() + " stops listening to new messages." );
-						break;
-
-					} catch( InterruptedException e ) {
-						logger.finest( Utils.writeException( e ));
-						break;
-
-					} catch( ClassNotFoundException e ) {
-						logger.severe( MessageServerClientRabbitMq.this.sourceName + ": a message could not be deserialized. Class cast exception." );
-						logger.finest( Utils.writeException( e ));
-
-					}  catch( IOException e ) {
-						logger.severe( MessageServerClientRabbitMq.this.sourceName + ": a message could not be deserialized. I/O exception." );
-						logger.finest( Utils.writeException( e ));
-
-					} catch( Exception e ) {
-						e.printStackTrace();
-					}
-				}
-			};
+		// Initialize the connection
+		this.sharedConnection = this.connectionManager.acquire( this.messageServerIp );
+		try {
+			this.connection = this.sharedConnection.getConnection();
+			this.channel = this.sharedConnection.createChannel();
+
+			// 1 agent or 1 dm <=> 1 queue
+			String exchangeName = getExchangeName();
+
+			// Exchange declaration is idem-potent
+			this.channel.exchangeDeclare( exchangeName, TOPIC );
+
+			// Queue declaration is idem-potent
+			this.queueName = this.applicationName + "." + this.sourceName;
+			this.channel.queueDeclare( this.queueName, true, false, true, null );
+
+			// Start to listen to the queue.
+			// Deliveries are acknowledged once processed, and the number of
+			// pending deliveries is bounded. A slow consumer slows down the server.
+			this.channel.basicQos( DEFAULT_PREFETCH_COUNT );
+			this.consumerTag = this.channel.basicConsume(
+					this.queueName, false,
+					new RoboconfConsumer( this.channel, messageProcessor, this.queueName, this.parallelProcessing ));
+
+			this.connected = true;
+
+		} catch( IOException e ) {
+			releaseConnection();
+			throw e;
+		}
 
-		}.start();
+		Logger.getLogger( this.loggerName ).fine( this.sourceName + " starts listening to new messages on " + this.queueName + "." );
 	}
 
 
 	@Override
-	public void closeConnection() throws IOException {
-
-		if( this.channel != null
-				&& this.channel.isOpen()) {
-			this.channel.basicCancel( this.consumerTag );
-			this.channel.queueDelete( this.queueName );
-			this.channel.close();
+	public synchronized void closeConnection() throws IOException {
+
+		try {
+			if( this.channel != null
+					&& this.channel.isOpen()) {
+				this.channel.basicCancel( this.consumerTag );
+				this.channel.queueDelete( this.queueName );
+				this.channel.close();
+			}
+
+		} finally {
+			releaseConnection();
 		}
-
-		if( this.connection != null
-				&& this.connection.isOpen())
-			this.connection.close();
-
-		this.channel = null;
-		this.connection = null;
-		this.consumerTag = null;
-
-		this.connected = false;
 	}
 
 
 	@Override
-	public void bind( String routingKey ) throws IOException {
+	public synchronized void bind( String routingKey ) throws IOException {
 
 		// Bind routing key to the queue.
 		// queueBind is idem-potent
@@ -186,7 +196,7 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 
 
 	@Override
-	public void unbind( String routingKey ) throws IOException {
+	public synchronized void unbind( String routingKey ) throws IOException {
 
 		// Unbind the routing key and the queue.
 		// queueUnbind is idem-potent
@@ -198,13 +208,18 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 	public void publish( boolean toDm, String routingKey, Message message )
 	throws IOException {
 
-		if( this.connected ) {
+		// Pooled channels are used by a single thread at a time.
+		// No need to synchronize anything here.
+		SharedConnection sc = this.sharedConnection;
+		if( this.connected && sc != null ) {
 			final Logger logger = Logger.getLogger( MessageServerClientRabbitMq.this.loggerName );
 			logger.info( this.sourceName + " is publishing " + message.getClass().getSimpleName() + " to " + routingKey);
 
-			this.channel.basicPublish(
-					getExchangeName( toDm ), routingKey, null,
-					SerializationUtils.serializeObject( message ));
+			// The source name is used by consumers to keep messages ordered
+			BasicProperties properties = new BasicProperties.Builder().appId( this.sourceName ).build();
+			sc.publish(
+					getExchangeName( toDm ), routingKey, properties,
+					MessageCodecs.encode( this.messageCodec, message ));
 		}
 	}
 
@@ -215,19 +230,36 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 		if( this.connected )
 			throw new IOException( "This instance is already connected to the messaging server." );
 
-		ConnectionFactory factory = new ConnectionFactory();
-		factory.setHost( this.messageServerIp );
-		Connection connection = factory.newConnection();
-		Channel channel = this.connection.createChannel();
+		SharedConnection sc = this.connectionManager.acquire( this.messageServerIp );
+		try {
+			Channel channel = sc.borrowChannel();
+			try {
+				channel.exchangeDelete( getExchangeName( true ));
+				channel.exchangeDelete( getExchangeName( false ));
 
-		channel.exchangeDelete( getExchangeName( true ));
-		channel.exchangeDelete( getExchangeName( false ));
+			} finally {
+				sc.returnChannel( channel );
+			}
 
-		channel.close();
-		connection.close();
+		} finally {
+			this.connectionManager.release( sc );
+		}
 	}
 
 
+	private void releaseConnection() {
+
+		if( this.sharedConnection != null )
+			this.connectionManager.release( this.sharedConnection );
+
+		this.sharedConnection = null;
+		this.channel = null;
+		this.connection = null;
+		this.consumerTag = null;
+
+		this.connected = false;
+	}
+
 
 	private String getExchangeName( boolean dm ) {
 		return this.applicationName + "." + (dm ? "admin" : "agents");
@@ -237,4 +269,143 @@ public final class MessageServerClientRabbitMq implements IMessageServerClient {
 	private String getExchangeName() {
 		return getExchangeName( MessagingUtils.SOURCE_DM.equalsIgnoreCase( this.sourceName ));
 	}
+
+
+	/**
+	 * The consumer that passes messages to the message processor.
+	 * <p>
+	 * Deliveries are handed over to the {@link OrderedMessageDispatcher} of the connection manager,
+	 * which decodes and processes them. Messages from a same source (the publisher's application ID,
+	 * or the routing key when it is not set) keep their order. Messages from different sources are
+	 * processed in parallel only if parallel processing was enabled. Otherwise, they all share a same lane.
+	 * </p>
+	 * <p>
+	 * Messages are acknowledged once processed, even when processing failed.
+	 * Invalid messages are not redelivered.
+	 * </p>
+	 *
+	 * @author Vincent Zurczak - Linagora
+	 */
+	private class RoboconfConsumer extends DefaultConsumer {
+		private final IMessageProcessor messageProcessor;
+		private final boolean parallelProcessing;
+		private final String queueName;
+
+
+		/**
+		 * Constructor.
+		 * @param channel
+		 * @param messageProcessor
+		 * @param queueName
+		 * @param parallelProcessing
+		 */
+		public RoboconfConsumer( Channel channel, IMessageProcessor messageProcessor, String queueName, boolean parallelProcessing ) {
+			super( channel );
+			this.messageProcessor = messageProcessor;
+			this.queueName = queueName;
+			this.parallelProcessing = parallelProcessing;
+		}
+
+
+		@Override
+		public void handleDelivery( String consumerTag, final Envelope envelope, BasicProperties properties, final byte[] body )
+		throws IOException {
+
+			StringBuilder key = new StringBuilder( this.queueName );
+			if( this.parallelProcessing ) {
+				key.append( '|' );
+				key.append( properties != null && properties.getAppId() != null ? properties.getAppId() : envelope.getRoutingKey());
+			}
+
+			MessageServerClientRabbitMq.this.connectionManager.getMessageDispatcher().dispatch( key.toString(), new Runnable() {
+				@Override
+				public void run() {
+					try {
+						processDelivery( envelope, body );
+
+					} finally {
+						acknowledge( envelope.getDeliveryTag());
+					}
+				}
+			});
+		}
+
+
+		@Override
+		public void handleCancelOk( String consumerTag ) {
+			Logger.getLogger( MessageServerClientRabbitMq.this.loggerName ).fine( MessageServerClientRabbitMq.this.sourceName + " stops listening to new messages." );
+		}
+
+
+		@Override
+		public void handleShutdownSignal( String consumerTag, ShutdownSignalException sig ) {
+			Logger.getLogger( MessageServerClientRabbitMq.this.loggerName ).finest( MessageServerClientRabbitMq.this.sourceName + ": the message server is shutting down." );
+		}
+
+
+		/**
+		 * Decodes and processes a message.
+		 * @param envelope the envelope
+		 * @param body the message's bytes
+		 */
+		void processDelivery( Envelope envelope, byte[] body ) {
+
+			final Logger logger = Logger.getLogger( MessageServerClientRabbitMq.this.loggerName );
+			try {
+				IMessageCodec codec = MessageCodecs.findCodec( body );
+				if( codec == null )
+					throw new IOException( "No codec was found to decode this message." );
+
+				Message message = codec.decode( body );
+				// Negotiation only upgrades from the fallback codec: messages the selected
+				// codec cannot encode are sent with the fallback codec, they must not be adopted.
+				if( MessageServerClientRabbitMq.this.negotiateCodec
+						&& codec != MessageCodecs.getFallbackCodec()) {
+					MessageServerClientRabbitMq.this.messageCodec = codec;
+					MessageServerClientRabbitMq.this.negotiateCodec = false;
+				}
+
+				StringBuilder sb = new StringBuilder();
+				sb.append( MessageServerClientRabbitMq.this.sourceName );
+				sb.append( " received a message " );
+				sb.append( message.getClass().getSimpleName());
+				sb.append( " on routing key '" );
+				sb.append( envelope.getRoutingKey());
+				sb.append( "'." );
+				// FIXME: should be logged in finer
+				logger.info( sb.toString());
+
+				this.messageProcessor.processMessage( message );
+
+			} catch( IOException e ) {
+				logger.severe( MessageServerClientRabbitMq.this.sourceName + ": a message could not be deserialized. I/O exception." );
+				logger.finest( Utils.writeException( e ));
+
+			} catch( Exception e ) {
+				// Do not let an exception kill the dispatcher
+				logger.severe( MessageServerClientRabbitMq.this.sourceName + ": a message could not be processed. " + e.getMessage());
+				logger.finest( Utils.writeException( e ));
+			}
+		}
+
+
+		/**
+		 * Acknowledges a delivery.
+		 * @param deliveryTag the delivery tag
+		 */
+		void acknowledge( long deliveryTag ) {
+
+			Channel channel = getChannel();
+			try {
+				// If the channel was closed, the message server will deliver the message again
+				if( channel.isOpen())
+					channel.basicAck( deliveryTag, false );
+
+			} catch( Exception e ) {
+				Logger logger = Logger.getLogger( MessageServerClientRabbitMq.this.loggerName );
+				logger.fine( MessageServerClientRabbitMq.this.sourceName + ": a message could not be acknowledged. " + e.getMessage());
+				logger.finest( Utils.writeException( e ));
+			}
+		}
+	}
 }
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.client;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes tasks in parallel, but keeps the order of the tasks that share a same key.
+ * <p>
+ * The dispatcher is made up of lanes. Every lane has its own thread and processes its
+ * tasks in the order they were submitted. Tasks are assigned to a lane by hashing their key.
+ * Therefore, tasks with a same key are processed sequentially, while tasks with different
+ * keys are (most likely) processed in parallel.
+ * </p>
+ * <p>
+ * Lane queues are not bounded. Callers are expected to limit the number of pending tasks
+ * themselves (e.g. with a prefetch limit on the message server).
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class OrderedMessageDispatcher {
+
+	public static final int DEFAULT_LANES_COUNT = 16;
+	private final ThreadPoolExecutor[] lanes;
+
+
+	/**
+	 * Constructor.
+	 * @param lanesCount the number of lanes (> 0)
+	 * @param threadNamePrefix the prefix for the name of the threads
+	 */
+	public OrderedMessageDispatcher( int lanesCount, final String threadNamePrefix ) {
+
+		if( lanesCount < 1 )
+			throw new IllegalArgumentException( "The number of lanes must be positive." );
+
+		this.lanes = new ThreadPoolExecutor[ lanesCount ];
+		for( int i=0; i<lanesCount; i++ ) {
+			final String threadName = threadNamePrefix + " " + (i + 1);
+			this.lanes[ i ] = new ThreadPoolExecutor(
+					1, 1,
+					60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable> (),
+					new ThreadFactory() {
+						@Override
+						public Thread newThread( Runnable r ) {
+							Thread thread = new Thread( r, threadName );
+							thread.setDaemon( true );
+							return thread;
+						}
+					});
+
+			// Idle lanes do not keep a thread
+			this.lanes[ i ].allowCoreThreadTimeOut( true );
+		}
+	}
+
+
+	/**
+	 * Submits a task.
+	 * @param key the ordering key (not null)
+	 * @param task the task to execute (not null)
+	 */
+	public void dispatch( String key, Runnable task ) {
+		this.lanes[ findLane( key )].execute( task );
+	}
+
+
+	/**
+	 * @return the number of tasks that wait to be processed
+	 */
+	public int getPendingTasksCount() {
+
+		int result = 0;
+		for( ThreadPoolExecutor lane : this.lanes )
+			result += lane.getQueue().size();
+
+		return result;
+	}
+
+
+	/**
+	 * @return the number of lanes
+	 */
+	public int getLanesCount() {
+		return this.lanes.length;
+	}
+
+
+	/**
+	 * Stops the lanes.
+	 * <p>
+	 * Pending tasks are executed, new tasks are rejected.
+	 * </p>
+	 */
+	public void shutdown() {
+		for( ThreadPoolExecutor lane : this.lanes )
+			lane.shutdown();
+	}
+
+
+	/**
+	 * @param key an ordering key
+	 * @return the index of the lane associated with this key
+	 */
+	int findLane( String key ) {
+
+		// Spread the hash, as in HashMap, so that similar keys use different lanes
+		int h = key.hashCode();
+		h ^= ( h >>> 20 ) ^ ( h >>> 12 );
+		h ^= ( h >>> 7 ) ^ ( h >>> 4 );
+
+		return ( h & 0x7FFFFFFF ) % this.lanes.length;
+	}
+}
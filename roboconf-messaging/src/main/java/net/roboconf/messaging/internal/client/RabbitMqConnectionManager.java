@@ -0,0 +1,431 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.client;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+
+/**
+ * Shares a small set of RabbitMQ connections between messaging clients.
+ * <p>
+ * Before, every client (i.e. every application on the DM) had its own TCP connection
+ * and its own listener thread. Now, clients that target the same message server share
+ * at most {@link #getMaxConnectionsPerHost()} connections. Every client still has its own
+ * channel to consume messages, but deliveries are dispatched by a single pool of threads,
+ * shared by all the connections. These threads only hand the deliveries over to the
+ * {@link OrderedMessageDispatcher}, which decodes and processes them.
+ * </p>
+ * <p>
+ * Messages are published through pooled channels. A channel is used by a single
+ * thread at a time, which makes publishing thread-safe.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class RabbitMqConnectionManager {
+
+	public static final RabbitMqConnectionManager INSTANCE = new RabbitMqConnectionManager();
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 2;
+	public static final int DEFAULT_MAX_PUBLISHING_CHANNELS = 8;
+	public static final int DEFAULT_DISPATCHER_THREADS = 4;
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final Map<String,List<SharedConnection>> hostToConnections = new HashMap<String,List<SharedConnection>> ();
+	private final ThreadPoolExecutor dispatcher;
+	private final OrderedMessageDispatcher messageDispatcher =
+			new OrderedMessageDispatcher( OrderedMessageDispatcher.DEFAULT_LANES_COUNT, "Roboconf - Message processor" );
+
+	private int maxConnectionsPerHost = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private int maxPublishingChannels = DEFAULT_MAX_PUBLISHING_CHANNELS;
+
+
+	/**
+	 * Constructor.
+	 */
+	RabbitMqConnectionManager() {
+
+		this.dispatcher = new ThreadPoolExecutor(
+				DEFAULT_DISPATCHER_THREADS, DEFAULT_DISPATCHER_THREADS,
+				60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable> (),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread( Runnable r ) {
+						Thread thread = new Thread( r, "Roboconf - Message dispatcher " + this.count.incrementAndGet());
+						thread.setDaemon( true );
+						return thread;
+					}
+				});
+
+		this.dispatcher.allowCoreThreadTimeOut( true );
+	}
+
+
+	/**
+	 * Gets a connection to a message server.
+	 * <p>
+	 * Every call to this method must be followed by a call to {@link #release(SharedConnection)}.
+	 * </p>
+	 *
+	 * @param host the message server's location
+	 * @return a non-null and open connection
+	 * @throws IOException if a new connection could not be established
+	 */
+	public synchronized SharedConnection acquire( String host ) throws IOException {
+
+		List<SharedConnection> connections = this.hostToConnections.get( host );
+		if( connections == null ) {
+			connections = new ArrayList<SharedConnection> ();
+			this.hostToConnections.put( host, connections );
+		}
+
+		// Forget the connections that were closed (e.g. the server went down)
+		for( Iterator<SharedConnection> it = connections.iterator(); it.hasNext(); ) {
+			SharedConnection sc = it.next();
+			if( ! sc.connection.isOpen()) {
+				it.remove();
+				sc.closeChannels();
+			}
+		}
+
+		// Create a new connection or reuse the least used one
+		SharedConnection result = null;
+		if( connections.size() < this.maxConnectionsPerHost ) {
+			result = new SharedConnection( host, newConnection( host, this.dispatcher ), this.maxPublishingChannels );
+			connections.add( result );
+			this.logger.fine( "A new connection was established with the message server " + host + "." );
+
+		} else {
+			for( SharedConnection sc : connections ) {
+				if( result == null || sc.users < result.users )
+					result = sc;
+			}
+		}
+
+		result.users ++;
+		return result;
+	}
+
+
+	/**
+	 * Releases a connection.
+	 * <p>
+	 * The connection is closed when it is not used anymore.
+	 * </p>
+	 *
+	 * @param sc a connection obtained from {@link #acquire(String)}
+	 */
+	public synchronized void release( SharedConnection sc ) {
+
+		sc.users --;
+		if( sc.users > 0 )
+			return;
+
+		List<SharedConnection> connections = this.hostToConnections.get( sc.host );
+		if( connections != null ) {
+			connections.remove( sc );
+			if( connections.isEmpty())
+				this.hostToConnections.remove( sc.host );
+		}
+
+		sc.closeChannels();
+		try {
+			if( sc.connection.isOpen())
+				sc.connection.close();
+
+			this.logger.fine( "The connection with the message server " + sc.host + " was closed." );
+
+		} catch( IOException e ) {
+			this.logger.warning( "A connection with the message server " + sc.host + " could not be closed. " + e.getMessage());
+			this.logger.finest( Utils.writeException( e ));
+		}
+	}
+
+
+	/**
+	 * @param host the message server's location
+	 * @return the number of open connections with this message server
+	 */
+	public synchronized int getConnectionsCount( String host ) {
+		List<SharedConnection> connections = this.hostToConnections.get( host );
+		return connections == null ? 0 : connections.size();
+	}
+
+
+	/**
+	 * @return the maximum number of connections with a given message server
+	 */
+	public synchronized int getMaxConnectionsPerHost() {
+		return this.maxConnectionsPerHost;
+	}
+
+
+	/**
+	 * Sets the maximum number of connections with a given message server.
+	 * <p>
+	 * Existing connections are not closed.
+	 * </p>
+	 *
+	 * @param maxConnectionsPerHost the maximum number of connections (> 0)
+	 */
+	public synchronized void setMaxConnectionsPerHost( int maxConnectionsPerHost ) {
+
+		if( maxConnectionsPerHost < 1 )
+			throw new IllegalArgumentException( "The number of connections must be positive." );
+
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+
+	/**
+	 * Sets the maximum number of channels used to publish messages on a connection.
+	 * <p>
+	 * It only applies to new connections.
+	 * </p>
+	 *
+	 * @param maxPublishingChannels the maximum number of publishing channels (> 0)
+	 */
+	public synchronized void setMaxPublishingChannels( int maxPublishingChannels ) {
+
+		if( maxPublishingChannels < 1 )
+			throw new IllegalArgumentException( "The number of channels must be positive." );
+
+		this.maxPublishingChannels = maxPublishingChannels;
+	}
+
+
+	/**
+	 * Sets the number of threads that dispatch the received messages.
+	 * @param threadsCount the number of threads (> 0)
+	 */
+	public void setDispatcherThreads( int threadsCount ) {
+
+		if( threadsCount < 1 )
+			throw new IllegalArgumentException( "The number of threads must be positive." );
+
+		// The order matters: the core size cannot exceed the maximum size
+		if( threadsCount > this.dispatcher.getMaximumPoolSize()) {
+			this.dispatcher.setMaximumPoolSize( threadsCount );
+			this.dispatcher.setCorePoolSize( threadsCount );
+
+		} else {
+			this.dispatcher.setCorePoolSize( threadsCount );
+			this.dispatcher.setMaximumPoolSize( threadsCount );
+		}
+	}
+
+
+	/**
+	 * @return the dispatcher that processes the received messages (shared by all the clients)
+	 */
+	public OrderedMessageDispatcher getMessageDispatcher() {
+		return this.messageDispatcher;
+	}
+
+
+	/**
+	 * Creates a new connection.
+	 * @param host the message server's location
+	 * @param executor the executor that dispatches the deliveries to the consumers
+	 * @return a new connection
+	 * @throws IOException
+	 */
+	Connection newConnection( String host, ExecutorService executor ) throws IOException {
+
+		ConnectionFactory factory = new ConnectionFactory();
+		factory.setHost( host );
+		return factory.newConnection( executor );
+	}
+
+
+	/**
+	 * A connection shared by several clients.
+	 * @author Vincent Zurczak - Linagora
+	 */
+	public static class SharedConnection {
+
+		final String host;
+		final Connection connection;
+		int users = 0;
+
+		private final BlockingQueue<Channel> idleChannels = new LinkedBlockingQueue<Channel> ();
+		private final AtomicInteger channelsCount = new AtomicInteger();
+		private final int maxChannels;
+
+
+		/**
+		 * Constructor.
+		 * @param host
+		 * @param connection
+		 * @param maxChannels
+		 */
+		SharedConnection( String host, Connection connection, int maxChannels ) {
+			this.host = host;
+			this.connection = connection;
+			this.maxChannels = maxChannels;
+		}
+
+
+		/**
+		 * @return the underlying connection
+		 */
+		public Connection getConnection() {
+			return this.connection;
+		}
+
+
+		/**
+		 * Creates a channel that will be owned by a single client.
+		 * @return a new channel
+		 * @throws IOException
+		 */
+		public Channel createChannel() throws IOException {
+			return this.connection.createChannel();
+		}
+
+
+		/**
+		 * Borrows a channel from the pool.
+		 * <p>
+		 * If all the channels are used, this method waits until one is returned.
+		 * The channel must be given back with {@link #returnChannel(Channel)}.
+		 * </p>
+		 *
+		 * @return a non-null and open channel
+		 * @throws IOException if no channel could be obtained
+		 */
+		public Channel borrowChannel() throws IOException {
+
+			Channel result = null;
+			try {
+				while( result == null ) {
+					result = this.idleChannels.poll();
+
+					// Create a new channel if the limit was not reached
+					if( result == null ) {
+						if( this.channelsCount.incrementAndGet() <= this.maxChannels ) {
+							try {
+								result = this.connection.createChannel();
+
+							} finally {
+								if( result == null )
+									this.channelsCount.decrementAndGet();
+							}
+
+						} else {
+							this.channelsCount.decrementAndGet();
+							result = this.idleChannels.poll( 5, TimeUnit.SECONDS );
+						}
+					}
+
+					// Discard closed channels
+					if( result != null && ! result.isOpen()) {
+						this.channelsCount.decrementAndGet();
+						result = null;
+					}
+
+					if( result == null && ! this.connection.isOpen())
+						throw new IOException( "The connection with the message server " + this.host + " is closed." );
+				}
+
+			} catch( InterruptedException e ) {
+				Thread.currentThread().interrupt();
+				throw new IOException( "Interrupted while waiting for a channel." );
+			}
+
+			return result;
+		}
+
+
+		/**
+		 * Gives back a channel obtained from {@link #borrowChannel()}.
+		 * @param channel a channel
+		 */
+		public void returnChannel( Channel channel ) {
+			if( channel.isOpen())
+				this.idleChannels.offer( channel );
+			else
+				this.channelsCount.decrementAndGet();
+		}
+
+
+		/**
+		 * Publishes a message with a pooled channel.
+		 * @param exchangeName the exchange name
+		 * @param routingKey the routing key
+		 * @param properties the message properties (can be null)
+		 * @param bytes the message
+		 * @throws IOException
+		 */
+		public void publish( String exchangeName, String routingKey, BasicProperties properties, byte[] bytes )
+		throws IOException {
+
+			Channel channel = borrowChannel();
+			try {
+				channel.basicPublish( exchangeName, routingKey, properties, bytes );
+
+			} finally {
+				returnChannel( channel );
+			}
+		}
+
+
+		/**
+		 * @return the number of channels created for publishing
+		 */
+		int getPublishingChannelsCount() {
+			return this.channelsCount.get();
+		}
+
+
+		void closeChannels() {
+
+			for( Channel channel = this.idleChannels.poll(); channel != null; channel = this.idleChannels.poll()) {
+				this.channelsCount.decrementAndGet();
+				try {
+					if( channel.isOpen())
+						channel.close();
+
+				} catch( IOException e ) {
+					// nothing, the connection is being closed
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,723 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.codec.MessageCodecs;
+import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportAdd;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRemove;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRequest;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstancesChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineDown;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineReadyToBeDeleted;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineUp;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifResourcesMissing;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdFirewallAdd;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdFirewallRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdImportsResync;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceDeploy;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStart;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStop;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceUndeploy;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdResourceChunk;
+
+/**
+ * A compact binary codec for the messages of {@code net.roboconf.messaging.messages}.
+ * <p>
+ * Every encoded message starts with a 4-byte header: two magic bytes, the schema
+ * version and the message type. The fields follow, in the order of the message's
+ * constructor. No class descriptor is written.
+ * </p>
+ * <p>
+ * Instances are written with their children, but without their parent: only the names
+ * of their ancestors are kept, so that paths (and thus equality) are preserved.
+ * Components are written once, in a table, with the relations between them.
+ * </p>
+ * <p>
+ * Any change in the format of a message must result in a new schema version.
+ * Messages written with a previous schema version can still be decoded, so that agents
+ * and DMs can be upgraded one after the other. Messages with a newer one are rejected.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class BinaryMessageCodec implements IMessageCodec {
+
+	static final byte MAGIC_1 = 'R';
+	static final byte MAGIC_2 = 'B';
+	static final byte SCHEMA_VERSION = 5;
+	static final byte MIN_SCHEMA_VERSION = 1;
+
+	private static final int HEADER_LENGTH = 4;
+	private static final Map<Class<? extends Message>,Integer> CLASS_TO_TYPE = new HashMap<Class<? extends Message>,Integer> ();
+
+	private static final int IMPORT_ADD = 1;
+	private static final int IMPORT_REMOVE = 2;
+	private static final int IMPORT_REQUEST = 3;
+	private static final int HEARTBEAT = 4;
+	private static final int INSTANCE_CHANGED = 5;
+	private static final int INSTANCE_REMOVED = 6;
+	private static final int MACHINE_DOWN = 7;
+	private static final int MACHINE_READY_TO_BE_DELETED = 8;
+	private static final int MACHINE_UP = 9;
+	private static final int FIREWALL_ADD = 10;
+	private static final int FIREWALL_REMOVE = 11;
+	private static final int INSTANCE_ADD = 12;
+	private static final int INSTANCE_DEPLOY = 13;
+	private static final int INSTANCE_REMOVE = 14;
+	private static final int INSTANCE_START = 15;
+	private static final int INSTANCE_STOP = 16;
+	private static final int INSTANCE_UNDEPLOY = 17;
+	private static final int RESOURCES_MISSING = 18;
+	private static final int RESOURCE_CHUNK = 19;
+	private static final int INSTANCES_CHANGED = 20;
+	private static final int IMPORTS_RESYNC = 21;
+
+	static {
+		CLASS_TO_TYPE.put( MsgCmdImportAdd.class, IMPORT_ADD );
+		CLASS_TO_TYPE.put( MsgCmdImportRemove.class, IMPORT_REMOVE );
+		CLASS_TO_TYPE.put( MsgCmdImportRequest.class, IMPORT_REQUEST );
+		CLASS_TO_TYPE.put( MsgNotifHeartbeat.class, HEARTBEAT );
+		CLASS_TO_TYPE.put( MsgNotifInstanceChanged.class, INSTANCE_CHANGED );
+		CLASS_TO_TYPE.put( MsgNotifInstanceRemoved.class, INSTANCE_REMOVED );
+		CLASS_TO_TYPE.put( MsgNotifMachineDown.class, MACHINE_DOWN );
+		CLASS_TO_TYPE.put( MsgNotifMachineReadyToBeDeleted.class, MACHINE_READY_TO_BE_DELETED );
+		CLASS_TO_TYPE.put( MsgNotifMachineUp.class, MACHINE_UP );
+		CLASS_TO_TYPE.put( MsgCmdFirewallAdd.class, FIREWALL_ADD );
+		CLASS_TO_TYPE.put( MsgCmdFirewallRemove.class, FIREWALL_REMOVE );
+		CLASS_TO_TYPE.put( MsgCmdInstanceAdd.class, INSTANCE_ADD );
+		CLASS_TO_TYPE.put( MsgCmdInstanceDeploy.class, INSTANCE_DEPLOY );
+		CLASS_TO_TYPE.put( MsgCmdInstanceRemove.class, INSTANCE_REMOVE );
+		CLASS_TO_TYPE.put( MsgCmdInstanceStart.class, INSTANCE_START );
+		CLASS_TO_TYPE.put( MsgCmdInstanceStop.class, INSTANCE_STOP );
+		CLASS_TO_TYPE.put( MsgCmdInstanceUndeploy.class, INSTANCE_UNDEPLOY );
+		CLASS_TO_TYPE.put( MsgNotifResourcesMissing.class, RESOURCES_MISSING );
+		CLASS_TO_TYPE.put( MsgCmdResourceChunk.class, RESOURCE_CHUNK );
+		CLASS_TO_TYPE.put( MsgNotifInstancesChanged.class, INSTANCES_CHANGED );
+		CLASS_TO_TYPE.put( MsgCmdImportsResync.class, IMPORTS_RESYNC );
+	}
+
+
+	@Override
+	public String getName() {
+		return MessageCodecs.BINARY;
+	}
+
+
+	@Override
+	public boolean canEncode( Message message ) {
+		// Sub-classes are not supported: their additional fields would be lost
+		return CLASS_TO_TYPE.containsKey( message.getClass());
+	}
+
+
+	@Override
+	public boolean canDecode( byte[] bytes ) {
+		return bytes.length >= HEADER_LENGTH
+				&& bytes[ 0 ] == MAGIC_1
+				&& bytes[ 1 ] == MAGIC_2;
+	}
+
+
+	@Override
+	public byte[] encode( Message message ) throws IOException {
+
+		Integer type = CLASS_TO_TYPE.get( message.getClass());
+		if( type == null )
+			throw new IOException( "Unsupported message type: " + message.getClass().getName());
+
+		BinaryWriter writer = new BinaryWriter( 128 );
+		writer.writeByte( MAGIC_1 );
+		writer.writeByte( MAGIC_2 );
+		writer.writeByte( SCHEMA_VERSION );
+		writer.writeByte( type );
+
+		switch( type ) {
+		case IMPORT_ADD:
+			MsgCmdImportAdd importAdd = (MsgCmdImportAdd) message;
+			writer.writeString( importAdd.getComponentOrFacetName());
+			writer.writeString( importAdd.getAddedInstancePath());
+			writer.writeStringMap( importAdd.getExportedVariables());
+			break;
+
+		case IMPORT_REMOVE:
+			MsgCmdImportRemove importRemove = (MsgCmdImportRemove) message;
+			writer.writeString( importRemove.getComponentOrFacetName());
+			writer.writeString( importRemove.getRemovedInstancePath());
+			break;
+
+		case IMPORT_REQUEST:
+			writer.writeString(((MsgCmdImportRequest) message).getComponentOrFacetName());
+			break;
+
+		case HEARTBEAT:
+			writer.writeString(((MsgNotifHeartbeat) message).getRootInstanceName());
+			break;
+
+		case INSTANCE_CHANGED:
+			writeInstanceChanged( writer, (MsgNotifInstanceChanged) message );
+			break;
+
+		case INSTANCES_CHANGED:
+			List<MsgNotifInstanceChanged> changes = ((MsgNotifInstancesChanged) message).getChanges();
+			writer.writeLength( changes, changes.size());
+			for( MsgNotifInstanceChanged change : changes )
+				writeInstanceChanged( writer, change );
+			break;
+
+		case INSTANCE_REMOVED:
+			writer.writeString(((MsgNotifInstanceRemoved) message).getInstancePath());
+			break;
+
+		case MACHINE_DOWN:
+			writer.writeString(((MsgNotifMachineDown) message).getRootInstanceName());
+			break;
+
+		case MACHINE_READY_TO_BE_DELETED:
+			writer.writeString(((MsgNotifMachineReadyToBeDeleted) message).getRootInstanceName());
+			break;
+
+		case MACHINE_UP:
+			MsgNotifMachineUp machineUp = (MsgNotifMachineUp) message;
+			writer.writeString( machineUp.getRootInstanceName());
+			writer.writeString( machineUp.getIpAddress());
+			break;
+
+		case FIREWALL_ADD:
+			MsgCmdFirewallAdd firewallAdd = (MsgCmdFirewallAdd) message;
+			writer.writeString( firewallAdd.getSourceIp());
+			writer.writeString( firewallAdd.getDestIp());
+			writer.writeVarInt( firewallAdd.getPort());
+			break;
+
+		case FIREWALL_REMOVE:
+			break;
+
+		case INSTANCE_ADD:
+			MsgCmdInstanceAdd instanceAdd = (MsgCmdInstanceAdd) message;
+			writer.writeString( instanceAdd.getParentInstancePath());
+			writeInstanceTree( writer, instanceAdd.getInstanceToAdd());
+			writer.writeString( instanceAdd.getMessagingCodec());
+			break;
+
+		case INSTANCE_DEPLOY:
+			MsgCmdInstanceDeploy instanceDeploy = (MsgCmdInstanceDeploy) message;
+			writer.writeString( instanceDeploy.getInstancePath());
+			Map<String,byte[]> files = instanceDeploy.getFileNameToFileContent();
+			writer.writeLength( files, files == null ? 0 : files.size());
+			if( files != null ) {
+				for( Map.Entry<String,byte[]> entry : files.entrySet()) {
+					writer.writeString( entry.getKey());
+					writer.writeBytes( entry.getValue());
+				}
+			}
+
+			writer.writeString( instanceDeploy.getResourcesHash());
+			break;
+
+		case INSTANCE_REMOVE:
+			writer.writeString(((MsgCmdInstanceRemove) message).getInstancePath());
+			break;
+
+		case INSTANCE_START:
+			writer.writeString(((MsgCmdInstanceStart) message).getInstancePath());
+			break;
+
+		case INSTANCE_STOP:
+			writer.writeString(((MsgCmdInstanceStop) message).getInstancePath());
+			break;
+
+		case INSTANCE_UNDEPLOY:
+			writer.writeString(((MsgCmdInstanceUndeploy) message).getInstancePath());
+			break;
+
+		case RESOURCES_MISSING:
+			MsgNotifResourcesMissing resourcesMissing = (MsgNotifResourcesMissing) message;
+			writer.writeString( resourcesMissing.getInstancePath());
+			writer.writeString( resourcesMissing.getResourcesHash());
+			writer.writeString( resourcesMissing.getResumeFileName());
+			writer.writeLong( resourcesMissing.getResumeOffset());
+			break;
+
+		case RESOURCE_CHUNK:
+			MsgCmdResourceChunk chunk = (MsgCmdResourceChunk) message;
+			writer.writeString( chunk.getResourcesHash());
+			writer.writeString( chunk.getFileName());
+			writer.writeVarInt( chunk.getFileIndex());
+			writer.writeLong( chunk.getFileSize());
+			writer.writeLong( chunk.getOffset());
+			writer.writeBytes( chunk.getData());
+			writer.writeLong( chunk.getChecksum());
+			writer.writeBoolean( chunk.isLast());
+			break;
+
+		case IMPORTS_RESYNC:
+			writer.writeString(((MsgCmdImportsResync) message).getInstancePath());
+			break;
+
+		default:
+			throw new IOException( "Unsupported message type: " + type );
+		}
+
+		return writer.toByteArray();
+	}
+
+
+	@Override
+	public Message decode( byte[] bytes ) throws IOException {
+
+		if( ! canDecode( bytes ))
+			throw new IOException( "These bytes were not encoded with the binary codec." );
+
+		// Version 2 added resource hashes, 3 resumable resources, 4 imports deltas, 5 the messaging codec
+		byte version = bytes[ 2 ];
+		if( version < MIN_SCHEMA_VERSION || version > SCHEMA_VERSION )
+			throw new IOException( "Unsupported schema version: " + version + " (expected " + MIN_SCHEMA_VERSION + " to " + SCHEMA_VERSION + ")." );
+
+		BinaryReader reader = new BinaryReader( bytes, HEADER_LENGTH );
+		Message result;
+		switch( bytes[ 3 ]) {
+		case IMPORT_ADD:
+			String componentOrFacetName = reader.readString();
+			String addedInstancePath = reader.readString();
+			result = new MsgCmdImportAdd( componentOrFacetName, addedInstancePath, reader.readStringMap());
+			break;
+
+		case IMPORT_REMOVE:
+			componentOrFacetName = reader.readString();
+			result = new MsgCmdImportRemove( componentOrFacetName, reader.readString());
+			break;
+
+		case IMPORT_REQUEST:
+			result = new MsgCmdImportRequest( reader.readString());
+			break;
+
+		case HEARTBEAT:
+			result = new MsgNotifHeartbeat( reader.readString());
+			break;
+
+		case INSTANCE_CHANGED:
+			result = readInstanceChanged( reader, version );
+			break;
+
+		case INSTANCES_CHANGED:
+			int count = reader.readLength( version < 4 ? 3 : 13 );
+			List<MsgNotifInstanceChanged> changes = new ArrayList<MsgNotifInstanceChanged> ();
+			for( int i=0; i<count; i++ )
+				changes.add( readInstanceChanged( reader, version ));
+
+			result = new MsgNotifInstancesChanged( changes );
+			break;
+
+		case INSTANCE_REMOVED:
+			result = new MsgNotifInstanceRemoved( reader.readString());
+			break;
+
+		case MACHINE_DOWN:
+			result = new MsgNotifMachineDown( reader.readString());
+			break;
+
+		case MACHINE_READY_TO_BE_DELETED:
+			result = new MsgNotifMachineReadyToBeDeleted( reader.readString());
+			break;
+
+		case MACHINE_UP:
+			String rootInstanceName = reader.readString();
+			result = new MsgNotifMachineUp( rootInstanceName, reader.readString());
+			break;
+
+		case FIREWALL_ADD:
+			String sourceIp = reader.readString();
+			String destIp = reader.readString();
+			result = new MsgCmdFirewallAdd( sourceIp, destIp, reader.readVarInt());
+			break;
+
+		case FIREWALL_REMOVE:
+			result = new MsgCmdFirewallRemove();
+			break;
+
+		case INSTANCE_ADD:
+			String parentInstancePath = reader.readString();
+			Instance instanceToAdd = readInstanceTree( reader );
+			result = new MsgCmdInstanceAdd( parentInstancePath, instanceToAdd, version < 5 ? null : reader.readString());
+			break;
+
+		case INSTANCE_DEPLOY:
+			String instancePath = reader.readString();
+			Map<String,byte[]> files = null;
+			int size = reader.readLength( 2 );
+			if( size >= 0 ) {
+				files = new HashMap<String,byte[]> ();
+				for( int i=0; i<size; i++ ) {
+					String fileName = reader.readString();
+					files.put( fileName, reader.readBytes());
+				}
+			}
+
+			result = new MsgCmdInstanceDeploy( instancePath, files, version < 2 ? null : reader.readString());
+			break;
+
+		case INSTANCE_REMOVE:
+			result = new MsgCmdInstanceRemove( reader.readString());
+			break;
+
+		case INSTANCE_START:
+			result = new MsgCmdInstanceStart( reader.readString());
+			break;
+
+		case INSTANCE_STOP:
+			result = new MsgCmdInstanceStop( reader.readString());
+			break;
+
+		case INSTANCE_UNDEPLOY:
+			result = new MsgCmdInstanceUndeploy( reader.readString());
+			break;
+
+		case RESOURCES_MISSING:
+			instancePath = reader.readString();
+			String resourcesHash = reader.readString();
+			if( version < 3 ) {
+				result = new MsgNotifResourcesMissing( instancePath, resourcesHash );
+
+			} else {
+				String resumeFileName = reader.readString();
+				result = new MsgNotifResourcesMissing( instancePath, resourcesHash, resumeFileName, reader.readLong());
+			}
+			break;
+
+		case RESOURCE_CHUNK:
+			resourcesHash = reader.readString();
+			String fileName = reader.readString();
+			int fileIndex = reader.readVarInt();
+			long fileSize = reader.readLong();
+			long offset = reader.readLong();
+			byte[] data = reader.readBytes();
+			long checksum = reader.readLong();
+			result = new MsgCmdResourceChunk( resourcesHash, fileName, fileIndex, fileSize, offset, data, checksum, reader.readBoolean());
+			break;
+
+		case IMPORTS_RESYNC:
+			result = new MsgCmdImportsResync( reader.readString());
+			break;
+
+		default:
+			throw new IOException( "Unknown message type: " + bytes[ 3 ]);
+		}
+
+		if( reader.hasRemaining())
+			throw new IOException( "Unexpected bytes at the end of the message." );
+
+		return result;
+	}
+
+
+	private static void writeInstanceChanged( BinaryWriter writer, MsgNotifInstanceChanged message ) {
+		writer.writeString( message.getInstancePath());
+		writeImports( writer, message.getNewImports());
+		writeStatus( writer, message.getNewStatus());
+		writeImports( writer, message.getAddedImports());
+		writeImports( writer, message.getRemovedImports());
+		writer.writeLong( message.getImportsVersion());
+	}
+
+
+	private static MsgNotifInstanceChanged readInstanceChanged( BinaryReader reader, byte version ) throws IOException {
+		String instancePath = reader.readString();
+		Map<String,Collection<Import>> imports = readImports( reader );
+		InstanceStatus status = readStatus( reader );
+		if( version < 4 )
+			return new MsgNotifInstanceChanged( instancePath, imports, status );
+
+		Map<String,Collection<Import>> addedImports = readImports( reader );
+		Map<String,Collection<Import>> removedImports = readImports( reader );
+		return new MsgNotifInstanceChanged( instancePath, imports, status, addedImports, removedImports, reader.readLong());
+	}
+
+
+	private static void writeStatus( BinaryWriter writer, InstanceStatus status ) {
+		writer.writeString( status == null ? null : status.toString());
+	}
+
+
+	private static InstanceStatus readStatus( BinaryReader reader ) throws IOException {
+		String s = reader.readString();
+		return s == null ? null : InstanceStatus.wichStatus( s );
+	}
+
+
+	private static void writeImports( BinaryWriter writer, Map<String,Collection<Import>> imports ) {
+
+		writer.writeLength( imports, imports == null ? 0 : imports.size());
+		if( imports != null ) {
+			for( Map.Entry<String,Collection<Import>> entry : imports.entrySet()) {
+				writer.writeString( entry.getKey());
+
+				Collection<Import> values = entry.getValue();
+				writer.writeLength( values, values == null ? 0 : values.size());
+				if( values != null ) {
+					for( Import imp : values ) {
+						writer.writeString( imp.getInstancePath());
+						writer.writeStringMap( imp.getExportedVars());
+					}
+				}
+			}
+		}
+	}
+
+
+	private static Map<String,Collection<Import>> readImports( BinaryReader reader ) throws IOException {
+
+		int size = reader.readLength( 2 );
+		Map<String,Collection<Import>> result = null;
+		if( size >= 0 ) {
+			result = new HashMap<String,Collection<Import>> ();
+			for( int i=0; i<size; i++ ) {
+				String key = reader.readString();
+				Collection<Import> values = null;
+				int count = reader.readLength( 2 );
+				if( count >= 0 ) {
+					values = new LinkedHashSet<Import> ();
+					for( int j=0; j<count; j++ ) {
+						String instancePath = reader.readString();
+						Map<String,String> exportedVars = reader.readStringMap();
+						values.add( new Import( instancePath, exportedVars ));
+					}
+				}
+
+				result.put( key, values );
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Writes an instance, its children, the names of its ancestors and their components.
+	 */
+	private static void writeInstanceTree( BinaryWriter writer, Instance instance ) {
+
+		writer.writeBoolean( instance != null );
+		if( instance != null ) {
+
+			// Ancestors' names, from the root
+			List<String> ancestorNames = new ArrayList<String> ();
+			for( Instance current = instance.getParent(); current != null; current = current.getParent())
+				ancestorNames.add( 0, current.getName());
+
+			writer.writeStrings( ancestorNames );
+
+			// Components
+			Map<Component,Integer> componentToIndex = new IdentityHashMap<Component,Integer> ();
+			List<Component> components = new ArrayList<Component> ();
+			for( Instance inst : InstanceHelpers.buildHierarchicalList( instance ))
+				indexComponents( inst.getComponent(), componentToIndex, components );
+
+			writer.writeVarInt( components.size());
+			for( Component component : components ) {
+				writer.writeString( component.getName());
+				writer.writeString( component.getAlias());
+				writer.writeString( component.getInstallerName());
+				writer.writeString( component.getIconLocation());
+				writer.writeStrings( component.getFacetNames());
+				writer.writeStringMap( component.getExportedVariables());
+
+				writer.writeVarInt( component.getImportedVariables().size());
+				for( Map.Entry<String,Boolean> entry : component.getImportedVariables().entrySet()) {
+					writer.writeString( entry.getKey());
+					writer.writeBoolean( entry.getValue() != null && entry.getValue());
+				}
+			}
+
+			// Relations between components
+			for( Component component : components ) {
+				writer.writeVarInt( component.getChildren().size());
+				for( Component child : component.getChildren())
+					writer.writeVarInt( componentToIndex.get( child ));
+
+				writer.writeVarInt( component.getAncestors().size());
+				for( Component ancestor : component.getAncestors())
+					writer.writeVarInt( componentToIndex.get( ancestor ));
+			}
+
+			// Instances
+			writeInstance( writer, instance, componentToIndex );
+		}
+	}
+
+
+	private static Instance readInstanceTree( BinaryReader reader ) throws IOException {
+
+		Instance result = null;
+		if( reader.readBoolean()) {
+
+			// Ancestors are placeholders: they only carry names
+			Instance parent = null;
+			List<String> ancestorNames = reader.readStrings();
+			if( ancestorNames == null )
+				throw new IOException( "Invalid instance ancestors." );
+
+			for( String name : ancestorNames ) {
+				Instance ancestor = new Instance( name );
+				if( parent != null )
+					InstanceHelpers.insertChild( parent, ancestor );
+
+				parent = ancestor;
+			}
+
+			// Components
+			int count = reader.readCount( 1 );
+			List<Component> components = new ArrayList<Component>( count );
+			for( int i=0; i<count; i++ ) {
+				Component component = new Component( reader.readString());
+				component.setAlias( reader.readString());
+				component.setInstallerName( reader.readString());
+				component.setIconLocation( reader.readString());
+				reader.readStringsInto( component.getFacetNames());
+				reader.readStringMapInto( component.getExportedVariables());
+
+				int size = reader.readCount( 2 );
+				for( int j=0; j<size; j++ ) {
+					String key = reader.readString();
+					component.getImportedVariables().put( key, reader.readBoolean());
+				}
+
+				components.add( component );
+			}
+
+			for( Component component : components ) {
+				int size = reader.readCount( 1 );
+				for( int j=0; j<size; j++ )
+					component.getChildren().add( findComponent( components, reader.readVarInt()));
+
+				size = reader.readCount( 1 );
+				for( int j=0; j<size; j++ )
+					component.getAncestors().add( findComponent( components, reader.readVarInt()));
+			}
+
+			// Instances
+			result = readInstance( reader, parent, components );
+		}
+
+		return result;
+	}
+
+
+	private static void indexComponents( Component component, Map<Component,Integer> componentToIndex, List<Component> components ) {
+
+		List<Component> toProcess = new ArrayList<Component> ();
+		if( component != null )
+			toProcess.add( component );
+
+		while( ! toProcess.isEmpty()) {
+			Component current = toProcess.remove( 0 );
+			if( componentToIndex.containsKey( current ))
+				continue;
+
+			componentToIndex.put( current, components.size());
+			components.add( current );
+			toProcess.addAll( current.getChildren());
+			toProcess.addAll( current.getAncestors());
+		}
+	}
+
+
+	private static Component findComponent( List<Component> components, int index ) throws IOException {
+
+		if( index < 0 || index >= components.size())
+			throw new IOException( "Invalid component index: " + index );
+
+		return components.get( index );
+	}
+
+
+	private static void writeInstance( BinaryWriter writer, Instance instance, Map<Component,Integer> componentToIndex ) {
+
+		writer.writeString( instance.getName());
+		writer.writeString( instance.getChannel());
+
+		Component component = instance.getComponent();
+		writer.writeVarInt( component == null ? 0 : componentToIndex.get( component ) + 1 );
+
+		writeStatus( writer, instance.getStatus());
+		synchronized( instance.getData()) {
+			writer.writeStringMap( instance.getData());
+		}
+
+		writer.writeStringMap( instance.getOverriddenExports());
+		writer.writeStringMap( instance.getExports());
+		writeImports( writer, instance.getImports());
+
+		writer.writeVarInt( instance.getChildren().size());
+		for( Instance child : instance.getChildren())
+			writeInstance( writer, child, componentToIndex );
+	}
+
+
+	private static Instance readInstance( BinaryReader reader, Instance parent, List<Component> components )
+	throws IOException {
+
+		Instance instance = new Instance( reader.readString());
+		instance.setChannel( reader.readString());
+
+		int componentIndex = reader.readVarInt();
+		if( componentIndex > 0 )
+			instance.setComponent( findComponent( components, componentIndex - 1 ));
+
+		InstanceStatus status = readStatus( reader );
+		if( status != null )
+			instance.setStatus( status );
+
+		reader.readStringMapInto( instance.getData());
+		reader.readStringMapInto( instance.getOverriddenExports());
+		reader.readStringMapInto( instance.getExports());
+
+		Map<String,Collection<Import>> imports = readImports( reader );
+		if( imports != null )
+			instance.updateImports( imports );
+
+		// The parent must be set before the instance is added into a hash-based collection
+		if( parent != null )
+			InstanceHelpers.insertChild( parent, instance );
+
+		int childrenCount = reader.readCount( 1 );
+		for( int i=0; i<childrenCount; i++ )
+			readInstance( reader, instance, components );
+
+		return instance;
+	}
+}
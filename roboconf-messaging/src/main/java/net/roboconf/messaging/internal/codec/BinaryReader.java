@@ -0,0 +1,214 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.codec;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads primitive values written by {@link BinaryWriter}.
+ * <p>
+ * Malformed or truncated inputs result in an {@link IOException}.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+final class BinaryReader {
+
+	private final byte[] bytes;
+	private int position;
+
+
+	/**
+	 * Constructor.
+	 * @param bytes the bytes to read
+	 * @param position the position to start reading from
+	 */
+	BinaryReader( byte[] bytes, int position ) {
+		this.bytes = bytes;
+		this.position = position;
+	}
+
+
+	int readByte() throws IOException {
+
+		if( this.position >= this.bytes.length )
+			throw new EOFException( "Unexpected end of message." );
+
+		return this.bytes[ this.position ++ ] & 0xFF;
+	}
+
+
+	boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+
+	int readVarInt() throws IOException {
+
+		int result = 0;
+		for( int shift = 0; shift < 32; shift += 7 ) {
+			int b = readByte();
+			result |= ( b & 0x7F ) << shift;
+			if(( b & 0x80 ) == 0 )
+				return result;
+		}
+
+		throw new IOException( "Malformed variable-length integer." );
+	}
+
+
+	long readLong() throws IOException {
+
+		long result = 0;
+		for( int i=0; i<8; i++ )
+			result = ( result << 8 ) | readByte();
+
+		return result;
+	}
+
+
+	/**
+	 * Reads a length written by {@link BinaryWriter#writeLength(Object, int)}.
+	 * @param minBytesPerItem the minimal number of bytes each item takes
+	 * @return the length, or -1 for null
+	 * @throws IOException if the length is invalid
+	 */
+	int readLength( int minBytesPerItem ) throws IOException {
+
+		int length = readVarInt() - 1;
+		if( length < -1
+				|| (long) length * minBytesPerItem > this.bytes.length - this.position )
+			throw new IOException( "Invalid length in message: " + length );
+
+		return length;
+	}
+
+
+	/**
+	 * Reads a number of items written with {@link BinaryWriter#writeVarInt(int)}.
+	 * @param minBytesPerItem the minimal number of bytes each item takes
+	 * @return a positive number
+	 * @throws IOException if the number is invalid
+	 */
+	int readCount( int minBytesPerItem ) throws IOException {
+
+		int count = readVarInt();
+		if( count < 0
+				|| (long) count * minBytesPerItem > this.bytes.length - this.position )
+			throw new IOException( "Invalid count in message: " + count );
+
+		return count;
+	}
+
+
+	byte[] readBytes() throws IOException {
+
+		int length = readLength( 1 );
+		byte[] result = null;
+		if( length >= 0 ) {
+			result = new byte[ length ];
+			System.arraycopy( this.bytes, this.position, result, 0, length );
+			this.position += length;
+		}
+
+		return result;
+	}
+
+
+	String readString() throws IOException {
+
+		int length = readLength( 1 );
+		String result = null;
+		if( length >= 0 ) {
+			result = new String( this.bytes, this.position, length, BinaryWriter.UTF_8 );
+			this.position += length;
+		}
+
+		return result;
+	}
+
+
+	List<String> readStrings() throws IOException {
+
+		int size = readLength( 1 );
+		List<String> result = null;
+		if( size >= 0 ) {
+			result = new ArrayList<String>( size );
+			for( int i=0; i<size; i++ )
+				result.add( readString());
+		}
+
+		return result;
+	}
+
+
+	Map<String,String> readStringMap() throws IOException {
+
+		int size = readLength( 2 );
+		Map<String,String> result = null;
+		if( size >= 0 ) {
+			result = new HashMap<String,String>( Math.max( 4, size * 4 / 3 + 1 ));
+			readStringMapEntries( result, size );
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Reads a map and copies its entries into an existing map.
+	 * @param target the map to fill (not null)
+	 * @throws IOException
+	 */
+	void readStringMapInto( Map<String,String> target ) throws IOException {
+
+		int size = readLength( 2 );
+		readStringMapEntries( target, size );
+	}
+
+
+	/**
+	 * Reads a collection of strings and copies them into an existing collection.
+	 * @param target the collection to fill (not null)
+	 * @throws IOException
+	 */
+	void readStringsInto( Collection<String> target ) throws IOException {
+
+		int size = readLength( 1 );
+		for( int i=0; i<size; i++ )
+			target.add( readString());
+	}
+
+
+	boolean hasRemaining() {
+		return this.position < this.bytes.length;
+	}
+
+
+	private void readStringMapEntries( Map<String,String> target, int size ) throws IOException {
+		for( int i=0; i<size; i++ ) {
+			String key = readString();
+			target.put( key, readString());
+		}
+	}
+}
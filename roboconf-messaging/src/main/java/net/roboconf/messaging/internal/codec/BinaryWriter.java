@@ -0,0 +1,136 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.codec;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes primitive values in the binary format of {@link BinaryMessageCodec}.
+ * <p>
+ * Integers are written as variable-length integers. Strings, arrays, collections
+ * and maps are prefixed by their length plus one, so that zero means null.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+final class BinaryWriter {
+
+	static final Charset UTF_8 = Charset.forName( "UTF-8" );
+
+	private byte[] buffer;
+	private int count = 0;
+
+
+	/**
+	 * Constructor.
+	 * @param initialCapacity the initial capacity of the buffer
+	 */
+	BinaryWriter( int initialCapacity ) {
+		this.buffer = new byte[ initialCapacity ];
+	}
+
+
+	void writeByte( int b ) {
+		ensureCapacity( 1 );
+		this.buffer[ this.count ++ ] = (byte) b;
+	}
+
+
+	void writeBoolean( boolean b ) {
+		writeByte( b ? 1 : 0 );
+	}
+
+
+	void writeVarInt( int value ) {
+
+		ensureCapacity( 5 );
+		int v = value;
+		while(( v & ~0x7F ) != 0 ) {
+			this.buffer[ this.count ++ ] = (byte) (( v & 0x7F ) | 0x80 );
+			v >>>= 7;
+		}
+
+		this.buffer[ this.count ++ ] = (byte) v;
+	}
+
+
+	void writeLong( long value ) {
+
+		ensureCapacity( 8 );
+		for( int shift = 56; shift >= 0; shift -= 8 )
+			this.buffer[ this.count ++ ] = (byte) ( value >>> shift );
+	}
+
+
+	void writeLength( Object object, int length ) {
+		writeVarInt( object == null ? 0 : length + 1 );
+	}
+
+
+	void writeBytes( byte[] bytes ) {
+
+		writeLength( bytes, bytes == null ? 0 : bytes.length );
+		if( bytes != null ) {
+			ensureCapacity( bytes.length );
+			System.arraycopy( bytes, 0, this.buffer, this.count, bytes.length );
+			this.count += bytes.length;
+		}
+	}
+
+
+	void writeString( String s ) {
+		writeBytes( s == null ? null : s.getBytes( UTF_8 ));
+	}
+
+
+	void writeStrings( Collection<String> strings ) {
+
+		writeLength( strings, strings == null ? 0 : strings.size());
+		if( strings != null ) {
+			for( String s : strings )
+				writeString( s );
+		}
+	}
+
+
+	void writeStringMap( Map<String,String> map ) {
+
+		writeLength( map, map == null ? 0 : map.size());
+		if( map != null ) {
+			for( Map.Entry<String,String> entry : map.entrySet()) {
+				writeString( entry.getKey());
+				writeString( entry.getValue());
+			}
+		}
+	}
+
+
+	byte[] toByteArray() {
+		return Arrays.copyOf( this.buffer, this.count );
+	}
+
+
+	private void ensureCapacity( int additionalBytes ) {
+
+		int required = this.count + additionalBytes;
+		if( required > this.buffer.length )
+			this.buffer = Arrays.copyOf( this.buffer, Math.max( required, this.buffer.length * 2 ));
+	}
+}
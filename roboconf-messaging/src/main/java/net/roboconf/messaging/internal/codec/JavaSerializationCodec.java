@@ -0,0 +1,81 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.codec;
+
+import java.io.IOException;
+import java.io.ObjectStreamConstants;
+
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.codec.MessageCodecs;
+import net.roboconf.messaging.internal.utils.SerializationUtils;
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * A codec based on Java serialization.
+ * <p>
+ * It supports all the messages. Encoded messages are recognized
+ * thanks to the header of Java serialization streams.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class JavaSerializationCodec implements IMessageCodec {
+
+	@Override
+	public String getName() {
+		return MessageCodecs.JAVA_SERIALIZATION;
+	}
+
+
+	@Override
+	public boolean canEncode( Message message ) {
+		return true;
+	}
+
+
+	@Override
+	public boolean canDecode( byte[] bytes ) {
+		return bytes.length > 1
+				&& bytes[ 0 ] == (byte) (ObjectStreamConstants.STREAM_MAGIC >> 8)
+				&& bytes[ 1 ] == (byte) ObjectStreamConstants.STREAM_MAGIC;
+	}
+
+
+	@Override
+	public byte[] encode( Message message ) throws IOException {
+		return SerializationUtils.serializeObject( message );
+	}
+
+
+	@Override
+	public Message decode( byte[] bytes ) throws IOException {
+
+		try {
+			return SerializationUtils.deserializeObject( bytes );
+
+		} catch( ClassNotFoundException e ) {
+			IOException ioe = new IOException( "A message could not be deserialized. Class not found." );
+			ioe.initCause( e );
+			throw ioe;
+
+		} catch( ClassCastException e ) {
+			IOException ioe = new IOException( "The deserialized object is not a message." );
+			ioe.initCause( e );
+			throw ioe;
+		}
+	}
+}
@@ -26,6 +26,16 @@ import net.roboconf.core.model.runtime.Instance.InstanceStatus;
 import net.roboconf.messaging.messages.Message;
 
 /**
+ * Notifies the DM that an instance changed.
+ * <p>
+ * Imports can be sent in two ways. Either all the imports of the instance are sent
+ * (see {@link #getNewImports()}), or only the imports that were added and removed since
+ * the previous notification (see {@link #getAddedImports()} and {@link #getRemovedImports()}).
+ * In both cases, the imports version identifies the state of the imports after the change.
+ * A delta can only be applied on the previous version. A version of 0 means the imports
+ * are not versioned.
+ * </p>
+ *
  * @author Noël - LIG
  */
 public class MsgNotifInstanceChanged extends Message {
@@ -34,6 +44,8 @@ public class MsgNotifInstanceChanged extends Message {
 
 	private final String instancePath;
 	private final Map<String,Collection<Import>> newImports;
+	private final Map<String,Collection<Import>> addedImports, removedImports;
+	private final long importsVersion;
 	private InstanceStatus newStatus;
 
 
@@ -46,6 +58,45 @@ public class MsgNotifInstanceChanged extends Message {
 		this.instancePath = InstanceHelpers.computeInstancePath( instance );
 		this.newImports = instance.getImports();
 		this.newStatus = instance.getStatus();
+		this.addedImports = null;
+		this.removedImports = null;
+		this.importsVersion = 0;
+	}
+
+	/**
+	 * Constructor.
+	 * @param instancePath the instance path
+	 * @param newImports the new imports
+	 * @param newStatus the new status
+	 */
+	public MsgNotifInstanceChanged( String instancePath, Map<String,Collection<Import>> newImports, InstanceStatus newStatus ) {
+		this( instancePath, newImports, newStatus, null, null, 0 );
+	}
+
+	/**
+	 * Constructor.
+	 * @param instancePath the instance path
+	 * @param newImports all the imports (null if they were not sent)
+	 * @param newStatus the new status
+	 * @param addedImports the added imports (null if there is no delta)
+	 * @param removedImports the removed imports (null if there is no delta)
+	 * @param importsVersion the version of the imports after this change (0 if not versioned)
+	 */
+	public MsgNotifInstanceChanged(
+			String instancePath,
+			Map<String,Collection<Import>> newImports,
+			InstanceStatus newStatus,
+			Map<String,Collection<Import>> addedImports,
+			Map<String,Collection<Import>> removedImports,
+			long importsVersion ) {
+
+		super();
+		this.instancePath = instancePath;
+		this.newImports = newImports;
+		this.newStatus = newStatus;
+		this.addedImports = addedImports;
+		this.removedImports = removedImports;
+		this.importsVersion = importsVersion;
 	}
 
 	/**
@@ -62,6 +113,34 @@ public class MsgNotifInstanceChanged extends Message {
 		return this.newImports;
 	}
 
+	/**
+	 * @return the imports added since the previous version (can be null)
+	 */
+	public Map<String,Collection<Import>> getAddedImports() {
+		return this.addedImports;
+	}
+
+	/**
+	 * @return the imports removed since the previous version (can be null)
+	 */
+	public Map<String,Collection<Import>> getRemovedImports() {
+		return this.removedImports;
+	}
+
+	/**
+	 * @return the version of the imports after this change (0 if not versioned)
+	 */
+	public long getImportsVersion() {
+		return this.importsVersion;
+	}
+
+	/**
+	 * @return true if this message contains a delta of imports
+	 */
+	public boolean isImportsDelta() {
+		return this.addedImports != null || this.removedImports != null;
+	}
+
 	/**
 	 * @return the newStatus
 	 */
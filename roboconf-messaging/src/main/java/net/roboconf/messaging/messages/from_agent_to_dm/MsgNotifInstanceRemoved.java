@@ -39,6 +39,15 @@ public class MsgNotifInstanceRemoved extends Message {
 		this.instancePath = InstanceHelpers.computeInstancePath( instance );
 	}
 
+	/**
+	 * Constructor.
+	 * @param instancePath the instance path
+	 */
+	public MsgNotifInstanceRemoved( String instancePath ) {
+		super();
+		this.instancePath = instancePath;
+	}
+
 	/**
 	 * @return the instancePath
 	 */
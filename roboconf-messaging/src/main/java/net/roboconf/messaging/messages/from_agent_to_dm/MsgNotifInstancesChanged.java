@@ -0,0 +1,55 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.messages.from_agent_to_dm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * A batch of changes for several instances of a same agent.
+ * <p>
+ * Changes are applied in the order of the list. In a change, null imports
+ * mean the imports of the instance did not change.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class MsgNotifInstancesChanged extends Message {
+
+	private static final long serialVersionUID = 3151432858473524870L;
+	private final List<MsgNotifInstanceChanged> changes;
+
+
+	/**
+	 * Constructor.
+	 * @param changes the changes (not null)
+	 */
+	public MsgNotifInstancesChanged( Collection<MsgNotifInstanceChanged> changes ) {
+		super();
+		this.changes = new ArrayList<MsgNotifInstanceChanged>( changes );
+	}
+
+	/**
+	 * @return the changes (not null)
+	 */
+	public List<MsgNotifInstanceChanged> getChanges() {
+		return this.changes;
+	}
+}
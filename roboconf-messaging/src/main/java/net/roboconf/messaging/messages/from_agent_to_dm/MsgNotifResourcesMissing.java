@@ -0,0 +1,90 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.messages.from_agent_to_dm;
+
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * A message sent by an agent when it was asked to deploy an instance
+ * with resources it does not hold.
+ * <p>
+ * The DM is expected to send the deployment request again, with the resources.
+ * If the resources were being sent in chunks, the transfer can be resumed from a given
+ * file and offset. Otherwise, the resume file is null.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class MsgNotifResourcesMissing extends Message {
+
+	private static final long serialVersionUID = -2851683207409576226L;
+	private final String instancePath, resourcesHash, resumeFileName;
+	private final long resumeOffset;
+
+
+	/**
+	 * Constructor.
+	 * @param instancePath the path of the instance to deploy
+	 * @param resourcesHash the hash of the missing resources
+	 */
+	public MsgNotifResourcesMissing( String instancePath, String resourcesHash ) {
+		this( instancePath, resourcesHash, null, 0 );
+	}
+
+	/**
+	 * Constructor.
+	 * @param instancePath the path of the instance to deploy
+	 * @param resourcesHash the hash of the missing resources
+	 * @param resumeFileName the file from which the transfer should be resumed (null to send everything)
+	 * @param resumeOffset the offset in this file
+	 */
+	public MsgNotifResourcesMissing( String instancePath, String resourcesHash, String resumeFileName, long resumeOffset ) {
+		super();
+		this.instancePath = instancePath;
+		this.resourcesHash = resourcesHash;
+		this.resumeFileName = resumeFileName;
+		this.resumeOffset = resumeOffset;
+	}
+
+	/**
+	 * @return the path of the instance to deploy
+	 */
+	public String getInstancePath() {
+		return this.instancePath;
+	}
+
+	/**
+	 * @return the hash of the missing resources
+	 */
+	public String getResourcesHash() {
+		return this.resourcesHash;
+	}
+
+	/**
+	 * @return the file from which the transfer should be resumed (null to send everything)
+	 */
+	public String getResumeFileName() {
+		return this.resumeFileName;
+	}
+
+	/**
+	 * @return the offset in the resume file
+	 */
+	public long getResumeOffset() {
+		return this.resumeOffset;
+	}
+}
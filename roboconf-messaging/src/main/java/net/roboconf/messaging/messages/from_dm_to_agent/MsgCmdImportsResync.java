@@ -0,0 +1,50 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.messages.from_dm_to_agent;
+
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * Asks an agent to send all the imports of an instance.
+ * <p>
+ * The DM sends it when it missed an import delta.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class MsgCmdImportsResync extends Message {
+
+	private static final long serialVersionUID = -2744164573532370981L;
+	private final String instancePath;
+
+
+	/**
+	 * Constructor.
+	 * @param instancePath
+	 */
+	public MsgCmdImportsResync( String instancePath ) {
+		super();
+		this.instancePath = instancePath;
+	}
+
+	/**
+	 * @return the instancePath
+	 */
+	public String getInstancePath() {
+		return this.instancePath;
+	}
+}
@@ -27,6 +27,7 @@ public class MsgCmdInstanceAdd extends Message {
 	private static final long serialVersionUID = 411037586577734609L;
 	private final Instance instanceToAdd;
 	private final String parentInstancePath;
+	private final String messagingCodec;
 
 	/**
 	 * Constructor.
@@ -34,9 +35,20 @@ public class MsgCmdInstanceAdd extends Message {
 	 * @param parentInstancePath
 	 */
 	public MsgCmdInstanceAdd( String parentInstancePath, Instance instanceToAdd ) {
+		this( parentInstancePath, instanceToAdd, null );
+	}
+
+	/**
+	 * Constructor.
+	 * @param parentInstancePath
+	 * @param instanceToAdd
+	 * @param messagingCodec the name of the codec the agent must use (can be null)
+	 */
+	public MsgCmdInstanceAdd( String parentInstancePath, Instance instanceToAdd, String messagingCodec ) {
 		super();
 		this.instanceToAdd = instanceToAdd;
 		this.parentInstancePath = parentInstancePath;
+		this.messagingCodec = messagingCodec;
 	}
 
 	/**
@@ -52,4 +64,11 @@ public class MsgCmdInstanceAdd extends Message {
 	public String getParentInstancePath() {
 		return this.parentInstancePath;
 	}
+
+	/**
+	 * @return the name of the codec the agent must use (null to keep the current one)
+	 */
+	public String getMessagingCodec() {
+		return this.messagingCodec;
+	}
 }
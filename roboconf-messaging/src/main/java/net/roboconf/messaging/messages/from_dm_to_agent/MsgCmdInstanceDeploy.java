@@ -21,13 +21,21 @@ import java.util.Map;
 import net.roboconf.messaging.messages.Message;
 
 /**
+ * A message asking an agent to deploy an instance.
+ * <p>
+ * Resources are identified by a content hash. When the agent already holds the resources
+ * associated with this hash, the DM does not send them again: the file map is null.
+ * If the agent does not find them, it answers with a
+ * {@link net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifResourcesMissing} message.
+ * </p>
+ *
  * @author Noël - LIG
  * FIXME: is there a better way to transmit model files instead of a byte array?
  */
 public class MsgCmdInstanceDeploy extends Message {
 
 	private static final long serialVersionUID = 411037586577734609L;
-	private final String instancePath;
+	private final String instancePath, resourcesHash;
 	private final Map<String,byte[]> fileNameToFileContent;
 
 	/**
@@ -36,9 +44,20 @@ public class MsgCmdInstanceDeploy extends Message {
 	 * @param fileNameToFileContent
 	 */
 	public MsgCmdInstanceDeploy( String instancePath, Map<String, byte[]> fileNameToFileContent ) {
+		this( instancePath, fileNameToFileContent, null );
+	}
+
+	/**
+	 * Constructor.
+	 * @param instancePath the instance path
+	 * @param fileNameToFileContent the resources (null if the agent already holds them)
+	 * @param resourcesHash the hash of the resources (can be null)
+	 */
+	public MsgCmdInstanceDeploy( String instancePath, Map<String, byte[]> fileNameToFileContent, String resourcesHash ) {
 		super();
 		this.instancePath = instancePath;
 		this.fileNameToFileContent = fileNameToFileContent;
+		this.resourcesHash = resourcesHash;
 	}
 
 	/**
@@ -49,9 +68,16 @@ public class MsgCmdInstanceDeploy extends Message {
 	}
 
 	/**
-	 * @return a map associating file names with their content
+	 * @return a map associating file names with their content (null if the agent already holds them)
 	 */
 	public Map<String,byte[]> getFileNameToFileContent() {
 		return this.fileNameToFileContent;
 	}
+
+	/**
+	 * @return the hash of the resources (can be null)
+	 */
+	public String getResourcesHash() {
+		return this.resourcesHash;
+	}
 }
@@ -0,0 +1,134 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.messages.from_dm_to_agent;
+
+import net.roboconf.messaging.messages.Message;
+
+/**
+ * A message carrying a part of the resources to deploy.
+ * <p>
+ * Large resources are not sent within a {@link MsgCmdInstanceDeploy} message.
+ * They are split into chunks, sent in order (file after file, sorted by name),
+ * and written to disk by the agent as they arrive. The deployment request
+ * comes after the last chunk, without files.
+ * </p>
+ * <p>
+ * Every chunk has a checksum (see {@link net.roboconf.messaging.utils.MessagingUtils#computeChunkChecksum(byte[])}).
+ * When a chunk is missing or corrupted, the agent can ask the DM to resume
+ * the transfer from a given file and offset.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class MsgCmdResourceChunk extends Message {
+
+	private static final long serialVersionUID = 6204855318245710453L;
+	private final String resourcesHash, fileName;
+	private final int fileIndex;
+	private final long fileSize, offset, checksum;
+	private final byte[] data;
+	private final boolean last;
+
+
+	/**
+	 * Constructor.
+	 * @param resourcesHash the hash of the resources this chunk belongs to
+	 * @param fileName the name of the file this chunk belongs to
+	 * @param fileIndex the position of this file in the resources (sorted by name)
+	 * @param fileSize the size of this file
+	 * @param offset the position of this chunk in the file
+	 * @param data the content of this chunk
+	 * @param checksum the checksum of the content
+	 * @param last true if this is the last chunk of the resources
+	 */
+	public MsgCmdResourceChunk(
+			String resourcesHash,
+			String fileName,
+			int fileIndex,
+			long fileSize,
+			long offset,
+			byte[] data,
+			long checksum,
+			boolean last ) {
+
+		super();
+		this.resourcesHash = resourcesHash;
+		this.fileName = fileName;
+		this.fileIndex = fileIndex;
+		this.fileSize = fileSize;
+		this.offset = offset;
+		this.data = data;
+		this.checksum = checksum;
+		this.last = last;
+	}
+
+	/**
+	 * @return the hash of the resources this chunk belongs to
+	 */
+	public String getResourcesHash() {
+		return this.resourcesHash;
+	}
+
+	/**
+	 * @return the name of the file this chunk belongs to
+	 */
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	/**
+	 * @return the position of the file this chunk belongs to (sorted by name)
+	 */
+	public int getFileIndex() {
+		return this.fileIndex;
+	}
+
+	/**
+	 * @return the size of the file this chunk belongs to
+	 */
+	public long getFileSize() {
+		return this.fileSize;
+	}
+
+	/**
+	 * @return the position of this chunk in the file
+	 */
+	public long getOffset() {
+		return this.offset;
+	}
+
+	/**
+	 * @return the content of this chunk
+	 */
+	public byte[] getData() {
+		return this.data;
+	}
+
+	/**
+	 * @return the checksum of the content
+	 */
+	public long getChecksum() {
+		return this.checksum;
+	}
+
+	/**
+	 * @return true if this is the last chunk of the resources
+	 */
+	public boolean isLast() {
+		return this.last;
+	}
+}
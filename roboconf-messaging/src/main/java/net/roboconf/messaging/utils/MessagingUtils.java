@@ -16,6 +16,20 @@
 
 package net.roboconf.messaging.utils;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.Instance;
 
@@ -53,4 +67,121 @@ public final class MessagingUtils {
 	public static String buildRoutingKeyToDm() {
 		return "dm";
 	}
+
+
+	/**
+	 * Computes a hash that identifies a set of resource files.
+	 * <p>
+	 * The hash only depends on the file names and on their content.
+	 * It does not depend on the order of the map entries.
+	 * </p>
+	 *
+	 * @param fileNameToFileContent a map associating file names with their content (not null)
+	 * @return a non-null string (SHA-256, in hexadecimal)
+	 */
+	public static String computeResourcesHash( Map<String,byte[]> fileNameToFileContent ) {
+
+		MessageDigest digest = newDigest();
+		List<String> fileNames = new ArrayList<String>( fileNameToFileContent.keySet());
+		Collections.sort( fileNames );
+		for( String fileName : fileNames ) {
+			byte[] content = fileNameToFileContent.get( fileName );
+			digest.update( toBytes( fileName ));
+			digest.update( toBytes( String.valueOf( content.length )));
+			digest.update( content );
+		}
+
+		return toHexadecimal( digest.digest());
+	}
+
+
+	/**
+	 * Computes a hash that identifies a set of resource files, without loading them in memory.
+	 * <p>
+	 * The result is the same than {@link #computeResourcesHash(Map)} for the same content.
+	 * </p>
+	 *
+	 * @param fileNameToFile a map associating file names with files (not null)
+	 * @return a non-null string (SHA-256, in hexadecimal)
+	 * @throws IOException if a file could not be read
+	 */
+	public static String computeResourcesHashFromFiles( Map<String,File> fileNameToFile ) throws IOException {
+
+		MessageDigest digest = newDigest();
+		List<String> fileNames = new ArrayList<String>( fileNameToFile.keySet());
+		Collections.sort( fileNames );
+
+		byte[] buffer = new byte[ 8192 ];
+		for( String fileName : fileNames ) {
+			File f = fileNameToFile.get( fileName );
+			digest.update( toBytes( fileName ));
+			digest.update( toBytes( String.valueOf( f.length())));
+
+			InputStream in = null;
+			try {
+				in = new FileInputStream( f );
+				for( int read = in.read( buffer ); read != -1; read = in.read( buffer ))
+					digest.update( buffer, 0, read );
+
+			} finally {
+				Utils.closeQuietly( in );
+			}
+		}
+
+		return toHexadecimal( digest.digest());
+	}
+
+
+	/**
+	 * Computes the checksum of a resource chunk.
+	 * @param data the chunk content (not null)
+	 * @return the checksum (CRC-32)
+	 */
+	public static long computeChunkChecksum( byte[] data ) {
+
+		CRC32 crc = new CRC32();
+		crc.update( data );
+		return crc.getValue();
+	}
+
+
+	private static MessageDigest newDigest() {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance( "SHA-256" );
+
+		} catch( NoSuchAlgorithmException e ) {
+			// Every JVM must support SHA-256
+			throw new IllegalStateException( e );
+		}
+
+		return digest;
+	}
+
+
+	private static String toHexadecimal( byte[] bytes ) {
+
+		StringBuilder sb = new StringBuilder();
+		for( byte b : bytes )
+			sb.append( String.format( "%02x", b & 0xFF ));
+
+		return sb.toString();
+	}
+
+
+	private static byte[] toBytes( String s ) {
+
+		// Separate the fields, so that ("ab", "c") and ("a", "bc") differ
+		byte[] bytes;
+		try {
+			bytes = ( s + "\0" ).getBytes( "UTF-8" );
+
+		} catch( UnsupportedEncodingException e ) {
+			// Every JVM must support UTF-8
+			throw new IllegalStateException( e );
+		}
+
+		return bytes;
+	}
 }
@@ -0,0 +1,139 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class OrderedMessageDispatcherTest {
+
+	private OrderedMessageDispatcher dispatcher;
+
+
+	@After
+	public void shutdownDispatcher() {
+		if( this.dispatcher != null )
+			this.dispatcher.shutdown();
+	}
+
+
+	@Test
+	public void testOrderIsKeptForEveryKey() throws Exception {
+
+		this.dispatcher = new OrderedMessageDispatcher( 4, "test" );
+		final int keysCount = 50, tasksPerKey = 200;
+		final CountDownLatch latch = new CountDownLatch( keysCount * tasksPerKey );
+
+		final Map<String,List<Integer>> keyToProcessedTasks = new HashMap<String,List<Integer>> ();
+		for( int i=0; i<keysCount; i++ )
+			keyToProcessedTasks.put( "key-" + i, Collections.synchronizedList( new ArrayList<Integer> ()));
+
+		for( int j=0; j<tasksPerKey; j++ ) {
+			for( int i=0; i<keysCount; i++ ) {
+				final List<Integer> processedTasks = keyToProcessedTasks.get( "key-" + i );
+				final int index = j;
+				this.dispatcher.dispatch( "key-" + i, new Runnable() {
+					@Override
+					public void run() {
+						processedTasks.add( index );
+						latch.countDown();
+					}
+				});
+			}
+		}
+
+		Assert.assertTrue( latch.await( 10, TimeUnit.SECONDS ));
+		for( List<Integer> processedTasks : keyToProcessedTasks.values()) {
+			Assert.assertEquals( tasksPerKey, processedTasks.size());
+			for( int j=0; j<tasksPerKey; j++ )
+				Assert.assertEquals( j, processedTasks.get( j ).intValue());
+		}
+
+		Assert.assertEquals( 0, this.dispatcher.getPendingTasksCount());
+	}
+
+
+	@Test
+	public void testDifferentKeysAreProcessedInParallel() throws Exception {
+
+		this.dispatcher = new OrderedMessageDispatcher( 16, "test" );
+
+		// Find two keys that use different lanes
+		String key1 = "agent-1", key2 = null;
+		for( int i=2; key2 == null; i++ ) {
+			if( this.dispatcher.findLane( "agent-" + i ) != this.dispatcher.findLane( key1 ))
+				key2 = "agent-" + i;
+		}
+
+		// The first task blocks until the second one has been executed
+		final CountDownLatch secondTaskDone = new CountDownLatch( 1 );
+		final CountDownLatch firstTaskDone = new CountDownLatch( 1 );
+		this.dispatcher.dispatch( key1, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					if( secondTaskDone.await( 5, TimeUnit.SECONDS ))
+						firstTaskDone.countDown();
+
+				} catch( InterruptedException e ) {
+					// nothing
+				}
+			}
+		});
+
+		this.dispatcher.dispatch( key2, new Runnable() {
+			@Override
+			public void run() {
+				secondTaskDone.countDown();
+			}
+		});
+
+		Assert.assertTrue( firstTaskDone.await( 10, TimeUnit.SECONDS ));
+	}
+
+
+	@Test
+	public void testFindLane() {
+
+		this.dispatcher = new OrderedMessageDispatcher( 3, "test" );
+		Assert.assertEquals( 3, this.dispatcher.getLanesCount());
+		for( int i=0; i<100; i++ ) {
+			int lane = this.dispatcher.findLane( "key-" + i );
+			Assert.assertTrue( lane >= 0 && lane < 3 );
+			Assert.assertEquals( lane, this.dispatcher.findLane( "key-" + i ));
+		}
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidLanesCount() {
+		new OrderedMessageDispatcher( 0, "test" );
+	}
+}
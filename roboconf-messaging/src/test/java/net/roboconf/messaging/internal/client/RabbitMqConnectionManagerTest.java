@@ -0,0 +1,353 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.client;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+import net.roboconf.messaging.client.IMessageProcessor;
+import net.roboconf.messaging.internal.client.RabbitMqConnectionManager.SharedConnection;
+import net.roboconf.messaging.internal.utils.SerializationUtils;
+import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.rabbitmq.client.AMQP.BasicProperties;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Consumer;
+import com.rabbitmq.client.Envelope;
+
+/**
+ * These tests do not require RabbitMQ: connections and channels are mocked.
+ * @author Vincent Zurczak - Linagora
+ */
+public class RabbitMqConnectionManagerTest {
+
+	private static final String HOST = "127.0.0.1";
+	private TestConnectionManager manager;
+
+
+	@Before
+	public void createManager() {
+		this.manager = new TestConnectionManager();
+	}
+
+
+	@Test
+	public void testConnectionsAreShared() throws Exception {
+
+		List<SharedConnection> connections = new ArrayList<SharedConnection> ();
+		for( int i=0; i<100; i++ )
+			connections.add( this.manager.acquire( HOST ));
+
+		Assert.assertEquals( RabbitMqConnectionManager.DEFAULT_MAX_CONNECTIONS_PER_HOST, this.manager.connectionsCount.get());
+		Assert.assertEquals( RabbitMqConnectionManager.DEFAULT_MAX_CONNECTIONS_PER_HOST, this.manager.getConnectionsCount( HOST ));
+
+		// Other hosts have their own connections
+		SharedConnection other = this.manager.acquire( "192.168.1.1" );
+		Assert.assertEquals( 1, this.manager.getConnectionsCount( "192.168.1.1" ));
+		this.manager.release( other );
+		Assert.assertEquals( 0, this.manager.getConnectionsCount( "192.168.1.1" ));
+
+		// Connections are closed when they are not used anymore
+		for( SharedConnection sc : connections ) {
+			Assert.assertTrue( sc.getConnection().isOpen());
+			this.manager.release( sc );
+		}
+
+		Assert.assertEquals( 0, this.manager.getConnectionsCount( HOST ));
+		Assert.assertEquals( 0, this.manager.openConnectionsCount.get());
+	}
+
+
+	@Test
+	public void testClosedConnectionsAreReplaced() throws Exception {
+
+		this.manager.setMaxConnectionsPerHost( 1 );
+		SharedConnection sc1 = this.manager.acquire( HOST );
+		sc1.getConnection().close();
+
+		SharedConnection sc2 = this.manager.acquire( HOST );
+		Assert.assertNotSame( sc1, sc2 );
+		Assert.assertTrue( sc2.getConnection().isOpen());
+		Assert.assertEquals( 1, this.manager.getConnectionsCount( HOST ));
+	}
+
+
+	@Test
+	public void testConcurrentPublishing() throws Exception {
+
+		final int maxChannels = 3;
+		this.manager.setMaxPublishingChannels( maxChannels );
+		final SharedConnection sc = this.manager.acquire( HOST );
+
+		final AtomicBoolean failed = new AtomicBoolean( false );
+		final CountDownLatch latch = new CountDownLatch( 1 );
+		List<Thread> threads = new ArrayList<Thread> ();
+		for( int i=0; i<20; i++ ) {
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						latch.await();
+						for( int j=0; j<20; j++ )
+							sc.publish( "exchange", "routing-key", null, new byte[ 1 ]);
+
+					} catch( Exception e ) {
+						failed.set( true );
+					}
+				}
+			};
+
+			threads.add( thread );
+			thread.start();
+		}
+
+		latch.countDown();
+		for( Thread thread : threads )
+			thread.join();
+
+		Assert.assertFalse( failed.get());
+		Assert.assertFalse( "A channel was used by several threads at once.", this.manager.concurrentUse.get());
+		Assert.assertEquals( 400, this.manager.publishedCount.get());
+		Assert.assertTrue( sc.getPublishingChannelsCount() <= maxChannels );
+		Assert.assertTrue( this.manager.channelsCount.get() <= maxChannels );
+	}
+
+
+	@Test
+	public void testClosedChannelsAreDiscarded() throws Exception {
+
+		SharedConnection sc = this.manager.acquire( HOST );
+		Channel channel = sc.borrowChannel();
+		channel.close();
+		sc.returnChannel( channel );
+		Assert.assertEquals( 0, sc.getPublishingChannelsCount());
+
+		Channel newChannel = sc.borrowChannel();
+		Assert.assertNotSame( channel, newChannel );
+		Assert.assertTrue( newChannel.isOpen());
+	}
+
+
+	@Test
+	public void testClientsShareConnections() throws Exception {
+
+		List<MessageServerClientRabbitMq> clients = new ArrayList<MessageServerClientRabbitMq> ();
+		for( int i=0; i<50; i++ ) {
+			MessageServerClientRabbitMq client = new MessageServerClientRabbitMq( this.manager );
+			client.setMessageServerIp( HOST );
+			client.setApplicationName( "app-" + i );
+			client.openConnection( new IMessageProcessor() {
+				@Override
+				public void processMessage( Message message ) {
+					// nothing
+				}
+			});
+
+			clients.add( client );
+		}
+
+		Assert.assertEquals( RabbitMqConnectionManager.DEFAULT_MAX_CONNECTIONS_PER_HOST, this.manager.connectionsCount.get());
+		for( MessageServerClientRabbitMq client : clients ) {
+			Assert.assertTrue( client.connected );
+			Assert.assertNotNull( client.consumerTag );
+			client.publish( true, "dm", new MsgNotifHeartbeat( "vm" ));
+		}
+
+		Assert.assertEquals( 50, this.manager.publishedCount.get());
+		for( MessageServerClientRabbitMq client : clients ) {
+			client.closeConnection();
+			Assert.assertFalse( client.connected );
+			Assert.assertNull( client.channel );
+		}
+
+		Assert.assertEquals( 0, this.manager.openConnectionsCount.get());
+	}
+
+
+	@Test
+	public void testDeliveriesAreProcessedInOrderAndAcknowledged() throws Exception {
+
+		final int agentsCount = 20, messagesPerAgent = 50;
+		final CountDownLatch latch = new CountDownLatch( agentsCount * messagesPerAgent );
+		final Map<String,List<String>> agentToPaths = new ConcurrentHashMap<String,List<String>> ();
+		for( int i=0; i<agentsCount; i++ )
+			agentToPaths.put( "agent-" + i, Collections.synchronizedList( new ArrayList<String> ()));
+
+		MessageServerClientRabbitMq client = new MessageServerClientRabbitMq( this.manager );
+		client.setMessageServerIp( HOST );
+		client.setApplicationName( "app" );
+		client.setParallelProcessing( true );
+		client.openConnection( new IMessageProcessor() {
+			@Override
+			public void processMessage( Message message ) {
+				String path = ((MsgNotifInstanceRemoved) message).getInstancePath();
+				agentToPaths.get( path.split( "/" )[ 1 ]).add( path );
+				latch.countDown();
+			}
+		});
+
+		Assert.assertEquals( MessageServerClientRabbitMq.DEFAULT_PREFETCH_COUNT, this.manager.prefetchCount.get());
+		Assert.assertEquals( 1, this.manager.consumers.size());
+		Consumer consumer = this.manager.consumers.get( 0 );
+
+		// Deliver messages, the way the message server would
+		long deliveryTag = 0;
+		for( int j=0; j<messagesPerAgent; j++ ) {
+			for( int i=0; i<agentsCount; i++ ) {
+				Message msg = new MsgNotifInstanceRemoved( "/agent-" + i + "/" + j );
+				BasicProperties properties = new BasicProperties.Builder().appId( "agent-" + i ).build();
+				Envelope envelope = new Envelope( ++ deliveryTag, false, "exchange", "machine.dm" );
+				consumer.handleDelivery( "consumer-tag", envelope, properties, SerializationUtils.serializeObject( msg ));
+			}
+		}
+
+		// Invalid messages are acknowledged too (otherwise, they would be delivered again and again)
+		Envelope envelope = new Envelope( ++ deliveryTag, false, "exchange", "machine.dm" );
+		consumer.handleDelivery( "consumer-tag", envelope, null, new byte[] { 1, 2, 3 });
+
+		// Wait for the processing to complete
+		Assert.assertTrue( latch.await( 10, TimeUnit.SECONDS ));
+		for( int i=0; i<100 && this.manager.ackedCount.get() < deliveryTag; i++ )
+			Thread.sleep( 50 );
+
+		Assert.assertEquals( deliveryTag, this.manager.ackedCount.get());
+		for( int i=0; i<agentsCount; i++ ) {
+			List<String> paths = agentToPaths.get( "agent-" + i );
+			Assert.assertEquals( messagesPerAgent, paths.size());
+			for( int j=0; j<messagesPerAgent; j++ )
+				Assert.assertEquals( "/agent-" + i + "/" + j, paths.get( j ));
+		}
+
+		client.closeConnection();
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidMaxConnections() {
+		this.manager.setMaxConnectionsPerHost( 0 );
+	}
+
+
+	/**
+	 * A connection manager that creates mocked connections.
+	 */
+	private static class TestConnectionManager extends RabbitMqConnectionManager {
+
+		final AtomicInteger connectionsCount = new AtomicInteger();
+		final AtomicInteger openConnectionsCount = new AtomicInteger();
+		final AtomicInteger channelsCount = new AtomicInteger();
+		final AtomicInteger publishedCount = new AtomicInteger();
+		final AtomicBoolean concurrentUse = new AtomicBoolean( false );
+		final AtomicInteger ackedCount = new AtomicInteger();
+		final AtomicInteger prefetchCount = new AtomicInteger();
+		final List<Consumer> consumers = new CopyOnWriteArrayList<Consumer> ();
+
+
+		@Override
+		Connection newConnection( String host, ExecutorService executor ) throws IOException {
+
+			this.connectionsCount.incrementAndGet();
+			this.openConnectionsCount.incrementAndGet();
+			final AtomicBoolean open = new AtomicBoolean( true );
+			return (Connection) Proxy.newProxyInstance(
+					getClass().getClassLoader(),
+					new Class<?>[] { Connection.class },
+					new InvocationHandler() {
+						@Override
+						public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+
+							Object result = null;
+							if( "isOpen".equals( method.getName()))
+								result = open.get();
+							else if( "close".equals( method.getName()) && open.compareAndSet( true, false ))
+								TestConnectionManager.this.openConnectionsCount.decrementAndGet();
+							else if( "createChannel".equals( method.getName()))
+								result = newChannel();
+
+							return result;
+						}
+					});
+		}
+
+
+		private Channel newChannel() {
+
+			this.channelsCount.incrementAndGet();
+			final AtomicBoolean open = new AtomicBoolean( true );
+			final AtomicBoolean inUse = new AtomicBoolean( false );
+			return (Channel) Proxy.newProxyInstance(
+					getClass().getClassLoader(),
+					new Class<?>[] { Channel.class },
+					new InvocationHandler() {
+						@Override
+						public Object invoke( Object proxy, Method method, Object[] args ) throws Throwable {
+
+							Object result = null;
+							if( "isOpen".equals( method.getName())) {
+								result = open.get();
+
+							} else if( "close".equals( method.getName())) {
+								open.set( false );
+
+							} else if( "basicConsume".equals( method.getName())) {
+								if( ! Boolean.FALSE.equals( args[ 1 ]))
+									throw new IOException( "Messages should be acknowledged manually." );
+
+								TestConnectionManager.this.consumers.add((Consumer) args[ 2 ]);
+								result = "consumer-tag";
+
+							} else if( "basicQos".equals( method.getName())) {
+								TestConnectionManager.this.prefetchCount.set((Integer) args[ 0 ]);
+
+							} else if( "basicAck".equals( method.getName())) {
+								TestConnectionManager.this.ackedCount.incrementAndGet();
+
+							} else if( "basicPublish".equals( method.getName())) {
+								if( ! inUse.compareAndSet( false, true ))
+									TestConnectionManager.this.concurrentUse.set( true );
+
+								Thread.sleep( 1 );
+								TestConnectionManager.this.publishedCount.incrementAndGet();
+								inUse.set( false );
+							}
+
+							return result;
+						}
+					});
+		}
+	}
+}
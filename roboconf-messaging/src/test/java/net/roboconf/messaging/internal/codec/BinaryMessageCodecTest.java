@@ -0,0 +1,454 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.internal.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.helpers.ComponentHelpers;
+import net.roboconf.core.model.helpers.InstanceHelpers;
+import net.roboconf.core.model.runtime.Component;
+import net.roboconf.core.model.runtime.Import;
+import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
+import net.roboconf.messaging.codec.IMessageCodec;
+import net.roboconf.messaging.codec.MessageCodecs;
+import net.roboconf.messaging.internal.utils.SerializationUtilsTest;
+import net.roboconf.messaging.messages.Message;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportAdd;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRemove;
+import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRequest;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifHeartbeat;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstancesChanged;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineDown;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineReadyToBeDeleted;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineUp;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifResourcesMissing;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdFirewallAdd;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdFirewallRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdImportsResync;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceDeploy;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStart;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStop;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceUndeploy;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdResourceChunk;
+import net.roboconf.messaging.utils.MessagingUtils;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class BinaryMessageCodecTest {
+
+	private final IMessageCodec codec = new BinaryMessageCodec();
+
+
+	@Test
+	public void testAllMessages() throws Exception {
+
+		for( Message msg : buildSampleMessages()) {
+			Assert.assertTrue( msg.getClass().getSimpleName(), this.codec.canEncode( msg ));
+
+			byte[] bytes = this.codec.encode( msg );
+			Assert.assertTrue( this.codec.canDecode( bytes ));
+			Assert.assertEquals( MessageCodecs.BINARY, MessageCodecs.findCodec( bytes ).getName());
+
+			Message newMsg = this.codec.decode( bytes );
+			SerializationUtilsTest.compareMessages( msg, newMsg, msg.getClass());
+		}
+	}
+
+
+	@Test
+	public void testMessagesAreSmallerThanWithJavaSerialization() throws Exception {
+
+		IMessageCodec javaCodec = MessageCodecs.getFallbackCodec();
+		for( Message msg : buildSampleMessages()) {
+			int binarySize = this.codec.encode( msg ).length;
+			int javaSize = javaCodec.encode( msg ).length;
+			Assert.assertTrue(
+					msg.getClass().getSimpleName() + ": " + binarySize + " bytes VS " + javaSize + " bytes",
+					binarySize < javaSize );
+		}
+	}
+
+
+	@Test
+	public void testInstanceAdd() throws Exception {
+
+		MsgCmdInstanceAdd msg = (MsgCmdInstanceAdd) findSample( MsgCmdInstanceAdd.class );
+		MsgCmdInstanceAdd newMsg = (MsgCmdInstanceAdd) this.codec.decode( this.codec.encode( msg ));
+
+		List<Instance> expected = InstanceHelpers.buildHierarchicalList( msg.getInstanceToAdd());
+		List<Instance> instances = InstanceHelpers.buildHierarchicalList( newMsg.getInstanceToAdd());
+		Assert.assertEquals( expected.size(), instances.size());
+
+		for( int i=0; i<expected.size(); i++ ) {
+			Instance expectedInstance = expected.get( i );
+			Instance instance = instances.get( i );
+
+			Assert.assertEquals( expectedInstance, instance );
+			Assert.assertEquals( expectedInstance.hashCode(), instance.hashCode());
+			Assert.assertEquals( expectedInstance.getChannel(), instance.getChannel());
+			Assert.assertEquals( expectedInstance.getStatus(), instance.getStatus());
+			Assert.assertEquals( expectedInstance.getData(), instance.getData());
+			Assert.assertEquals( expectedInstance.getExports(), instance.getExports());
+			Assert.assertEquals( expectedInstance.getOverriddenExports(), instance.getOverriddenExports());
+			Assert.assertEquals( expectedInstance.getImports().keySet(), instance.getImports().keySet());
+
+			Component expectedComponent = expectedInstance.getComponent();
+			Component component = instance.getComponent();
+			Assert.assertEquals( expectedComponent, component );
+			Assert.assertEquals( expectedComponent.getAlias(), component.getAlias());
+			Assert.assertEquals( expectedComponent.getInstallerName(), component.getInstallerName());
+			Assert.assertEquals( expectedComponent.getFacetNames(), component.getFacetNames());
+			Assert.assertEquals( expectedComponent.getExportedVariables(), component.getExportedVariables());
+			Assert.assertEquals( expectedComponent.getImportedVariables(), component.getImportedVariables());
+			Assert.assertEquals( expectedComponent.getChildren(), component.getChildren());
+			Assert.assertEquals( expectedComponent.getAncestors(), component.getAncestors());
+		}
+
+		// Components are shared, as in the original model
+		Assert.assertSame( instances.get( 1 ).getComponent(), instances.get( 0 ).getComponent().getChildren().iterator().next());
+
+		// A child instance keeps its path
+		Instance child = expected.get( 1 );
+		msg = new MsgCmdInstanceAdd( "/vm", child );
+		newMsg = (MsgCmdInstanceAdd) this.codec.decode( this.codec.encode( msg ));
+		Assert.assertEquals( "/vm/server", InstanceHelpers.computeInstancePath( newMsg.getInstanceToAdd()));
+		Assert.assertEquals( child, newMsg.getInstanceToAdd());
+		Assert.assertEquals( 1, newMsg.getInstanceToAdd().getChildren().size());
+		Assert.assertNull( newMsg.getMessagingCodec());
+
+		// The messaging codec is sent to agents
+		msg = new MsgCmdInstanceAdd( null, expected.get( 0 ), MessageCodecs.BINARY );
+		newMsg = (MsgCmdInstanceAdd) this.codec.decode( this.codec.encode( msg ));
+		Assert.assertEquals( MessageCodecs.BINARY, newMsg.getMessagingCodec());
+	}
+
+
+	@Test
+	public void testPreviousSchemaVersions() throws Exception {
+
+		// Version 4: no messaging codec
+		Instance server = new Instance( "server" );
+		InstanceHelpers.insertChild( new Instance( "vm" ), server );
+		byte[] bytes = this.codec.encode( new MsgCmdInstanceAdd( "/vm", server ));
+		bytes = Arrays.copyOf( bytes, bytes.length - 1 );
+		bytes[ 2 ] = 4;
+		MsgCmdInstanceAdd instanceAdd = (MsgCmdInstanceAdd) this.codec.decode( bytes );
+		Assert.assertEquals( "/vm/server", InstanceHelpers.computeInstancePath( instanceAdd.getInstanceToAdd()));
+		Assert.assertNull( instanceAdd.getMessagingCodec());
+
+		// Version 3: no imports delta
+		BinaryWriter writer = writeHeader( new MsgNotifInstanceChanged( "/vm", null, InstanceStatus.DEPLOYING ), 3 );
+		writer.writeString( "/vm" );
+		writer.writeLength( null, 0 );
+		writer.writeString( InstanceStatus.DEPLOYED_STARTED.toString());
+		MsgNotifInstanceChanged instanceChanged = (MsgNotifInstanceChanged) this.codec.decode( writer.toByteArray());
+		Assert.assertEquals( "/vm", instanceChanged.getInstancePath());
+		Assert.assertEquals( InstanceStatus.DEPLOYED_STARTED, instanceChanged.getNewStatus());
+		Assert.assertFalse( instanceChanged.isImportsDelta());
+
+		// Version 2: resources cannot be resumed
+		writer = writeHeader( new MsgNotifResourcesMissing( "/vm", "hash" ), 2 );
+		writer.writeString( "/vm/server" );
+		writer.writeString( "some-hash" );
+		MsgNotifResourcesMissing resourcesMissing = (MsgNotifResourcesMissing) this.codec.decode( writer.toByteArray());
+		Assert.assertEquals( "/vm/server", resourcesMissing.getInstancePath());
+		Assert.assertEquals( "some-hash", resourcesMissing.getResourcesHash());
+		Assert.assertNull( resourcesMissing.getResumeFileName());
+
+		// Version 1: no resources hash
+		writer = writeHeader( new MsgCmdInstanceDeploy( "/vm", null ), 1 );
+		writer.writeString( "/vm/server" );
+		writer.writeLength( null, 0 );
+		MsgCmdInstanceDeploy instanceDeploy = (MsgCmdInstanceDeploy) this.codec.decode( writer.toByteArray());
+		Assert.assertEquals( "/vm/server", instanceDeploy.getInstancePath());
+		Assert.assertNull( instanceDeploy.getFileNameToFileContent());
+		Assert.assertNull( instanceDeploy.getResourcesHash());
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testTooOldSchemaVersion() throws Exception {
+
+		byte[] bytes = this.codec.encode( new MsgNotifHeartbeat( "vm" ));
+		bytes[ 2 ] = BinaryMessageCodec.MIN_SCHEMA_VERSION - 1;
+		this.codec.decode( bytes );
+	}
+
+
+	@Test
+	public void testInstanceChanged() throws Exception {
+
+		MsgNotifInstanceChanged msg = (MsgNotifInstanceChanged) findSample( MsgNotifInstanceChanged.class );
+		MsgNotifInstanceChanged newMsg = (MsgNotifInstanceChanged) this.codec.decode( this.codec.encode( msg ));
+
+		Assert.assertEquals( msg.getNewStatus(), newMsg.getNewStatus());
+		Assert.assertEquals( msg.getNewImports().size(), newMsg.getNewImports().size());
+		for( Map.Entry<String,Collection<Import>> entry : msg.getNewImports().entrySet()) {
+			List<Import> expected = new ArrayList<Import>( entry.getValue());
+			List<Import> imports = new ArrayList<Import>( newMsg.getNewImports().get( entry.getKey()));
+			Assert.assertEquals( expected, imports );
+
+			for( int i=0; i<expected.size(); i++ )
+				Assert.assertEquals( expected.get( i ).getExportedVars(), imports.get( i ).getExportedVars());
+		}
+	}
+
+
+	@Test
+	public void testInstanceChanged_delta() throws Exception {
+
+		Map<String,Collection<Import>> added = new HashMap<String,Collection<Import>> ();
+		added.put( "MySQL", Arrays.asList( new Import( "/vm4/mysql", Collections.singletonMap( "MySQL.port", "3307" ))));
+		Map<String,Collection<Import>> removed = new HashMap<String,Collection<Import>> ();
+		removed.put( "Apache", Arrays.asList( new Import( "/vm2/apache" ), new Import( "/vm3/apache" )));
+
+		MsgNotifInstanceChanged msg = new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.STARTING, added, removed, 5000000000L );
+		MsgNotifInstanceChanged newMsg = (MsgNotifInstanceChanged) this.codec.decode( this.codec.encode( msg ));
+
+		Assert.assertTrue( newMsg.isImportsDelta());
+		Assert.assertNull( newMsg.getNewImports());
+		Assert.assertEquals( 5000000000L, newMsg.getImportsVersion());
+		Assert.assertEquals( InstanceStatus.STARTING, newMsg.getNewStatus());
+
+		Import imp = newMsg.getAddedImports().get( "MySQL" ).iterator().next();
+		Assert.assertEquals( "/vm4/mysql", imp.getInstancePath());
+		Assert.assertEquals( "3307", imp.getExportedVars().get( "MySQL.port" ));
+		Assert.assertEquals(
+				new ArrayList<Import>( removed.get( "Apache" )),
+				new ArrayList<Import>( newMsg.getRemovedImports().get( "Apache" )));
+	}
+
+
+	@Test
+	public void testNullValues() throws Exception {
+
+		List<Message> messages = new ArrayList<Message> ();
+		messages.add( new MsgCmdImportAdd( null, null, null ));
+		messages.add( new MsgCmdInstanceDeploy( "/vm", null ));
+		messages.add( new MsgCmdInstanceAdd( null, null ));
+		messages.add( new MsgNotifInstanceChanged( "/vm", null, null ));
+		messages.add( new MsgNotifInstancesChanged( new ArrayList<MsgNotifInstanceChanged> ()));
+
+		for( Message msg : messages ) {
+			Message newMsg = this.codec.decode( this.codec.encode( msg ));
+			SerializationUtilsTest.compareMessages( msg, newMsg, msg.getClass());
+		}
+	}
+
+
+	@Test
+	public void testSubClassesAreNotSupported() throws Exception {
+
+		Message msg = new CustomHeartbeat( "vm" );
+
+		Assert.assertFalse( this.codec.canEncode( msg ));
+
+		// The registry falls back to Java serialization
+		byte[] bytes = MessageCodecs.encode( this.codec, msg );
+		Assert.assertEquals( MessageCodecs.JAVA_SERIALIZATION, MessageCodecs.findCodec( bytes ).getName());
+		Assert.assertEquals( "vm", ((MsgNotifHeartbeat) MessageCodecs.decode( bytes )).getRootInstanceName());
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testTruncatedMessage() throws Exception {
+
+		byte[] bytes = this.codec.encode( new MsgCmdImportAdd( "facet", "/vm/server", new HashMap<String,String> ()));
+		this.codec.decode( Arrays.copyOf( bytes, bytes.length - 2 ));
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testUnknownSchemaVersion() throws Exception {
+
+		byte[] bytes = this.codec.encode( new MsgNotifHeartbeat( "vm" ));
+		bytes[ 2 ] = BinaryMessageCodec.SCHEMA_VERSION + 1;
+		this.codec.decode( bytes );
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testUnknownMessageType() throws Exception {
+
+		byte[] bytes = this.codec.encode( new MsgNotifHeartbeat( "vm" ));
+		bytes[ 3 ] = 120;
+		this.codec.decode( bytes );
+	}
+
+
+	@Test( expected = IOException.class )
+	public void testInvalidLength() throws Exception {
+
+		byte[] bytes = this.codec.encode( new MsgNotifHeartbeat( "vm" ));
+		bytes[ 4 ] = 100;
+		this.codec.decode( bytes );
+	}
+
+
+	private BinaryWriter writeHeader( Message msg, int schemaVersion ) throws IOException {
+
+		byte[] bytes = this.codec.encode( msg );
+		BinaryWriter writer = new BinaryWriter( 64 );
+		writer.writeByte( bytes[ 0 ]);
+		writer.writeByte( bytes[ 1 ]);
+		writer.writeByte( schemaVersion );
+		writer.writeByte( bytes[ 3 ]);
+
+		return writer;
+	}
+
+
+	private static Message findSample( Class<? extends Message> clazz ) {
+
+		Message result = null;
+		for( Message msg : buildSampleMessages()) {
+			if( msg.getClass() == clazz ) {
+				result = msg;
+				break;
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Builds a sample message for every message type.
+	 * @return a non-null list of messages
+	 */
+	public static List<Message> buildSampleMessages() {
+
+		// A small model: VM > server > application
+		Component vmComponent = new Component( "VM" );
+		vmComponent.setInstallerName( "iaas" );
+
+		Component serverComponent = new Component( "Tomcat" );
+		serverComponent.setInstallerName( "puppet" );
+		serverComponent.setAlias( "A Tomcat server" );
+		serverComponent.getExportedVariables().put( "Tomcat.ip", null );
+		serverComponent.getExportedVariables().put( "Tomcat.port", "8080" );
+		serverComponent.getImportedVariables().put( "MySQL.ip", Boolean.FALSE );
+		serverComponent.getImportedVariables().put( "MySQL.port", Boolean.TRUE );
+		serverComponent.getFacetNames().add( "server" );
+
+		Component appComponent = new Component( "WAR" );
+		appComponent.setInstallerName( "bash" );
+
+		ComponentHelpers.insertChild( vmComponent, serverComponent );
+		ComponentHelpers.insertChild( serverComponent, appComponent );
+
+		Instance vmInstance = new Instance( "vm" );
+		vmInstance.setComponent( vmComponent );
+		vmInstance.setStatus( InstanceStatus.DEPLOYED_STARTED );
+		vmInstance.getData().put( Instance.IP_ADDRESS, "192.168.1.12" );
+		vmInstance.getData().put( Instance.MACHINE_ID, "i-4564as4d" );
+
+		Instance serverInstance = new Instance( "server" );
+		serverInstance.setComponent( serverComponent );
+		serverInstance.setChannel( "channel" );
+		serverInstance.getExports().put( "Tomcat.ip", "192.168.1.12" );
+		serverInstance.getExports().put( "Tomcat.port", "8080" );
+		serverInstance.getOverriddenExports().put( "Tomcat.port", "8080" );
+
+		Map<String,String> exportedVars = new HashMap<String,String> ();
+		exportedVars.put( "MySQL.ip", "192.168.1.13" );
+		exportedVars.put( "MySQL.port", "3306" );
+		serverInstance.addImport( "MySQL", new Import( "/vm2/mysql", exportedVars ));
+		serverInstance.addImport( "MySQL", new Import( "/vm3/mysql", exportedVars ));
+
+		Instance appInstance = new Instance( "app" );
+		appInstance.setComponent( appComponent );
+
+		InstanceHelpers.insertChild( vmInstance, serverInstance );
+		InstanceHelpers.insertChild( serverInstance, appInstance );
+
+		// The messages
+		List<Message> result = new ArrayList<Message> ();
+		result.add( new MsgCmdImportAdd( "MySQL", "/vm2/mysql", exportedVars ));
+		result.add( new MsgCmdImportRemove( "MySQL", "/vm2/mysql" ));
+		result.add( new MsgCmdImportRequest( "MySQL" ));
+		result.add( new MsgNotifHeartbeat( "vm" ));
+		result.add( new MsgNotifInstanceChanged( serverInstance ));
+		result.add( new MsgNotifInstanceRemoved( serverInstance ));
+		result.add( new MsgNotifMachineDown( "vm" ));
+		result.add( new MsgNotifMachineReadyToBeDeleted( "vm" ));
+		result.add( new MsgNotifMachineUp( "vm", "192.168.1.12" ));
+		result.add( new MsgCmdFirewallAdd( "192.168.1.12", "192.168.1.13", 3306 ));
+		result.add( new MsgCmdFirewallRemove());
+		result.add( new MsgCmdInstanceAdd( null, vmInstance ));
+
+		Map<String,byte[]> files = new HashMap<String,byte[]> ();
+		files.put( "readme.txt", "Hello!".getBytes());
+		files.put( "server.xml", new byte[ 2048 ]);
+		result.add( new MsgCmdInstanceDeploy( "/vm/server", files, MessagingUtils.computeResourcesHash( files )));
+
+		result.add( new MsgCmdInstanceRemove( "/vm/server" ));
+		result.add( new MsgCmdInstanceStart( "/vm/server" ));
+		result.add( new MsgCmdInstanceStop( "/vm/server" ));
+		result.add( new MsgCmdInstanceUndeploy( "/vm/server" ));
+		result.add( new MsgNotifResourcesMissing( "/vm/server", MessagingUtils.computeResourcesHash( files )));
+		result.add( new MsgNotifResourcesMissing( "/vm/server", MessagingUtils.computeResourcesHash( files ), "readme.txt", 3 ));
+
+		byte[] chunk = new byte[ 512 ];
+		Arrays.fill( chunk, (byte) 7 );
+		result.add( new MsgCmdResourceChunk(
+				MessagingUtils.computeResourcesHash( files ), "conf/server.xml", 3,
+				5000000000L, 1024, chunk, MessagingUtils.computeChunkChecksum( chunk ), false ));
+
+		List<MsgNotifInstanceChanged> changes = new ArrayList<MsgNotifInstanceChanged> ();
+		changes.add( new MsgNotifInstanceChanged( "/vm/server/app", null, InstanceStatus.STOPPING ));
+		changes.add( new MsgNotifInstanceChanged( serverInstance ));
+		result.add( new MsgNotifInstancesChanged( changes ));
+
+		Map<String,Collection<Import>> added = new HashMap<String,Collection<Import>> ();
+		added.put( "MySQL", Arrays.asList( new Import( "/vm4/mysql", exportedVars )));
+		Map<String,Collection<Import>> removed = new HashMap<String,Collection<Import>> ();
+		removed.put( "MySQL", Arrays.asList( new Import( "/vm2/mysql" )));
+		result.add( new MsgNotifInstanceChanged( "/vm/server", null, InstanceStatus.DEPLOYED_STARTED, added, removed, 12 ));
+		result.add( new MsgCmdImportsResync( "/vm/server" ));
+
+		return result;
+	}
+
+
+	/**
+	 * A message the binary codec does not know.
+	 */
+	private static class CustomHeartbeat extends MsgNotifHeartbeat {
+		private static final long serialVersionUID = 1L;
+
+		CustomHeartbeat( String rootInstanceName ) {
+			super( rootInstanceName );
+		}
+	}
+}
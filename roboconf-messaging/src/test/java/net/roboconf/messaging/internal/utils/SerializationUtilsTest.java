@@ -17,11 +17,15 @@
 package net.roboconf.messaging.internal.utils;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import junit.framework.Assert;
+import net.roboconf.core.model.helpers.InstanceHelpers;
 import net.roboconf.core.model.runtime.Instance;
+import net.roboconf.core.model.runtime.Instance.InstanceStatus;
 import net.roboconf.messaging.messages.Message;
 import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportAdd;
 import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRemove;
@@ -29,17 +33,21 @@ import net.roboconf.messaging.messages.from_agent_to_agent.MsgCmdImportRequest;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifHeartbeat;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceChanged;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstanceRemoved;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifInstancesChanged;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineDown;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineReadyToBeDeleted;
 import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifMachineUp;
+import net.roboconf.messaging.messages.from_agent_to_dm.MsgNotifResourcesMissing;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdFirewallAdd;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdFirewallRemove;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdImportsResync;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceAdd;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceDeploy;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceRemove;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStart;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceStop;
 import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdInstanceUndeploy;
+import net.roboconf.messaging.messages.from_dm_to_agent.MsgCmdResourceChunk;
 
 import org.junit.Test;
 
@@ -90,6 +98,26 @@ public class SerializationUtilsTest {
 	}
 
 
+	@Test
+	public void testMessage_instancesChanged() throws Exception {
+
+		List<MsgNotifInstanceChanged> changes = Arrays.asList(
+				new MsgNotifInstanceChanged( new Instance( "instance1" )),
+				new MsgNotifInstanceChanged( "/vm/instance2", null, InstanceStatus.STOPPING ));
+
+		MsgNotifInstancesChanged msg = new MsgNotifInstancesChanged( changes );
+		checkBasics( msg, MsgNotifInstancesChanged.class );
+	}
+
+
+	@Test
+	public void testMessage_importsResync() throws Exception {
+
+		MsgCmdImportsResync msg = new MsgCmdImportsResync( "/vm/instance" );
+		checkBasics( msg, MsgCmdImportsResync.class );
+	}
+
+
 	@Test
 	public void testMessage_instanceRemoved() throws Exception {
 
@@ -152,6 +180,35 @@ public class SerializationUtilsTest {
 	}
 
 
+	@Test
+	public void testMessage_instanceAdd_withChildren() throws Exception {
+
+		Instance root = new Instance( "root" );
+		Instance child = new Instance( "child" );
+		Instance grandChild = new Instance( "grand-child" );
+		InstanceHelpers.insertChild( root, child );
+		InstanceHelpers.insertChild( child, grandChild );
+
+		MsgCmdInstanceAdd msg = new MsgCmdInstanceAdd( null, root );
+		byte[] bytes = SerializationUtils.serializeObject( msg );
+		MsgCmdInstanceAdd newMsg = SerializationUtils.deserializeObject( bytes, MsgCmdInstanceAdd.class );
+
+		Instance newRoot = newMsg.getInstanceToAdd();
+		Assert.assertEquals( root, newRoot );
+		Assert.assertEquals( 1, newRoot.getChildren().size());
+
+		Instance newChild = newRoot.getChildren().iterator().next();
+		Assert.assertEquals( "/root/child", InstanceHelpers.computeInstancePath( newChild ));
+		Assert.assertEquals( child.hashCode(), newChild.hashCode());
+		Assert.assertTrue( newRoot.getChildren().contains( child ));
+
+		Instance newGrandChild = newChild.getChildren().iterator().next();
+		Assert.assertEquals( "/root/child/grand-child", InstanceHelpers.computeInstancePath( newGrandChild ));
+		Assert.assertEquals( grandChild.hashCode(), newGrandChild.hashCode());
+		Assert.assertTrue( newChild.getChildren().contains( grandChild ));
+	}
+
+
 	@Test
 	public void testMessage_instanceRemove() throws Exception {
 
@@ -192,6 +249,29 @@ public class SerializationUtilsTest {
 
 		MsgCmdInstanceDeploy msg = new MsgCmdInstanceDeploy( "/o/mp/k", fileNameToFileContent );
 		checkBasics( msg, MsgCmdInstanceDeploy.class );
+
+		msg = new MsgCmdInstanceDeploy( "/o/mp/k", null, "hash" );
+		checkBasics( msg, MsgCmdInstanceDeploy.class );
+	}
+
+
+	@Test
+	public void testMessage_resourcesMissing() throws Exception {
+
+		MsgNotifResourcesMissing msg = new MsgNotifResourcesMissing( "/o/mp/k", "hash" );
+		checkBasics( msg, MsgNotifResourcesMissing.class );
+
+		msg = new MsgNotifResourcesMissing( "/o/mp/k", "hash", "conf/server.xml", 2048 );
+		checkBasics( msg, MsgNotifResourcesMissing.class );
+	}
+
+
+	@Test
+	public void testMessage_resourceChunk() throws Exception {
+
+		byte[] data = "some content".getBytes( "UTF-8" );
+		MsgCmdResourceChunk msg = new MsgCmdResourceChunk( "hash", "conf/server.xml", 1, 4096, 2048, data, 15, true );
+		checkBasics( msg, MsgCmdResourceChunk.class );
 	}
 
 
@@ -213,6 +293,22 @@ public class SerializationUtilsTest {
 		byte[] bytes = SerializationUtils.serializeObject( msg );
 		Message newMsg = SerializationUtils.deserializeObject( bytes );
 
+		compareMessages( msg, newMsg, clazz );
+		return clazz.cast( newMsg );
+	}
+
+
+	/**
+	 * Compares a message with its deserialized copy.
+	 * @param msg the original message
+	 * @param newMsg the deserialized message
+	 * @param clazz the message class
+	 * @throws Exception
+	 */
+	public static void compareMessages( Message msg, Message newMsg, Class<? extends Message> clazz ) throws Exception {
+
+		String prefix = "Class " + clazz.getSimpleName();
+
 		// Compare classes
 		Assert.assertEquals( prefix, clazz.getName(), newMsg.getClass().getName());
 		Assert.assertTrue( prefix, clazz.isAssignableFrom( newMsg.getClass()));
@@ -239,12 +335,29 @@ public class SerializationUtilsTest {
 				}
 			}
 
+			// So do lists of messages
+			else if( value instanceof List ) {
+				List<?> expectedList = (List<?>) expectedValue;
+				List<?> list = (List<?>) value;
+
+				Assert.assertEquals( prefix, expectedList.size(), list.size());
+				for( int i=0; i<list.size(); i++ ) {
+					if( list.get( i ) instanceof Message )
+						compareMessages((Message) expectedList.get( i ), (Message) list.get( i ), ((Message) list.get( i )).getClass());
+					else
+						Assert.assertEquals( prefix + ": invalid match for " + m.getName() + ".", expectedList.get( i ), list.get( i ));
+				}
+			}
+
+			// So do byte arrays
+			else if( value instanceof byte[] ) {
+				Assert.assertTrue( prefix + ": invalid match for " + m.getName() + ".", Arrays.equals((byte[]) expectedValue, (byte[]) value ));
+			}
+
 			// Other objects are compared directly
 			else {
 				Assert.assertEquals( prefix + ": invalid match for " + m.getName() + ".", expectedValue, value );
 			}
 		}
-
-		return clazz.cast( newMsg );
 	}
 }
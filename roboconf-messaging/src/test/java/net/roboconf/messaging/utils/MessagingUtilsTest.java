@@ -0,0 +1,109 @@
+/**
+ * Copyright 2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.messaging.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+import net.roboconf.core.internal.utils.Utils;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class MessagingUtilsTest {
+
+	@Test
+	public void testComputeResourcesHash() {
+
+		Map<String,byte[]> files1 = new LinkedHashMap<String,byte[]> ();
+		files1.put( "readme.txt", "Hello!".getBytes());
+		files1.put( "conf/server.xml", new byte[ 100 ]);
+
+		Map<String,byte[]> files2 = new LinkedHashMap<String,byte[]> ();
+		files2.put( "conf/server.xml", new byte[ 100 ]);
+		files2.put( "readme.txt", "Hello!".getBytes());
+
+		// The order does not matter
+		String hash = MessagingUtils.computeResourcesHash( files1 );
+		Assert.assertEquals( 64, hash.length());
+		Assert.assertEquals( hash, MessagingUtils.computeResourcesHash( files2 ));
+
+		// The content does
+		files2.put( "readme.txt", "Hello!!".getBytes());
+		Assert.assertFalse( hash.equals( MessagingUtils.computeResourcesHash( files2 )));
+
+		// File names too
+		Map<String,byte[]> files3 = new HashMap<String,byte[]> ();
+		files3.put( "a", "bc".getBytes());
+		Map<String,byte[]> files4 = new HashMap<String,byte[]> ();
+		files4.put( "ab", "c".getBytes());
+		Assert.assertFalse( MessagingUtils.computeResourcesHash( files3 ).equals( MessagingUtils.computeResourcesHash( files4 )));
+
+		// Empty maps have a hash too
+		Assert.assertNotNull( MessagingUtils.computeResourcesHash( new HashMap<String,byte[]> ()));
+	}
+
+
+	@Test
+	public void testComputeResourcesHashFromFiles() throws Exception {
+
+		File dir = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_test_resources_hash" );
+		Utils.deleteFilesRecursively( dir );
+		if( ! dir.mkdirs())
+			throw new Exception( "Failed to create a temporary directory." );
+
+		try {
+			Map<String,byte[]> files = new HashMap<String,byte[]> ();
+			files.put( "readme.txt", "Hello!".getBytes());
+			files.put( "big.bin", new byte[ 100000 ]);
+			files.put( "empty.txt", new byte[ 0 ]);
+
+			Map<String,File> fileNameToFile = new HashMap<String,File> ();
+			for( Map.Entry<String,byte[]> entry : files.entrySet()) {
+				File f = new File( dir, entry.getKey());
+				Utils.copyStream( new ByteArrayInputStream( entry.getValue()), f );
+				fileNameToFile.put( entry.getKey(), f );
+			}
+
+			// Both methods give the same result
+			Assert.assertEquals(
+					MessagingUtils.computeResourcesHash( files ),
+					MessagingUtils.computeResourcesHashFromFiles( fileNameToFile ));
+
+		} finally {
+			Utils.deleteFilesRecursively( dir );
+		}
+	}
+
+
+	@Test
+	public void testComputeChunkChecksum() {
+
+		byte[] data = "Hello!".getBytes();
+		long checksum = MessagingUtils.computeChunkChecksum( data );
+		Assert.assertEquals( checksum, MessagingUtils.computeChunkChecksum( "Hello!".getBytes()));
+
+		data[ 0 ] = 'h';
+		Assert.assertFalse( checksum == MessagingUtils.computeChunkChecksum( data ));
+	}
+}
@@ -25,6 +25,12 @@ import net.roboconf.core.model.runtime.Instance;
  */
 public interface PluginInterface {
 
+	/**
+	 * The default maximal duration of the commands a plug-in executes, in milliseconds (one hour).
+	 */
+	long DEFAULT_EXECUTION_TIMEOUT = 60 * 60 * 1000;
+
+
 	/**
 	 * Initializes the plug-in for this instance.
 	 * <p>
@@ -101,6 +107,17 @@ public interface PluginInterface {
 	void setAgentName( String agentName );
 
 
+	/**
+	 * Sets the maximal duration of the commands this plug-in executes (scripts, Puppet runs...).
+	 * <p>
+	 * A command that runs longer is killed.
+	 * </p>
+	 *
+	 * @param executionTimeout a duration in milliseconds (0 or less for no time out)
+	 */
+	void setExecutionTimeout( long executionTimeout );
+
+
 	/**
 	 * @return the plug-in name
 	 */
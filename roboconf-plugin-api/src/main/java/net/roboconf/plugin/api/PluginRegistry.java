@@ -0,0 +1,121 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.plugin.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+import net.roboconf.core.internal.utils.Utils;
+
+/**
+ * A registry of plug-ins, indexed by (case-insensitive) installer name.
+ * <p>
+ * Plug-ins are instantiated once and shared. They are either registered explicitly, or found with
+ * a {@link ServiceLoader}. To provide a new installer, a plug-in implementation must be listed in a
+ * <code>META-INF/services/net.roboconf.plugin.api.PluginInterface</code> file of its JAR,
+ * and have a public constructor without parameter.
+ * </p>
+ * <p>
+ * This class is thread-safe. Plug-ins are shared by all the instances and invoked from several
+ * threads, so they should only be configured before being used.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class PluginRegistry {
+
+	private final Logger logger = Logger.getLogger( getClass().getName());
+	private final Map<String,PluginInterface> nameToPlugin = new ConcurrentHashMap<String,PluginInterface> ();
+
+
+	/**
+	 * Registers the plug-ins found by the {@link ServiceLoader}.
+	 * <p>
+	 * Plug-ins that cannot be instantiated are ignored.
+	 * A plug-in replaces any plug-in registered before with the same name.
+	 * </p>
+	 *
+	 * @param classLoader the class loader to search plug-ins with (null for the system class loader)
+	 * @return the number of plug-ins that were registered
+	 */
+	public int loadPlugins( ClassLoader classLoader ) {
+
+		int result = 0;
+		Iterator<PluginInterface> it = ServiceLoader.load( PluginInterface.class, classLoader ).iterator();
+		for( ;; ) {
+			try {
+				if( ! it.hasNext())
+					break;
+
+				register( it.next());
+				result ++;
+
+			} catch( ServiceConfigurationError e ) {
+				this.logger.severe( "A plug-in could not be loaded. " + e.getMessage());
+				this.logger.finest( Utils.writeException( new Exception( e )));
+			}
+		}
+
+		return result;
+	}
+
+
+	/**
+	 * Registers a plug-in.
+	 * <p>
+	 * A plug-in replaces any plug-in registered before with the same name.
+	 * </p>
+	 *
+	 * @param plugin a plug-in (not null)
+	 */
+	public void register( PluginInterface plugin ) {
+
+		PluginInterface old = this.nameToPlugin.put( normalize( plugin.getPluginName()), plugin );
+		if( old != null && old != plugin )
+			this.logger.warning( "Plug-in " + plugin.getPluginName() + " replaced a plug-in with the same name." );
+	}
+
+
+	/**
+	 * Finds a plug-in.
+	 * @param installerName an installer name (case-insensitive, can be null)
+	 * @return the associated plug-in, or null if none was found
+	 */
+	public PluginInterface findPlugin( String installerName ) {
+		return installerName == null ? null : this.nameToPlugin.get( normalize( installerName ));
+	}
+
+
+	/**
+	 * @return a copy of the registered plug-ins (not null)
+	 */
+	public Collection<PluginInterface> getPlugins() {
+		return new ArrayList<PluginInterface>( this.nameToPlugin.values());
+	}
+
+
+	private static String normalize( String pluginName ) {
+		return pluginName.toLowerCase( Locale.ENGLISH );
+	}
+}
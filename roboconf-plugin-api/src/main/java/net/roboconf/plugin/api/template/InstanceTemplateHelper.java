@@ -16,25 +16,30 @@
 
 package net.roboconf.plugin.api.template;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 
+import net.roboconf.core.internal.utils.Utils;
 import net.roboconf.core.model.runtime.Instance;
 
-import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
-import com.github.mustachejava.MustacheFactory;
 
 /**
  * Provides methods for injecting Instance data into a template file.
+ * <p>
+ * Compiled templates are cached (see {@link TemplateCache}).
+ * </p>
  *
  * @author gcrosmarie  - Linagora
  */
 public class InstanceTemplateHelper {
 
-	private static MustacheFactory mf = new DefaultMustacheFactory();
+	private static final TemplateCache CACHE = new TemplateCache( TemplateCache.DEFAULT_MAX_ENTRIES );
 
 	/**
 	 * Reads the import values of the instances and injects them into the template file.
@@ -45,7 +50,7 @@ public class InstanceTemplateHelper {
 	 * @throws IOException
 	 */
 	public static void injectInstanceImports(Instance instance, String templateFile, Writer writer) throws IOException {
-	    Mustache mustache = mf.compile(templateFile);
+	    Mustache mustache = CACHE.findTemplate(templateFile);
 	    mustache.execute(writer, new InstanceBean(instance)).flush();
 	}
 
@@ -54,10 +59,29 @@ public class InstanceTemplateHelper {
 	}
 
 	public static void injectInstanceImports(Instance instance, String templateFile, File out) throws IOException {
-		injectInstanceImports(instance, templateFile, new FileWriter(out));
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), "UTF-8"));
+		try {
+			injectInstanceImports(instance, templateFile, writer);
+
+		} finally {
+			Utils.closeQuietly(writer);
+		}
 	}
 
 	public static void injectInstanceImports(Instance instance, File templateFile, File out) throws IOException {
 		injectInstanceImports(instance, templateFile.getAbsolutePath(), out);
 	}
+
+	/**
+	 * Reads the import values of the instances and injects them into the template, in memory.
+	 * @param instance
+	 * @param templateFile
+	 * @return the generated content (not null)
+	 * @throws IOException
+	 */
+	public static String injectInstanceImports(Instance instance, String templateFile) throws IOException {
+		StringWriter writer = new StringWriter();
+		injectInstanceImports(instance, templateFile, writer);
+		return writer.toString();
+	}
 }
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.plugin.api.template;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.roboconf.core.internal.utils.Utils;
+import net.roboconf.messaging.utils.MessagingUtils;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.github.mustachejava.MustacheFactory;
+
+/**
+ * A cache for compiled Mustache templates.
+ * <p>
+ * Template files are identified by their path. A cached template is used as long as the
+ * last modification date and the size of its file do not change. Otherwise, the file is read
+ * again and its content hash is compared with the one of the cached template.
+ * </p>
+ * <p>
+ * Compiled templates are shared by files with the same content. Every instance has its own
+ * copy of the templates, so a template is only compiled once for all the instances of a component.
+ * </p>
+ * <p>
+ * Templates that are not files (e.g. class path resources) are resolved and cached by Mustache.
+ * Partials are not checked for modifications.
+ * </p>
+ *
+ * @author Vincent Zurczak - Linagora
+ */
+public class TemplateCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 1000;
+	static final String HASH_KEY = "template";
+
+	private final MustacheFactory factory = new DefaultMustacheFactory();
+	private final Map<String,TemplateFile> pathToTemplateFile;
+	private final Map<String,Mustache> hashToTemplate;
+	private int compilationsCount = 0;
+
+
+	/**
+	 * Constructor.
+	 * @param maxEntries the maximum number of template files and compiled templates to keep (> 0)
+	 */
+	public TemplateCache( final int maxEntries ) {
+
+		if( maxEntries < 1 )
+			throw new IllegalArgumentException( "The maximum number of entries must be positive." );
+
+		this.pathToTemplateFile = new LinkedHashMap<String,TemplateFile>( 16, 0.75f, true ) {
+			private static final long serialVersionUID = -2415284474632283460L;
+
+			@Override
+			protected boolean removeEldestEntry( Map.Entry<String,TemplateFile> eldest ) {
+				return size() > maxEntries;
+			}
+		};
+
+		this.hashToTemplate = new LinkedHashMap<String,Mustache>( 16, 0.75f, true ) {
+			private static final long serialVersionUID = 2890415725478165472L;
+
+			@Override
+			protected boolean removeEldestEntry( Map.Entry<String,Mustache> eldest ) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+
+	/**
+	 * Finds a compiled template.
+	 * @param template a template file path or a class path resource (not null)
+	 * @return a compiled template (not null)
+	 * @throws IOException if the template file could not be read
+	 */
+	public Mustache findTemplate( String template ) throws IOException {
+
+		File file = new File( template );
+		if( ! file.isFile())
+			return this.factory.compile( template );
+
+		String path = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+		synchronized( this ) {
+			TemplateFile templateFile = this.pathToTemplateFile.get( path );
+			if( templateFile != null
+					&& templateFile.lastModified == lastModified
+					&& templateFile.length == length )
+				return templateFile.mustache;
+		}
+
+		// Read the file outside the lock
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		Utils.copyStream( file, os );
+		byte[] content = os.toByteArray();
+		String hash = MessagingUtils.computeResourcesHash( Collections.singletonMap( HASH_KEY, content ));
+
+		synchronized( this ) {
+			Mustache mustache = this.hashToTemplate.get( hash );
+			if( mustache == null ) {
+				mustache = this.factory.compile( new StringReader( new String( content, "UTF-8" )), path );
+				this.hashToTemplate.put( hash, mustache );
+				this.compilationsCount ++;
+			}
+
+			this.pathToTemplateFile.put( path, new TemplateFile( lastModified, length, mustache ));
+			return mustache;
+		}
+	}
+
+
+	/**
+	 * Removes all the cached templates.
+	 */
+	public synchronized void clear() {
+		this.pathToTemplateFile.clear();
+		this.hashToTemplate.clear();
+	}
+
+
+	/**
+	 * @return the number of template files compiled by this cache
+	 */
+	public synchronized int getCompilationsCount() {
+		return this.compilationsCount;
+	}
+
+
+	/**
+	 * A template file that was read.
+	 */
+	private static class TemplateFile {
+		final long lastModified, length;
+		final Mustache mustache;
+
+
+		/**
+		 * Constructor.
+		 * @param lastModified
+		 * @param length
+		 * @param mustache
+		 */
+		TemplateFile( long lastModified, long length, Mustache mustache ) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.mustache = mustache;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.plugin.api;
+
+import java.io.File;
+
+import junit.framework.Assert;
+import net.roboconf.core.model.runtime.Instance;
+
+import org.junit.Test;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class PluginRegistryTest {
+
+	@Test
+	public void testRegisterAndFind() {
+
+		PluginRegistry registry = new PluginRegistry();
+		Assert.assertNull( registry.findPlugin( "test" ));
+		Assert.assertNull( registry.findPlugin( null ));
+
+		TestPlugin plugin = new TestPlugin();
+		registry.register( plugin );
+		Assert.assertSame( plugin, registry.findPlugin( "test" ));
+		Assert.assertSame( plugin, registry.findPlugin( "TeSt" ));
+		Assert.assertEquals( 1, registry.getPlugins().size());
+
+		// Plug-ins with the same name are replaced
+		TestPlugin otherPlugin = new TestPlugin();
+		registry.register( otherPlugin );
+		Assert.assertSame( otherPlugin, registry.findPlugin( "test" ));
+		Assert.assertEquals( 1, registry.getPlugins().size());
+	}
+
+
+	@Test
+	public void testLoadPlugins() {
+
+		// See src/test/resources/META-INF/services
+		PluginRegistry registry = new PluginRegistry();
+		Assert.assertEquals( 1, registry.loadPlugins( getClass().getClassLoader()));
+
+		PluginInterface plugin = registry.findPlugin( "test" );
+		Assert.assertNotNull( plugin );
+		Assert.assertEquals( TestPlugin.class, plugin.getClass());
+
+		// Plug-ins are shared
+		Assert.assertSame( plugin, registry.findPlugin( "TEST" ));
+	}
+
+
+	/**
+	 * A plug-in that does nothing.
+	 */
+	public static class TestPlugin implements PluginInterface {
+
+		@Override
+		public void initialize( Instance instance ) throws Exception {
+			// nothing
+		}
+
+		@Override
+		public void deploy( Instance instance ) throws Exception {
+			// nothing
+		}
+
+		@Override
+		public void start( Instance instance ) throws Exception {
+			// nothing
+		}
+
+		@Override
+		public void update( Instance instance ) throws Exception {
+			// nothing
+		}
+
+		@Override
+		public void stop( Instance instance ) throws Exception {
+			// nothing
+		}
+
+		@Override
+		public void undeploy( Instance instance ) throws Exception {
+			// nothing
+		}
+
+		@Override
+		public void setExecutionLevel( ExecutionLevel executionLevel ) {
+			// nothing
+		}
+
+		@Override
+		public void setDumpDirectory( File dumpDirectory ) {
+			// nothing
+		}
+
+		@Override
+		public void setAgentName( String agentName ) {
+			// nothing
+		}
+
+		@Override
+		public void setExecutionTimeout( long executionTimeout ) {
+			// nothing
+		}
+
+		@Override
+		public String getPluginName() {
+			return "test";
+		}
+	}
+}
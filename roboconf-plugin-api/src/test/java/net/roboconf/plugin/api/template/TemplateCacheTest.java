@@ -0,0 +1,136 @@
+/**
+ * Copyright 2013-2014 Linagora, Université Joseph Fourier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.roboconf.plugin.api.template;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+import net.roboconf.core.internal.utils.Utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.mustachejava.Mustache;
+
+/**
+ * @author Vincent Zurczak - Linagora
+ */
+public class TemplateCacheTest {
+
+	private File dir;
+
+
+	@Before
+	public void createDirectory() throws Exception {
+
+		this.dir = new File( System.getProperty( "java.io.tmpdir" ), "roboconf_test_template_cache" );
+		Utils.deleteFilesRecursively( this.dir );
+		if( ! this.dir.mkdirs())
+			throw new IOException( "Failed to create a directory." );
+	}
+
+
+	@After
+	public void deleteDirectory() throws Exception {
+		Utils.deleteFilesRecursively( this.dir );
+	}
+
+
+	@Test
+	public void testFindTemplate() throws Exception {
+
+		TemplateCache cache = new TemplateCache( TemplateCache.DEFAULT_MAX_ENTRIES );
+		File f1 = createFile( "t1.mustache", "Hello {{name}}!" );
+		Mustache m1 = cache.findTemplate( f1.getAbsolutePath());
+		Assert.assertEquals( "Hello you!", render( m1 ));
+		Assert.assertEquals( 1, cache.getCompilationsCount());
+
+		// Unmodified files are not compiled again
+		Assert.assertSame( m1, cache.findTemplate( f1.getAbsolutePath()));
+
+		// Files with the same content share the same compiled template
+		File f2 = createFile( "t2.mustache", "Hello {{name}}!" );
+		Assert.assertSame( m1, cache.findTemplate( f2.getAbsolutePath()));
+		Assert.assertEquals( 1, cache.getCompilationsCount());
+
+		// Modified files are compiled again
+		createFile( "t1.mustache", "Bye {{name}}." );
+		Mustache m3 = cache.findTemplate( f1.getAbsolutePath());
+		Assert.assertNotSame( m1, m3 );
+		Assert.assertEquals( "Bye you.", render( m3 ));
+		Assert.assertEquals( 2, cache.getCompilationsCount());
+
+		// Class path resources are supported
+		Assert.assertNotNull( cache.findTemplate( "instanceTemplate.mustache" ));
+		Assert.assertEquals( 2, cache.getCompilationsCount());
+
+		cache.clear();
+		Assert.assertNotSame( m3, cache.findTemplate( f1.getAbsolutePath()));
+		Assert.assertEquals( 3, cache.getCompilationsCount());
+	}
+
+
+	@Test
+	public void testFindTemplate_eviction() throws Exception {
+
+		TemplateCache cache = new TemplateCache( 1 );
+		File f1 = createFile( "t1.mustache", "{{name}} 1" );
+		File f2 = createFile( "t2.mustache", "{{name}} 2" );
+
+		Mustache m1 = cache.findTemplate( f1.getAbsolutePath());
+		cache.findTemplate( f2.getAbsolutePath());
+		Assert.assertNotSame( m1, cache.findTemplate( f1.getAbsolutePath()));
+		Assert.assertEquals( 3, cache.getCompilationsCount());
+	}
+
+
+	@Test( expected = IllegalArgumentException.class )
+	public void testInvalidMaxEntries() {
+		new TemplateCache( 0 );
+	}
+
+
+	private File createFile( String name, String content ) throws IOException {
+
+		File f = new File( this.dir, name );
+
+		// Make sure the modification date changes
+		long lastModified = f.lastModified();
+		Utils.copyStream( new ByteArrayInputStream( content.getBytes( "UTF-8" )), f );
+		if( lastModified != 0 && ! f.setLastModified( lastModified + 2000 ))
+			throw new IOException( "Failed to update a modification date." );
+
+		return f;
+	}
+
+
+	private String render( Mustache mustache ) throws IOException {
+
+		Map<String,String> scope = new HashMap<String,String> ();
+		scope.put( "name", "you" );
+
+		StringWriter writer = new StringWriter();
+		mustache.execute( writer, scope ).flush();
+		return writer.toString();
+	}
+}
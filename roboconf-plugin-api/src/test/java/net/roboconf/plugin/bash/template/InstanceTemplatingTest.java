@@ -100,6 +100,9 @@ public class InstanceTemplatingTest {
         InstanceTemplateHelper.injectInstanceImports(instance, template, generated);
         Assert.assertTrue(generated.exists() && generated.isFile());
         Assert.assertEquals(readFile(generated.getAbsolutePath()), writtenString);
+
+        //Test templating in memory
+        Assert.assertEquals(writtenString, InstanceTemplateHelper.injectInstanceImports(instance, template));
 	}
 
 
@@ -60,6 +60,7 @@ public class PluginBash implements PluginInterface {
     private final Logger logger = Logger.getLogger( getClass().getName());
     private ExecutionLevel executionLevel;
     private String agentName;
+    private long executionTimeout = DEFAULT_EXECUTION_TIMEOUT;
 
     private static String SCRIPTS_FOLDER_NAME = "scripts";
     private static String TEMPLATES_FOLDER_NAME = "roboconf-templates";
@@ -90,6 +91,12 @@ public class PluginBash implements PluginInterface {
     }
 
 
+    @Override
+    public void setExecutionTimeout( long executionTimeout ) {
+        this.executionTimeout = executionTimeout;
+    }
+
+
 	@Override
 	public void initialize( Instance instance ) throws Exception {
 		this.logger.fine( this.agentName + " is initializing the plug-in for " + instance.getName());
@@ -203,7 +210,8 @@ public class PluginBash implements PluginInterface {
         Map<String, String> importedVars = formatImportedVars(instance);
         environmentVars.putAll(importedVars);
         environmentVars.put("instanceName", instance.getName());
-        ProgramUtils.executeCommand(this.logger, command, environmentVars);
+        File logFile = InstanceHelpers.findInstanceLogFileOnAgent(instance, getPluginName());
+        ProgramUtils.executeCommand(this.logger, command, environmentVars, this.executionTimeout, logFile);
     }
 
 
@@ -57,6 +57,12 @@ public class PluginLogger implements PluginInterface {
 	}
 
 
+	@Override
+	public void setExecutionTimeout( long executionTimeout ) {
+		// nothing
+	}
+
+
 	@Override
 	public void initialize( Instance instance ) throws Exception {
 		this.logger.fine( this.agentName + " is initializing the plug-in for " + instance.getName());
@@ -79,6 +79,7 @@ public class PluginPuppet implements PluginInterface {
 	private final Logger logger = Logger.getLogger( getClass().getName());
 	private ExecutionLevel executionLevel;
 	private String agentName;
+	private long executionTimeout = DEFAULT_EXECUTION_TIMEOUT;
 
 
 
@@ -106,6 +107,12 @@ public class PluginPuppet implements PluginInterface {
 	}
 
 
+	@Override
+	public void setExecutionTimeout( long executionTimeout ) {
+		this.executionTimeout = executionTimeout;
+	}
+
+
 	@Override
 	public void initialize( Instance instance ) throws Exception {
 
@@ -225,7 +232,8 @@ public class PluginPuppet implements PluginInterface {
 				this.logger.info( "Module installation: " + Arrays.toString( params ));
 
 			} else {
-				ProgramUtils.executeCommand( this.logger, commands, null );
+				File logFile = InstanceHelpers.findInstanceLogFileOnAgent( instance, getPluginName());
+				ProgramUtils.executeCommand( this.logger, commands.toArray( new String[ 0 ]), null, this.executionTimeout, logFile );
 			}
 		}
 	}
@@ -284,7 +292,8 @@ public class PluginPuppet implements PluginInterface {
 				this.logger.info( "Module installation: " + Arrays.toString( params ));
 
 			} else {
-				ProgramUtils.executeCommand( this.logger, commands, null );
+				File logFile = InstanceHelpers.findInstanceLogFileOnAgent( instance, getPluginName());
+				ProgramUtils.executeCommand( this.logger, commands.toArray( new String[ 0 ]), null, this.executionTimeout, logFile );
 			}
 
 		} finally {